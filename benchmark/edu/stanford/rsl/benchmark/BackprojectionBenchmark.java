@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.benchmark;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+import edu.stanford.rsl.conrad.reconstruction.VOIBasedReconstructionFilter;
+
+/**
+ * Measures the voxel-driven backprojection of the VOIBasedReconstructionFilter. One operation backprojects one synthetic projection into all slices
+ * of the volume on the calling thread. The projections are taken in turn from the trajectory.
+ * <br><br>
+ * The volume is either updated directly, as in the slab-parallel accumulation, or line by line under the lock of the filter, as in the default accumulation.
+ *
+ * @author akmaier
+ *
+ */
+public class BackprojectionBenchmark extends Benchmark {
+
+	private final boolean ownsSlab;
+	private Backprojector backprojector;
+	private Grid2D [] projections;
+	private int current;
+
+	/**
+	 * @param ownsSlab whether the volume is updated without locking
+	 * @see VOIBasedReconstructionFilter#setSlabParallelAccumulation(boolean)
+	 */
+	public BackprojectionBenchmark(boolean ownsSlab){
+		this.ownsSlab = ownsSlab;
+	}
+
+	@Override
+	public String getName() {
+		return "VOIBasedReconstructionFilter.backproject" + ((ownsSlab) ? " (slab)" : " (locked)");
+	}
+
+	@Override
+	public void setUp(BenchmarkParameters parameters) throws Exception {
+		parameters.installConfiguration();
+		projections = new Grid2D[parameters.getNumProjections()];
+		for (int p = 0; p < projections.length; p++){
+			projections[p] = SyntheticData.createProjection(parameters.getDetectorWidth(), parameters.getDetectorHeight(), p);
+		}
+		backprojector = new Backprojector();
+		backprojector.configure();
+		backprojector.prepare(projections[0]);
+		current = 0;
+	}
+
+	@Override
+	public double run() throws Exception {
+		int projectionNumber = current;
+		current = (current + 1) % projections.length;
+		return backprojector.backproject(projections[projectionNumber], projectionNumber, ownsSlab);
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		backprojector = null;
+		projections = null;
+	}
+
+	@Override
+	public boolean usesVolumeSize(){
+		return true;
+	}
+
+	@Override
+	public boolean usesDetectorSize(){
+		return true;
+	}
+
+	/**
+	 * Gives access to the backprojection of a single, already weighted projection.
+	 */
+	private static class Backprojector extends VOIBasedReconstructionFilter {
+
+		private static final long serialVersionUID = -1427503874105294512L;
+
+		void prepare(Grid2D projection){
+			initialize(projection);
+		}
+
+		double backproject(Grid2D projection, int projectionNumber, boolean ownsSlab){
+			backproject(projection, projectionNumber, 0, maxK, ownsSlab);
+			return projectionVolume.getAtIndex(maxI / 2, maxJ / 2, maxK / 2);
+		}
+
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
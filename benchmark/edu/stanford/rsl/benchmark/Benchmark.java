@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.benchmark;
+
+/**
+ * Abstract class for a benchmark which is executed by the BenchmarkRunner.
+ * <br><br>
+ * The runner calls {@link #setUp(BenchmarkParameters)} once for each combination of parameters, then calls {@link #run()} repeatedly during the warm-up
+ * and measurement iterations, and finally calls {@link #tearDown()}. Only the time spent in run() is measured. run() returns a value that depends on the
+ * computed result, such that the just-in-time compiler cannot remove the computation.
+ * <br><br>
+ * A benchmark declares which parameters it depends on. The runner does not repeat a benchmark for parameters it ignores.
+ *
+ * @author akmaier
+ *
+ */
+public abstract class Benchmark {
+
+	/**
+	 * @return the name of the benchmark as shown in the report
+	 */
+	public abstract String getName();
+
+	/**
+	 * Prepares the data for the given parameters.
+	 * @param parameters the parameters
+	 * @throws Exception may happen.
+	 */
+	public void setUp(BenchmarkParameters parameters) throws Exception {
+	}
+
+	/**
+	 * Executes one operation of the benchmark.
+	 * @return a value depending on the result of the operation
+	 * @throws Exception may happen.
+	 */
+	public abstract double run() throws Exception;
+
+	/**
+	 * Releases the data of the benchmark.
+	 * @throws Exception may happen.
+	 */
+	public void tearDown() throws Exception {
+	}
+
+	/**
+	 * @return true if the benchmark depends on the size of the volume
+	 */
+	public boolean usesVolumeSize(){
+		return false;
+	}
+
+	/**
+	 * @return true if the benchmark depends on the size of the detector
+	 */
+	public boolean usesDetectorSize(){
+		return false;
+	}
+
+	@Override
+	public String toString(){
+		return getName();
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
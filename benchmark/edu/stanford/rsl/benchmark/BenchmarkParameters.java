@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.benchmark;
+
+import java.util.HashMap;
+
+import edu.stanford.rsl.conrad.geometry.Projection.CameraAxisDirection;
+import edu.stanford.rsl.conrad.geometry.trajectories.CircularTrajectory;
+import edu.stanford.rsl.conrad.numerics.SimpleVector;
+import edu.stanford.rsl.conrad.utils.Configuration;
+
+/**
+ * Parameters of a benchmark run: the size of the cubic volume, the size of the detector, and the number of projections.
+ * <br><br>
+ * {@link #installConfiguration()} creates a synthetic circular trajectory for these sizes and sets it as global configuration.
+ * The volume always covers a field of view of 256 mm and the detector is large enough to see the whole volume.
+ *
+ * @author akmaier
+ *
+ */
+public class BenchmarkParameters {
+
+	public static final double FIELD_OF_VIEW = 256.0;
+	public static final double SOURCE_TO_AXIS_DISTANCE = 600.0;
+	public static final double SOURCE_TO_DETECTOR_DISTANCE = 1200.0;
+
+	private final int volumeSize;
+	private final int detectorWidth;
+	private final int detectorHeight;
+	private final int numProjections;
+
+	/**
+	 * Creates a new set of parameters.
+	 * @param volumeSize the number of voxels along each axis of the volume
+	 * @param detectorWidth the width of the detector in pixels
+	 * @param detectorHeight the height of the detector in pixels
+	 * @param numProjections the number of projections of the trajectory
+	 */
+	public BenchmarkParameters(int volumeSize, int detectorWidth, int detectorHeight, int numProjections){
+		if (volumeSize < 2 || detectorWidth < 2 || detectorHeight < 2 || numProjections < 1) {
+			throw new IllegalArgumentException("Invalid benchmark parameters: " + volumeSize + " " + detectorWidth + "x" + detectorHeight + " " + numProjections);
+		}
+		this.volumeSize = volumeSize;
+		this.detectorWidth = detectorWidth;
+		this.detectorHeight = detectorHeight;
+		this.numProjections = numProjections;
+	}
+
+	/**
+	 * Creates a circular trajectory over 360 degrees for the parameters and sets a new global configuration with this geometry.
+	 * @return the new global configuration
+	 */
+	public Configuration installConfiguration(){
+		double voxelSpacing = FIELD_OF_VIEW / volumeSize;
+		// the magnified diagonal of the field of view plus some margin
+		double pixelSpacing = (FIELD_OF_VIEW * Math.sqrt(2) * SOURCE_TO_DETECTOR_DISTANCE / SOURCE_TO_AXIS_DISTANCE) * 1.1 / Math.min(detectorWidth, detectorHeight);
+		double angularIncrement = 360.0 / numProjections;
+		CircularTrajectory trajectory = new CircularTrajectory();
+		trajectory.setDetectorWidth(detectorWidth);
+		trajectory.setDetectorHeight(detectorHeight);
+		trajectory.setPixelDimensionX(pixelSpacing);
+		trajectory.setPixelDimensionY(pixelSpacing);
+		trajectory.setSourceToAxisDistance(SOURCE_TO_AXIS_DISTANCE);
+		trajectory.setSourceToDetectorDistance(SOURCE_TO_DETECTOR_DISTANCE);
+		trajectory.setReconDimensions(volumeSize, volumeSize, volumeSize);
+		trajectory.setOriginInPixelsX((volumeSize - 1) / 2.0);
+		trajectory.setOriginInPixelsY((volumeSize - 1) / 2.0);
+		trajectory.setOriginInPixelsZ((volumeSize - 1) / 2.0);
+		trajectory.setVoxelSpacingX(voxelSpacing);
+		trajectory.setVoxelSpacingY(voxelSpacing);
+		trajectory.setVoxelSpacingZ(voxelSpacing);
+		trajectory.setAverageAngularIncrement(angularIncrement);
+		trajectory.setProjectionStackSize(numProjections);
+		trajectory.setDetectorUDirection(CameraAxisDirection.DETECTORMOTION_PLUS);
+		trajectory.setDetectorVDirection(CameraAxisDirection.ROTATIONAXIS_PLUS);
+		trajectory.setTrajectory(numProjections, SOURCE_TO_AXIS_DISTANCE, angularIncrement, 0, 0, CameraAxisDirection.DETECTORMOTION_PLUS, CameraAxisDirection.ROTATIONAXIS_PLUS, new SimpleVector(0, 0, 1));
+		Configuration config = new Configuration();
+		config.setRegistry(new HashMap<String, String>());
+		config.setGeometry(trajectory);
+		Configuration.setGlobalConfiguration(config);
+		return config;
+	}
+
+	/**
+	 * @return the number of voxels along each axis of the volume
+	 */
+	public int getVolumeSize() {
+		return volumeSize;
+	}
+
+	/**
+	 * @return the width of the detector in pixels
+	 */
+	public int getDetectorWidth() {
+		return detectorWidth;
+	}
+
+	/**
+	 * @return the height of the detector in pixels
+	 */
+	public int getDetectorHeight() {
+		return detectorHeight;
+	}
+
+	/**
+	 * @return the number of projections
+	 */
+	public int getNumProjections() {
+		return numProjections;
+	}
+
+	@Override
+	public String toString(){
+		return "volume " + volumeSize + "^3, detector " + detectorWidth + "x" + detectorHeight + ", " + numProjections + " projections";
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
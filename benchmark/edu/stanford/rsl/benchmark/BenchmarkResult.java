@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.benchmark;
+
+/**
+ * Result of a benchmark for one set of parameters: the mean time per operation of each measurement iteration.
+ *
+ * @author akmaier
+ *
+ */
+public class BenchmarkResult {
+
+	private static final String format = "%-52s %8s %10s %6d %12.3f %10.3f %12.3f";
+
+	private final String name;
+	private final String volume;
+	private final String detector;
+	private final double [] scores;
+
+	/**
+	 * Creates a new result.
+	 * @param benchmark the benchmark
+	 * @param parameters the parameters of the run. Parameters that the benchmark does not use are not reported.
+	 * @param scores the mean time per operation in ms for each measurement iteration
+	 */
+	public BenchmarkResult(Benchmark benchmark, BenchmarkParameters parameters, double [] scores){
+		this.name = benchmark.getName();
+		this.volume = benchmark.usesVolumeSize() ? Integer.toString(parameters.getVolumeSize()) : "-";
+		this.detector = benchmark.usesDetectorSize() ? parameters.getDetectorWidth() + "x" + parameters.getDetectorHeight() : "-";
+		this.scores = scores.clone();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the mean time per operation in ms
+	 */
+	public double getMean(){
+		double sum = 0;
+		for (double score : scores){
+			sum += score;
+		}
+		return (scores.length > 0) ? sum / scores.length : Double.NaN;
+	}
+
+	/**
+	 * @return the standard deviation of the time per operation over the iterations in ms
+	 */
+	public double getStandardDeviation(){
+		if (scores.length < 2) return 0;
+		double mean = getMean();
+		double sum = 0;
+		for (double score : scores){
+			sum += (score - mean) * (score - mean);
+		}
+		return Math.sqrt(sum / (scores.length - 1));
+	}
+
+	/**
+	 * @return the minimal time per operation in ms
+	 */
+	public double getMinimum(){
+		double min = Double.POSITIVE_INFINITY;
+		for (double score : scores){
+			min = Math.min(min, score);
+		}
+		return min;
+	}
+
+	/**
+	 * @return the header of the report table
+	 */
+	public static String getHeader(){
+		return String.format("%-52s %8s %10s %6s %12s %10s %12s", "Benchmark", "Volume", "Detector", "Cnt", "Score ms/op", "StdDev", "Min ms/op");
+	}
+
+	@Override
+	public String toString(){
+		return String.format(format, name, volume, detector, scores.length, getMean(), getStandardDeviation(), getMinimum());
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.benchmark;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.regex.Pattern;
+
+import edu.stanford.rsl.benchmark.Grid3DAccessBenchmark.AccessPattern;
+import edu.stanford.rsl.benchmark.GridReductionBenchmark.Reduction;
+import edu.stanford.rsl.benchmark.InterpolationBenchmark.Interpolation;
+import edu.stanford.rsl.benchmark.RampFilterBenchmark.Implementation;
+import edu.stanford.rsl.conrad.utils.CONRAD;
+
+/**
+ * Executes benchmarks for all combinations of the given volume and detector sizes and reports the time per operation.
+ * <br><br>
+ * Each benchmark is set up once per combination of parameters. It is then executed for a number of warm-up iterations, which are discarded, and for a number of
+ * measurement iterations. Each iteration calls {@link Benchmark#run()} until the minimal iteration time has passed and yields the mean time per operation.
+ * The report lists the mean, the standard deviation, and the minimum over the measurement iterations.
+ * <br><br>
+ * Usage: BenchmarkRunner [options] [regular expressions]<br>
+ * -wi n: number of warm-up iterations (default 3)<br>
+ * -i n: number of measurement iterations (default 5)<br>
+ * -r ms: minimal time per iteration in ms (default 1000)<br>
+ * -v n,n,...: volume sizes (default 64,128)<br>
+ * -d wxh,wxh,...: detector sizes (default 256x192,512x384)<br>
+ * -p n: number of projections (default 90)<br>
+ * -l: lists the available benchmarks<br>
+ * Only benchmarks whose names contain a match of one of the regular expressions are executed. Without expressions all benchmarks are executed.
+ *
+ * @author akmaier
+ *
+ */
+public class BenchmarkRunner {
+
+	private int warmupIterations = 3;
+	private int measurementIterations = 5;
+	private long minimalIterationTime = 1000;
+	private int [] volumeSizes = {64, 128};
+	private int [][] detectorSizes = {{256, 192}, {512, 384}};
+	private int numProjections = 90;
+	private PrintStream out = System.out;
+	/**
+	 * Receives the results of the benchmarks, such that their computations cannot be eliminated.
+	 */
+	private volatile double blackhole;
+
+	/**
+	 * @return new instances of all benchmarks
+	 */
+	public static Benchmark [] getAvailableBenchmarks(){
+		ArrayList<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		for (Implementation implementation : Implementation.values()){
+			benchmarks.add(new RampFilterBenchmark(implementation));
+		}
+		for (Reduction reduction : Reduction.values()){
+			benchmarks.add(new GridReductionBenchmark(reduction));
+		}
+		for (AccessPattern pattern : AccessPattern.values()){
+			benchmarks.add(new Grid3DAccessBenchmark(pattern));
+		}
+		for (Interpolation interpolation : Interpolation.values()){
+			benchmarks.add(new InterpolationBenchmark(interpolation));
+		}
+		benchmarks.add(new RayCastBenchmark());
+		benchmarks.add(new BackprojectionBenchmark(false));
+		benchmarks.add(new BackprojectionBenchmark(true));
+		benchmarks.add(new PipelineBenchmark(false));
+		benchmarks.add(new PipelineBenchmark(true));
+		return benchmarks.toArray(new Benchmark[benchmarks.size()]);
+	}
+
+	/**
+	 * Selects the benchmarks whose names contain a match of one of the regular expressions.
+	 * @param benchmarks the benchmarks
+	 * @param expressions the regular expressions. All benchmarks are selected if there is none.
+	 * @return the selected benchmarks
+	 */
+	public static ArrayList<Benchmark> select(Benchmark [] benchmarks, ArrayList<String> expressions){
+		ArrayList<Benchmark> selected = new ArrayList<Benchmark>();
+		for (Benchmark benchmark : benchmarks){
+			boolean matches = expressions.isEmpty();
+			for (String expression : expressions){
+				if (Pattern.compile(expression).matcher(benchmark.getName()).find()) matches = true;
+			}
+			if (matches) selected.add(benchmark);
+		}
+		return selected;
+	}
+
+	/**
+	 * Executes the benchmarks for all combinations of parameters and prints the report.
+	 * @param benchmarks the benchmarks
+	 * @return the results in the order of execution
+	 * @throws Exception if a benchmark fails
+	 */
+	public ArrayList<BenchmarkResult> run(ArrayList<Benchmark> benchmarks) throws Exception {
+		out.println("# Threads: " + CONRAD.getNumberOfThreads() + ", warm-up: " + warmupIterations + " x " + minimalIterationTime + " ms, measurement: " + measurementIterations + " x " + minimalIterationTime + " ms");
+		ArrayList<BenchmarkResult> results = new ArrayList<BenchmarkResult>();
+		for (Benchmark benchmark : benchmarks){
+			int [] volumes = benchmark.usesVolumeSize() ? volumeSizes : new int [] {volumeSizes[0]};
+			int [][] detectors = benchmark.usesDetectorSize() ? detectorSizes : new int [][] {detectorSizes[0]};
+			for (int volume : volumes){
+				for (int [] detector : detectors){
+					BenchmarkParameters parameters = new BenchmarkParameters(volume, detector[0], detector[1], numProjections);
+					BenchmarkResult result = run(benchmark, parameters);
+					out.println("# " + result);
+					results.add(result);
+				}
+			}
+		}
+		out.println();
+		out.println(BenchmarkResult.getHeader());
+		for (BenchmarkResult result : results){
+			out.println(result);
+		}
+		return results;
+	}
+
+	/**
+	 * Executes a benchmark for one set of parameters.
+	 * @param benchmark the benchmark
+	 * @param parameters the parameters
+	 * @return the result
+	 * @throws Exception if the benchmark fails
+	 */
+	public BenchmarkResult run(Benchmark benchmark, BenchmarkParameters parameters) throws Exception {
+		System.gc();
+		benchmark.setUp(parameters);
+		try {
+			for (int i = 0; i < warmupIterations; i++){
+				runIteration(benchmark);
+			}
+			double [] scores = new double [measurementIterations];
+			for (int i = 0; i < measurementIterations; i++){
+				scores[i] = runIteration(benchmark);
+			}
+			return new BenchmarkResult(benchmark, parameters, scores);
+		} finally {
+			benchmark.tearDown();
+		}
+	}
+
+	/**
+	 * @return the mean time per operation in ms
+	 */
+	private double runIteration(Benchmark benchmark) throws Exception {
+		double sum = 0;
+		long operations = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			sum += benchmark.run();
+			operations++;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < minimalIterationTime * 1000000L);
+		blackhole += sum;
+		return (elapsed / 1000000.0) / operations;
+	}
+
+	public void setWarmupIterations(int warmupIterations) {
+		this.warmupIterations = warmupIterations;
+	}
+
+	public void setMeasurementIterations(int measurementIterations) {
+		this.measurementIterations = measurementIterations;
+	}
+
+	/**
+	 * @param minimalIterationTime the minimal time per iteration in ms
+	 */
+	public void setMinimalIterationTime(long minimalIterationTime) {
+		this.minimalIterationTime = minimalIterationTime;
+	}
+
+	public void setVolumeSizes(int [] volumeSizes) {
+		this.volumeSizes = volumeSizes;
+	}
+
+	/**
+	 * @param detectorSizes the detector sizes as {width, height} pairs
+	 */
+	public void setDetectorSizes(int [][] detectorSizes) {
+		this.detectorSizes = detectorSizes;
+	}
+
+	public void setNumProjections(int numProjections) {
+		this.numProjections = numProjections;
+	}
+
+	public void setOutput(PrintStream out) {
+		this.out = out;
+	}
+
+	private static int [] parseSizes(String list){
+		String [] values = list.split(",");
+		int [] sizes = new int [values.length];
+		for (int i = 0; i < values.length; i++){
+			sizes[i] = Integer.parseInt(values[i].trim());
+		}
+		return sizes;
+	}
+
+	private static int [][] parseDetectorSizes(String list){
+		String [] values = list.split(",");
+		int [][] sizes = new int [values.length][];
+		for (int i = 0; i < values.length; i++){
+			String [] dimensions = values[i].trim().split("x");
+			if (dimensions.length != 2) throw new IllegalArgumentException("Detector sizes have to be given as wxh: " + values[i]);
+			sizes[i] = new int [] {Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1])};
+		}
+		return sizes;
+	}
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		ArrayList<String> expressions = new ArrayList<String>();
+		boolean list = false;
+		for (int i = 0; i < args.length; i++){
+			if (args[i].equals("-wi")) {
+				runner.setWarmupIterations(Integer.parseInt(args[++i]));
+			} else if (args[i].equals("-i")) {
+				runner.setMeasurementIterations(Integer.parseInt(args[++i]));
+			} else if (args[i].equals("-r")) {
+				runner.setMinimalIterationTime(Long.parseLong(args[++i]));
+			} else if (args[i].equals("-v")) {
+				runner.setVolumeSizes(parseSizes(args[++i]));
+			} else if (args[i].equals("-d")) {
+				runner.setDetectorSizes(parseDetectorSizes(args[++i]));
+			} else if (args[i].equals("-p")) {
+				runner.setNumProjections(Integer.parseInt(args[++i]));
+			} else if (args[i].equals("-l")) {
+				list = true;
+			} else {
+				expressions.add(args[i]);
+			}
+		}
+		ArrayList<Benchmark> benchmarks = select(getAvailableBenchmarks(), expressions);
+		if (list) {
+			for (Benchmark benchmark : benchmarks){
+				System.out.println(benchmark.getName());
+			}
+		} else {
+			runner.run(benchmarks);
+		}
+		System.exit(0);
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
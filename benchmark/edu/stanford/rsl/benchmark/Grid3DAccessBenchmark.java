@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.benchmark;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid3D;
+
+/**
+ * Measures the traversal of a whole volume with different access patterns of Grid3D.
+ *
+ * @author akmaier
+ *
+ */
+public class Grid3DAccessBenchmark extends Benchmark {
+
+	/**
+	 * The access pattern to measure.
+	 */
+	public static enum AccessPattern {
+		/**
+		 * reads the float buffers of the slices directly
+		 */
+		SLICE_BUFFER,
+		/**
+		 * getAtIndex(i, j, k) with i in the innermost loop, i.e. in memory order
+		 */
+		GET_AT_INDEX,
+		/**
+		 * getAtIndex(i, j, k) with k in the innermost loop, i.e. one slice per access
+		 */
+		GET_AT_INDEX_STRIDED,
+		/**
+		 * addAtIndex(i, j, k, value) in memory order
+		 */
+		ADD_AT_INDEX
+	}
+
+	private final AccessPattern pattern;
+	private Grid3D volume;
+	private int size;
+
+	public Grid3DAccessBenchmark(AccessPattern pattern){
+		this.pattern = pattern;
+	}
+
+	@Override
+	public String getName() {
+		switch (pattern) {
+		case SLICE_BUFFER: return "Grid3D.getSubGrid().getBuffer";
+		case GET_AT_INDEX: return "Grid3D.getAtIndex";
+		case GET_AT_INDEX_STRIDED: return "Grid3D.getAtIndex (strided)";
+		default: return "Grid3D.addAtIndex";
+		}
+	}
+
+	@Override
+	public void setUp(BenchmarkParameters parameters) throws Exception {
+		size = parameters.getVolumeSize();
+		volume = SyntheticData.createVolume(size, 0);
+	}
+
+	@Override
+	public double run() throws Exception {
+		double sum = 0;
+		switch (pattern) {
+		case SLICE_BUFFER:
+			for (int k = 0; k < size; k++){
+				float [] slice = volume.getSubGrid(k).getBuffer();
+				for (int n = 0; n < slice.length; n++){
+					sum += slice[n];
+				}
+			}
+			break;
+		case GET_AT_INDEX:
+			for (int k = 0; k < size; k++){
+				for (int j = 0; j < size; j++){
+					for (int i = 0; i < size; i++){
+						sum += volume.getAtIndex(i, j, k);
+					}
+				}
+			}
+			break;
+		case GET_AT_INDEX_STRIDED:
+			for (int i = 0; i < size; i++){
+				for (int j = 0; j < size; j++){
+					for (int k = 0; k < size; k++){
+						sum += volume.getAtIndex(i, j, k);
+					}
+				}
+			}
+			break;
+		default:
+			for (int k = 0; k < size; k++){
+				for (int j = 0; j < size; j++){
+					for (int i = 0; i < size; i++){
+						volume.addAtIndex(i, j, k, 1.0f);
+					}
+				}
+			}
+			sum = volume.getAtIndex(0, 0, 0);
+		}
+		return sum;
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		volume = null;
+	}
+
+	@Override
+	public boolean usesVolumeSize(){
+		return true;
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.benchmark;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid3D;
+import edu.stanford.rsl.conrad.data.numeric.NumericGridOperator;
+
+/**
+ * Measures the reductions of the NumericGridOperator on a volume. The operator of the volume is used, i.e. the same operator as in the rest of CONRAD.
+ *
+ * @author akmaier
+ *
+ */
+public class GridReductionBenchmark extends Benchmark {
+
+	/**
+	 * The reduction to measure.
+	 */
+	public static enum Reduction {
+		SUM, NORM_L1, NORM_L2, MIN, MAX, DOT_PRODUCT, STDDEV
+	}
+
+	private final Reduction reduction;
+	private Grid3D first;
+	private Grid3D second;
+	private NumericGridOperator operator;
+
+	public GridReductionBenchmark(Reduction reduction){
+		this.reduction = reduction;
+	}
+
+	@Override
+	public String getName() {
+		switch (reduction) {
+		case SUM: return "NumericGridOperator.sum";
+		case NORM_L1: return "NumericGridOperator.normL1";
+		case NORM_L2: return "NumericGridOperator.normL2";
+		case MIN: return "NumericGridOperator.min";
+		case MAX: return "NumericGridOperator.max";
+		case DOT_PRODUCT: return "NumericGridOperator.dotProduct";
+		default: return "NumericGridOperator.stddev";
+		}
+	}
+
+	@Override
+	public void setUp(BenchmarkParameters parameters) throws Exception {
+		first = SyntheticData.createVolume(parameters.getVolumeSize(), 0);
+		second = (reduction == Reduction.DOT_PRODUCT) ? SyntheticData.createVolume(parameters.getVolumeSize(), 1) : null;
+		operator = first.getGridOperator();
+	}
+
+	@Override
+	public double run() throws Exception {
+		switch (reduction) {
+		case SUM: return operator.sum(first);
+		case NORM_L1: return operator.normL1(first);
+		case NORM_L2: return operator.normL2(first);
+		case MIN: return operator.min(first);
+		case MAX: return operator.max(first);
+		case DOT_PRODUCT: return operator.dotProduct(first, second);
+		default: return operator.stddev(first);
+		}
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		first = null;
+		second = null;
+	}
+
+	@Override
+	public boolean usesVolumeSize(){
+		return true;
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
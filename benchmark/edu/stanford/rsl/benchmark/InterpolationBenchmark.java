@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.benchmark;
+
+import java.util.Random;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid1D;
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+import edu.stanford.rsl.conrad.data.numeric.Grid3D;
+import edu.stanford.rsl.conrad.data.numeric.InterpolationOperators;
+
+/**
+ * Measures the linear interpolation of the InterpolationOperators at random positions. The 1D, 2D, and 3D grids have the size of the volume along each axis.
+ * One operation evaluates {@link #SAMPLES} positions.
+ *
+ * @author akmaier
+ *
+ */
+public class InterpolationBenchmark extends Benchmark {
+
+	/**
+	 * Number of interpolated positions per operation.
+	 */
+	public static final int SAMPLES = 1 << 18;
+
+	/**
+	 * The interpolation to measure.
+	 */
+	public static enum Interpolation {
+		LINEAR_1D, LINEAR_2D, LINEAR_3D, ADD_LINEAR_3D
+	}
+
+	private final Interpolation interpolation;
+	private Grid1D line;
+	private Grid2D slice;
+	private Grid3D volume;
+	private double [] positions;
+
+	public InterpolationBenchmark(Interpolation interpolation){
+		this.interpolation = interpolation;
+	}
+
+	@Override
+	public String getName() {
+		switch (interpolation) {
+		case LINEAR_1D: return "InterpolationOperators.interpolateLinear 1D";
+		case LINEAR_2D: return "InterpolationOperators.interpolateLinear 2D";
+		case LINEAR_3D: return "InterpolationOperators.interpolateLinear 3D";
+		default: return "InterpolationOperators.addInterpolateLinear 3D";
+		}
+	}
+
+	@Override
+	public void setUp(BenchmarkParameters parameters) throws Exception {
+		int size = parameters.getVolumeSize();
+		volume = SyntheticData.createVolume(size, 0);
+		slice = volume.getSubGrid(size / 2);
+		line = slice.getSubGrid(size / 2);
+		// addInterpolateLinear does not check the bounds, i.e. the upper neighbor has to be inside of the grid.
+		Random random = new Random(42);
+		positions = new double [3 * SAMPLES];
+		for (int n = 0; n < positions.length; n++){
+			positions[n] = random.nextDouble() * (size - 1);
+		}
+	}
+
+	@Override
+	public double run() throws Exception {
+		double sum = 0;
+		switch (interpolation) {
+		case LINEAR_1D:
+			for (int n = 0; n < SAMPLES; n++){
+				sum += InterpolationOperators.interpolateLinear(line, positions[3 * n]);
+			}
+			break;
+		case LINEAR_2D:
+			for (int n = 0; n < SAMPLES; n++){
+				sum += InterpolationOperators.interpolateLinear(slice, positions[3 * n], positions[(3 * n) + 1]);
+			}
+			break;
+		case LINEAR_3D:
+			for (int n = 0; n < SAMPLES; n++){
+				sum += InterpolationOperators.interpolateLinear(volume, positions[(3 * n) + 2], positions[3 * n], positions[(3 * n) + 1]);
+			}
+			break;
+		default:
+			for (int n = 0; n < SAMPLES; n++){
+				InterpolationOperators.addInterpolateLinear(volume, positions[3 * n], positions[(3 * n) + 1], positions[(3 * n) + 2], 0.001f);
+			}
+			sum = volume.getAtIndex(0, 0, 0);
+		}
+		return sum;
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		line = null;
+		slice = null;
+		volume = null;
+		positions = null;
+	}
+
+	@Override
+	public boolean usesVolumeSize(){
+		return true;
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
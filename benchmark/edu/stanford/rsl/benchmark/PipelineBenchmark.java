@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.benchmark;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+import edu.stanford.rsl.conrad.data.numeric.Grid3D;
+import edu.stanford.rsl.conrad.filtering.ImageFilteringTool;
+import edu.stanford.rsl.conrad.filtering.RampFilteringTool;
+import edu.stanford.rsl.conrad.filtering.rampfilters.RamLakRampFilter;
+import edu.stanford.rsl.conrad.io.ImagePlusProjectionDataSource;
+import edu.stanford.rsl.conrad.pipeline.BufferedProjectionSink;
+import edu.stanford.rsl.conrad.pipeline.ParallelImageFilterPipeliner;
+import edu.stanford.rsl.conrad.reconstruction.VOIBasedReconstructionFilter;
+import edu.stanford.rsl.conrad.utils.CONRAD;
+import edu.stanford.rsl.conrad.utils.Configuration;
+
+/**
+ * Measures the throughput of the ParallelImageFilterPipeliner. One operation streams all synthetic projections through a ramp filter and
+ * the VOIBasedReconstructionFilter and waits until all slices of the volume have arrived in the sink.
+ *
+ * @author akmaier
+ *
+ */
+public class PipelineBenchmark extends Benchmark {
+
+	private final boolean slabParallelAccumulation;
+	private Configuration config;
+	private Grid3D projections;
+
+	/**
+	 * @param slabParallelAccumulation whether the backprojector uses the slab-parallel accumulation
+	 * @see VOIBasedReconstructionFilter#setSlabParallelAccumulation(boolean)
+	 */
+	public PipelineBenchmark(boolean slabParallelAccumulation){
+		this.slabParallelAccumulation = slabParallelAccumulation;
+	}
+
+	@Override
+	public String getName() {
+		return "ParallelImageFilterPipeliner" + ((slabParallelAccumulation) ? " (slab-parallel)" : "");
+	}
+
+	@Override
+	public void setUp(BenchmarkParameters parameters) throws Exception {
+		config = parameters.installConfiguration();
+		projections = SyntheticData.createProjections(parameters.getDetectorWidth(), parameters.getDetectorHeight(), parameters.getNumProjections());
+	}
+
+	@Override
+	public double run() throws Exception {
+		RamLakRampFilter ramp = new RamLakRampFilter();
+		ramp.setConfiguration(config);
+		RampFilteringTool rampFilter = new RampFilteringTool();
+		rampFilter.setRamp(ramp);
+		rampFilter.setConfigured(true);
+		VOIBasedReconstructionFilter backprojector = new VOIBasedReconstructionFilter();
+		backprojector.setSlabParallelAccumulation(slabParallelAccumulation);
+		ImageFilteringTool [] tools = {rampFilter, backprojector};
+		ImagePlusProjectionDataSource source = new ImagePlusProjectionDataSource();
+		source.setImage(projections);
+		SliceCountingSink sink = new SliceCountingSink();
+		new ParallelImageFilterPipeliner(source, tools, sink).project(false);
+		return sink.getSum();
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		projections = null;
+	}
+
+	@Override
+	public boolean usesVolumeSize(){
+		return true;
+	}
+
+	@Override
+	public boolean usesDetectorSize(){
+		return true;
+	}
+
+	/**
+	 * Sink which only sums one value of each slice. getResult() blocks until the sink was closed, i.e. until the pipeline is done.
+	 */
+	private static class SliceCountingSink extends BufferedProjectionSink {
+
+		private static final long serialVersionUID = -3000510339016707318L;
+		private double sum = 0;
+		private boolean closed = false;
+
+		SliceCountingSink(){
+			configured = true;
+		}
+
+		@Override
+		public synchronized void process(Grid2D projection, int projectionNumber) throws Exception {
+			sum += projection.getBuffer()[projection.getBuffer().length / 2];
+		}
+
+		@Override
+		public synchronized void close() throws Exception {
+			closed = true;
+			notifyAll();
+		}
+
+		@Override
+		public synchronized Grid3D getResult(){
+			while (!closed){
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return null;
+				}
+			}
+			return null;
+		}
+
+		synchronized double getSum(){
+			return sum;
+		}
+
+		@Override
+		public String getName() {
+			return "Slice Counting Sink";
+		}
+
+		@Override
+		public void setConfiguration(Configuration config) {
+		}
+
+		@Override
+		public void configure() throws Exception {
+		}
+
+		@Override
+		public String getBibtexCitation() {
+			return CONRAD.CONRADBibtex;
+		}
+
+		@Override
+		public String getMedlineCitation() {
+			return CONRAD.CONRADMedline;
+		}
+
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.benchmark;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+import edu.stanford.rsl.conrad.filtering.rampfilters.RamLakRampFilter;
+import edu.stanford.rsl.conrad.filtering.rampfilters.RampFilter;
+import edu.stanford.rsl.conrad.filtering.rampfilters.RampFilteringEngine;
+import edu.stanford.rsl.conrad.utils.FFTUtil;
+
+/**
+ * Measures the ramp filtering of one projection with a Ram-Lak filter.
+ *
+ * @author akmaier
+ *
+ */
+public class RampFilterBenchmark extends Benchmark {
+
+	/**
+	 * The implementation of the ramp filtering.
+	 */
+	public static enum Implementation {
+		/**
+		 * {@link FFTUtil#applyRampFilter(Grid2D, RampFilter)}
+		 */
+		FFT_UTIL,
+		/**
+		 * {@link RampFilteringEngine#applyRampFilter(Grid2D)} as used by the RampFilteringTool
+		 */
+		ENGINE
+	}
+
+	private final Implementation implementation;
+	private RampFilter ramp;
+	private RampFilteringEngine engine;
+	private Grid2D projection;
+
+	public RampFilterBenchmark(Implementation implementation){
+		this.implementation = implementation;
+	}
+
+	@Override
+	public String getName() {
+		return (implementation == Implementation.FFT_UTIL) ? "FFTUtil.applyRampFilter" : "RampFilteringEngine.applyRampFilter";
+	}
+
+	@Override
+	public void setUp(BenchmarkParameters parameters) throws Exception {
+		ramp = new RamLakRampFilter();
+		ramp.setConfiguration(parameters.installConfiguration());
+		engine = new RampFilteringEngine(ramp);
+		projection = SyntheticData.createProjection(parameters.getDetectorWidth(), parameters.getDetectorHeight(), 0);
+	}
+
+	@Override
+	public double run() throws Exception {
+		Grid2D filtered = (implementation == Implementation.FFT_UTIL) ? FFTUtil.applyRampFilter(projection, ramp) : engine.applyRampFilter(projection);
+		return filtered.getBuffer()[filtered.getBuffer().length / 2];
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		ramp = null;
+		engine = null;
+		projection = null;
+	}
+
+	@Override
+	public boolean usesDetectorSize(){
+		return true;
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
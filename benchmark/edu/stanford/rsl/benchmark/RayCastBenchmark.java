@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.benchmark;
+
+import java.util.ArrayList;
+
+import edu.stanford.rsl.conrad.geometry.Projection;
+import edu.stanford.rsl.conrad.geometry.shapes.simple.PointND;
+import edu.stanford.rsl.conrad.geometry.shapes.simple.StraightLine;
+import edu.stanford.rsl.conrad.numerics.SimpleOperators;
+import edu.stanford.rsl.conrad.numerics.SimpleVector;
+import edu.stanford.rsl.conrad.physics.PhysicalObject;
+import edu.stanford.rsl.conrad.rendering.AbstractRayTracer;
+import edu.stanford.rsl.conrad.rendering.PriorityRayTracer;
+
+/**
+ * Measures {@link AbstractRayTracer#castRay(edu.stanford.rsl.conrad.geometry.AbstractCurve)} of the PriorityRayTracer for a scene of nine spheres.
+ * One operation casts one ray for each column of the detector along the diagonal of the first projection.
+ *
+ * @author akmaier
+ *
+ */
+public class RayCastBenchmark extends Benchmark {
+
+	private PriorityRayTracer rayTracer;
+	private PointND source;
+	private SimpleVector [] directions;
+
+	@Override
+	public String getName() {
+		return "PriorityRayTracer.castRay";
+	}
+
+	@Override
+	public void setUp(BenchmarkParameters parameters) throws Exception {
+		Projection projection = parameters.installConfiguration().getGeometry().getProjectionMatrix(0);
+		rayTracer = new PriorityRayTracer();
+		rayTracer.setScene(SyntheticData.createScene());
+		source = new PointND(projection.computeCameraCenter());
+		int width = parameters.getDetectorWidth();
+		int height = parameters.getDetectorHeight();
+		directions = new SimpleVector [width];
+		for (int x = 0; x < width; x++){
+			SimpleVector direction = projection.computeRayDirection(new SimpleVector(x, ((double) x * (height - 1)) / (width - 1)));
+			// the rays have to point from the source towards the origin
+			if (SimpleOperators.multiplyInnerProd(direction, source.getAbstractVector()) > 0) direction.negate();
+			direction.normalizeL2();
+			directions[x] = direction;
+		}
+	}
+
+	@Override
+	public double run() throws Exception {
+		double segments = 0;
+		for (SimpleVector direction : directions){
+			ArrayList<PhysicalObject> hits = rayTracer.castRay(new StraightLine(source, direction));
+			if (hits != null) segments += hits.size();
+		}
+		return segments;
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		rayTracer = null;
+		directions = null;
+	}
+
+	@Override
+	public boolean usesDetectorSize(){
+		return true;
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.benchmark;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+import edu.stanford.rsl.conrad.data.numeric.Grid3D;
+import edu.stanford.rsl.conrad.geometry.shapes.simple.PointND;
+import edu.stanford.rsl.conrad.geometry.shapes.simple.Sphere;
+import edu.stanford.rsl.conrad.physics.PhysicalObject;
+import edu.stanford.rsl.conrad.physics.materials.Material;
+import edu.stanford.rsl.conrad.rendering.PrioritizableScene;
+
+/**
+ * Creates the deterministic input data of the benchmarks.
+ *
+ * @author akmaier
+ *
+ */
+abstract class SyntheticData {
+
+	/**
+	 * Creates a smooth projection which varies with the projection number.
+	 */
+	static Grid2D createProjection(int width, int height, int projectionNumber){
+		Grid2D projection = new Grid2D(width, height);
+		float [] pixels = projection.getBuffer();
+		for (int j = 0; j < height; j++){
+			for (int i = 0; i < width; i++){
+				pixels[(j * width) + i] = (float) (Math.sin((i + projectionNumber) * 0.05) + Math.cos(j * 0.03) + 2.0);
+			}
+		}
+		return projection;
+	}
+
+	/**
+	 * Creates a stack of projections.
+	 */
+	static Grid3D createProjections(int width, int height, int numProjections){
+		Grid3D projections = new Grid3D(width, height, numProjections, false);
+		for (int p = 0; p < numProjections; p++){
+			projections.setSubGrid(p, createProjection(width, height, p));
+		}
+		return projections;
+	}
+
+	/**
+	 * Creates a cubic volume with a smooth radial profile and a small oscillation.
+	 */
+	static Grid3D createVolume(int size, int seed){
+		Grid3D volume = new Grid3D(size, size, size);
+		double center = (size - 1) / 2.0;
+		for (int k = 0; k < size; k++){
+			float [] slice = volume.getSubGrid(k).getBuffer();
+			for (int j = 0; j < size; j++){
+				for (int i = 0; i < size; i++){
+					double r = Math.sqrt(((i - center) * (i - center)) + ((j - center) * (j - center)) + ((k - center) * (k - center))) / size;
+					slice[(j * size) + i] = (float) (Math.max(0.5 - r, 0) + (0.01 * Math.sin(i + j + k + seed)));
+				}
+			}
+		}
+		return volume;
+	}
+
+	/**
+	 * Creates a scene of a water sphere which fills most of the field of view and contains a ring of eight bone spheres.
+	 * The materials are created with their densities only, such that the scene does not depend on the material database.
+	 */
+	static PrioritizableScene createScene(){
+		double radius = BenchmarkParameters.FIELD_OF_VIEW * 0.4;
+		PrioritizableScene scene = new PrioritizableScene();
+		scene.setBackground(createMaterial("air", 0.0012));
+		scene.add(createSphere("water", createMaterial("water", 1.0), radius, 0, 0, 0), 1);
+		Material bone = createMaterial("bone", 1.92);
+		for (int n = 0; n < 8; n++){
+			double angle = n * Math.PI / 4;
+			scene.add(createSphere("bone " + n, bone, radius / 8, radius * 0.6 * Math.cos(angle), radius * 0.6 * Math.sin(angle), (n - 3.5) * radius / 8), 2);
+		}
+		return scene;
+	}
+
+	private static Material createMaterial(String name, double density){
+		Material material = new Material(density);
+		material.setName(name);
+		return material;
+	}
+
+	private static PhysicalObject createSphere(String name, Material material, double radius, double x, double y, double z){
+		PhysicalObject object = new PhysicalObject();
+		object.setNameString(name);
+		object.setMaterial(material);
+		object.setShape(new Sphere(radius, new PointND(x, y, z)));
+		return object;
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -0,0 +1,13 @@
+/*
+ * Copyright (C) 2010-2014  Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+/**
+ * Contains the micro benchmarks for the performance critical parts of CONRAD and the BenchmarkRunner to execute them.
+ * The benchmarks are parameterized by the size of the volume and of the detector, such that regressions and speedups can be tracked on the target hardware.
+ * They are kept in the source folder "benchmark", i.e. they are not part of the CONRAD library.
+ * The backprojection alone is measured by the BackprojectionBenchmark, the complete reconstruction pipeline by the PipelineBenchmark.
+ *
+ * @author Andreas Maier
+ */
+package edu.stanford.rsl.benchmark;
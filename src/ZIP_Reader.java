@@ -8,9 +8,8 @@ import java.io.File;
 import java.io.IOException;
 
 import edu.stanford.rsl.conrad.data.numeric.Grid2D;
-import edu.stanford.rsl.conrad.io.FileProjectionSource;
 import edu.stanford.rsl.conrad.io.ImagePlusDataSink;
-import edu.stanford.rsl.conrad.io.ZipProjectionSource;
+import edu.stanford.rsl.conrad.io.PrefetchingProjectionSource;
 import edu.stanford.rsl.conrad.utils.ImageUtil;
 import ij.plugin.*;
 
@@ -32,7 +31,7 @@ public class ZIP_Reader extends ImagePlus implements PlugIn {
 		}
 		
 		try {
-			FileProjectionSource fileSource = new ZipProjectionSource();
+			PrefetchingProjectionSource fileSource = new PrefetchingProjectionSource();
 			
 			fileSource.initStream(arg);
 			ImagePlusDataSink sink = new ImagePlusDataSink();
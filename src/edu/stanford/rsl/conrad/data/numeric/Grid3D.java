@@ -4,6 +4,7 @@
  */
 package edu.stanford.rsl.conrad.data.numeric;
 
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
 
 import edu.stanford.rsl.conrad.geometry.shapes.simple.PointND;
@@ -281,17 +282,68 @@ public class Grid3D extends NumericGrid implements Transformable  {
 
 	public void addAtIndex(int i, int j, int k, float val) {
 		notifyBeforeRead();
-		float gridVal = getAtIndex(i, j, k); // TODO test for debug
-		setAtIndex(i, j, k, gridVal + val);
+		this.buffer.get(k).addAtIndex(i, j, val);
 		notifyAfterWrite();
 	}
 
 	public void multiplyAtIndex(int i, int j, int k, float val) {
 		notifyBeforeRead();
-		setAtIndex(i, j, k, getAtIndex(i, j, k) * val);
+		this.buffer.get(k).multiplyAtIndex(i, j, val);
 		notifyAfterWrite();
 	}
 
+	/**
+	 * Copies the volume into the given buffer, starting at the buffer's current position. The voxels are written in raw volume
+	 * order, i.e. x runs fastest and z slowest. As every slice is copied with one bulk operation, this is the fastest way to hand
+	 * the whole volume to NIO channels, memory mapped files or FFT code. Use FloatBuffer.wrap() to copy into a float array.
+	 * Slices that were not allocated yet are written as zeros.
+	 * @param target the buffer; needs at least width * height * depth remaining elements.
+	 */
+	public void copyTo(FloatBuffer target) {
+		notifyBeforeRead();
+		float[] zeros = null;
+		for (int k = 0; k < size[2]; ++k) {
+			Grid2D slice = this.buffer.get(k);
+			if (slice == null) {
+				if (zeros == null) zeros = new float[size[0] * size[1]];
+				target.put(zeros);
+			} else {
+				target.put(slice.getBuffer());
+			}
+		}
+	}
+
+	/**
+	 * Reads the volume from the given buffer, starting at the buffer's current position. The voxels are expected in raw volume
+	 * order, i.e. x runs fastest and z slowest. Slices that were not allocated yet are created.
+	 * @param source the buffer; needs at least width * height * depth remaining elements.
+	 * @see #copyTo(FloatBuffer)
+	 */
+	public void copyFrom(FloatBuffer source) {
+		for (int k = 0; k < size[2]; ++k) {
+			Grid2D slice = this.buffer.get(k);
+			if (slice == null) {
+				slice = new Grid2D(size[0], size[1]);
+				slice.setSpacing(this.getSpacing()[0], this.getSpacing()[1]);
+				slice.setOrigin(this.getOrigin()[0], this.getOrigin()[1]);
+				this.buffer.set(k, slice);
+			}
+			source.get(slice.getBuffer());
+		}
+		notifyAfterWrite();
+	}
+
+	/**
+	 * Returns a copy of the volume as one linear array in raw volume order (x runs fastest, z slowest).
+	 * @return the voxels
+	 * @see #copyTo(FloatBuffer)
+	 */
+	public float[] toLinearBuffer() {
+		float[] linear = new float[size[0] * size[1] * size[2]];
+		copyTo(FloatBuffer.wrap(linear));
+		return linear;
+	}
+
 	@Override
 	public String toString() {
 		this.notifyBeforeRead();
@@ -4,6 +4,7 @@
  */
 package edu.stanford.rsl.conrad.data.numeric;
 
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
 
 import edu.stanford.rsl.conrad.utils.ImageUtil;
@@ -126,13 +127,47 @@ public class Grid4D extends NumericGrid {
 
 	public void addAtIndex(int i, int j, int k, int m, float val) {
 		notifyBeforeRead();
-		setAtIndex(i, j, k,m,  getAtIndex(i, j, k, m) + val);
+		this.buffer.get(m).addAtIndex(i, j, k, val);
 		notifyAfterWrite();
 	}
 
 	public void multiplyAtIndex(int i, int j, int k, int m, float val) {
 		notifyBeforeRead();
-		setAtIndex(i, j, k,m,  getAtIndex(i, j, k, m) + val);
+		this.buffer.get(m).multiplyAtIndex(i, j, k, val);
+		notifyAfterWrite();
+	}
+
+	/**
+	 * Copies all volumes into the given buffer in raw order, i.e. x runs fastest and the fourth dimension slowest.
+	 * Volumes that were not allocated yet are written as zeros.
+	 * @param target the buffer; needs at least width * height * depth * dimension remaining elements.
+	 * @see Grid3D#copyTo(FloatBuffer)
+	 */
+	public void copyTo(FloatBuffer target) {
+		notifyBeforeRead();
+		for (int m = 0; m < size[3]; ++m) {
+			Grid3D volume = this.buffer.get(m);
+			if (volume == null) {
+				target.put(new float[size[0] * size[1] * size[2]]);
+			} else {
+				volume.copyTo(target);
+			}
+		}
+	}
+
+	/**
+	 * Reads all volumes from the given buffer in raw order, i.e. x runs fastest and the fourth dimension slowest.
+	 * Volumes that were not allocated yet are created.
+	 * @param source the buffer; needs at least width * height * depth * dimension remaining elements.
+	 * @see Grid3D#copyFrom(FloatBuffer)
+	 */
+	public void copyFrom(FloatBuffer source) {
+		for (int m = 0; m < size[3]; ++m) {
+			if (this.buffer.get(m) == null) {
+				this.buffer.set(m, new Grid3D(size[0], size[1], size[2]));
+			}
+			this.buffer.get(m).copyFrom(source);
+		}
 		notifyAfterWrite();
 	}
 
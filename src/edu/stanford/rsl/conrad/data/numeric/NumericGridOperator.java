@@ -41,7 +41,7 @@ public class NumericGridOperator {
 
 	/** Get sum of all grid elements */
 	public float sum(final NumericGrid grid) {
-		float sum = 0;
+		double sum = 0;
 		NumericPointwiseIteratorND it = new NumericPointwiseIteratorND(grid);
 		while (it.hasNext())
 			sum += it.getNext();
@@ -756,7 +756,7 @@ public class NumericGridOperator {
 
 	/** computes mean value and variance in the whole grid */
 	public double[] computeMeanVariance(final NumericGrid grid) {
-		double[] sums = op.computeSumSquaredSum(grid);
+		double[] sums = computeSumSquaredSum(grid);
 		double sum = sums[0];
 		double squaredSum = sums[1];
 		double mean = sum / grid.getNumberOfElements();
@@ -906,7 +906,7 @@ public class NumericGridOperator {
 		double stdDev = 0.0d;
 		long numErrors = 0;
 		long numElements = grid.getNumberOfElements();
-		double mean = op.computeMeanVariance(grid)[0];
+		double mean = computeMeanVariance(grid)[0];
 		NumericPointwiseIteratorND it = new NumericPointwiseIteratorND(grid);
 		while (it.hasNext()) {
 			double val = it.getNext() - mean;
@@ -1021,13 +1021,13 @@ public class NumericGridOperator {
 		if (image.getNumberOfElements() != reference.getNumberOfElements())
 			System.err.println(
 					"Original and reference have different number of elements. Errors in computation of mean, variance and covariance!");
-		double[] meanVarianceImage = op.computeMeanVariance(image);
+		double[] meanVarianceImage = computeMeanVariance(image);
 		double meanImage = meanVarianceImage[0];
 		double varianceImage = meanVarianceImage[1];
-		double[] meanVarianceRef = op.computeMeanVariance(reference);
+		double[] meanVarianceRef = computeMeanVariance(reference);
 		double meanRef = meanVarianceRef[0];
 		double varianceRef = meanVarianceRef[1];
-		double productSum = op.dotProduct(image, reference);
+		double productSum = dotProduct(image, reference);
 		double covariance = productSum / image.getNumberOfElements() - meanImage * meanRef;
 		return new double[] { meanImage, varianceImage, meanRef, varianceRef, covariance };
 	}
@@ -1113,7 +1113,7 @@ public class NumericGridOperator {
 	/** computes structural similarity of the whole grid */
 	public float computeSSIM(final NumericGrid image, final NumericGrid reference) {
 		// set bit depth 1 by default --> Constants C1 and C2 are 1
-		return op.computeSSIM(image, reference, 1);
+		return computeSSIM(image, reference, 1);
 	}
 
 	/**
@@ -1121,7 +1121,7 @@ public class NumericGridOperator {
 	 * is set manually
 	 */
 	public float computeSSIM(final NumericGrid image, final NumericGrid reference, int bitDepth) {
-		double[] measurements = op.computeMeanVarianceCovariance(image, reference);
+		double[] measurements = computeMeanVarianceCovariance(image, reference);
 		double meanImage = measurements[0];
 		double varianceImage = measurements[1];
 		double meanRef = measurements[2];
@@ -0,0 +1,1014 @@
+/*
+ * Copyright (C) 2014 - Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.conrad.data.numeric;
+
+import java.util.ArrayList;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import edu.stanford.rsl.conrad.parallel.ParallelThreadExecutor;
+
+/**
+ * Multithreaded CPU implementation of the NumericGridOperator. The grids are decomposed into their float buffers
+ * (one per Grid2D and one per slice of a Grid3D or Grid4D), which are split into chunks of at most {@link #CHUNK_SIZE}
+ * elements. The chunks are processed on the shared pool of the ParallelThreadExecutor with plain indexed loops
+ * that the JIT can unroll and vectorize.<br>
+ * Reductions accumulate each chunk in double precision with compensated (Kahan-Babuska) summation and combine the partial
+ * results pairwise along the fork/join tree. Hence, they are more accurate than the float accumulation of the iterator based
+ * implementation, and the result does not depend on the number of threads.
+ * <br><br>
+ * Grids that are not backed by float buffers (e.g. Grid1D) or pairs of grids with different layout are processed
+ * by the iterator based implementation of the super class.
+ * <br><br>
+ * Like the OpenCLGridOperators, the operator is selected per grid:<br>
+ * <code>grid.setNumericGridOperator(ParallelNumericGridOperator.getInstance());</code>
+ *
+ * @author akmaier
+ *
+ */
+public class ParallelNumericGridOperator extends NumericGridOperator {
+
+	/** maximal number of elements that are processed by one task */
+	public static final int CHUNK_SIZE = 1 << 15;
+
+	static ParallelNumericGridOperator parallelOp = new ParallelNumericGridOperator();
+
+	// singleton implementation
+	protected ParallelNumericGridOperator() {
+	}
+
+	public static ParallelNumericGridOperator getInstance() {
+		return parallelOp;
+	}
+
+	/**
+	 * The chunks of one or two grids. The chunks of the second grid have the same ranges as those of the first.
+	 */
+	private static class Chunks {
+		ArrayList<float[]> first = new ArrayList<float[]>();
+		ArrayList<float[]> second = new ArrayList<float[]>();
+		ArrayList<int[]> ranges = new ArrayList<int[]>();
+		long numberOfElements = 0;
+	}
+
+	/**
+	 * Operation that modifies the elements first[from] to first[to - 1]. second is null for operations on a single grid.
+	 */
+	private static abstract class PointwiseOperation {
+		abstract void apply(float[] first, float[] second, int from, int to);
+	}
+
+	/**
+	 * Compensated summation after Neumaier (Kahan-Babuska). The rounding error of each addition is accumulated separately.
+	 */
+	private static final class CompensatedSum {
+		private double sum = 0;
+		private double compensation = 0;
+
+		void add(double value) {
+			double t = sum + value;
+			if (Math.abs(sum) >= Math.abs(value))
+				compensation += (sum - t) + value;
+			else
+				compensation += (value - t) + sum;
+			sum = t;
+		}
+
+		double get() {
+			return sum + compensation;
+		}
+	}
+
+	/**
+	 * Operation that accumulates the elements first[from] to first[to - 1] into result. second is null for
+	 * reductions of a single grid. The partial results are summed up, unless combine is overridden.
+	 */
+	private static abstract class Reduction {
+		final int width;
+
+		Reduction(int width) {
+			this.width = width;
+		}
+
+		double[] identity() {
+			return new double[width];
+		}
+
+		abstract void reduce(float[] first, float[] second, int from, int to, double[] result);
+
+		void combine(double[] result, double[] other) {
+			for (int i = 0; i < width; ++i)
+				result[i] += other[i];
+		}
+	}
+
+	private static class PointwiseTask extends RecursiveAction {
+		private static final long serialVersionUID = 5013226331087215716L;
+		private final Chunks chunks;
+		private final PointwiseOperation operation;
+		private final int lo, hi;
+
+		PointwiseTask(Chunks chunks, PointwiseOperation operation, int lo, int hi) {
+			this.chunks = chunks;
+			this.operation = operation;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo == 1) {
+				int[] range = chunks.ranges.get(lo);
+				operation.apply(chunks.first.get(lo), chunks.second.get(lo), range[0], range[1]);
+			} else {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new PointwiseTask(chunks, operation, lo, mid), new PointwiseTask(chunks, operation, mid, hi));
+			}
+		}
+	}
+
+	private static class ReductionTask extends RecursiveTask<double[]> {
+		private static final long serialVersionUID = -3414563617707127787L;
+		private final Chunks chunks;
+		private final Reduction reduction;
+		private final int lo, hi;
+
+		ReductionTask(Chunks chunks, Reduction reduction, int lo, int hi) {
+			this.chunks = chunks;
+			this.reduction = reduction;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected double[] compute() {
+			if (hi - lo == 1) {
+				int[] range = chunks.ranges.get(lo);
+				double[] result = reduction.identity();
+				reduction.reduce(chunks.first.get(lo), chunks.second.get(lo), range[0], range[1], result);
+				return result;
+			}
+			int mid = (lo + hi) >>> 1;
+			ReductionTask right = new ReductionTask(chunks, reduction, mid, hi);
+			right.fork();
+			double[] result = new ReductionTask(chunks, reduction, lo, mid).compute();
+			reduction.combine(result, right.join());
+			return result;
+		}
+	}
+
+	/**
+	 * Collects the float buffers of the grid in memory order.
+	 * @return false, if the grid is not backed by float buffers.
+	 */
+	private static boolean collectBuffers(NumericGrid grid, ArrayList<float[]> buffers) {
+		// e.g. OpenCL grids copy their device memory to the host buffers.
+		grid.notifyBeforeRead();
+		if (grid instanceof Grid2D) {
+			buffers.add(((Grid2D) grid).getBuffer());
+			return true;
+		}
+		if (grid instanceof Grid3D || grid instanceof Grid4D) {
+			int depth = grid.getSize()[grid.getSize().length - 1];
+			for (int k = 0; k < depth; ++k) {
+				NumericGrid subGrid = grid.getSubGrid(k);
+				if (subGrid == null || !collectBuffers(subGrid, buffers))
+					return false;
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Splits the grids into chunks.
+	 * @param grid1 the first grid
+	 * @param grid2 the second grid or null
+	 * @return the chunks or null, if the grids are not backed by float buffers of equal layout.
+	 */
+	private static Chunks split(NumericGrid grid1, NumericGrid grid2) {
+		ArrayList<float[]> buffers1 = new ArrayList<float[]>();
+		if (!collectBuffers(grid1, buffers1))
+			return null;
+		ArrayList<float[]> buffers2 = null;
+		if (grid2 != null) {
+			buffers2 = new ArrayList<float[]>();
+			if (!collectBuffers(grid2, buffers2) || buffers1.size() != buffers2.size())
+				return null;
+		}
+		Chunks chunks = new Chunks();
+		for (int b = 0; b < buffers1.size(); ++b) {
+			float[] first = buffers1.get(b);
+			float[] second = (buffers2 != null) ? buffers2.get(b) : null;
+			if (second != null && second.length != first.length)
+				return null;
+			for (int from = 0; from < first.length; from += CHUNK_SIZE) {
+				chunks.first.add(first);
+				chunks.second.add(second);
+				chunks.ranges.add(new int[] { from, Math.min(first.length, from + CHUNK_SIZE) });
+			}
+			chunks.numberOfElements += first.length;
+		}
+		return chunks;
+	}
+
+	private static void run(Chunks chunks, PointwiseOperation operation) {
+		int n = chunks.ranges.size();
+		if (n == 0)
+			return;
+		if (n == 1) {
+			int[] range = chunks.ranges.get(0);
+			operation.apply(chunks.first.get(0), chunks.second.get(0), range[0], range[1]);
+			return;
+		}
+		ParallelThreadExecutor.invoke(new PointwiseTask(chunks, operation, 0, n));
+	}
+
+	private static double[] run(Chunks chunks, Reduction reduction) {
+		int n = chunks.ranges.size();
+		if (n == 0)
+			return reduction.identity();
+		if (n == 1) {
+			int[] range = chunks.ranges.get(0);
+			double[] result = reduction.identity();
+			reduction.reduce(chunks.first.get(0), chunks.second.get(0), range[0], range[1], result);
+			return result;
+		}
+		return ParallelThreadExecutor.invoke(new ReductionTask(chunks, reduction, 0, n));
+	}
+
+	private static boolean isInvalid(float val) {
+		return Float.isNaN(val) || Float.isInfinite(val);
+	}
+
+	/** Fill a NumericGrid with the given value */
+	@Override
+	public void fill(NumericGrid grid, final float val) {
+		Chunks chunks = split(grid, null);
+		if (chunks == null) {
+			super.fill(grid, val);
+			return;
+		}
+		run(chunks, new PointwiseOperation() {
+			void apply(float[] a, float[] b, int from, int to) {
+				for (int i = from; i < to; ++i)
+					a[i] = val;
+			}
+		});
+		grid.notifyAfterWrite();
+	}
+
+	/** Fill a Grid's invalid elements with the given value */
+	@Override
+	public void fillInvalidValues(NumericGrid grid, final float val) {
+		Chunks chunks = split(grid, null);
+		if (chunks == null) {
+			super.fillInvalidValues(grid, val);
+			return;
+		}
+		run(chunks, new PointwiseOperation() {
+			void apply(float[] a, float[] b, int from, int to) {
+				for (int i = from; i < to; ++i)
+					if (isInvalid(a[i]))
+						a[i] = val;
+			}
+		});
+		grid.notifyAfterWrite();
+	}
+
+	/** Get sum of all grid elements */
+	@Override
+	public float sum(final NumericGrid grid) {
+		Chunks chunks = split(grid, null);
+		if (chunks == null)
+			return super.sum(grid);
+		return (float) run(chunks, new Reduction(1) {
+			void reduce(float[] a, float[] b, int from, int to, double[] result) {
+				CompensatedSum sum = new CompensatedSum();
+				for (int i = from; i < to; ++i)
+					sum.add(a[i]);
+				result[0] = sum.get();
+			}
+		})[0];
+	}
+
+	/** Get sum of all grid elements. Ignores nans and infinity */
+	@Override
+	public float sumSave(final NumericGrid grid) {
+		Chunks chunks = split(grid, null);
+		if (chunks == null)
+			return super.sumSave(grid);
+		return (float) run(chunks, new Reduction(1) {
+			void reduce(float[] a, float[] b, int from, int to, double[] result) {
+				CompensatedSum sum = new CompensatedSum();
+				for (int i = from; i < to; ++i)
+					if (!isInvalid(a[i]))
+						sum.add(a[i]);
+				result[0] = sum.get();
+			}
+		})[0];
+	}
+
+	/** Get l1 norm of all grid elements */
+	@Override
+	public float normL1(final NumericGrid grid) {
+		Chunks chunks = split(grid, null);
+		if (chunks == null)
+			return super.normL1(grid);
+		return (float) run(chunks, new Reduction(1) {
+			void reduce(float[] a, float[] b, int from, int to, double[] result) {
+				CompensatedSum sum = new CompensatedSum();
+				for (int i = from; i < to; ++i)
+					if (!isInvalid(a[i]))
+						sum.add(Math.abs(a[i]));
+				result[0] = sum.get();
+			}
+		})[0];
+	}
+
+	/** Get l2 norm of all grid elements */
+	@Override
+	public float normL2(final NumericGrid grid) {
+		Chunks chunks = split(grid, null);
+		if (chunks == null)
+			return super.normL2(grid);
+		return (float) Math.sqrt(run(chunks, new Reduction(1) {
+			void reduce(float[] a, float[] b, int from, int to, double[] result) {
+				CompensatedSum sum = new CompensatedSum();
+				for (int i = from; i < to; ++i)
+					if (!isInvalid(a[i]))
+						sum.add((double) a[i] * a[i]);
+				result[0] = sum.get();
+			}
+		})[0]);
+	}
+
+	@Override
+	public int countNegativeElements(final NumericGrid grid) {
+		Chunks chunks = split(grid, null);
+		if (chunks == null)
+			return super.countNegativeElements(grid);
+		return (int) run(chunks, new Reduction(1) {
+			void reduce(float[] a, float[] b, int from, int to, double[] result) {
+				int count = 0;
+				for (int i = from; i < to; ++i)
+					if (!isInvalid(a[i]) && a[i] < 0)
+						++count;
+				result[0] = count;
+			}
+		})[0];
+	}
+
+	@Override
+	public int countInvalidElements(final NumericGrid grid) {
+		Chunks chunks = split(grid, null);
+		if (chunks == null)
+			return super.countInvalidElements(grid);
+		return (int) run(chunks, new Reduction(1) {
+			void reduce(float[] a, float[] b, int from, int to, double[] result) {
+				int count = 0;
+				for (int i = from; i < to; ++i)
+					if (isInvalid(a[i]))
+						++count;
+				result[0] = count;
+			}
+		})[0];
+	}
+
+	/** Get min of a NumericGrid */
+	@Override
+	public float min(final NumericGrid grid) {
+		Chunks chunks = split(grid, null);
+		if (chunks == null)
+			return super.min(grid);
+		return (float) run(chunks, new Reduction(1) {
+			double[] identity() {
+				return new double[] { Float.MAX_VALUE };
+			}
+
+			void reduce(float[] a, float[] b, int from, int to, double[] result) {
+				float min = Float.MAX_VALUE;
+				for (int i = from; i < to; ++i)
+					if (a[i] < min)
+						min = a[i];
+				result[0] = min;
+			}
+
+			void combine(double[] result, double[] other) {
+				if (other[0] < result[0])
+					result[0] = other[0];
+			}
+		})[0];
+	}
+
+	/** Get max of a NumericGrid */
+	@Override
+	public float max(final NumericGrid grid) {
+		Chunks chunks = split(grid, null);
+		if (chunks == null)
+			return super.max(grid);
+		return (float) run(chunks, new Reduction(1) {
+			double[] identity() {
+				return new double[] { -Float.MAX_VALUE };
+			}
+
+			void reduce(float[] a, float[] b, int from, int to, double[] result) {
+				float max = -Float.MAX_VALUE;
+				for (int i = from; i < to; ++i)
+					if (a[i] > max)
+						max = a[i];
+				result[0] = max;
+			}
+
+			void combine(double[] result, double[] other) {
+				if (other[0] > result[0])
+					result[0] = other[0];
+			}
+		})[0];
+	}
+
+	/**
+	 * Copy data of a NumericGrid to another, not including boundaries.
+	 * Overwrites grid1
+	 */
+	@Override
+	public void copy(NumericGrid grid1, NumericGrid grid2) {
+		Chunks chunks = split(grid1, grid2);
+		if (chunks == null) {
+			super.copy(grid1, grid2);
+			return;
+		}
+		run(chunks, new PointwiseOperation() {
+			void apply(float[] a, float[] b, int from, int to) {
+				System.arraycopy(b, from, a, from, to - from);
+			}
+		});
+		grid1.notifyAfterWrite();
+	}
+
+	/** Compute dot product between grid1 and grid2 */
+	@Override
+	public float dotProduct(final NumericGrid grid1, NumericGrid grid2) {
+		Chunks chunks = split(grid1, grid2);
+		if (chunks == null)
+			return super.dotProduct(grid1, grid2);
+		return (float) run(chunks, new Reduction(1) {
+			void reduce(float[] a, float[] b, int from, int to, double[] result) {
+				CompensatedSum sum = new CompensatedSum();
+				for (int i = from; i < to; ++i)
+					sum.add((double) a[i] * b[i]);
+				result[0] = sum.get();
+			}
+		})[0];
+	}
+
+	/** Compute weighted dot product between grid1 and grid2 */
+	@Override
+	public float weightedDotProduct(final NumericGrid grid1, final NumericGrid grid2, final float weightGrid2,
+			final float addGrid2) {
+		Chunks chunks = split(grid1, grid2);
+		if (chunks == null)
+			return super.weightedDotProduct(grid1, grid2, weightGrid2, addGrid2);
+		return (float) run(chunks, new Reduction(1) {
+			void reduce(float[] a, float[] b, int from, int to, double[] result) {
+				CompensatedSum sum = new CompensatedSum();
+				for (int i = from; i < to; ++i)
+					sum.add((double) a[i] * (b[i] * weightGrid2 + addGrid2));
+				result[0] = sum.get();
+			}
+		})[0];
+	}
+
+	/** Compute dot product between grid1 and grid2 */
+	@Override
+	public float weightedSSD(final NumericGrid grid1, final NumericGrid grid2, final double weightGrid2,
+			final double addGrid2) {
+		Chunks chunks = split(grid1, grid2);
+		if (chunks == null)
+			return super.weightedSSD(grid1, grid2, weightGrid2, addGrid2);
+		return (float) run(chunks, new Reduction(1) {
+			void reduce(float[] a, float[] b, int from, int to, double[] result) {
+				CompensatedSum sum = new CompensatedSum();
+				for (int i = from; i < to; ++i) {
+					double val = a[i] - (b[i] * weightGrid2 + addGrid2);
+					sum.add(val * val);
+				}
+				result[0] = sum.get();
+			}
+		})[0];
+	}
+
+	/** Compute rmse between grid1 and grid2 */
+	@Override
+	public float rmse(final NumericGrid grid1, final NumericGrid grid2) {
+		Chunks chunks = split(grid1, grid2);
+		if (chunks == null)
+			return super.rmse(grid1, grid2);
+		double[] result = run(chunks, new Reduction(2) {
+			void reduce(float[] a, float[] b, int from, int to, double[] result) {
+				CompensatedSum sum = new CompensatedSum();
+				int numErrors = 0;
+				for (int i = from; i < to; ++i) {
+					float val = a[i] - b[i];
+					if (!isInvalid(val))
+						sum.add((double) val * val);
+					else
+						++numErrors;
+				}
+				result[0] = sum.get();
+				result[1] = numErrors;
+			}
+		});
+		if (0 != result[1])
+			System.err.println("Errors in RMSE computation: " + (result[1] * 100) / chunks.numberOfElements + "%");
+		return (float) Math.sqrt(result[0] / chunks.numberOfElements);
+	}
+
+	/** Compute grid1 = grid1 + grid2. Ignores nans and infinity */
+	@Override
+	public void addBySave(NumericGrid input, NumericGrid sum) {
+		Chunks chunks = split(input, sum);
+		if (chunks == null) {
+			super.addBySave(input, sum);
+			return;
+		}
+		run(chunks, new PointwiseOperation() {
+			void apply(float[] a, float[] b, int from, int to) {
+				for (int i = from; i < to; ++i)
+					a[i] = (isInvalid(a[i]) ? 0 : a[i]) + (isInvalid(b[i]) ? 0 : b[i]);
+			}
+		});
+		input.notifyAfterWrite();
+	}
+
+	/** Compute grid1 = grid1 + grid2 */
+	@Override
+	public void addBy(NumericGrid input, NumericGrid sum) {
+		Chunks chunks = split(input, sum);
+		if (chunks == null) {
+			super.addBy(input, sum);
+			return;
+		}
+		run(chunks, new PointwiseOperation() {
+			void apply(float[] a, float[] b, int from, int to) {
+				for (int i = from; i < to; ++i)
+					a[i] += b[i];
+			}
+		});
+		input.notifyAfterWrite();
+	}
+
+	/** Compute grid = grid + a */
+	@Override
+	public void addBy(NumericGrid grid, final float val) {
+		Chunks chunks = split(grid, null);
+		if (chunks == null) {
+			super.addBy(grid, val);
+			return;
+		}
+		run(chunks, new PointwiseOperation() {
+			void apply(float[] a, float[] b, int from, int to) {
+				for (int i = from; i < to; ++i)
+					a[i] += val;
+			}
+		});
+		grid.notifyAfterWrite();
+	}
+
+	/** Compute grid = grid + a. Ignores nans and infinity */
+	@Override
+	public void addBySave(NumericGrid grid, final float val) {
+		Chunks chunks = split(grid, null);
+		if (chunks == null) {
+			super.addBySave(grid, val);
+			return;
+		}
+		run(chunks, new PointwiseOperation() {
+			void apply(float[] a, float[] b, int from, int to) {
+				for (int i = from; i < to; ++i)
+					a[i] = (isInvalid(a[i]) ? 0 : a[i]) + val;
+			}
+		});
+		grid.notifyAfterWrite();
+	}
+
+	/** Compute grid = grid - a. Ignores nans and infinity */
+	@Override
+	public void subtractBySave(NumericGrid grid, final float val) {
+		Chunks chunks = split(grid, null);
+		if (chunks == null) {
+			super.subtractBySave(grid, val);
+			return;
+		}
+		run(chunks, new PointwiseOperation() {
+			void apply(float[] a, float[] b, int from, int to) {
+				for (int i = from; i < to; ++i)
+					a[i] = (isInvalid(a[i]) ? 0 : a[i]) - val;
+			}
+		});
+		grid.notifyAfterWrite();
+	}
+
+	/** Compute grid1 = grid1 - grid2 */
+	@Override
+	public void subtractBy(NumericGrid input, NumericGrid sub) {
+		Chunks chunks = split(input, sub);
+		if (chunks == null) {
+			super.subtractBy(input, sub);
+			return;
+		}
+		run(chunks, new PointwiseOperation() {
+			void apply(float[] a, float[] b, int from, int to) {
+				for (int i = from; i < to; ++i)
+					a[i] -= b[i];
+			}
+		});
+		input.notifyAfterWrite();
+	}
+
+	/** Compute grid = grid - a */
+	@Override
+	public void subtractBy(NumericGrid grid, final float val) {
+		Chunks chunks = split(grid, null);
+		if (chunks == null) {
+			super.subtractBy(grid, val);
+			return;
+		}
+		run(chunks, new PointwiseOperation() {
+			void apply(float[] a, float[] b, int from, int to) {
+				for (int i = from; i < to; ++i)
+					a[i] -= val;
+			}
+		});
+		grid.notifyAfterWrite();
+	}
+
+	/**
+	 * Compute grid1 = grid1 / grid2. In case of NaN, infinity or zero 0 is set
+	 */
+	@Override
+	public void divideBySave(NumericGrid input, NumericGrid divisor) {
+		Chunks chunks = split(input, divisor);
+		if (chunks == null) {
+			super.divideBySave(input, divisor);
+			return;
+		}
+		run(chunks, new PointwiseOperation() {
+			void apply(float[] a, float[] b, int from, int to) {
+				for (int i = from; i < to; ++i) {
+					if (0 == a[i] || 0 == b[i] || isInvalid(a[i]) || isInvalid(b[i]))
+						a[i] = 0;
+					else
+						a[i] /= b[i];
+				}
+			}
+		});
+		input.notifyAfterWrite();
+	}
+
+	@Override
+	public void divideBy(NumericGrid input, NumericGrid divisor) {
+		Chunks chunks = split(input, divisor);
+		if (chunks == null) {
+			super.divideBy(input, divisor);
+			return;
+		}
+		run(chunks, new PointwiseOperation() {
+			void apply(float[] a, float[] b, int from, int to) {
+				for (int i = from; i < to; ++i)
+					a[i] /= b[i];
+			}
+		});
+		input.notifyAfterWrite();
+	}
+
+	/** Compute grid = grid / a */
+	@Override
+	public void divideBy(NumericGrid grid, final float val) {
+		Chunks chunks = split(grid, null);
+		if (chunks == null) {
+			super.divideBy(grid, val);
+			return;
+		}
+		run(chunks, new PointwiseOperation() {
+			void apply(float[] a, float[] b, int from, int to) {
+				for (int i = from; i < to; ++i)
+					a[i] /= val;
+			}
+		});
+		grid.notifyAfterWrite();
+	}
+
+	/** Compute grid = grid / a. Ignores nans and infinity */
+	@Override
+	public void divideBySave(NumericGrid grid, final float val) {
+		Chunks chunks = split(grid, null);
+		if (chunks == null) {
+			super.divideBySave(grid, val);
+			return;
+		}
+		run(chunks, new PointwiseOperation() {
+			void apply(float[] a, float[] b, int from, int to) {
+				for (int i = from; i < to; ++i)
+					a[i] = (isInvalid(a[i]) ? 0 : a[i]) / val;
+			}
+		});
+		grid.notifyAfterWrite();
+	}
+
+	@Override
+	public void multiplyBy(NumericGrid input, NumericGrid multiplicator) {
+		Chunks chunks = split(input, multiplicator);
+		if (chunks == null) {
+			super.multiplyBy(input, multiplicator);
+			return;
+		}
+		run(chunks, new PointwiseOperation() {
+			void apply(float[] a, float[] b, int from, int to) {
+				for (int i = from; i < to; ++i)
+					a[i] *= b[i];
+			}
+		});
+		input.notifyAfterWrite();
+	}
+
+	/**
+	 * Compute grid1 = grid1 * grid2. In case of NaN or infinity 0 is set
+	 */
+	@Override
+	public void multiplyBySave(NumericGrid input, NumericGrid multiplicator) {
+		Chunks chunks = split(input, multiplicator);
+		if (chunks == null) {
+			super.multiplyBySave(input, multiplicator);
+			return;
+		}
+		run(chunks, new PointwiseOperation() {
+			void apply(float[] a, float[] b, int from, int to) {
+				for (int i = from; i < to; ++i) {
+					if (isInvalid(a[i]) || isInvalid(b[i]))
+						a[i] = 0;
+					else
+						a[i] *= b[i];
+				}
+			}
+		});
+		input.notifyAfterWrite();
+	}
+
+	/** Compute grid = grid * a */
+	@Override
+	public void multiplyBy(NumericGrid grid, final float val) {
+		Chunks chunks = split(grid, null);
+		if (chunks == null) {
+			super.multiplyBy(grid, val);
+			return;
+		}
+		run(chunks, new PointwiseOperation() {
+			void apply(float[] a, float[] b, int from, int to) {
+				for (int i = from; i < to; ++i)
+					a[i] *= val;
+			}
+		});
+		grid.notifyAfterWrite();
+	}
+
+	/**
+	 * Compute grid = grid * a. In case of NaN or infinity 0 is set
+	 */
+	@Override
+	public void multiplyBySave(NumericGrid grid, final float val) {
+		Chunks chunks = split(grid, null);
+		if (chunks == null) {
+			super.multiplyBySave(grid, val);
+			return;
+		}
+		if (isInvalid(val))
+			System.err.println("[multiplyBySave] called with invalid scalar value");
+		run(chunks, new PointwiseOperation() {
+			void apply(float[] a, float[] b, int from, int to) {
+				for (int i = from; i < to; ++i)
+					a[i] = isInvalid(a[i]) ? 0 : a[i] * val;
+			}
+		});
+		grid.notifyAfterWrite();
+	}
+
+	/** Set all negative values in grid as zero. */
+	@Override
+	public void removeNegative(NumericGrid grid) {
+		Chunks chunks = split(grid, null);
+		if (chunks == null) {
+			super.removeNegative(grid);
+			return;
+		}
+		run(chunks, new PointwiseOperation() {
+			void apply(float[] a, float[] b, int from, int to) {
+				for (int i = from; i < to; ++i)
+					if (a[i] < 0)
+						a[i] = 0;
+			}
+		});
+		grid.notifyAfterWrite();
+	}
+
+	@Override
+	public float stddev(final NumericGrid data, final double mean) {
+		Chunks chunks = split(data, null);
+		if (chunks == null)
+			return super.stddev(data, mean);
+		return (float) Math.sqrt(run(chunks, new Reduction(1) {
+			void reduce(float[] a, float[] b, int from, int to, double[] result) {
+				CompensatedSum sum = new CompensatedSum();
+				for (int i = from; i < to; ++i) {
+					double val = a[i] - mean;
+					sum.add(val * val);
+				}
+				result[0] = sum.get();
+			}
+		})[0] / chunks.numberOfElements);
+	}
+
+	/**
+	 * @param grid
+	 *            grid to be analyzed
+	 * @return standard deviation
+	 */
+	@Override
+	public float stddev(final NumericGrid grid) {
+		Chunks chunks = split(grid, null);
+		if (chunks == null)
+			return super.stddev(grid);
+		final double mean = computeMeanVariance(grid)[0];
+		double[] result = run(chunks, new Reduction(2) {
+			void reduce(float[] a, float[] b, int from, int to, double[] result) {
+				CompensatedSum sum = new CompensatedSum();
+				int numErrors = 0;
+				for (int i = from; i < to; ++i) {
+					if (!isInvalid(a[i])) {
+						double val = a[i] - mean;
+						sum.add(val * val);
+					} else {
+						++numErrors;
+					}
+				}
+				result[0] = sum.get();
+				result[1] = numErrors;
+			}
+		});
+		if (result[1] != 0) {
+			System.err.println("Errors found computing Standard Deviation: "
+					+ (long) (result[1] * 100) / chunks.numberOfElements + "%");
+		}
+		return (float) Math.sqrt(result[0] / chunks.numberOfElements);
+	}
+
+	@Override
+	public void abs(NumericGrid data) {
+		Chunks chunks = split(data, null);
+		if (chunks == null) {
+			super.abs(data);
+			return;
+		}
+		run(chunks, new PointwiseOperation() {
+			void apply(float[] a, float[] b, int from, int to) {
+				for (int i = from; i < to; ++i)
+					a[i] = Math.abs(a[i]);
+			}
+		});
+		data.notifyAfterWrite();
+	}
+
+	@Override
+	public void pow(NumericGrid grid, double exponent) {
+		Chunks chunks = split(grid, null);
+		if (chunks == null) {
+			super.pow(grid, exponent);
+			return;
+		}
+		final float exp = (float) exponent;
+		run(chunks, new PointwiseOperation() {
+			void apply(float[] a, float[] b, int from, int to) {
+				for (int i = from; i < to; ++i)
+					a[i] = (float) Math.pow(a[i], exp);
+			}
+		});
+		grid.notifyAfterWrite();
+	}
+
+	@Override
+	public void sqrt(NumericGrid grid) {
+		Chunks chunks = split(grid, null);
+		if (chunks == null) {
+			super.sqrt(grid);
+			return;
+		}
+		run(chunks, new PointwiseOperation() {
+			void apply(float[] a, float[] b, int from, int to) {
+				for (int i = from; i < to; ++i)
+					a[i] = (float) Math.sqrt(a[i]);
+			}
+		});
+		grid.notifyAfterWrite();
+	}
+
+	@Override
+	public void log(NumericGrid data) {
+		Chunks chunks = split(data, null);
+		if (chunks == null) {
+			super.log(data);
+			return;
+		}
+		run(chunks, new PointwiseOperation() {
+			void apply(float[] a, float[] b, int from, int to) {
+				for (int i = from; i < to; ++i)
+					a[i] = (float) Math.log(a[i]);
+			}
+		});
+		data.notifyAfterWrite();
+	}
+
+	@Override
+	public void exp(NumericGrid data) {
+		Chunks chunks = split(data, null);
+		if (chunks == null) {
+			super.exp(data);
+			return;
+		}
+		run(chunks, new PointwiseOperation() {
+			void apply(float[] a, float[] b, int from, int to) {
+				for (int i = from; i < to; ++i)
+					a[i] = (float) Math.exp(a[i]);
+			}
+		});
+		data.notifyAfterWrite();
+	}
+
+	/** set maximum value, all values > max are set to max */
+	@Override
+	public void setMax(NumericGrid data, final float max) {
+		Chunks chunks = split(data, null);
+		if (chunks == null) {
+			super.setMax(data, max);
+			return;
+		}
+		run(chunks, new PointwiseOperation() {
+			void apply(float[] a, float[] b, int from, int to) {
+				for (int i = from; i < to; ++i)
+					a[i] = Math.min(max, a[i]);
+			}
+		});
+		data.notifyAfterWrite();
+	}
+
+	/** set minimum value, all values < min are set to min */
+	@Override
+	public void setMin(NumericGrid data, final float min) {
+		Chunks chunks = split(data, null);
+		if (chunks == null) {
+			super.setMin(data, min);
+			return;
+		}
+		run(chunks, new PointwiseOperation() {
+			void apply(float[] a, float[] b, int from, int to) {
+				for (int i = from; i < to; ++i)
+					a[i] = Math.max(min, a[i]);
+			}
+		});
+		data.notifyAfterWrite();
+	}
+
+	/**
+	 * Gets sum and squared sum of all grid elements. Ignores nans and infinity
+	 */
+	@Override
+	public double[] computeSumSquaredSum(final NumericGrid grid) {
+		Chunks chunks = split(grid, null);
+		if (chunks == null)
+			return super.computeSumSquaredSum(grid);
+		double[] result = run(chunks, new Reduction(3) {
+			void reduce(float[] a, float[] b, int from, int to, double[] result) {
+				CompensatedSum sum = new CompensatedSum();
+				CompensatedSum squaredSum = new CompensatedSum();
+				int numErrors = 0;
+				for (int i = from; i < to; ++i) {
+					float val = a[i];
+					if (!isInvalid(val)) {
+						sum.add(val);
+						squaredSum.add((double) val * val);
+					} else {
+						++numErrors;
+					}
+				}
+				result[0] = sum.get();
+				result[1] = squaredSum.get();
+				result[2] = numErrors;
+			}
+		});
+		if (result[2] != 0)
+			System.err.println("Grid contains " + (long) result[2] + " invalid values NaN or Infinite.");
+		return new double[] { result[0], result[1] };
+	}
+
+}
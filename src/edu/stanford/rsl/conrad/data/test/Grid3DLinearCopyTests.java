@@ -0,0 +1,58 @@
+package edu.stanford.rsl.conrad.data.test;
+
+import java.nio.FloatBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+import edu.stanford.rsl.conrad.data.numeric.Grid3D;
+import edu.stanford.rsl.conrad.data.numeric.Grid4D;
+
+public class Grid3DLinearCopyTests {
+
+	@Test
+	public void testRoundTrip(){
+		Grid3D volume = new Grid3D(4, 3, 2);
+		for (int k = 0; k < 2; k++){
+			for (int j = 0; j < 3; j++){
+				for (int i = 0; i < 4; i++){
+					volume.setAtIndex(i, j, k, i + 10 * j + 100 * k);
+				}
+			}
+		}
+		float [] linear = volume.toLinearBuffer();
+		// x runs fastest, z slowest.
+		Assert.assertEquals(1 + 10 * 2 + 100, linear[1 + 4 * 2 + 12], 0);
+		Grid3D copy = new Grid3D(4, 3, 2, false);
+		copy.copyFrom(FloatBuffer.wrap(linear));
+		for (int k = 0; k < 2; k++){
+			for (int j = 0; j < 3; j++){
+				for (int i = 0; i < 4; i++){
+					Assert.assertEquals(volume.getAtIndex(i, j, k), copy.getAtIndex(i, j, k), 0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testUnallocatedSlicesAreCopiedAsZeros(){
+		Grid3D volume = new Grid3D(2, 2, 3, false);
+		Grid2D slice = new Grid2D(2, 2);
+		slice.setAtIndex(1, 1, 5);
+		volume.setSubGrid(1, slice);
+		FloatBuffer target = FloatBuffer.allocate(12);
+		volume.copyTo(target);
+		Assert.assertEquals(12, target.position());
+		Assert.assertArrayEquals(new float[]{0, 0, 0, 0, 0, 0, 0, 5, 0, 0, 0, 0}, target.array(), 0);
+		Grid4D series = new Grid4D(2, 2, 3, 2, false);
+		FloatBuffer seriesTarget = FloatBuffer.allocate(24);
+		series.copyTo(seriesTarget);
+		Assert.assertEquals(24, seriesTarget.position());
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 - Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -0,0 +1,88 @@
+package edu.stanford.rsl.conrad.data.test;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+import edu.stanford.rsl.conrad.data.numeric.Grid3D;
+import edu.stanford.rsl.conrad.data.numeric.NumericGridOperator;
+import edu.stanford.rsl.conrad.data.numeric.ParallelNumericGridOperator;
+
+public class ParallelNumericGridOperatorTests {
+
+	private static Grid3D createVolume(long seed){
+		Random random = new Random(seed);
+		// slices are larger than one chunk, so they are split into several tasks.
+		Grid3D volume = new Grid3D(300, 200, 7);
+		for (int k = 0; k < volume.getSize()[2]; k++){
+			float [] slice = volume.getSubGrid(k).getBuffer();
+			for (int i = 0; i < slice.length; i++){
+				slice[i] = (float) random.nextGaussian() + 1;
+			}
+		}
+		return volume;
+	}
+
+	@Test
+	public void testReductions(){
+		NumericGridOperator serial = NumericGridOperator.getInstance();
+		NumericGridOperator parallel = ParallelNumericGridOperator.getInstance();
+		Grid3D a = createVolume(1);
+		Grid3D b = createVolume(2);
+		Assert.assertEquals(serial.sum(a), parallel.sum(a), 1e-5 * Math.abs(serial.sum(a)));
+		Assert.assertEquals(serial.normL1(a), parallel.normL1(a), 1e-3);
+		Assert.assertEquals(serial.min(a), parallel.min(a), 0);
+		Assert.assertEquals(serial.max(a), parallel.max(a), 0);
+		Assert.assertEquals(serial.countNegativeElements(a), parallel.countNegativeElements(a));
+		Assert.assertEquals(serial.dotProduct(a, b), parallel.dotProduct(a, b), 1e-5 * Math.abs(serial.dotProduct(a, b)));
+		// the serial rmse accumulates in float precision.
+		Assert.assertEquals(serial.rmse(a, b), parallel.rmse(a, b), 1e-3);
+		Assert.assertEquals(serial.stddev(a), parallel.stddev(a), 1e-5);
+		Assert.assertEquals(serial.computeSSIM(a, b), parallel.computeSSIM(a, b), 1e-5);
+	}
+
+	@Test
+	public void testPointwise(){
+		NumericGridOperator serial = NumericGridOperator.getInstance();
+		NumericGridOperator parallel = ParallelNumericGridOperator.getInstance();
+		Grid3D a = createVolume(3);
+		Grid3D b = createVolume(4);
+		Grid3D expected = (Grid3D) a.clone();
+		serial.addBy(expected, b);
+		serial.multiplyBy(expected, 0.5f);
+		serial.divideBySave(expected, b);
+		serial.removeNegative(expected);
+		parallel.addBy(a, b);
+		parallel.multiplyBy(a, 0.5f);
+		parallel.divideBySave(a, b);
+		parallel.removeNegative(a);
+		Assert.assertEquals(0, serial.rmse(expected, a), 0);
+	}
+
+	@Test
+	public void testSumAccuracy(){
+		// a float accumulator stops growing at 2^24, if ones are added.
+		Grid2D ones = new Grid2D(1024, 1024);
+		ParallelNumericGridOperator.getInstance().fill(ones, 1);
+		ones.setAtIndex(0, 0, 1 << 24);
+		// the float result is exact up to one unit in the last place.
+		Assert.assertEquals((1 << 24) + 1024 * 1024 - 1, ParallelNumericGridOperator.getInstance().sum(ones), 2);
+	}
+
+	@Test
+	public void testCompensatedSum(){
+		// a double accumulator loses the ones next to 1e20.
+		Grid2D grid = new Grid2D(1024, 1);
+		ParallelNumericGridOperator.getInstance().fill(grid, 1);
+		grid.setAtIndex(0, 0, 1e20f);
+		grid.setAtIndex(1023, 0, -1e20f);
+		Assert.assertEquals(1022, ParallelNumericGridOperator.getInstance().sum(grid), 0);
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 - Andreas Maier 
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -13,7 +13,7 @@ import edu.stanford.rsl.conrad.utils.Configuration;
  * @author Andreas Maier
  *
  */
-public class CosineWeightingTool extends IndividualImageFilteringTool {
+public class CosineWeightingTool extends IndividualImageFilteringTool implements RowwiseFilteringTool {
 
 	private static final long serialVersionUID = -4985677804638655239L;
 
@@ -30,6 +30,13 @@ public class CosineWeightingTool extends IndividualImageFilteringTool {
 
 	private boolean weightsAvailable = false;
 
+	/**
+	 * The weights of the current projection size in row-first order.
+	 */
+	private double [] rowWeights = null;
+	private int rowWeightsWidth = 0;
+	private int rowWeightsHeight = 0;
+
 
 	/**
 	 * Computes the cosine weights as described in Kak & Slaney, Computerized Tomographic Imaging, 1988
@@ -49,6 +56,7 @@ public class CosineWeightingTool extends IndividualImageFilteringTool {
 			double detPiercingPointX = (((double) detectorWidth) / 2) * pixelDimensionX;
 			double detPiercingPointY = (((double) detectorHeight) / 2) * pixelDimensionY;
 			this.cosineWeights = new double[detectorWidth][detectorHeight];
+			this.rowWeights = null;
 			for (int i=0;i<detectorWidth;i++){
 				// Cone weight as seen in step 1 of Kak & Slaney
 				// transform to virtual detector centered at (uPrime = 0, vPrime = 0);
@@ -71,6 +79,7 @@ public class CosineWeightingTool extends IndividualImageFilteringTool {
 
 	public void setCosineWeights(double[][] cosineWeights) {
 		this.cosineWeights = cosineWeights;
+		this.rowWeights = null;
 	}
 
 	public double getPixelDimensionX() {
@@ -141,6 +150,7 @@ public class CosineWeightingTool extends IndividualImageFilteringTool {
 		filter.setSourceToAxisDistance(getSourceToAxisDistance());
 		filter.setSourceToDetectorDistance(getSourceToDetectorDistance());
 		filter.setCosineWeights(this.cosineWeights);
+		filter.weightsAvailable = weightsAvailable;
 		filter.configured = configured;
 		return filter;
 	}
@@ -153,6 +163,18 @@ public class CosineWeightingTool extends IndividualImageFilteringTool {
 
 	@Override
 	public Grid2D applyToolToImage(Grid2D imageProcessor) throws Exception {
+		prepareRows(imageProcessor);
+		applyToRows(imageProcessor.getBuffer(), imageProcessor.getWidth(), imageProcessor.getHeight(), 0, imageProcessor.getHeight());
+		imageProcessor.notifyAfterWrite();
+		return imageProcessor;
+	}
+
+	/**
+	 * Generates the weights if required and arranges them in row-first order for the size of the projection.
+	 * Projections which are narrower than the detector are centered horizontally.
+	 */
+	@Override
+	public boolean prepareRows(Grid2D imageProcessor) throws Exception {
 		if (!weightsAvailable) {
 			try {
 				this.generateCosineWeights();
@@ -161,32 +183,47 @@ public class CosineWeightingTool extends IndividualImageFilteringTool {
 				e.printStackTrace();
 			}
 		}
-		//System.out.println("doing slice");
-		if (imageProcessor.getWidth() > detectorWidth){
+		int width = imageProcessor.getWidth();
+		int height = imageProcessor.getHeight();
+		if (width > detectorWidth || height > detectorHeight){
 			throw new Exception("Detector dimension does not fit projection data.");
 		}
-		int offset = 0;
-		if (imageProcessor.getWidth() < detectorWidth){
-			offset = (detectorWidth - imageProcessor.getWidth()) / 2;
-		}
-		for (int k = 0; k < imageProcessor.getWidth(); k++){
-			for (int j = 0; j < imageProcessor.getHeight(); j++){
-				//System.out.println("doing " + k + " " + j + " of " + imageProcessor.getWidth() + " " + imageProcessor.getHeight());
-				double value = imageProcessor.getPixelValue(k, j) * this.cosineWeights[k+offset][j];
-				//System.out.println("putting " + value);
-				imageProcessor.putPixelValue(k, j, value);
-				//System.out.println("put.");
+		if (rowWeights == null || rowWeightsWidth != width || rowWeightsHeight != height){
+			int offset = 0;
+			if (width < detectorWidth){
+				offset = (detectorWidth - width) / 2;
 			}
-			//System.out.println("done j in " + k);
+			double [] weights = new double [width * height];
+			for (int j = 0; j < height; j++){
+				for (int k = 0; k < width; k++){
+					weights[(j * width) + k] = this.cosineWeights[k+offset][j];
+				}
+			}
+			rowWeights = weights;
+			rowWeightsWidth = width;
+			rowWeightsHeight = height;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean isRowwiseProcessingSupported() {
+		return true;
+	}
+
+	@Override
+	public void applyToRows(float [] pixels, int width, int height, int firstRow, int lastRow) {
+		double [] weights = rowWeights;
+		for (int i = firstRow * width; i < lastRow * width; i++){
+			pixels[i] = (float) (pixels[i] * weights[i]);
 		}
-		//System.out.println("done");
-		return imageProcessor;
 	}
 
 
 	public void prepareForSerialization(){
 		super.prepareForSerialization();
 		cosineWeights = null;
+		rowWeights = null;
 		weightsAvailable = false;
 	}
 
@@ -0,0 +1,428 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.conrad.filtering;
+
+import java.util.concurrent.RecursiveAction;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid3D;
+import edu.stanford.rsl.conrad.parallel.ParallelThreadExecutor;
+
+/**
+ * CPU engine for the 3D bilateral filter. It is used by the BilateralFilter3DBlock and by the BilateralFiltering3DTool
+ * if no OpenCL GPU is present.
+ * <br><br>
+ * The spatial kernel is computed once for the whole volume and the range kernel exp(-0.5 (d / sigma)^2) is tabulated and interpolated
+ * linearly (absolute error below 1e-6). Differences of more than {@link #RANGE_CUTOFF} times sigma get the weight 0. The voxels are read directly
+ * from the float buffers of the slices and the volume is processed in slabs of slices in parallel on the shared thread pool of the ParallelThreadExecutor.
+ * <br><br>
+ * For large kernels, the filter can be approximated with a bilateral grid (Paris and Durand 2006, Chen et al. 2007): the volume is sampled
+ * into a coarse 4D grid over space and intensity with the spacing sigma, the grid is blurred with a small Gaussian and the result is interpolated
+ * at each voxel. The cost per voxel does not depend on the size of the kernel then. The approximation uses the Gaussian without truncation,
+ * i.e. the kernel width is ignored. If the grid would get too large, e.g. for a very small range sigma, the exact filter is computed instead.
+ *
+ * @author akmaier
+ *
+ */
+public class FastBilateralFilter3D {
+
+	/**
+	 * Intensity differences larger than this multiple of the range sigma get the weight 0.
+	 */
+	public static final double RANGE_CUTOFF = 8;
+
+	/**
+	 * Maximal number of cells of the bilateral grid.
+	 */
+	public static final long MAXIMAL_GRID_SIZE = 1L << 24;
+
+	/**
+	 * Treatment of voxels whose neighborhood exceeds the volume.
+	 */
+	public enum Boundary {
+		/**
+		 * The voxels are not filtered but copied, as in the BilateralFilter3DBlock.
+		 */
+		COPY,
+		/**
+		 * The neighborhood is clipped at the volume boundaries, as in the OpenCL bilateral filter.
+		 */
+		CLIP
+	}
+
+	private static final int rangeTableSize = 1 << 14;
+	private static final int gridPadding = 2;
+
+	private final int width;
+	private final double [] sigmaSpatial;
+	private final double sigmaRange;
+	/**
+	 * spatial kernel, x fastest.
+	 */
+	private final double [] spatialKernel;
+	/**
+	 * exp(-s) for s = 0 ... RANGE_CUTOFF^2 / 2
+	 */
+	private final double [] rangeTable;
+	/**
+	 * maps the squared intensity difference to the index in the range table.
+	 */
+	private final double rangeScale;
+	private Boundary boundary = Boundary.CLIP;
+	private boolean approximate = false;
+
+	/**
+	 * Creates a filter with isotropic spatial kernel.
+	 * @param width the width of the kernel. Must be odd.
+	 * @param sigmaSpatial the spatial sigma in voxels
+	 * @param sigmaRange the range sigma in the units of the intensities
+	 */
+	public FastBilateralFilter3D(int width, double sigmaSpatial, double sigmaRange){
+		this(width, new double [] {sigmaSpatial, sigmaSpatial, sigmaSpatial}, sigmaRange);
+	}
+
+	/**
+	 * Creates a filter.
+	 * @param width the width of the kernel. Must be odd.
+	 * @param sigmaSpatial the spatial sigma in voxels for x, y, and z
+	 * @param sigmaRange the range sigma in the units of the intensities
+	 */
+	public FastBilateralFilter3D(int width, double [] sigmaSpatial, double sigmaRange){
+		if (width < 1 || width % 2 == 0) throw new IllegalArgumentException("Kernel's width needs to be an odd number.");
+		if (sigmaSpatial.length != 3) throw new IllegalArgumentException("Three spatial sigmas are required.");
+		if (!(sigmaRange > 0)) throw new IllegalArgumentException("The range sigma must be positive.");
+		this.width = width;
+		this.sigmaSpatial = sigmaSpatial.clone();
+		this.sigmaRange = sigmaRange;
+		int half = width / 2;
+		spatialKernel = new double [width * width * width];
+		for (int k = 0; k < width; k++){
+			for (int j = 0; j < width; j++){
+				for (int i = 0; i < width; i++){
+					double dx = (i - half) / sigmaSpatial[0];
+					double dy = (j - half) / sigmaSpatial[1];
+					double dz = (k - half) / sigmaSpatial[2];
+					spatialKernel[(((k * width) + j) * width) + i] = Math.exp(-0.5 * ((dx * dx) + (dy * dy) + (dz * dz)));
+				}
+			}
+		}
+		double maxExponent = 0.5 * RANGE_CUTOFF * RANGE_CUTOFF;
+		rangeTable = new double [rangeTableSize + 2];
+		for (int i = 0; i <= rangeTableSize; i++){
+			rangeTable[i] = Math.exp(-(maxExponent * i) / rangeTableSize);
+		}
+		rangeTable[rangeTableSize + 1] = 0;
+		rangeScale = (0.5 / (sigmaRange * sigmaRange)) * (rangeTableSize / maxExponent);
+	}
+
+	/**
+	 * Filters the volume.
+	 * @param input the volume
+	 * @return the filtered volume
+	 */
+	public Grid3D filter(Grid3D input){
+		return filter(input, null);
+	}
+
+	/**
+	 * Filters the volume. If a guidance volume is given, the range weights are computed from the guidance volume (joint bilateral filter).
+	 * @param input the volume
+	 * @param guidance the guidance volume or null
+	 * @return the filtered volume
+	 */
+	public Grid3D filter(Grid3D input, Grid3D guidance){
+		int [] size = input.getSize();
+		if (guidance != null) {
+			int [] guidanceSize = guidance.getSize();
+			if (guidanceSize[0] != size[0] || guidanceSize[1] != size[1] || guidanceSize[2] != size[2]) {
+				throw new IllegalArgumentException("The dimensions of the guidance volume do not match the dimensions of the volume.");
+			}
+		}
+		float [][] in = getSlices(input);
+		float [][] reference = (guidance != null) ? getSlices(guidance) : in;
+		Grid3D output = new Grid3D(size[0], size[1], size[2], true);
+		float [][] out = getSlices(output);
+		BilateralGrid grid = approximate ? createBilateralGrid(in, reference, size) : null;
+		SlabTask task = new SlabTask(in, reference, out, size, grid, 0, size[2]);
+		if (size[2] <= 1 || !ParallelThreadExecutor.parallel) {
+			task.filterSlices();
+		} else {
+			ParallelThreadExecutor.invoke(task);
+		}
+		for (int z = 0; z < size[2]; z++){
+			output.getSubGrid(z).notifyAfterWrite();
+		}
+		return output;
+	}
+
+	private static float [][] getSlices(Grid3D grid){
+		float [][] slices = new float [grid.getSize()[2]][];
+		for (int z = 0; z < slices.length; z++){
+			slices[z] = grid.getSubGrid(z).getBuffer();
+		}
+		return slices;
+	}
+
+	/**
+	 * Returns the range weight exp(-0.5 (difference / sigma)^2).
+	 * @param difference the intensity difference
+	 * @return the weight
+	 */
+	public double getRangeWeight(double difference){
+		double position = difference * difference * rangeScale;
+		if (!(position < rangeTableSize)) return 0;
+		int index = (int) position;
+		double fraction = position - index;
+		return rangeTable[index] + (fraction * (rangeTable[index + 1] - rangeTable[index]));
+	}
+
+	/**
+	 * Computes the filtered value of voxel (x, y, z) exactly.
+	 */
+	private float filterVoxel(float [][] in, float [][] reference, int [] size, int x, int y, int z){
+		int half = width / 2;
+		float value = in[z][(y * size[0]) + x];
+		if (boundary == Boundary.COPY && ((x < half) || (x + half + 1 >= size[0])
+				|| (y < half) || (y + half + 1 >= size[1])
+				|| (z < half) || (z + half + 1 >= size[2]))) {
+			return value;
+		}
+		double ref = reference[z][(y * size[0]) + x];
+		int minI = Math.max(0, x - half), maxI = Math.min(size[0] - 1, x + half);
+		int minJ = Math.max(0, y - half), maxJ = Math.min(size[1] - 1, y + half);
+		int minK = Math.max(0, z - half), maxK = Math.min(size[2] - 1, z + half);
+		double sumWeight = 0;
+		double sumFilter = 0;
+		for (int k = minK; k <= maxK; k++){
+			float [] inSlice = in[k];
+			float [] referenceSlice = reference[k];
+			for (int j = minJ; j <= maxJ; j++){
+				int row = j * size[0];
+				int kernelRow = ((((k - z + half) * width) + (j - y + half)) * width) - x + half;
+				for (int i = minI; i <= maxI; i++){
+					double weight = spatialKernel[kernelRow + i] * getRangeWeight(referenceSlice[row + i] - ref);
+					sumWeight += weight;
+					sumFilter += weight * inSlice[row + i];
+				}
+			}
+		}
+		if (sumWeight == 0) return value;
+		return (float) (sumFilter / sumWeight);
+	}
+
+	/**
+	 * Samples the volume into the bilateral grid and blurs the grid. Returns null if the grid would be too large.
+	 */
+	private BilateralGrid createBilateralGrid(float [][] in, float [][] reference, int [] size){
+		float min = Float.POSITIVE_INFINITY;
+		float max = Float.NEGATIVE_INFINITY;
+		for (float [] slice : reference){
+			for (float value : slice){
+				if (value < min) min = value;
+				if (value > max) max = value;
+			}
+		}
+		if (!(max - min < Float.POSITIVE_INFINITY)) return null;
+		double [] spacing = {sigmaSpatial[0], sigmaSpatial[1], sigmaSpatial[2], sigmaRange};
+		int [] dimensions = new int [4];
+		long cells = 1;
+		for (int d = 0; d < 4; d++){
+			double extent = (d < 3) ? size[d] - 1 : max - min;
+			double count = Math.floor(extent / spacing[d]) + 1 + (2 * gridPadding);
+			if (count * cells > MAXIMAL_GRID_SIZE) return null;
+			dimensions[d] = (int) count;
+			cells *= dimensions[d];
+		}
+		BilateralGrid grid = new BilateralGrid(dimensions, spacing, min);
+		for (int z = 0; z < size[2]; z++){
+			int cz = (int) Math.round(z / spacing[2]) + gridPadding;
+			for (int y = 0; y < size[1]; y++){
+				int cy = (int) Math.round(y / spacing[1]) + gridPadding;
+				for (int x = 0; x < size[0]; x++){
+					int cx = (int) Math.round(x / spacing[0]) + gridPadding;
+					int index = (y * size[0]) + x;
+					int cr = (int) Math.round((reference[z][index] - min) / spacing[3]) + gridPadding;
+					int cell = grid.getIndex(cx, cy, cz, cr);
+					grid.values[cell] += in[z][index];
+					grid.weights[cell] += 1;
+				}
+			}
+		}
+		grid.blur();
+		return grid;
+	}
+
+	/**
+	 * Interpolates the filtered value of voxel (x, y, z) from the bilateral grid.
+	 */
+	private float sliceVoxel(BilateralGrid grid, float [][] in, float [][] reference, int [] size, int x, int y, int z){
+		int half = width / 2;
+		float value = in[z][(y * size[0]) + x];
+		if (boundary == Boundary.COPY && ((x < half) || (x + half + 1 >= size[0])
+				|| (y < half) || (y + half + 1 >= size[1])
+				|| (z < half) || (z + half + 1 >= size[2]))) {
+			return value;
+		}
+		double [] position = {
+				(x / grid.spacing[0]) + gridPadding,
+				(y / grid.spacing[1]) + gridPadding,
+				(z / grid.spacing[2]) + gridPadding,
+				((reference[z][(y * size[0]) + x] - grid.offset) / grid.spacing[3]) + gridPadding};
+		int [] cell = new int [4];
+		double [] fraction = new double [4];
+		for (int d = 0; d < 4; d++){
+			cell[d] = Math.min((int) position[d], grid.dimensions[d] - 2);
+			fraction[d] = position[d] - cell[d];
+		}
+		double sumValue = 0;
+		double sumWeight = 0;
+		for (int corner = 0; corner < 16; corner++){
+			double weight = 1;
+			for (int d = 0; d < 4; d++){
+				weight *= (((corner >> d) & 1) == 1) ? fraction[d] : 1 - fraction[d];
+			}
+			int index = grid.getIndex(cell[0] + (corner & 1), cell[1] + ((corner >> 1) & 1), cell[2] + ((corner >> 2) & 1), cell[3] + ((corner >> 3) & 1));
+			sumValue += weight * grid.values[index];
+			sumWeight += weight * grid.weights[index];
+		}
+		if (!(sumWeight > 0)) return value;
+		return (float) (sumValue / sumWeight);
+	}
+
+	/**
+	 * @return the boundary treatment
+	 */
+	public Boundary getBoundary() {
+		return boundary;
+	}
+
+	/**
+	 * @param boundary the boundary treatment to set
+	 */
+	public void setBoundary(Boundary boundary) {
+		this.boundary = boundary;
+	}
+
+	/**
+	 * @return true if the filter is approximated with a bilateral grid
+	 */
+	public boolean isApproximate() {
+		return approximate;
+	}
+
+	/**
+	 * @param approximate true to approximate the filter with a bilateral grid
+	 */
+	public void setApproximate(boolean approximate) {
+		this.approximate = approximate;
+	}
+
+	/**
+	 * @return the width of the kernel
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Down-sampled volume over space and intensity. Each cell holds the sum of the intensities and the number of voxels.
+	 */
+	private static class BilateralGrid {
+
+		private final int [] dimensions;
+		private final double [] spacing;
+		private final double offset;
+		private final double [] values;
+		private final double [] weights;
+
+		BilateralGrid(int [] dimensions, double [] spacing, double offset){
+			this.dimensions = dimensions;
+			this.spacing = spacing;
+			this.offset = offset;
+			int cells = dimensions[0] * dimensions[1] * dimensions[2] * dimensions[3];
+			values = new double [cells];
+			weights = new double [cells];
+		}
+
+		int getIndex(int x, int y, int z, int r){
+			return (((((r * dimensions[2]) + z) * dimensions[1]) + y) * dimensions[0]) + x;
+		}
+
+		/**
+		 * Blurs the grid along all four dimensions with the kernel [1 4 6 4 1] / 16, i.e. a Gaussian with a standard deviation of one cell.
+		 */
+		void blur(){
+			double [] buffer = new double [values.length];
+			int stride = 1;
+			for (int d = 0; d < 4; d++){
+				blur(values, buffer, d, stride);
+				blur(weights, buffer, d, stride);
+				stride *= dimensions[d];
+			}
+		}
+
+		private void blur(double [] data, double [] buffer, int dimension, int stride){
+			int length = dimensions[dimension];
+			for (int index = 0; index < data.length; index++){
+				int position = (index / stride) % length;
+				double sum = 6 * data[index];
+				if (position > 0) sum += 4 * data[index - stride];
+				if (position > 1) sum += data[index - (2 * stride)];
+				if (position < length - 1) sum += 4 * data[index + stride];
+				if (position < length - 2) sum += data[index + (2 * stride)];
+				buffer[index] = sum / 16;
+			}
+			System.arraycopy(buffer, 0, data, 0, data.length);
+		}
+
+	}
+
+	/**
+	 * Filters the slices [first, last). Large ranges are split and processed in parallel.
+	 */
+	private class SlabTask extends RecursiveAction {
+
+		private static final long serialVersionUID = -4387004383924817633L;
+		private final float [][] in, reference, out;
+		private final int [] size;
+		private final BilateralGrid grid;
+		private final int first, last;
+
+		SlabTask(float [][] in, float [][] reference, float [][] out, int [] size, BilateralGrid grid, int first, int last){
+			this.in = in;
+			this.reference = reference;
+			this.out = out;
+			this.size = size;
+			this.grid = grid;
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		protected void compute() {
+			if (last - first > 1) {
+				int mid = (first + last) >>> 1;
+				invokeAll(new SlabTask(in, reference, out, size, grid, first, mid), new SlabTask(in, reference, out, size, grid, mid, last));
+			} else {
+				filterSlices();
+			}
+		}
+
+		void filterSlices(){
+			for (int z = first; z < last; z++){
+				for (int y = 0; y < size[1]; y++){
+					for (int x = 0; x < size[0]; x++){
+						out[z][(y * size[0]) + x] = (grid != null) ? sliceVoxel(grid, in, reference, size, x, y, z) : filterVoxel(in, reference, size, x, y, z);
+					}
+				}
+			}
+		}
+
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.conrad.filtering;
+
+import java.util.ArrayList;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+
+/**
+ * Applies a chain of {@link RowwiseFilteringTool}s in a single pass over each projection. The projection is processed in blocks of
+ * {@link #ROWS_PER_BLOCK} rows and all tools of the chain are applied to a block while it is still in the cache. The separate tools
+ * would stream the complete projection through the memory once per tool instead.
+ * <br><br>
+ * The result is identical to the sequential application of the tools. If a tool cannot process a projection row by row, e.g. the
+ * ramp filter for an unsupported size, the tools before it are still applied row by row and the remaining tools use applyToolToImage(Grid2D).
+ * <br><br>
+ * The ParallelImageFilterPipeliner uses {@link #fuse(IndividualImageFilteringTool[])} to replace runs of row-wise tools, e.g. cosine weighting,
+ * Parker weighting and ramp filtering in an FDK pipeline, by fused tools.
+ *
+ * @author akmaier
+ *
+ */
+@HideOnUIAnnotation
+public class FusedFilteringTool extends IndividualImageFilteringTool {
+
+	private static final long serialVersionUID = 3470417728113865017L;
+
+	/**
+	 * Number of rows that are processed by all tools before the next block is processed. Is even, such that
+	 * filters that process pairs of rows see the same pairs as in the unfused case.
+	 */
+	public static final int ROWS_PER_BLOCK = 8;
+
+	private IndividualImageFilteringTool [] tools;
+
+	public FusedFilteringTool(){
+		this(new IndividualImageFilteringTool[0]);
+	}
+
+	/**
+	 * Creates a new fused tool.
+	 * @param tools the tools in the order of application. All of them have to support the row-wise processing.
+	 * @see #isFusable(IndividualImageFilteringTool)
+	 */
+	public FusedFilteringTool(IndividualImageFilteringTool [] tools){
+		for (IndividualImageFilteringTool tool : tools){
+			if (!isFusable(tool)) throw new IllegalArgumentException(tool.getToolName() + " cannot be applied row by row.");
+		}
+		this.tools = tools;
+		configured = true;
+	}
+
+	/**
+	 * @param tool the tool
+	 * @return true if the tool is a RowwiseFilteringTool which supports the row-wise processing
+	 */
+	public static boolean isFusable(IndividualImageFilteringTool tool){
+		return (tool instanceof RowwiseFilteringTool) && ((RowwiseFilteringTool) tool).isRowwiseProcessingSupported();
+	}
+
+	/**
+	 * Replaces each run of at least two consecutive fusable tools by a FusedFilteringTool. The other tools are not changed.
+	 * @param pipeline the tools
+	 * @return the fused tools
+	 */
+	public static IndividualImageFilteringTool [] fuse(IndividualImageFilteringTool [] pipeline){
+		ArrayList<IndividualImageFilteringTool> fused = new ArrayList<IndividualImageFilteringTool>();
+		int i = 0;
+		while (i < pipeline.length){
+			int end = i;
+			while (end < pipeline.length && isFusable(pipeline[end])) end++;
+			if (end - i >= 2) {
+				IndividualImageFilteringTool [] run = new IndividualImageFilteringTool[end - i];
+				System.arraycopy(pipeline, i, run, 0, run.length);
+				fused.add(new FusedFilteringTool(run));
+				i = end;
+			} else {
+				fused.add(pipeline[i]);
+				i++;
+			}
+		}
+		return fused.toArray(new IndividualImageFilteringTool[fused.size()]);
+	}
+
+	/**
+	 * @return the fused tools
+	 */
+	public IndividualImageFilteringTool [] getTools() {
+		return tools;
+	}
+
+	@Override
+	public Grid2D applyToolToImage(Grid2D imageProcessor) throws Exception {
+		// each tool is prepared at most once. The tools after the first one which fails are applied with applyToolToImage(Grid2D).
+		int prepared = 0;
+		while (prepared < tools.length) {
+			tools[prepared].setImageIndex(imageIndex);
+			if (!((RowwiseFilteringTool) tools[prepared]).prepareRows(imageProcessor)) break;
+			prepared++;
+		}
+		if (prepared > 0) {
+			int width = imageProcessor.getWidth();
+			int height = imageProcessor.getHeight();
+			float [] pixels = imageProcessor.getBuffer();
+			for (int firstRow = 0; firstRow < height; firstRow += ROWS_PER_BLOCK){
+				int lastRow = Math.min(firstRow + ROWS_PER_BLOCK, height);
+				for (int i = 0; i < prepared; i++){
+					((RowwiseFilteringTool) tools[i]).applyToRows(pixels, width, height, firstRow, lastRow);
+				}
+			}
+			imageProcessor.notifyAfterWrite();
+		}
+		Grid2D result = imageProcessor;
+		for (int i = prepared; i < tools.length; i++){
+			tools[i].setImageIndex(imageIndex);
+			result = tools[i].applyToolToImage(result);
+		}
+		return result;
+	}
+
+	@Override
+	public IndividualImageFilteringTool clone() {
+		IndividualImageFilteringTool [] clones = new IndividualImageFilteringTool[tools.length];
+		for (int i = 0; i < tools.length; i++){
+			clones[i] = tools[i].clone();
+		}
+		FusedFilteringTool clone = new FusedFilteringTool(clones);
+		clone.configured = configured;
+		return clone;
+	}
+
+	@Override
+	public String getToolName() {
+		String name = "Fused Filter";
+		for (int i = 0; i < tools.length; i++){
+			name += ((i == 0) ? " (" : ", ") + tools[i].getToolName();
+		}
+		if (tools.length > 0) name += ")";
+		return name;
+	}
+
+	@Override
+	public void prepareForSerialization() {
+		super.prepareForSerialization();
+		for (IndividualImageFilteringTool tool : tools){
+			tool.prepareForSerialization();
+		}
+	}
+
+	@Override
+	public void configure() throws Exception {
+		for (IndividualImageFilteringTool tool : tools){
+			if (!tool.isConfigured()) tool.configure();
+		}
+		setConfigured(true);
+	}
+
+	@Override
+	public String getBibtexCitation() {
+		String bibtex = "";
+		for (IndividualImageFilteringTool tool : tools){
+			String citation = tool.getBibtexCitation();
+			if (citation != null && citation.length() > 0 && bibtex.indexOf(citation) < 0) bibtex += ((bibtex.length() > 0) ? "\n" : "") + citation;
+		}
+		return bibtex;
+	}
+
+	@Override
+	public String getMedlineCitation() {
+		String medline = "";
+		for (IndividualImageFilteringTool tool : tools){
+			String citation = tool.getMedlineCitation();
+			if (citation != null && citation.length() > 0 && medline.indexOf(citation) < 0) medline += ((medline.length() > 0) ? "\n" : "") + citation;
+		}
+		return medline;
+	}
+
+	/**
+	 * The fused tool is device dependent if any of its tools is.
+	 */
+	@Override
+	public boolean isDeviceDependent() {
+		for (IndividualImageFilteringTool tool : tools){
+			if (tool.isDeviceDependent()) return true;
+		}
+		return false;
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
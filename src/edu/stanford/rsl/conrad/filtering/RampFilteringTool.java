@@ -4,8 +4,8 @@ import javax.swing.JOptionPane;
 
 import edu.stanford.rsl.conrad.data.numeric.Grid2D;
 import edu.stanford.rsl.conrad.filtering.rampfilters.RampFilter;
+import edu.stanford.rsl.conrad.filtering.rampfilters.RampFilteringEngine;
 import edu.stanford.rsl.conrad.utils.Configuration;
-import edu.stanford.rsl.conrad.utils.FFTUtil;
 
 /**
  * Class to apply a ramp filter to an image before 3D reconstruction. After instantiation a
@@ -14,13 +14,17 @@ import edu.stanford.rsl.conrad.utils.FFTUtil;
  * @author Andreas Maier
  *
  */
-public class RampFilteringTool extends IndividualImageFilteringTool {
+public class RampFilteringTool extends IndividualImageFilteringTool implements RowwiseFilteringTool {
 
 	/**
 	 * 
 	 */
 	private static final long serialVersionUID = 2575773201054615567L;
 	RampFilter ramp = null;
+	/**
+	 * Caches the filter and the FFT plans. Shared by all clones of this tool.
+	 */
+	private transient RampFilteringEngine engine = null;
 	
 	@Override
 	public IndividualImageFilteringTool clone() {
@@ -30,10 +34,18 @@ public class RampFilteringTool extends IndividualImageFilteringTool {
 		} else {
 			clone.setRamp(null);
 		}
+		clone.engine = getEngine();
 		clone.setConfigured(configured);
 		return clone;
 	}
 
+	private synchronized RampFilteringEngine getEngine(){
+		if (engine == null && ramp != null) {
+			engine = new RampFilteringEngine(ramp);
+		}
+		return engine;
+	}
+
 	public RampFilter getRamp() {
 		return ramp;
 	}
@@ -44,6 +56,9 @@ public class RampFilteringTool extends IndividualImageFilteringTool {
 	 */
 	public void setRamp(RampFilter ramp) {
 		this.ramp = ramp;
+		synchronized (this) {
+			engine = null;
+		}
 	}
 
 	@Override
@@ -55,7 +70,26 @@ public class RampFilteringTool extends IndividualImageFilteringTool {
 
 	@Override
 	public Grid2D applyToolToImage(Grid2D imageProcessor) {
-		return FFTUtil.applyRampFilter(imageProcessor, ramp.clone());
+		return getEngine().applyRampFilter(imageProcessor);
+	}
+
+	/**
+	 * The rows are filtered in place. Image sizes for which the ramp does not deliver a filter are processed by applyToolToImage(Grid2D).
+	 */
+	@Override
+	public boolean prepareRows(Grid2D imageProcessor) {
+		RampFilteringEngine engine = getEngine();
+		return (engine != null) && engine.supportsSize(imageProcessor.getWidth(), imageProcessor.getHeight());
+	}
+
+	@Override
+	public boolean isRowwiseProcessingSupported() {
+		return true;
+	}
+
+	@Override
+	public void applyToRows(float [] pixels, int width, int height, int firstRow, int lastRow) {
+		getEngine().applyRampFilter(pixels, width, height, firstRow, lastRow);
 	}
 
 	
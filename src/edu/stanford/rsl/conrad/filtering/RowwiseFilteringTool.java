@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.conrad.filtering;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+
+/**
+ * Interface for IndividualImageFilteringTools that process each detector row of a projection independently of the other rows
+ * and in place, e.g. pointwise weights or 1D filters along the rows. Such tools can be chained by a {@link FusedFilteringTool}
+ * that applies all of them to a small block of rows before it moves on to the next block. Hence, each projection is streamed
+ * through the memory only once instead of once per tool.
+ * <br><br>
+ * The image index of the tool is set before {@link #prepareRows(Grid2D)} is called. The result of the row-wise processing has to be identical
+ * to the result of applyToolToImage(Grid2D).
+ *
+ * @author akmaier
+ * @see FusedFilteringTool
+ */
+public interface RowwiseFilteringTool {
+
+	/**
+	 * Subclasses of row-wise tools which process the projections in their own applyToolToImage(Grid2D) return false. Such tools are not
+	 * fused by {@link FusedFilteringTool#fuse(edu.stanford.rsl.conrad.filtering.IndividualImageFilteringTool[])}.
+	 * @return true if the tool processes the projections with {@link #prepareRows(Grid2D)} and {@link #applyToRows(float[], int, int, int, int)}
+	 */
+	public boolean isRowwiseProcessingSupported();
+
+	/**
+	 * Prepares the tool for the row-wise processing of the given projection, e.g. looks up the weights of the projection.
+	 * Is called once per projection before {@link #applyToRows(float[], int, int, int, int)}.
+	 * @param image the projection
+	 * @return false if the projection cannot be processed row by row. In this case, applyToolToImage(Grid2D) is used.
+	 * @throws Exception if the projection does not fit the configuration of the tool
+	 */
+	public boolean prepareRows(Grid2D image) throws Exception;
+
+	/**
+	 * Applies the tool in place to the rows firstRow to lastRow - 1 of the prepared projection. firstRow is always
+	 * a multiple of {@link FusedFilteringTool#ROWS_PER_BLOCK}.
+	 * @param pixels the row-first buffer of the projection
+	 * @param width the width of the projection
+	 * @param height the height of the projection
+	 * @param firstRow the first row
+	 * @param lastRow the row after the last row
+	 */
+	public void applyToRows(float [] pixels, int width, int height, int firstRow, int lastRow);
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -100,20 +100,41 @@ implements ProjectionSink, Runnable {
 		}
 		inputQueue.add(projection, projectionNumber);
 		processed.add(new Boolean(false));
+		// wake up the processing thread
+		notifyAll();
+	}
+
+	/**
+	 * Blocks until the filter was initialized, i.e. until the first projection was streamed into the filter.
+	 * @throws InterruptedException if the thread is interrupted while waiting.
+	 */
+	private synchronized void waitForInit() throws InterruptedException {
+		while (!this.init){
+			if (debug > 2)System.out.println(init);
+			wait();
+		}
+	}
+
+	/**
+	 * Blocks until the projection at processedIndex can be processed or the stream was closed.
+	 * Waiting threads are woken up by {@link #process(Grid2D, int)} and {@link #close()}.
+	 * @param processedIndex the index of the next projection to be processed
+	 * @throws InterruptedException if the thread is interrupted while waiting.
+	 */
+	private synchronized void waitForData(int processedIndex) throws InterruptedException {
+		while (!closed) {
+			if (processedIndex < processed.size() && isContextAvailable(processedIndex)) break;
+			wait();
+		}
 	}
 
 	public void run(){
 		int processedIndex = 0;
-		boolean init = this.init;
-		while (!init){
-			try {
-				Thread.sleep(CONRAD.INVERSE_SPEEDUP);
-				init = this.init;
-				if (debug > 2)System.out.println(init);
-			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
+		try {
+			waitForInit();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			return;
 		}
 		if (debug > 1)System.out.println("MultiProjectionFilter: Processing");
 		boolean allProjectionsProcessed = false;
@@ -151,10 +172,10 @@ implements ProjectionSink, Runnable {
 				}
 			}
 			try {
-				Thread.sleep(CONRAD.INVERSE_SPEEDUP);
+				waitForData(processedIndex);
 			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
 				e.printStackTrace();
+				break;
 			}
 		}
 		if (debug > 1)System.out.println("MultiProjectionFilter: Finished Cleaning up ...");
@@ -166,7 +187,7 @@ implements ProjectionSink, Runnable {
 		if (debug > 2)System.out.println("MultiProjectionFilter: init " +init);
 		if (!init){
 			// Create arrays
-			inputQueue = new ImageGridBuffer();
+			inputQueue = ImageGridBuffer.createConfiguredBuffer();
 			outputQueue = new ImageGridBuffer();
 			processed = new ArrayList<Boolean>();
 			// done.
@@ -279,20 +300,21 @@ implements ProjectionSink, Runnable {
 		}
 		if (revan) {
 			for (int i = lowerEnd ; i <upperEnd; i++){
-				if (inputQueue.get(i) == null) revan = false;
+				if (!inputQueue.contains(i)) revan = false;
 			}
 		}
 		return revan;
 	}
 
 	@Override
-	public void close(){
+	public synchronized void close(){
 		if (debug > 1) System.out.println("Closed " + closed + " " + finalIndex + " "+ inputQueue.size());
 		if (!closed){
 			finalIndex = inputQueue.size();
 			closed = true;
 			if (debug > 1) System.out.println("MultiProjectionFilter done: finalIndex = " + finalIndex);
 			//System.exit(0);
+			notifyAll();
 		}
 	}
 
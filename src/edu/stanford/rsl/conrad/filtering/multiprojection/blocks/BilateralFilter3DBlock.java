@@ -1,14 +1,16 @@
 package edu.stanford.rsl.conrad.filtering.multiprojection.blocks;
 
-import edu.stanford.rsl.conrad.data.numeric.Grid2D;
-import edu.stanford.rsl.conrad.data.numeric.Grid3D;
+import edu.stanford.rsl.conrad.filtering.FastBilateralFilter3D;
 import edu.stanford.rsl.conrad.utils.UserUtil;
 
 
 /**
  * Class implements the processing for a straight forward 3D bilateral filter.
- * Implementation does not use any kind of speed ups. Use only with small values for width!
- * Otherwise the filter may take extremely long to finish the computation.
+ * The filter is computed by the FastBilateralFilter3D. Voxels at the image boundaries are not filtered.
+ * The cost of the exact filter grows with the third power of the width. For large widths, the filter
+ * can be approximated with a bilateral grid.
+ * <br>
+ * The neighborhood extends width / 2 voxels to each side of the voxel. Hence, an even width yields the same filter as the next odd width.
  * 
  * @author akmaier
  *
@@ -22,6 +24,7 @@ public class BilateralFilter3DBlock extends ImageProcessingBlock {
 	private double sigma_d = 2.0;
 	private double sigma_r = 0.001;
 	private int width = 5;
+	private boolean approximate = false;
 
 	@Override
 	public ImageProcessingBlock clone() {
@@ -29,72 +32,51 @@ public class BilateralFilter3DBlock extends ImageProcessingBlock {
 		clone.sigma_d = sigma_d;
 		clone.sigma_r = sigma_r;
 		clone.width = width;
+		clone.approximate = approximate;
 		return clone;
 	}
 
 	@Override
 	protected void processImageBlock() {
-		int[] size = inputBlock.getSize();
-		outputBlock = new Grid3D(size[0], size[1], size[2], true);
-		for (int z=0; z < size[2]; z++) {
-			for (int y=0; y < size[1]; y++) {
-				for (int x=0; x < size[0]; x++) {
-					float val = computeFilteredPixel(inputBlock, x, y, z);
-					outputBlock.setAtIndex(x, y, z, val);
-				}
-			}
-		}
+		FastBilateralFilter3D filter = new FastBilateralFilter3D((2 * (width / 2)) + 1, sigma_d, sigma_r);
+		filter.setBoundary(FastBilateralFilter3D.Boundary.COPY);
+		filter.setApproximate(approximate);
+		outputBlock = filter.filter(inputBlock);
 	}
 
-	private double computeGeometricCloseness(int i, int j, int k, int x, int y, int z){
-		return Math.exp(- 0.5 * Math.pow((computeEuclidianDistance(i,j,k,x,y,z) / sigma_d), 2));
+	/**
+	 * @param width the width of the kernel
+	 */
+	public void setWidth(int width) {
+		this.width = width;
 	}
 
-	private double computeEuclidianDistance(int i, int j, int k, int x, int y, int z){
-		return Math.sqrt(Math.pow(i-x ,2) + Math.pow((j-y),2) + Math.pow((k-z),2));
+	/**
+	 * @param sigma the sigma of the geometric distance in voxels
+	 */
+	public void setSigmaGeometric(double sigma) {
+		this.sigma_d = sigma;
 	}
 
-
-	private double computePhotometricDistance(float cur, float ref) {
-		return Math.exp(-0.5f * Math.pow(Math.abs(cur - ref) / sigma_r, 2));
+	/**
+	 * @param sigma the sigma of the photometric distance
+	 */
+	public void setSigmaPhotometric(double sigma) {
+		this.sigma_r = sigma;
 	}
 
-	private float computeFilteredPixel(Grid3D image, int x, int y, int z){
-		int[] size = image.getSize();
-		
-		double sumWeight = 0;
-		double sumFilter = 0;
-		// No filtering at the image boudaries;
-		if ((x < (width/2)) || (x+(width/2)+1 >= size[0])
-				|| (y < (width/2)) || (y+(width/2)+1 >= size[1])
-				|| (z < (width/2)) || (z+(width/2)+1 >= size[2])
-		){
-			sumWeight = 1;
-			sumFilter = image.getAtIndex(x, y, z);
-		} else {
-			float ref = image.getSubGrid(z).getAtIndex(x, y);
-			
-			//ImageProcessor ref = image.getStack().getProcessor(z+1);
-			for (int k = z-(width/2); k < z+(width/2)+1; k++){
-				Grid2D currentSlice = image.getSubGrid(k);
-				for (int j = y-(width/2); j < y+(width/2)+1; j++){
-					for (int i = x-(width/2); i < x+(width/2)+1; i++){
-						float current = currentSlice.getAtIndex(i, j);
-						double currentWeight = computePhotometricDistance(current, ref) * computeGeometricCloseness(i,j,k,x,y,z);
-						sumWeight += currentWeight;
-						sumFilter += currentWeight * current;
-					}
-				}
-			}
-		}
-		return (float) (sumFilter / sumWeight);
-	} 
-
+	/**
+	 * @param approximate true to approximate the filter with a bilateral grid
+	 */
+	public void setApproximate(boolean approximate) {
+		this.approximate = approximate;
+	}
 
 	public void configure() throws Exception {
 		width = UserUtil.queryInt("Enter Width: ", width);
 		sigma_r = UserUtil.queryDouble("Sigma for photometric distance: ", sigma_r);
 		sigma_d = UserUtil.queryDouble("Sigma for geometric distance: ", sigma_d);
+		approximate = UserUtil.queryBoolean("Approximate with bilateral grid (fast for large widths)?");
 		configured = true;
 	}
 
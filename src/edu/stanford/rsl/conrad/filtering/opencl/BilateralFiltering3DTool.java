@@ -15,9 +15,12 @@ import math3d.Point3d;
 
 import com.jogamp.opencl.CLBuffer;
 import com.jogamp.opencl.CLCommandQueue;
+import com.jogamp.opencl.CLDevice;
 import com.jogamp.opencl.CLMemory;
+import com.jogamp.opencl.CLPlatform;
 
 import edu.stanford.rsl.conrad.data.numeric.Grid3D;
+import edu.stanford.rsl.conrad.filtering.FastBilateralFilter3D;
 import edu.stanford.rsl.conrad.filtering.ImageFilteringTool;
 import edu.stanford.rsl.conrad.utils.FileUtil;
 import edu.stanford.rsl.conrad.utils.ImageUtil;
@@ -26,6 +29,7 @@ import edu.stanford.rsl.conrad.utils.UserUtil;
 /**
  * Tool for computation of the Bilateral Filter 3-D in OpenCL.
  * This tool uses the CONRAD internal Grid 3-D data structure.
+ * If no OpenCL GPU is present, the filter is computed on the CPU by the FastBilateralFilter3D.
  * @author Benedikt Lorch
  *
  */
@@ -44,6 +48,9 @@ public class BilateralFiltering3DTool extends OpenCLFilteringTool3D {
 	protected Grid3D guidanceGrid;
 	protected CLBuffer<FloatBuffer> template;
 	
+	protected boolean processOnCPU = false;	// Set by init() if no OpenCL GPU is present
+	protected boolean approximateOnCPU = false;	// Use the bilateral grid approximation on the CPU
+	
 	
 	public BilateralFiltering3DTool() {
 		this.kernelName = kernelname.BILATERAL_FILTER_3D;
@@ -95,6 +102,70 @@ public class BilateralFiltering3DTool extends OpenCLFilteringTool3D {
 
 	}
 	
+	/**
+	 * Initializes the OpenCL buffers and program. If no OpenCL GPU is present, only the dimensions are set and the filter is computed on the CPU.
+	 */
+	@Override
+	public void init(int width, int height, int depth) {
+		if (!init && !isGPUAvailable()) {
+			this.width = width;
+			this.height = height;
+			this.depth = depth;
+			processOnCPU = true;
+			init = true;
+			return;
+		}
+		super.init(width, height, depth);
+	}
+	
+	/**
+	 * Applies the filter to the given grid. Uses the GPU if present and the CPU otherwise.
+	 */
+	@Override
+	public Grid3D process(Grid3D grid) {
+		int[] size = grid.getSize();
+		if (!init) {
+			init(size[0], size[1], size[2]);
+		}
+		if (!processOnCPU) {
+			return super.process(grid);
+		}
+		if (width != size[0]
+				|| height != size[1]
+				|| depth != size[2]) {
+			throw new IllegalArgumentException("The given grid's dimensions are not equal to the sizes which this filter has been configured for.");
+		}
+		if (showGuidance && null == guidanceGrid) {
+			throw new IllegalArgumentException("The user claimed to add a guidance image but the guidance image could not be found.");
+		}
+		FastBilateralFilter3D filter = new FastBilateralFilter3D(kernelWidth, sigmaGeom, sigmaPhoto);
+		filter.setBoundary(FastBilateralFilter3D.Boundary.CLIP);
+		filter.setApproximate(approximateOnCPU);
+		return filter.filter(grid, showGuidance ? guidanceGrid : null);
+	}
+	
+	/**
+	 * Checks whether an OpenCL platform with a GPU device is present.
+	 * @return true if a GPU is present
+	 */
+	public static boolean isGPUAvailable() {
+		try {
+			if (!CLPlatform.isAvailable()) {
+				return false;
+			}
+			for (CLPlatform platform : CLPlatform.listCLPlatforms()) {
+				if (platform.listCLDevices(CLDevice.Type.GPU).length > 0) {
+					return true;
+				}
+			}
+		} catch (RuntimeException e) {
+			// No OpenCL driver installed
+		} catch (LinkageError e) {
+			// Native libraries could not be loaded
+		}
+		return false;
+	}
+	
 	/**
 	 * Called by process() before the processing begins. Put your write buffers to the queue here.
 	 * @param input Grid 3-D to be processed
@@ -184,6 +255,14 @@ public class BilateralFiltering3DTool extends OpenCLFilteringTool3D {
 		this.configured = configured;
 	}
 	
+	/**
+	 * Configure whether the bilateral grid approximation is used if the filter is computed on the CPU
+	 * @param approximateOnCPU
+	 */
+	public void setApproximateOnCPU(boolean approximateOnCPU) {
+		this.approximateOnCPU = approximateOnCPU;
+	}
+	
 	
 	/**
 	 * Configure whether to ask for a guidance image
@@ -315,6 +394,11 @@ public class BilateralFiltering3DTool extends OpenCLFilteringTool3D {
 	
 	@Override
 	public void cleanup() {
+		if (processOnCPU) {
+			// No OpenCL resources were allocated
+			init = false;
+			return;
+		}
 		if (showGuidance && null != template) {
 			template.release();
 		}
@@ -368,6 +452,7 @@ public class BilateralFiltering3DTool extends OpenCLFilteringTool3D {
 		clone.kernelWidth = this.kernelWidth;
 		clone.showGuidance = this.showGuidance;
 		clone.guidanceGrid = this.guidanceGrid;
+		clone.approximateOnCPU = this.approximateOnCPU;
 		
 		clone.configured = this.configured;
 		return clone;
@@ -0,0 +1,197 @@
+package edu.stanford.rsl.conrad.filtering.rampfilters;
+
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D;
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+import edu.stanford.rsl.conrad.utils.FFTUtil;
+
+/**
+ * Applies a RampFilter to all detector rows of a projection. The result is identical to
+ * {@link FFTUtil#applyRampFilter(Grid2D, RampFilter)} up to rounding, but the engine avoids the repeated set-up costs:
+ * <ul>
+ * <li>The absolute values of the filter in Fourier domain are computed only once for each padded row length and are shared by all threads.</li>
+ * <li>Each thread reuses its FFT plan and its scratch buffer for all projections.</li>
+ * <li>As the filter is real and symmetric, two real detector rows are filtered with one complex transform (one row as real part, the other as imaginary part).</li>
+ * </ul>
+ * The filter is taken from a clone of the ramp at construction time. Hence, later changes to the ramp are not regarded.
+ * The engine may be used by several threads at the same time.
+ *
+ * @author akmaier
+ *
+ */
+public class RampFilteringEngine {
+
+	/**
+	 * Filter weights for one padded row length.
+	 */
+	private static class Kernel {
+		double [] weights;
+		boolean symmetric;
+	}
+
+	/**
+	 * FFT plan and scratch buffer of one thread for one padded row length.
+	 */
+	private static class Workspace {
+		DoubleFFT_1D fft;
+		double [] data;
+	}
+
+	private static final ThreadLocal<HashMap<Integer, Workspace>> workspaces = new ThreadLocal<HashMap<Integer, Workspace>>(){
+		@Override
+		protected HashMap<Integer, Workspace> initialValue(){
+			return new HashMap<Integer, Workspace>();
+		}
+	};
+
+	private final RampFilter ramp;
+	private final ConcurrentHashMap<Integer, Kernel> kernels = new ConcurrentHashMap<Integer, Kernel>();
+
+	/**
+	 * Creates a new engine for the given ramp.
+	 * @param ramp the ramp filter
+	 */
+	public RampFilteringEngine(RampFilter ramp){
+		this.ramp = ramp.clone();
+	}
+
+	/**
+	 * Returns the filter weights for the padded row length n. The weights are computed on the first request.
+	 * @param n the padded row length
+	 * @return the weights or null, if the ramp does not deliver a filter of length n
+	 */
+	private Kernel getKernel(int n){
+		Kernel kernel = kernels.get(n);
+		if (kernel == null) {
+			double [] filter;
+			synchronized (ramp) {
+				filter = ramp.getRampFilter1D(n);
+			}
+			if (filter == null || filter.length != 2 * n) return null;
+			kernel = new Kernel();
+			kernel.weights = new double [n];
+			for (int i = 0; i < n; i++){
+				kernel.weights[i] = FFTUtil.abs(i, filter);
+			}
+			kernel.symmetric = true;
+			for (int i = 1; i < n; i++){
+				if (kernel.weights[i] != kernel.weights[n - i]) kernel.symmetric = false;
+			}
+			Kernel other = kernels.putIfAbsent(n, kernel);
+			if (other != null) kernel = other;
+		}
+		return kernel;
+	}
+
+	private static Workspace getWorkspace(int n){
+		HashMap<Integer, Workspace> map = workspaces.get();
+		Workspace workspace = map.get(n);
+		if (workspace == null){
+			workspace = new Workspace();
+			workspace.fft = new DoubleFFT_1D(n);
+			workspace.data = new double [2 * n];
+			map.put(n, workspace);
+		}
+		return workspace;
+	}
+
+	/**
+	 * Filters all rows of the image.
+	 * @param imp the image
+	 * @return the filtered image
+	 */
+	public Grid2D applyRampFilter(Grid2D imp){
+		int width = imp.getWidth();
+		int height = imp.getHeight();
+		if (!supportsSize(width, height)) {
+			return FFTUtil.applyRampFilter(imp, ramp.clone());
+		}
+		Grid2D revan = new Grid2D(width, height);
+		revan.setOrigin(imp.getOrigin());
+		revan.setSpacing(imp.getSpacing());
+		filterRows(imp.getBuffer(), revan.getBuffer(), width, height, 0, height);
+		revan.notifyAfterWrite();
+		return revan;
+	}
+
+	/**
+	 * Checks whether the engine can filter images of the given size, i.e. whether the ramp delivers a filter for the padded row length.
+	 * Otherwise, {@link #applyRampFilter(Grid2D)} falls back to FFTUtil.
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @return true if {@link #applyRampFilter(float[], int, int, int, int)} can be used
+	 */
+	public boolean supportsSize(int width, int height){
+		return getKernel(getPaddedLength(width, height)) != null;
+	}
+
+	/**
+	 * Filters the rows firstRow to lastRow - 1 of an image in place. If firstRow is even, the result is identical to {@link #applyRampFilter(Grid2D)}.
+	 * @param pixels the row-first buffer of the image
+	 * @param width the width of the image
+	 * @param height the height of the image. Determines the padding.
+	 * @param firstRow the first row
+	 * @param lastRow the row after the last row
+	 * @see #supportsSize(int, int)
+	 */
+	public void applyRampFilter(float [] pixels, int width, int height, int firstRow, int lastRow){
+		filterRows(pixels, pixels, width, height, firstRow, lastRow);
+	}
+
+	private static int getPaddedLength(int width, int height){
+		// same padding as in FFTUtil.applyRampFilter
+		return FFTUtil.getNextPowerOfTwo(Math.max(width, height));
+	}
+
+	/**
+	 * Filters the rows firstRow to lastRow - 1 of source into target. Source and target may be the same buffer.
+	 */
+	private void filterRows(float [] pixels, float [] result, int width, int height, int firstRow, int lastRow){
+		int n = getPaddedLength(width, height);
+		Kernel kernel = getKernel(n);
+		Workspace workspace = getWorkspace(n);
+		double [] data = workspace.data;
+		double [] weights = kernel.weights;
+		int rowsPerTransform = (kernel.symmetric) ? 2 : 1;
+		for (int j = firstRow; j < lastRow; j += rowsPerTransform){
+			boolean pair = (rowsPerTransform == 2) && (j + 1 < lastRow);
+			int first = j * width;
+			int second = (j + 1) * width;
+			for (int i = 0; i < width; i++){
+				data[2 * i] = pixels[first + i];
+				data[(2 * i) + 1] = (pair) ? pixels[second + i] : 0;
+			}
+			for (int i = 2 * width; i < 2 * n; i++){
+				data[i] = 0;
+			}
+			workspace.fft.complexForward(data);
+			for (int i = 0; i < n; i++){
+				data[2 * i] *= weights[i];
+				data[(2 * i) + 1] *= weights[i];
+			}
+			workspace.fft.complexInverse(data, true);
+			for (int i = 0; i < width; i++){
+				result[first + i] = (float) data[2 * i];
+			}
+			if (pair) {
+				for (int i = 0; i < width; i++){
+					result[second + i] = (float) data[(2 * i) + 1];
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the ramp filter that is applied by this engine
+	 */
+	public RampFilter getRamp(){
+		return ramp;
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 - Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -91,6 +91,14 @@ public class NooWeightingTool extends ParkerWeightingTool {
 	
 
 
+	/**
+	 * The row-wise processing of ParkerWeightingTool is not used, as the tool applies its own weighting in applyToolToImage(Grid2D).
+	 */
+	@Override
+	public boolean isRowwiseProcessingSupported() {
+		return false;
+	}
+
 	@Override
 	public Grid2D applyToolToImage(Grid2D imageProcessor) {
 		Grid2D theFilteredProcessor = imageProcessor;
@@ -1,8 +1,11 @@
 package edu.stanford.rsl.conrad.filtering.redundancy;
 
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 import edu.stanford.rsl.conrad.data.numeric.Grid2D;
 import edu.stanford.rsl.conrad.filtering.IndividualImageFilteringTool;
+import edu.stanford.rsl.conrad.filtering.RowwiseFilteringTool;
 import edu.stanford.rsl.conrad.geometry.trajectories.Trajectory;
 import edu.stanford.rsl.conrad.numerics.SimpleMatrix;
 import edu.stanford.rsl.conrad.utils.CONRAD;
@@ -16,7 +19,7 @@ import edu.stanford.rsl.conrad.utils.DoubleArrayUtil;
  * @author Andreas Maier
  *
  */
-public class ParkerWeightingTool extends IndividualImageFilteringTool {
+public class ParkerWeightingTool extends IndividualImageFilteringTool implements RowwiseFilteringTool {
 
 	private static final long serialVersionUID = -1342759492107420854L;
 	
@@ -29,6 +32,14 @@ public class ParkerWeightingTool extends IndividualImageFilteringTool {
 	protected double delta = 0;
 	protected double offset = 0;
 	protected static boolean debug = false;
+	/**
+	 * The weights of each projection are computed only once. The table is shared by all clones of the tool.
+	 */
+	private transient AtomicReferenceArray<double []> weightTable = null;
+	/**
+	 * The weights of the current projection for each column of the image.
+	 */
+	private double [] rowWeights = null;
 
 	public ParkerWeightingTool()
 	{
@@ -51,6 +62,7 @@ public class ParkerWeightingTool extends IndividualImageFilteringTool {
 
 	public void setNumberOfProjections(int numberOfProjections) {
 		this.numberOfProjections = numberOfProjections;
+		resetWeightTable();
 	}
 
 	public int getDetectorWidth() {
@@ -59,6 +71,7 @@ public class ParkerWeightingTool extends IndividualImageFilteringTool {
 
 	public void setDetectorWidth(int detectorWidth) {
 		this.detectorWidth = detectorWidth;
+		resetWeightTable();
 	}
 
 	public double getPixelDimensionX() {
@@ -67,6 +80,7 @@ public class ParkerWeightingTool extends IndividualImageFilteringTool {
 
 	public void setPixelDimensionX(double pixelDimensionX) {
 		this.pixelDimensionX = pixelDimensionX;
+		resetWeightTable();
 	}
 
 	public double getSourceToDetectorDistance() {
@@ -75,6 +89,7 @@ public class ParkerWeightingTool extends IndividualImageFilteringTool {
 
 	public void setSourceToDetectorDistance(double sourceToDetectorDistance) {
 		this.sourceToDetectorDistance = sourceToDetectorDistance;
+		resetWeightTable();
 	}
 
 	public double[] getPrimaryAngles() {
@@ -83,6 +98,7 @@ public class ParkerWeightingTool extends IndividualImageFilteringTool {
 
 	public void setPrimaryAngles(double[] primaryAngles) {
 		this.primaryAngles = normalizePrimaryAngleRange(primaryAngles);
+		resetWeightTable();
 	}
 	
 	public double[] normalizePrimaryAngleRange(double[] angles){
@@ -125,6 +141,7 @@ public class ParkerWeightingTool extends IndividualImageFilteringTool {
 		detectorWidth = config.getGeometry().getDetectorWidth();
 		primaryAngles = normalizePrimaryAngleRange(config.getGeometry().getPrimaryAngles());
 		numberOfProjections = config.getGeometry().getNumProjectionMatrices();
+		resetWeightTable();
 	}
 
 	public void setConfiguration(Trajectory g){
@@ -133,6 +150,7 @@ public class ParkerWeightingTool extends IndividualImageFilteringTool {
 		detectorWidth = g.getDetectorWidth();
 		primaryAngles = normalizePrimaryAngleRange(g.getPrimaryAngles());
 		numberOfProjections = g.getNumProjectionMatrices();
+		resetWeightTable();
 	}	
 	
 	@Override
@@ -145,9 +163,40 @@ public class ParkerWeightingTool extends IndividualImageFilteringTool {
 		clone.setPrimaryAngles(primaryAngles);
 		clone.configured = configured;
 		clone.offset = offset;
+		clone.weightTable = getWeightTable();
 		return clone;
 	}
 
+	private synchronized AtomicReferenceArray<double []> getWeightTable(){
+		if (weightTable == null && numberOfProjections > 0) {
+			weightTable = new AtomicReferenceArray<double []>(numberOfProjections);
+		}
+		return weightTable;
+	}
+
+	private synchronized void resetWeightTable(){
+		weightTable = null;
+	}
+
+	/**
+	 * Returns the set of Parker weights for the given projection. In contrast to computeParkerWeights1D(int), the weights
+	 * are computed only once per projection. The returned array must not be modified.
+	 * @param projNum the projection number
+	 * @return the weights
+	 */
+	public double [] getParkerWeights1D(int projNum){
+		AtomicReferenceArray<double []> table = getWeightTable();
+		if (table == null || projNum < 0 || projNum >= table.length()) {
+			return computeParkerWeights1D(projNum);
+		}
+		double [] weights = table.get(projNum);
+		if (weights == null) {
+			weights = computeParkerWeights1D(projNum);
+			table.set(projNum, weights);
+		}
+		return weights;
+	}
+
 	@Override
 	public String getToolName() {
 		return "Parker Redundancy Weighting Filter (uses primary angles)";
@@ -380,36 +429,52 @@ public class ParkerWeightingTool extends IndividualImageFilteringTool {
 	 */
 	@Override
 	public Grid2D applyToolToImage(Grid2D imageProcessor) {
-		Grid2D theFilteredProcessor = imageProcessor;
-		double [] theWeights = this.computeParkerWeights1D(this.imageIndex);
+		prepareRows(imageProcessor);
+		applyToRows(imageProcessor.getBuffer(), imageProcessor.getWidth(), imageProcessor.getHeight(), 0, imageProcessor.getHeight());
+		imageProcessor.notifyAfterWrite();
+		return imageProcessor;
+	}
+
+	/**
+	 * Looks up the weights of the current projection and maps them to the columns of the image. If the image is wider than
+	 * the detector, the weights are centered and the pixels outside of the weights are not changed.
+	 */
+	@Override
+	public boolean prepareRows(Grid2D imageProcessor) {
+		double [] theWeights = this.getParkerWeights1D(this.imageIndex);
 		if (debug) System.out.println(numberOfProjections);
-		if (offset != 0) {
-			//theWeights = DoubleArrayUtil.gaussianFilter(theWeights, 20);
+		if (debug) DoubleArrayUtil.saveForVisualization(imageIndex, theWeights);
+		int width = imageProcessor.getWidth();
+		if (rowWeights == null || rowWeights.length != width) {
+			rowWeights = new double [width];
 		}
-		if ((imageIndex < 10) || (imageIndex > this.numberOfProjections -5)) {
-			//if (debug) VisualizationUtil.createPlot("Projection " + imageIndex, theWeights).show();
+		if (width <= theWeights.length) {
+			System.arraycopy(theWeights, 0, rowWeights, 0, width);
+		} else {
+			int offset = (width - theWeights.length) / 2;
+			for (int i = 0; i < width; i++){
+				rowWeights[i] = (((i-offset) > 0)&&(i-offset < theWeights.length)) ? theWeights[i - offset] : 1;
+			}
 		}
-		if (debug) DoubleArrayUtil.saveForVisualization(imageIndex, theWeights);
-		//Grid2D output = new Grid2D(theFilteredProcessor.getWidth(),theFilteredProcessor.getHeight());
-		for (int j = 0; j < theFilteredProcessor.getHeight(); j++){
-			for (int i=0; i < theFilteredProcessor.getWidth() ; i++){
-				if (theFilteredProcessor.getWidth() <= theWeights.length) {
-					double value = theFilteredProcessor.getPixelValue(i, j) * theWeights[i];
-					//output.putPixelValue(i, j, theWeights[i]);
-					theFilteredProcessor.putPixelValue(i, j, value);
-				} else {
-					int offset = (theFilteredProcessor.getWidth() - theWeights.length) / 2;
-					if (((i-offset) > 0)&&(i-offset < theWeights.length)){
-						double value = theFilteredProcessor.getPixelValue(i, j) * theWeights[i - offset];
-						//output.putPixelValue(i, j, theWeights[i-offset]);
-						theFilteredProcessor.putPixelValue(i, j, value);
-					}
-				}
+		return true;
+	}
+
+	@Override
+	public boolean isRowwiseProcessingSupported() {
+		return true;
+	}
+
+	@Override
+	public void applyToRows(float [] pixels, int width, int height, int firstRow, int lastRow) {
+		double [] weights = rowWeights;
+		for (int j = firstRow; j < lastRow; j++){
+			int row = j * width;
+			for (int i = 0; i < width; i++){
+				pixels[row + i] = (float) (pixels[row + i] * weights[i]);
 			}
 		}
-		//IJ.saveAs(new ImagePlus("",ImageUtil.wrapGrid2D(output)),"TIFF", "C:\\Users\\berger\\Desktop\\NormalizedConvolutionTest\\ParkerWeights\\Slice_" + this.getImageIndex() + "_" + Calendar.getInstance().getTimeInMillis() + ".tif");
-		return theFilteredProcessor;
 	}
+
 	public Grid2D applyToolToImageMirror(Grid2D imageProcessor) {
 		Grid2D theFilteredProcessor = imageProcessor;
 		double [] theWeights = this.computeParkerWeights1D(this.imageIndex);
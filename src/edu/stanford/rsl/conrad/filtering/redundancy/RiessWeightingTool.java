@@ -243,6 +243,14 @@ public class RiessWeightingTool extends ParkerWeightingTool {
 	
 
 
+	/**
+	 * The row-wise processing of ParkerWeightingTool is not used, as the weights are smoothed at the begin and the end of the scan in applyToolToImage(Grid2D).
+	 */
+	@Override
+	public boolean isRowwiseProcessingSupported() {
+		return false;
+	}
+
 	@Override
 	public Grid2D applyToolToImage(Grid2D imageProcessor) {
 		Grid2D theFilteredProcessor = imageProcessor;
@@ -0,0 +1,184 @@
+package edu.stanford.rsl.conrad.filtering.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid3D;
+import edu.stanford.rsl.conrad.filtering.FastBilateralFilter3D;
+import edu.stanford.rsl.conrad.filtering.multiprojection.blocks.BilateralFilter3DBlock;
+
+/**
+ * Compares the FastBilateralFilter3D with a direct implementation of the bilateral filter, which evaluates the Gaussians
+ * for every pair of voxels.
+ *
+ * @author akmaier
+ *
+ */
+public class FastBilateralFilter3DTests {
+
+	/**
+	 * Creates a volume with a step edge along x and Gaussian noise.
+	 */
+	private static Grid3D createStep(int [] size, double noise, long seed){
+		Random random = new Random(seed);
+		Grid3D volume = new Grid3D(size[0], size[1], size[2]);
+		for (int z = 0; z < size[2]; z++){
+			for (int y = 0; y < size[1]; y++){
+				for (int x = 0; x < size[0]; x++){
+					double value = (x < size[0] / 2) ? 0 : 1;
+					volume.setAtIndex(x, y, z, (float) (value + (noise * random.nextGaussian())));
+				}
+			}
+		}
+		return volume;
+	}
+
+	/**
+	 * The bilateral filter as computed by the BilateralFilter3DBlock before the FastBilateralFilter3D was introduced.
+	 * In CLIP mode the neighborhood is clipped at the volume boundaries, otherwise the boundary voxels are copied.
+	 */
+	private static Grid3D filterDirectly(Grid3D image, Grid3D guidance, int width, double [] sigmaSpatial, double sigmaRange, boolean clip){
+		int [] size = image.getSize();
+		int half = width / 2;
+		Grid3D output = new Grid3D(size[0], size[1], size[2]);
+		for (int z = 0; z < size[2]; z++){
+			for (int y = 0; y < size[1]; y++){
+				for (int x = 0; x < size[0]; x++){
+					if (!clip && ((x < half) || (x + half + 1 >= size[0])
+							|| (y < half) || (y + half + 1 >= size[1])
+							|| (z < half) || (z + half + 1 >= size[2]))) {
+						output.setAtIndex(x, y, z, image.getAtIndex(x, y, z));
+						continue;
+					}
+					float ref = guidance.getAtIndex(x, y, z);
+					double sumWeight = 0;
+					double sumFilter = 0;
+					for (int k = Math.max(0, z - half); k <= Math.min(size[2] - 1, z + half); k++){
+						for (int j = Math.max(0, y - half); j <= Math.min(size[1] - 1, y + half); j++){
+							for (int i = Math.max(0, x - half); i <= Math.min(size[0] - 1, x + half); i++){
+								double distance = Math.pow((i - x) / sigmaSpatial[0], 2) + Math.pow((j - y) / sigmaSpatial[1], 2) + Math.pow((k - z) / sigmaSpatial[2], 2);
+								double photometric = Math.pow((guidance.getAtIndex(i, j, k) - ref) / sigmaRange, 2);
+								double weight = Math.exp(-0.5 * distance) * Math.exp(-0.5 * photometric);
+								sumWeight += weight;
+								sumFilter += weight * image.getAtIndex(i, j, k);
+							}
+						}
+					}
+					output.setAtIndex(x, y, z, (float) (sumFilter / sumWeight));
+				}
+			}
+		}
+		return output;
+	}
+
+	private static void assertVolumeEquals(Grid3D expected, Grid3D actual, double tolerance){
+		int [] size = expected.getSize();
+		for (int z = 0; z < size[2]; z++){
+			for (int y = 0; y < size[1]; y++){
+				for (int x = 0; x < size[0]; x++){
+					assertEquals("voxel (" + x + ", " + y + ", " + z + ")", expected.getAtIndex(x, y, z), actual.getAtIndex(x, y, z), tolerance);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testExactFilterMatchesDirectImplementation(){
+		int [] size = {19, 14, 11};
+		Grid3D volume = createStep(size, 0.2, 1);
+		double [][] sigmas = {{2, 2, 2}, {1.5, 2.5, 0.8}};
+		for (FastBilateralFilter3D.Boundary boundary : FastBilateralFilter3D.Boundary.values()){
+			boolean clip = boundary == FastBilateralFilter3D.Boundary.CLIP;
+			for (int width = 1; width <= 7; width += 2){
+				for (double [] sigmaSpatial : sigmas){
+					FastBilateralFilter3D filter = new FastBilateralFilter3D(width, sigmaSpatial, 0.3);
+					filter.setBoundary(boundary);
+					Grid3D expected = filterDirectly(volume, volume, width, sigmaSpatial, 0.3, clip);
+					// the range weights are interpolated with an absolute error below 1e-6.
+					assertVolumeEquals(expected, filter.filter(volume), 1e-5);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testJointFilterMatchesDirectImplementation(){
+		int [] size = {16, 12, 9};
+		Grid3D volume = createStep(size, 0.2, 2);
+		Grid3D guidance = createStep(size, 0.05, 3);
+		double [] sigmaSpatial = {2, 2, 2};
+		for (FastBilateralFilter3D.Boundary boundary : FastBilateralFilter3D.Boundary.values()){
+			FastBilateralFilter3D filter = new FastBilateralFilter3D(5, sigmaSpatial, 0.2);
+			filter.setBoundary(boundary);
+			Grid3D expected = filterDirectly(volume, guidance, 5, sigmaSpatial, 0.2, boundary == FastBilateralFilter3D.Boundary.CLIP);
+			assertVolumeEquals(expected, filter.filter(volume, guidance), 1e-5);
+		}
+	}
+
+	/**
+	 * The bilateral grid approximates the filter with a Gaussian of the same sigmas. On a noisy step edge, it has to preserve
+	 * the edge and stay close to the exact filter.
+	 */
+	@Test
+	public void testBilateralGridOnStepEdge(){
+		int [] size = {40, 24, 20};
+		Grid3D volume = createStep(size, 0.05, 4);
+		double sigmaSpatial = 2.5;
+		double sigmaRange = 0.15;
+		// the exact filter with a kernel of +/- 4 sigma, which the grid approximates.
+		FastBilateralFilter3D exact = new FastBilateralFilter3D(21, sigmaSpatial, sigmaRange);
+		FastBilateralFilter3D approximate = new FastBilateralFilter3D(21, sigmaSpatial, sigmaRange);
+		approximate.setApproximate(true);
+		Grid3D expected = exact.filter(volume);
+		Grid3D actual = approximate.filter(volume);
+		double maxError = 0;
+		double sumError = 0;
+		double maxNoise = 0;
+		for (int z = 0; z < size[2]; z++){
+			for (int y = 0; y < size[1]; y++){
+				for (int x = 0; x < size[0]; x++){
+					double error = Math.abs(expected.getAtIndex(x, y, z) - actual.getAtIndex(x, y, z));
+					maxError = Math.max(maxError, error);
+					sumError += error;
+					// the edge is preserved: both sides stay close to their level.
+					double level = (x < size[0] / 2) ? 0 : 1;
+					maxNoise = Math.max(maxNoise, Math.abs(actual.getAtIndex(x, y, z) - level));
+				}
+			}
+		}
+		double meanError = sumError / (size[0] * size[1] * size[2]);
+		assertTrue("maximal error " + maxError, maxError < 0.03);
+		assertTrue("mean error " + meanError, meanError < 0.005);
+		assertTrue("maximal deviation from the step " + maxNoise, maxNoise < 0.05);
+	}
+
+	/**
+	 * The block filters with a neighborhood of width / 2 voxels to each side. Even widths behave like the next odd width.
+	 */
+	@Test
+	public void testBlockAcceptsEvenWidths(){
+		int [] size = {14, 12, 10};
+		Grid3D volume = createStep(size, 0.2, 5);
+		double [] sigmaSpatial = {2, 2, 2};
+		for (int width = 2; width <= 6; width++){
+			BilateralFilter3DBlock block = new BilateralFilter3DBlock();
+			block.setWidth(width);
+			block.setSigmaGeometric(2);
+			block.setSigmaPhotometric(0.3);
+			block.setInputBlock(volume);
+			block.setLatch(new CountDownLatch(1));
+			block.run();
+			assertVolumeEquals(filterDirectly(volume, volume, width, sigmaSpatial, 0.3, false), block.getOutputBlock(), 1e-5);
+		}
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
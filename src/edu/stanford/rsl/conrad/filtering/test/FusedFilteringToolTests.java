@@ -0,0 +1,136 @@
+package edu.stanford.rsl.conrad.filtering.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+import edu.stanford.rsl.conrad.filtering.CosineWeightingTool;
+import edu.stanford.rsl.conrad.filtering.FusedFilteringTool;
+import edu.stanford.rsl.conrad.filtering.IndividualImageFilteringTool;
+import edu.stanford.rsl.conrad.filtering.RampFilteringTool;
+import edu.stanford.rsl.conrad.filtering.rampfilters.RamLakRampFilter;
+import edu.stanford.rsl.conrad.filtering.rampfilters.RampFilter;
+import edu.stanford.rsl.conrad.filtering.redundancy.ParkerWeightingTool;
+import edu.stanford.rsl.conrad.filtering.redundancy.RiessWeightingTool;
+import edu.stanford.rsl.conrad.filtering.redundancy.WesargWeightingTool;
+import edu.stanford.rsl.conrad.geometry.Projection.CameraAxisDirection;
+import edu.stanford.rsl.conrad.geometry.trajectories.CircularTrajectory;
+import edu.stanford.rsl.conrad.numerics.SimpleVector;
+import edu.stanford.rsl.conrad.utils.Configuration;
+
+/**
+ * Compares the FusedFilteringTool with the sequential application of the fused tools.
+ *
+ * @author akmaier
+ *
+ */
+public class FusedFilteringToolTests {
+
+	private static final int width = 120;
+	// not a multiple of the block size.
+	private static final int height = 21;
+	// short scan of 216 degrees
+	private static final int numProjections = 60;
+
+	private static Configuration initConfiguration(){
+		CircularTrajectory trajectory = new CircularTrajectory();
+		trajectory.setDetectorWidth(width);
+		trajectory.setDetectorHeight(height);
+		trajectory.setPixelDimensionX(1.0);
+		trajectory.setPixelDimensionY(1.0);
+		trajectory.setSourceToAxisDistance(600.0);
+		trajectory.setSourceToDetectorDistance(1200.0);
+		trajectory.setReconDimensions(32, 32, 32);
+		trajectory.setVoxelSpacingX(1.0);
+		trajectory.setVoxelSpacingY(1.0);
+		trajectory.setVoxelSpacingZ(1.0);
+		trajectory.setAverageAngularIncrement(3.6);
+		trajectory.setProjectionStackSize(numProjections);
+		trajectory.setDetectorUDirection(CameraAxisDirection.DETECTORMOTION_PLUS);
+		trajectory.setDetectorVDirection(CameraAxisDirection.ROTATIONAXIS_PLUS);
+		trajectory.setTrajectory(numProjections, 600.0, 3.6, 0, 0, CameraAxisDirection.DETECTORMOTION_PLUS, CameraAxisDirection.ROTATIONAXIS_PLUS, new SimpleVector(0, 0, 1));
+		Configuration config = new Configuration();
+		config.setRegistry(new HashMap<String, String>());
+		config.setGeometry(trajectory);
+		Configuration.setGlobalConfiguration(config);
+		return config;
+	}
+
+	@After
+	public void resetConfiguration(){
+		Configuration.setGlobalConfiguration(null);
+	}
+
+	private static IndividualImageFilteringTool [] createTools(Configuration config) throws Exception {
+		CosineWeightingTool cosine = new CosineWeightingTool();
+		cosine.configure();
+		ParkerWeightingTool parker = new ParkerWeightingTool();
+		parker.configure();
+		RampFilter ramp = new RamLakRampFilter();
+		ramp.setConfiguration(config);
+		RampFilteringTool rampTool = new RampFilteringTool();
+		rampTool.setRamp(ramp);
+		rampTool.setConfigured(true);
+		return new IndividualImageFilteringTool[]{cosine, parker, rampTool};
+	}
+
+	@Test
+	public void testFusedMatchesUnfused() throws Exception {
+		Configuration config = initConfiguration();
+		IndividualImageFilteringTool [] unfused = createTools(config);
+		IndividualImageFilteringTool [] fused = FusedFilteringTool.fuse(createTools(config));
+		assertEquals(1, fused.length);
+		assertTrue(fused[0] instanceof FusedFilteringTool);
+		IndividualImageFilteringTool fusedTool = fused[0].clone();
+		Random random = new Random(5);
+		for (int p = 0; p < numProjections; p++){
+			Grid2D projection = new Grid2D(width, height);
+			float [] pixels = projection.getBuffer();
+			for (int i = 0; i < pixels.length; i++){
+				pixels[i] = random.nextFloat();
+			}
+			Grid2D expected = new Grid2D(projection);
+			for (IndividualImageFilteringTool tool : unfused){
+				tool.setImageIndex(p);
+				expected = tool.applyToolToImage(expected);
+			}
+			fusedTool.setImageIndex(p);
+			Grid2D actual = fusedTool.applyToolToImage(projection);
+			assertArrayEquals("projection " + p, expected.getBuffer(), actual.getBuffer(), 0);
+		}
+	}
+
+	@Test
+	public void testToolsWithOwnWeightingAreNotFused() throws Exception {
+		Configuration config = initConfiguration();
+		IndividualImageFilteringTool [] tools = createTools(config);
+		RiessWeightingTool riess = new RiessWeightingTool();
+		WesargWeightingTool wesarg = new WesargWeightingTool();
+		assertTrue(!FusedFilteringTool.isFusable(riess));
+		assertTrue(!FusedFilteringTool.isFusable(wesarg));
+		IndividualImageFilteringTool [] pipeline = {tools[0], riess, tools[2], wesarg};
+		IndividualImageFilteringTool [] fused = FusedFilteringTool.fuse(pipeline);
+		assertEquals(pipeline.length, fused.length);
+		for (int i = 0; i < pipeline.length; i++){
+			assertSame(pipeline[i], fused[i]);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedToolIsRejected(){
+		new FusedFilteringTool(new IndividualImageFilteringTool[]{new CosineWeightingTool(), new RiessWeightingTool()});
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -0,0 +1,75 @@
+package edu.stanford.rsl.conrad.filtering.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+import edu.stanford.rsl.conrad.filtering.rampfilters.CosineRampFilter;
+import edu.stanford.rsl.conrad.filtering.rampfilters.HammingRampFilter;
+import edu.stanford.rsl.conrad.filtering.rampfilters.HanningRampFilter;
+import edu.stanford.rsl.conrad.filtering.rampfilters.RamLakRampFilter;
+import edu.stanford.rsl.conrad.filtering.rampfilters.RampFilter;
+import edu.stanford.rsl.conrad.filtering.rampfilters.RampFilteringEngine;
+import edu.stanford.rsl.conrad.filtering.rampfilters.SheppLoganRampFilter;
+import edu.stanford.rsl.conrad.utils.FFTUtil;
+
+/**
+ * Compares the RampFilteringEngine with FFTUtil.applyRampFilter(). The engine filters two rows per complex transform.
+ * Hence, the results only agree up to the rounding of the transforms.
+ *
+ * @author akmaier
+ *
+ */
+public class RampFilteringEngineTests {
+
+	private static Grid2D createProjection(int width, int height){
+		Random random = new Random(3);
+		Grid2D projection = new Grid2D(width, height);
+		for (int j = 0; j < height; j++){
+			for (int i = 0; i < width; i++){
+				projection.setAtIndex(i, j, (float) (100 + 10 * Math.sin(i * 0.1) + random.nextGaussian()));
+			}
+		}
+		return projection;
+	}
+
+	private static void assertMatchesFFTUtil(RampFilter ramp, int width, int height){
+		Grid2D projection = createProjection(width, height);
+		Grid2D expected = FFTUtil.applyRampFilter(projection, ramp.clone());
+		Grid2D actual = new RampFilteringEngine(ramp).applyRampFilter(projection);
+		float [] expectedPixels = expected.getBuffer();
+		float [] actualPixels = actual.getBuffer();
+		double max = 0;
+		for (int i = 0; i < expectedPixels.length; i++){
+			max = Math.max(max, Math.abs(expectedPixels[i]));
+		}
+		assertTrue(max > 0);
+		for (int i = 0; i < expectedPixels.length; i++){
+			assertEquals(ramp.getRampName() + " pixel " + i, expectedPixels[i], actualPixels[i], 1e-6 * max);
+		}
+	}
+
+	@Test
+	public void testBuiltInRamps(){
+		RampFilter [] ramps = {new RamLakRampFilter(), new SheppLoganRampFilter(), new CosineRampFilter(), new HammingRampFilter(), new HanningRampFilter()};
+		for (RampFilter ramp : ramps){
+			// odd number of rows: the last row is filtered without a partner.
+			assertMatchesFFTUtil(ramp, 100, 31);
+		}
+	}
+
+	@Test
+	public void testHighProjection(){
+		// the padded row length is determined by the height.
+		assertMatchesFFTUtil(new SheppLoganRampFilter(), 40, 70);
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
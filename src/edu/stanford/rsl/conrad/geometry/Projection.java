@@ -1034,6 +1034,46 @@ public class Projection implements Serializable {
 		return rd;
 	}
 
+	/**
+	 * Computes the directions of the rays of a rectangular tile of pixels at once.
+	 *
+	 * The result is the same as calling {@link #computeRayDirection(SimpleVector)} for each pixel, but
+	 * the precomputed matrix {@latex.inline $\\mathbf{R}^T \\cdot \\mathbf{K}^{-1}$} is read only once and
+	 * no objects are allocated. All rays start at the camera center, see {@link #computeCameraCenter()}.
+	 *
+	 * @param firstU  The u coordinate of the first pixel of the tile.
+	 * @param firstV  The v coordinate of the first pixel of the tile.
+	 * @param width  The number of pixels of the tile in u direction.
+	 * @param height  The number of pixels of the tile in v direction.
+	 * @param directions  The array for the normalized ray directions. The direction of pixel
+	 *        {@latex.inline $(u_0 + i, v_0 + j)$} is stored at index {@latex.inline $3 \\cdot (j \\cdot width + i)$}.
+	 *        It must have at least {@latex.inline $3 \\cdot width \\cdot height$} entries.
+	 */
+	public void computeRayDirections(final double firstU, final double firstV, final int width, final int height, final double[] directions) {
+		// input checks
+		if (width < 0 || height < 0 || directions.length < 3L * width * height)
+			throw new IllegalArgumentException("The direction array is too small for a tile of " + width + "x" + height + " pixels.");
+
+		final double a00 = this.RTKinv.getElement(0, 0), a01 = this.RTKinv.getElement(0, 1), a02 = this.RTKinv.getElement(0, 2);
+		final double a10 = this.RTKinv.getElement(1, 0), a11 = this.RTKinv.getElement(1, 1), a12 = this.RTKinv.getElement(1, 2);
+		final double a20 = this.RTKinv.getElement(2, 0), a21 = this.RTKinv.getElement(2, 1), a22 = this.RTKinv.getElement(2, 2);
+		int index = 0;
+		for (int j = 0; j < height; ++j) {
+			final double v = firstV + j;
+			for (int i = 0; i < width; ++i) {
+				final double u = firstU + i;
+				// solve K*R*(X-C) = (u, v, 1)^T and normalize as in computeRayDirection()
+				final double x = a00 * u + a01 * v + a02;
+				final double y = a10 * u + a11 * v + a12;
+				final double z = a20 * u + a21 * v + a22;
+				final double factor = 1.0 / Math.sqrt(x * x + y * y + z * z);
+				directions[index++] = x * factor;
+				directions[index++] = y * factor;
+				directions[index++] = z * factor;
+			}
+		}
+	}
+
 	/**
 	 * Compute the 4x4 OpenGL projection and modelview matrices from this Projection.
 	 *
@@ -0,0 +1,402 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.conrad.geometry.motion;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+import edu.stanford.rsl.conrad.geometry.shapes.simple.PointND;
+import edu.stanford.rsl.conrad.parallel.ParallelThreadExecutor;
+
+/**
+ * Interpolates the motion between two sets of corresponding raster points with a Gaussian Parzen window.
+ * <br><br>
+ * The source points are stored in a k-d tree together with their motion vectors. A query first determines the distance d to the nearest
+ * source point and then sums over all source points within a distance of d + truncation * sigma. The weights of the omitted points are
+ * smaller than exp(-truncation^2 / 2) times the weight of the nearest point. Hence, the kernel is truncated relative to the nearest point
+ * and query points which are far away from all raster points are treated just like close ones. All data is held in primitive arrays.
+ * <br><br>
+ * An interpolator is immutable and may be used by several threads. Batches of points are evaluated in parallel on the shared thread pool of the
+ * ParallelThreadExecutor by {@link #interpolate(double[], double[])}.
+ * <br><br>
+ * Interpolators for several target times of the same initial raster points share one tree, see {@link #withTarget(PointND[])}. Such
+ * interpolators are evaluated for a point in a single pass over the tree by {@link #getMotions(ParzenWindowInterpolator[], double, double, double, double[])}.
+ *
+ * @author akmaier
+ *
+ */
+public class ParzenWindowInterpolator {
+
+	/**
+	 * Default truncation of the kernel in multiples of sigma.
+	 */
+	public static final double DEFAULT_TRUNCATION = 5;
+
+	/**
+	 * Offset of the exponent in ParzenWindowMotionField. Used to reproduce its behavior far away from all raster points.
+	 */
+	private static final double acc = 70;
+	private static final double logMinimalWeightSum = Math.log(0.00000001);
+
+	private static final int leafSize = 8;
+	private static final int pointsPerTask = 1024;
+
+	private final PointND [] from;
+	private final PointND [] to;
+	private final int size;
+	/**
+	 * source points in tree order: x, y, z
+	 */
+	private final double [] points;
+	/**
+	 * index of the raster point at each position of the tree
+	 */
+	private final int [] index;
+	/**
+	 * split axis of the node in the middle of each range.
+	 */
+	private final byte [] axis;
+	/**
+	 * motion vectors in tree order: x, y, z
+	 */
+	private final double [] motion;
+	private final double inverseTwoSigmaSquare;
+	private final double truncation;
+
+	/**
+	 * Creates an interpolator with the default truncation.
+	 * @param from the raster points at the initial time
+	 * @param to the corresponding raster points at the target time
+	 * @param sigma the standard deviation of the Gaussian window
+	 */
+	public ParzenWindowInterpolator(PointND [] from, PointND [] to, double sigma){
+		this(from, to, sigma, DEFAULT_TRUNCATION);
+	}
+
+	/**
+	 * Creates an interpolator.
+	 * @param from the raster points at the initial time
+	 * @param to the corresponding raster points at the target time
+	 * @param sigma the standard deviation of the Gaussian window
+	 * @param truncation the truncation of the kernel in multiples of sigma.
+	 */
+	public ParzenWindowInterpolator(PointND [] from, PointND [] to, double sigma, double truncation){
+		if (from.length != to.length) throw new IllegalArgumentException("Number of raster points does not match: " + from.length + " != " + to.length);
+		this.from = from;
+		this.to = to;
+		this.size = from.length;
+		this.inverseTwoSigmaSquare = 1.0 / (2 * sigma * sigma);
+		this.truncation = truncation * sigma;
+		points = new double [3 * size];
+		index = new int [size];
+		axis = new byte [size];
+		for (int i = 0; i < size; i++){
+			index[i] = i;
+			for (int k = 0; k < 3; k++){
+				points[(3 * i) + k] = from[i].get(k);
+			}
+		}
+		build(0, size);
+		motion = computeMotion(to);
+	}
+
+	/**
+	 * Creates an interpolator which shares the tree of the given interpolator.
+	 */
+	private ParzenWindowInterpolator(ParzenWindowInterpolator tree, PointND [] to){
+		if (tree.size != to.length) throw new IllegalArgumentException("Number of raster points does not match: " + tree.size + " != " + to.length);
+		this.from = tree.from;
+		this.to = to;
+		this.size = tree.size;
+		this.inverseTwoSigmaSquare = tree.inverseTwoSigmaSquare;
+		this.truncation = tree.truncation;
+		points = tree.points;
+		index = tree.index;
+		axis = tree.axis;
+		motion = computeMotion(to);
+	}
+
+	/**
+	 * Returns an interpolator for the same initial raster points and another target. The tree is shared, i.e. only the motion vectors are computed.
+	 * @param to the corresponding raster points at the new target time
+	 * @return the interpolator
+	 */
+	public ParzenWindowInterpolator withTarget(PointND [] to){
+		if (to == this.to) return this;
+		return new ParzenWindowInterpolator(this, to);
+	}
+
+	private double [] computeMotion(PointND [] to){
+		double [] motion = new double [3 * size];
+		for (int i = 0; i < size; i++){
+			for (int k = 0; k < 3; k++){
+				motion[(3 * i) + k] = to[index[i]].get(k) - from[index[i]].get(k);
+			}
+		}
+		return motion;
+	}
+
+	/**
+	 * Builds the tree over the range [lo, hi): the median along the axis of largest extent is moved to the middle of the range.
+	 */
+	private void build(int lo, int hi){
+		if (hi - lo <= leafSize) return;
+		double [] min = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+		double [] max = {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+		for (int i = lo; i < hi; i++){
+			for (int k = 0; k < 3; k++){
+				min[k] = Math.min(min[k], points[(3 * i) + k]);
+				max[k] = Math.max(max[k], points[(3 * i) + k]);
+			}
+		}
+		int split = 0;
+		for (int k = 1; k < 3; k++){
+			if (max[k] - min[k] > max[split] - min[split]) split = k;
+		}
+		int mid = (lo + hi) >>> 1;
+		select(lo, hi - 1, mid, split);
+		axis[mid] = (byte) split;
+		build(lo, mid);
+		build(mid + 1, hi);
+	}
+
+	/**
+	 * Quickselect: reorders [left, right] such that the point at index n has its final position along the given axis.
+	 */
+	private void select(int left, int right, int n, int k){
+		while (right > left) {
+			double pivot = points[(3 * ((left + right) >>> 1)) + k];
+			int i = left;
+			int j = right;
+			while (i <= j) {
+				while (points[(3 * i) + k] < pivot) i++;
+				while (points[(3 * j) + k] > pivot) j--;
+				if (i <= j) {
+					swap(i, j);
+					i++;
+					j--;
+				}
+			}
+			if (n <= j) {
+				right = j;
+			} else if (n >= i) {
+				left = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	private void swap(int i, int j){
+		for (int k = 0; k < 3; k++){
+			double tmp = points[(3 * i) + k];
+			points[(3 * i) + k] = points[(3 * j) + k];
+			points[(3 * j) + k] = tmp;
+		}
+		int tmp = index[i];
+		index[i] = index[j];
+		index[j] = tmp;
+	}
+
+	private double squaredDistance(int i, double x, double y, double z){
+		double dx = points[3 * i] - x;
+		double dy = points[(3 * i) + 1] - y;
+		double dz = points[(3 * i) + 2] - z;
+		return (dx * dx) + (dy * dy) + (dz * dz);
+	}
+
+	private double nearest(int lo, int hi, double x, double y, double z, double best){
+		if (hi - lo <= leafSize) {
+			for (int i = lo; i < hi; i++){
+				best = Math.min(best, squaredDistance(i, x, y, z));
+			}
+			return best;
+		}
+		int mid = (lo + hi) >>> 1;
+		best = Math.min(best, squaredDistance(mid, x, y, z));
+		int k = axis[mid];
+		double diff = ((k == 0) ? x : (k == 1) ? y : z) - points[(3 * mid) + k];
+		if (diff < 0) {
+			best = nearest(lo, mid, x, y, z, best);
+			if (diff * diff < best) best = nearest(mid + 1, hi, x, y, z, best);
+		} else {
+			best = nearest(mid + 1, hi, x, y, z, best);
+			if (diff * diff < best) best = nearest(lo, mid, x, y, z, best);
+		}
+		return best;
+	}
+
+	/**
+	 * Adds the weights and weighted motion vectors of all points within the radius to sums = {weight, x, y, z, x, y, z, ...},
+	 * with one x, y, z triplet per array of motion vectors. The weights are relative to the weight of the nearest point with squared distance offset.
+	 */
+	private void accumulate(int lo, int hi, double x, double y, double z, double radiusSquare, double offset, double [][] motions, double [] sums){
+		if (hi - lo <= leafSize) {
+			for (int i = lo; i < hi; i++){
+				add(i, x, y, z, radiusSquare, offset, motions, sums);
+			}
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		add(mid, x, y, z, radiusSquare, offset, motions, sums);
+		int k = axis[mid];
+		double diff = ((k == 0) ? x : (k == 1) ? y : z) - points[(3 * mid) + k];
+		if (diff <= 0 || diff * diff <= radiusSquare) accumulate(lo, mid, x, y, z, radiusSquare, offset, motions, sums);
+		if (diff >= 0 || diff * diff <= radiusSquare) accumulate(mid + 1, hi, x, y, z, radiusSquare, offset, motions, sums);
+	}
+
+	private void add(int i, double x, double y, double z, double radiusSquare, double offset, double [][] motions, double [] sums){
+		double distance = squaredDistance(i, x, y, z);
+		if (distance <= radiusSquare) {
+			double weight = Math.exp(-(distance - offset) * inverseTwoSigmaSquare);
+			sums[0] += weight;
+			for (int m = 0; m < motions.length; m++){
+				double [] motion = motions[m];
+				sums[(3 * m) + 1] += weight * motion[3 * i];
+				sums[(3 * m) + 2] += weight * motion[(3 * i) + 1];
+				sums[(3 * m) + 3] += weight * motion[(3 * i) + 2];
+			}
+		}
+	}
+
+	/**
+	 * Computes the motion vectors of all given motion arrays of this tree at the position as x, y, z triplets.
+	 */
+	private void getMotion(double x, double y, double z, double [][] motions, double [] result, int offset){
+		Arrays.fill(result, offset, offset + (3 * motions.length), 0);
+		if (size == 0) return;
+		double nearest = nearest(0, size, x, y, z, Double.POSITIVE_INFINITY);
+		double radius = Math.sqrt(nearest) + truncation;
+		double [] sums = new double[1 + (3 * motions.length)];
+		accumulate(0, size, x, y, z, radius * radius, nearest, motions, sums);
+		// ParzenWindowMotionField does not move points whose sum of weights vanishes.
+		if (acc - (nearest * inverseTwoSigmaSquare) + Math.log(sums[0]) < logMinimalWeightSum) return;
+		for (int i = 1; i < sums.length; i++){
+			result[offset + i - 1] = sums[i] / sums[0];
+		}
+	}
+
+	/**
+	 * Computes the motion vector at the given position.
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @param result the array to store the motion vector
+	 * @param offset the index of the x component in result
+	 */
+	public void getMotion(double x, double y, double z, double [] result, int offset){
+		getMotion(x, y, z, new double [][]{motion}, result, offset);
+	}
+
+	/**
+	 * Computes the motion vectors of several interpolators at the given position. Interpolators which share the tree of the first one, see
+	 * {@link #withTarget(PointND[])}, are evaluated together, i.e. the neighbors and their weights are determined only once.
+	 * @param interpolators the interpolators
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param z the z coordinate
+	 * @param result the array for the motion vectors as x, y, z triplets in the order of the interpolators
+	 */
+	public static void getMotions(ParzenWindowInterpolator [] interpolators, double x, double y, double z, double [] result){
+		if (interpolators.length == 0) return;
+		ParzenWindowInterpolator tree = interpolators[0];
+		double [][] motions = new double [interpolators.length][];
+		boolean shared = true;
+		for (int i = 0; i < interpolators.length; i++){
+			shared &= interpolators[i].points == tree.points;
+			motions[i] = interpolators[i].motion;
+		}
+		if (shared) {
+			tree.getMotion(x, y, z, motions, result, 0);
+		} else {
+			for (int i = 0; i < interpolators.length; i++){
+				interpolators[i].getMotion(x, y, z, result, 3 * i);
+			}
+		}
+	}
+
+	/**
+	 * Computes the new positions of a batch of points in parallel.
+	 * @param positions the positions as x, y, z triplets
+	 * @param result the array for the new positions as x, y, z triplets. May be the same as positions.
+	 */
+	public void interpolate(double [] positions, double [] result){
+		if (positions.length % 3 != 0 || result.length < positions.length) throw new IllegalArgumentException("Positions have to be given as x, y, z triplets.");
+		InterpolationTask task = new InterpolationTask(positions, result, 0, positions.length / 3);
+		if (positions.length / 3 <= pointsPerTask || !ParallelThreadExecutor.parallel) {
+			task.interpolate();
+		} else {
+			ParallelThreadExecutor.invoke(task);
+		}
+	}
+
+	/**
+	 * @return true if the interpolator was built for these raster points
+	 */
+	boolean isBuiltFor(PointND [] from, PointND [] to){
+		return this.from == from && this.to == to;
+	}
+
+	/**
+	 * @return true if the tree of the interpolator was built for these initial raster points
+	 */
+	boolean isBuiltFrom(PointND [] from){
+		return this.from == from;
+	}
+
+	/**
+	 * @return the number of raster points
+	 */
+	public int getNumberOfRasterPoints(){
+		return size;
+	}
+
+	/**
+	 * Interpolates the points [first, last). Large ranges are split and processed in parallel.
+	 */
+	private class InterpolationTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 3982443610591718390L;
+		private final double [] positions;
+		private final double [] result;
+		private final int first, last;
+
+		InterpolationTask(double [] positions, double [] result, int first, int last){
+			this.positions = positions;
+			this.result = result;
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		protected void compute() {
+			if (last - first <= pointsPerTask) {
+				interpolate();
+			} else {
+				int mid = (first + last) >>> 1;
+				invokeAll(new InterpolationTask(positions, result, first, mid), new InterpolationTask(positions, result, mid, last));
+			}
+		}
+
+		void interpolate(){
+			double [] vector = new double[3];
+			for (int i = first; i < last; i++){
+				double x = positions[3 * i];
+				double y = positions[(3 * i) + 1];
+				double z = positions[(3 * i) + 2];
+				getMotion(x, y, z, vector, 0);
+				result[3 * i] = x + vector[0];
+				result[(3 * i) + 1] = y + vector[1];
+				result[(3 * i) + 2] = z + vector[2];
+			}
+		}
+
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
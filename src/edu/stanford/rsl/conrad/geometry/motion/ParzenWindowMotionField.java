@@ -11,7 +11,6 @@ import java.util.HashMap;
 import edu.stanford.rsl.conrad.geometry.motion.timewarp.IdentityTimeWarper;
 import edu.stanford.rsl.conrad.geometry.motion.timewarp.TimeWarper;
 import edu.stanford.rsl.conrad.geometry.shapes.simple.PointND;
-import edu.stanford.rsl.conrad.numerics.SimpleVector;
 
 
 /**
@@ -19,6 +18,9 @@ import edu.stanford.rsl.conrad.numerics.SimpleVector;
  * The class tessellates the surface at the two time points and uses these points to interpolate the motion vectors. 
  * Due to the high computational effort of tessellation on the CPU we store intermediate tessellation results for later use. 
  * Interpolation is done via a Parzen window.
+ * The raster points are organized in a k-d tree and the Gaussian window is truncated, see {@link ParzenWindowInterpolator}.
+ * The interpolators are kept for all pairs of time points; the interpolators of the same initial time share their tree.
+ * Batches of points are evaluated in parallel and the positions of a point at several times are computed in a single pass.
  * @author akmaier
  *
  */
@@ -36,6 +38,10 @@ Serializable {
 	 */
 	double sigma;
 	TimeWarper warp = new IdentityTimeWarper();
+	/**
+	 * Interpolators by initial time and target time. Like the raster points, they are kept for the lifetime of the motion field.
+	 */
+	transient HashMap<Double, HashMap<Double, ParzenWindowInterpolator>> interpolators;
 
 	abstract PointND [] getRasterPoints (double time);
 
@@ -51,29 +57,70 @@ Serializable {
 
 
 
-	@Override
-	public PointND getPosition(PointND initialPosition, double initialTime,
-			double time) {
-		SimpleVector summation = new SimpleVector(0,0,0);
-		float weightsum = 0;
+	/**
+	 * Returns the interpolator for the motion between the two time points. The interpolators are kept for each pair of time points.
+	 * A new target time of a known initial time reuses the tree of the initial raster points.
+	 * @param initialTime the initial time
+	 * @param time the target time
+	 * @return the interpolator
+	 */
+	synchronized ParzenWindowInterpolator getInterpolator(double initialTime, double time){
+		if (interpolators == null) interpolators = new HashMap<Double, HashMap<Double, ParzenWindowInterpolator>>();
+		HashMap<Double, ParzenWindowInterpolator> targets = interpolators.get(initialTime);
+		if (targets == null) {
+			targets = new HashMap<Double, ParzenWindowInterpolator>();
+			interpolators.put(initialTime, targets);
+		}
 		PointND[] from = getRasterPoints(initialTime);
 		PointND[] to = getRasterPoints(time);
-		double acc = 70; // Highest number before summations yield NaN
-		for (int i=0; i< from.length; i++){
-			float weight = (float) Math.exp((-0.5*Math.pow(from[i].euclideanDistance(initialPosition),2)/Math.pow(sigma,2))+acc);
-
-			weightsum += weight;
-			SimpleVector direction = new SimpleVector(to[i].getAbstractVector());
-			direction.subtract(from[i].getAbstractVector());
-			summation.add(direction.multipliedBy(weight));
+		ParzenWindowInterpolator current = targets.get(time);
+		if (current == null || !current.isBuiltFor(from, to)) {
+			current = null;
+			for (ParzenWindowInterpolator other : targets.values()){
+				if (other.isBuiltFrom(from)) {
+					current = other.withTarget(to);
+					break;
+				}
+			}
+			if (current == null) current = new ParzenWindowInterpolator(from, to, sigma);
+			targets.put(time, current);
 		}
-		if(Math.abs(weightsum) < 0.00000001) {
-			summation.multiplyBy(0);
-		} else {
-			summation.divideBy(weightsum);
+		return current;
+	}
+
+	/**
+	 * Returns the interpolators for the motion from the initial time to each of the given times.
+	 * @param initialTime the initial time
+	 * @param times the target times
+	 * @return the interpolators in the order of the times
+	 */
+	synchronized ParzenWindowInterpolator [] getInterpolators(double initialTime, double... times){
+		ParzenWindowInterpolator [] result = new ParzenWindowInterpolator[times.length];
+		for (int i = 0; i < times.length; i++){
+			result[i] = getInterpolator(initialTime, times[i]);
 		}
-		summation.add(initialPosition.getAbstractVector());
-		return new PointND(summation);
+		return result;
+	}
+
+	@Override
+	public PointND getPosition(PointND initialPosition, double initialTime,
+			double time) {
+		double [] motion = new double[3];
+		getInterpolator(initialTime, time).getMotion(initialPosition.get(0), initialPosition.get(1), initialPosition.get(2), motion, 0);
+		return new PointND(initialPosition.get(0) + motion[0], initialPosition.get(1) + motion[1], initialPosition.get(2) + motion[2]);
+	}
+
+	/**
+	 * Computes the positions of a batch of points at the given time in parallel.
+	 * @param initialTime the time of the initial positions
+	 * @param time the target time
+	 * @param initialPositions the initial positions as x, y, z triplets
+	 * @return the new positions as x, y, z triplets
+	 */
+	public double [] getPositions(double initialTime, double time, double [] initialPositions){
+		double [] result = new double [initialPositions.length];
+		getInterpolator(initialTime, time).interpolate(initialPositions, result);
+		return result;
 	}
 
 	@Override
@@ -89,9 +136,14 @@ Serializable {
 	@Override
 	public ArrayList<PointND> getPositions(PointND initialPosition,
 			double initialTime, double... times) {
-		ArrayList<PointND> result = new ArrayList<PointND>();
+		double x = initialPosition.get(0);
+		double y = initialPosition.get(1);
+		double z = initialPosition.get(2);
+		double [] motion = new double [3 * times.length];
+		ParzenWindowInterpolator.getMotions(getInterpolators(initialTime, times), x, y, z, motion);
+		ArrayList<PointND> result = new ArrayList<PointND>(times.length);
 		for (int i =0; i< times.length; i++){
-			result.add(getPosition(initialPosition, initialTime, times[i]));
+			result.add(new PointND(x + motion[3*i], y + motion[(3*i)+1], z + motion[(3*i)+2]));
 		}
 		return result;
 	}
@@ -99,28 +151,16 @@ Serializable {
 	@Override
 	public ArrayList<PointND> getPositions(double initialTime,
 			double time, PointND ... initialPositions) {
-		ArrayList<PointND> list = new ArrayList<PointND>();
+		double [] positions = new double [3 * initialPositions.length];
 		for (int j=0; j< initialPositions.length; j++){
-			SimpleVector summation = new SimpleVector(0,0,0);
-			float weightsum = 0;
-			PointND[] from = getRasterPoints(initialTime);
-			PointND[] to = getRasterPoints(time);
-			double acc = 70; // Highest number before summations yield NaN
-			for (int i=0; i< from.length; i++){
-				float weight = (float) Math.exp((-0.5*Math.pow(from[i].euclideanDistance(initialPositions[j]),2)/Math.pow(sigma,2))+acc);
-				weightsum += weight;
-				SimpleVector direction = new SimpleVector(to[i].getAbstractVector());
-				direction.subtract(from[i].getAbstractVector());
-				summation.add(direction.multipliedBy(weight));
+			for (int k=0; k< 3; k++){
+				positions[(3*j)+k] = initialPositions[j].get(k);
 			}
-			if(Math.abs(weightsum) < 0.00000001) {
-				summation.multiplyBy(0);
-			} else {
-				summation.divideBy(weightsum);
-			}
-			summation.add(initialPositions[j].getAbstractVector());
-			PointND newPoint = new PointND(summation);
-			list.add(newPoint);
+		}
+		getInterpolator(initialTime, time).interpolate(positions, positions);
+		ArrayList<PointND> list = new ArrayList<PointND>(initialPositions.length);
+		for (int j=0; j< initialPositions.length; j++){
+			list.add(new PointND(positions[3*j], positions[(3*j)+1], positions[(3*j)+2]));
 		}
 		return list;
 	}
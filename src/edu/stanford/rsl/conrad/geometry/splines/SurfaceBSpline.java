@@ -343,23 +343,55 @@ public class SurfaceBSpline extends AbstractSurface  {
 		//System.out.println("#CP = " + list.size());
 		//
 		//return new SurfaceBSpline(last, list, uKnots, vKnots);
-		if ((uKnots[0] == uKnots[1]) && (uKnots[2] == uKnots[3])) return new SurfaceUniformCubicBSpline(last, list, uKnots, vKnots);
-		else return new SurfaceBSpline(last, list, uKnots, vKnots);
+		return createBSpline(last, list, uKnots, vKnots);
 	}
-	
+
+	/**
+	 * Creates a SurfaceUniformCubicBSpline if the knot vector allows it or a SurfaceBSpline otherwise.
+	 * @param title the title
+	 * @param list the control points
+	 * @param uKnots the knot vector in u direction
+	 * @param vKnots the knot vector in v direction
+	 * @return the surface BSpline
+	 */
+	static SurfaceBSpline createBSpline(String title, ArrayList<PointND> list, double [] uKnots, double [] vKnots){
+		if ((uKnots[0] == uKnots[1]) && (uKnots[2] == uKnots[3])) return new SurfaceUniformCubicBSpline(title, list, uKnots, vKnots);
+		else return new SurfaceBSpline(title, list, uKnots, vKnots);
+	}
+
+	/**
+	 * Reads all BSplines of a text file. If the binary cache is enabled, files that were read before are read from the cache, see {@link SurfaceBSplineCache}.
+	 * @param filename the file name
+	 * @return the splines
+	 * @throws IOException if the file cannot be read
+	 */
 	public static ArrayList<SurfaceBSpline> readSplinesFromFile(String filename) throws IOException{
+		return SurfaceBSplineCache.readSplines(filename);
+	}
+
+	/**
+	 * Parses all BSplines of a text file.
+	 * @param filename the file name
+	 * @return the splines
+	 * @throws IOException if the file cannot be read
+	 */
+	public static ArrayList<SurfaceBSpline> parseSplinesFromFile(String filename) throws IOException{
 		FileReader file = new FileReader(filename);
 		BufferedReader bf = new BufferedReader(file);
 		ArrayList<SurfaceBSpline> list = new ArrayList<SurfaceBSpline>();
 		// read all surface splines in the file.
 		boolean reading = true;
-		while (reading) {
-			try {
-				SurfaceBSpline spline = SurfaceBSpline.readBSpline(bf);
-				list.add(spline);
-			} catch (IOException e){
-				reading = false;
+		try {
+			while (reading) {
+				try {
+					SurfaceBSpline spline = SurfaceBSpline.readBSpline(bf);
+					list.add(spline);
+				} catch (IOException e){
+					reading = false;
+				}
 			}
+		} finally {
+			bf.close();
 		}
 		return list;
 	}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.conrad.geometry.splines;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+
+import edu.stanford.rsl.conrad.geometry.shapes.simple.PointND;
+import edu.stanford.rsl.conrad.utils.CONRAD;
+import edu.stanford.rsl.conrad.utils.Configuration;
+import edu.stanford.rsl.conrad.utils.RegKeys;
+
+/**
+ * Binary cache for surface BSplines which are read from text files, e.g. the .nrb files of XCat.
+ * <br><br>
+ * Parsing the text files is slow. Hence, the splines of a file are stored in a compact binary file after the text file was parsed
+ * for the first time. The cache file is named after the SHA-1 hash of the contents of the text file, i.e. changed text files are parsed again
+ * and identical files in different locations share the same cache file. Cache files are mapped into memory for reading.
+ * <br><br>
+ * The cache is disabled by default. It is enabled by setting the directory of the cache files in the registry, see {@link RegKeys#SPLINE_CACHE_DIRECTORY},
+ * or using {@link #setCacheDirectory(File)}. Errors while reading or writing the cache are not fatal; the text file is parsed instead.
+ * Each call returns new spline objects, i.e. the splines may be modified by the caller.
+ *
+ * @author akmaier
+ *
+ */
+public abstract class SurfaceBSplineCache {
+
+	/**
+	 * "CNRDBSPL"
+	 */
+	private static final long magic = 0x434E52444253504CL;
+	private static final int version = 1;
+	private static final Charset utf8 = Charset.forName("UTF-8");
+
+	private static File cacheDirectory = null;
+	private static boolean cacheDirectorySet = false;
+
+	/**
+	 * Reads the splines of the given text file. If the file was read before, the splines are read from the binary cache.
+	 * @param filename the name of the text file
+	 * @return the splines in the order of the file
+	 * @throws IOException if the text file cannot be read
+	 */
+	public static ArrayList<SurfaceBSpline> readSplines(String filename) throws IOException {
+		File directory = getCacheDirectory();
+		File cacheFile = null;
+		if (directory != null) {
+			cacheFile = new File(directory, computeHash(new File(filename)) + ".bsc");
+			if (cacheFile.isFile()) {
+				try {
+					return readCacheFile(cacheFile);
+				} catch (IOException e) {
+					CONRAD.log("Ignoring invalid spline cache " + cacheFile + ": " + e.getLocalizedMessage());
+				}
+			}
+		}
+		ArrayList<SurfaceBSpline> splines = SurfaceBSpline.parseSplinesFromFile(filename);
+		if (cacheFile != null) {
+			try {
+				writeCacheFile(cacheFile, splines);
+			} catch (IOException e) {
+				CONRAD.log("Could not write spline cache " + cacheFile + ": " + e.getLocalizedMessage());
+			}
+		}
+		return splines;
+	}
+
+	/**
+	 * Computes the SHA-1 hash of the contents of a file.
+	 * @param file the file
+	 * @return the hash as hexadecimal string
+	 * @throws IOException if the file cannot be read
+	 */
+	public static String computeHash(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		InputStream in = new FileInputStream(file);
+		try {
+			byte [] buffer = new byte [1 << 16];
+			for (int read = in.read(buffer); read >= 0; read = in.read(buffer)){
+				digest.update(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		StringBuilder hash = new StringBuilder();
+		for (byte b : digest.digest()){
+			hash.append(Character.forDigit((b >> 4) & 0xf, 16));
+			hash.append(Character.forDigit(b & 0xf, 16));
+		}
+		return hash.toString();
+	}
+
+	/**
+	 * Writes the splines in the binary format: magic, version, number of splines, and for each spline the title, the knot vectors and the control points.
+	 * The file is written to a temporary file first and renamed afterwards, such that readers never see incomplete files.
+	 */
+	static void writeCacheFile(File cacheFile, ArrayList<SurfaceBSpline> splines) throws IOException {
+		File directory = cacheFile.getParentFile();
+		if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("Cannot create directory " + directory);
+		File temp = File.createTempFile("splines", ".tmp", directory);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+		try {
+			out.writeLong(magic);
+			out.writeInt(version);
+			out.writeInt(splines.size());
+			for (SurfaceBSpline spline : splines){
+				byte [] title = (spline.getTitle() == null) ? new byte[0] : spline.getTitle().getBytes(utf8);
+				out.writeInt(title.length);
+				out.write(title);
+				writeVector(out, spline.uKnots.copyAsDoubleArray());
+				writeVector(out, spline.vKnots.copyAsDoubleArray());
+				out.writeInt(spline.points.size());
+				for (PointND point : spline.points){
+					out.writeDouble(point.get(0));
+					out.writeDouble(point.get(1));
+					out.writeDouble(point.get(2));
+				}
+			}
+		} finally {
+			out.close();
+		}
+		if (!temp.renameTo(cacheFile)) {
+			temp.delete();
+			if (!cacheFile.isFile()) throw new IOException("Cannot rename " + temp + " to " + cacheFile);
+		}
+	}
+
+	private static void writeVector(DataOutputStream out, double [] vector) throws IOException {
+		out.writeInt(vector.length);
+		for (double value : vector){
+			out.writeDouble(value);
+		}
+	}
+
+	static ArrayList<SurfaceBSpline> readCacheFile(File cacheFile) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(cacheFile, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.remaining() < 16 || buffer.getLong() != magic || buffer.getInt() != version) throw new IOException("Unknown format");
+			int count = buffer.getInt();
+			ArrayList<SurfaceBSpline> splines = new ArrayList<SurfaceBSpline>(count);
+			for (int s = 0; s < count; s++){
+				byte [] title = new byte[checkLength(buffer.getInt(), buffer.remaining())];
+				buffer.get(title);
+				double [] uKnots = readVector(buffer);
+				double [] vKnots = readVector(buffer);
+				int numberOfPoints = checkLength(buffer.getInt(), buffer.remaining() / 24);
+				ArrayList<PointND> points = new ArrayList<PointND>(numberOfPoints);
+				for (int i = 0; i < numberOfPoints; i++){
+					points.add(new PointND(buffer.getDouble(), buffer.getDouble(), buffer.getDouble()));
+				}
+				splines.add(SurfaceBSpline.createBSpline(new String(title, utf8), points, uKnots, vKnots));
+			}
+			return splines;
+		} catch (RuntimeException e) {
+			// BufferUnderflowException etc. caused by truncated files
+			throw new IOException(e);
+		} finally {
+			file.close();
+		}
+	}
+
+	private static double [] readVector(MappedByteBuffer buffer) throws IOException {
+		double [] vector = new double [checkLength(buffer.getInt(), buffer.remaining() / 8)];
+		for (int i = 0; i < vector.length; i++){
+			vector[i] = buffer.getDouble();
+		}
+		return vector;
+	}
+
+	private static int checkLength(int length, int remaining) throws IOException {
+		if (length < 0 || length > remaining) throw new IOException("Invalid length " + length);
+		return length;
+	}
+
+	/**
+	 * Returns the directory which was set with {@link #setCacheDirectory(File)} or otherwise the directory in the registry.
+	 * @return the directory of the cache files or null if the cache is disabled
+	 * @see RegKeys#SPLINE_CACHE_DIRECTORY
+	 */
+	public static synchronized File getCacheDirectory() {
+		if (cacheDirectorySet) return cacheDirectory;
+		Configuration config = Configuration.getGlobalConfiguration();
+		if (config != null && config.getRegistry() != null){
+			String directory = config.getRegistryEntry(RegKeys.SPLINE_CACHE_DIRECTORY);
+			if (directory != null && directory.length() > 0) return new File(directory);
+		}
+		return null;
+	}
+
+	/**
+	 * Sets the directory of the cache files. The directory overrides the registry.
+	 * @param directory the directory. null disables the cache.
+	 */
+	public static synchronized void setCacheDirectory(File directory) {
+		cacheDirectory = directory;
+		cacheDirectorySet = true;
+	}
+
+	/**
+	 * Reverts {@link #setCacheDirectory(File)}, i.e. the directory is read from the registry again.
+	 */
+	public static synchronized void resetCacheDirectory() {
+		cacheDirectory = null;
+		cacheDirectorySet = false;
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -43,6 +43,11 @@ public class TimeVariantSurfaceBSpline extends AbstractSurface {
 	protected BSpline timeSpline;
 	protected int tPoints;
 	protected boolean clockwise;
+	/**
+	 * Raster points of all time frames for the last sampling. Tessellations at different times share the topology,
+	 * so only the interpolation in time has to be computed.
+	 */
+	private transient volatile RasterFrames rasterFrames;
 
 	public boolean isClockwise(){
 		return clockwise;
@@ -172,6 +177,7 @@ public class TimeVariantSurfaceBSpline extends AbstractSurface {
 		for (AbstractShape spline: timeVariantShapes){
 			spline.applyTransform(t);
 		}
+		rasterFrames = null;
 	}
 
 	@Override
@@ -215,17 +221,48 @@ public class TimeVariantSurfaceBSpline extends AbstractSurface {
 		return revan;
 	}
 
+	/**
+	 * Computes the raster points at the given time. The raster points of the time frames are computed once per sampling
+	 * and reused, i.e. the result is the same as evaluating the spline at each point, but only the interpolation in time is
+	 * computed for each call.
+	 * @param samplingU number of points in u direction
+	 * @param samplingV number of points in v direction
+	 * @param time the time
+	 * @return the raster points
+	 */
 	public PointND[] getRasterPoints(double samplingU, double samplingV, double time){
-		PointND [] pts = new PointND[((int)samplingU) * ((int)samplingV)];
-		for(double i =0 ; i < samplingU; i++){
-			for (double j = 0; j < samplingV; j++){
-				PointND p = evaluate(i/samplingU, j/ samplingV, time);
-				pts[(int)(i*samplingV+j)] = p;
+		RasterFrames frames = getRasterFrames(samplingU, samplingV);
+		double internal = ((time * timeSpline.getKnots().length) -3.0);
+		int numPts = timeSpline.getControlPoints().size();
+		double step = internal- Math.floor(internal);
+		double [] weights = UniformCubicBSpline.getWeights(step);
+		double [][] locs = new double [4][];
+		for (int i=0;i<4;i++){
+			locs[i] = (internal+i < 0)? frames.points[0]: (internal+i>=numPts)? frames.points[numPts-1] : frames.points[(int) (internal+i)];
+		}
+		int dimension = frames.dimension;
+		PointND [] pts = new PointND[frames.size];
+		for (int k = 0; k < pts.length; k++){
+			double [] p = new double [dimension];
+			for (int i=0;i<4;i++){
+				for (int j = 0; j < dimension; j++){
+					p[j] += (locs[i][(k * dimension) + j] * weights[i]);
+				}
 			}
+			pts[k] = new PointND(p);
 		}
 		return pts;
 	}
 
+	private RasterFrames getRasterFrames(double samplingU, double samplingV){
+		RasterFrames frames = rasterFrames;
+		if (frames == null || !frames.isValidFor(timeVariantShapes, samplingU, samplingV)) {
+			frames = new RasterFrames(timeVariantShapes, samplingU, samplingV);
+			rasterFrames = frames;
+		}
+		return frames;
+	}
+
 	public AbstractShape tessellateMesh(double samplingU, double samplingV, double time){
 		PointND [] pts = getRasterPoints(samplingU, samplingV, time);
 		boolean write = false;
@@ -452,4 +489,46 @@ public class TimeVariantSurfaceBSpline extends AbstractSurface {
 	public AbstractShape clone() {
 		return new TimeVariantSurfaceBSpline(this);
 	}
+
+	/**
+	 * Raster points of the time frames as x, y, z triplets in the order of getRasterPoints(). The control points
+	 * of the frames are kept to detect frames that were transformed in the mean time.
+	 */
+	private static class RasterFrames {
+
+		private final ArrayList<ArrayList<PointND>> controlPoints;
+		private final double samplingU, samplingV;
+		private final int size;
+		private final int dimension;
+		private final double [][] points;
+
+		RasterFrames(ArrayList<SurfaceBSpline> shapes, double samplingU, double samplingV){
+			this.samplingU = samplingU;
+			this.samplingV = samplingV;
+			size = ((int)samplingU) * ((int)samplingV);
+			dimension = shapes.get(0).getControlPoints().get(0).getDimension();
+			controlPoints = new ArrayList<ArrayList<PointND>>(shapes.size());
+			points = new double [shapes.size()][size * dimension];
+			for (int t = 0; t < shapes.size(); t++){
+				SurfaceBSpline shape = shapes.get(t);
+				controlPoints.add(shape.getControlPoints());
+				for(double i =0 ; i < samplingU; i++){
+					for (double j = 0; j < samplingV; j++){
+						double [] loc = shape.evaluate(i/samplingU, j/ samplingV).getCoordinates();
+						System.arraycopy(loc, 0, points[t], ((int)(i*samplingV+j)) * dimension, dimension);
+					}
+				}
+			}
+		}
+
+		boolean isValidFor(ArrayList<SurfaceBSpline> shapes, double samplingU, double samplingV){
+			if (this.samplingU != samplingU || this.samplingV != samplingV || controlPoints.size() != shapes.size()) return false;
+			for (int t = 0; t < shapes.size(); t++){
+				if (controlPoints.get(t) != shapes.get(t).getControlPoints()) return false;
+			}
+			return true;
+		}
+
+	}
+
 }
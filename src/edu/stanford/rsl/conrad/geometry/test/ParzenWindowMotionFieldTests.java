@@ -0,0 +1,170 @@
+package edu.stanford.rsl.conrad.geometry.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+import edu.stanford.rsl.conrad.geometry.motion.ParzenWindowInterpolator;
+import edu.stanford.rsl.conrad.geometry.motion.TimeVariantSurfaceBSplineMotionField;
+import edu.stanford.rsl.conrad.geometry.shapes.simple.PointND;
+import edu.stanford.rsl.conrad.geometry.splines.SurfaceBSpline;
+import edu.stanford.rsl.conrad.geometry.splines.SurfaceUniformCubicBSpline;
+import edu.stanford.rsl.conrad.geometry.splines.TimeVariantSurfaceBSpline;
+import edu.stanford.rsl.conrad.geometry.trajectories.CircularTrajectory;
+import edu.stanford.rsl.conrad.utils.Configuration;
+import edu.stanford.rsl.conrad.utils.RegKeys;
+import edu.stanford.rsl.conrad.utils.TessellationUtil;
+
+/**
+ * Compares the ParzenWindowMotionField with the sum of the Gaussian window over all raster points.
+ *
+ * @author akmaier
+ *
+ */
+public class ParzenWindowMotionFieldTests {
+
+	private static final double sigma = 3;
+	private static final double [] knots = {0, 0, 0, 0, 0.3, 0.6, 1, 1, 1, 1};
+	private static final double [] times = {0.1, 0.25, 0.4, 0.55, 0.7, 0.85};
+
+	private static void initConfiguration(){
+		CircularTrajectory trajectory = new CircularTrajectory();
+		trajectory.setReconDimensions(64, 64, 64);
+		trajectory.setVoxelSpacingX(1.0);
+		trajectory.setVoxelSpacingY(1.0);
+		trajectory.setVoxelSpacingZ(1.0);
+		Configuration config = new Configuration();
+		config.setRegistry(new HashMap<String, String>());
+		config.setRegistryEntry(RegKeys.SPLINE_SUBSAMPLING_FACTOR, "2");
+		config.setGeometry(trajectory);
+		Configuration.setGlobalConfiguration(config);
+	}
+
+	@After
+	public void resetConfiguration(){
+		Configuration.setGlobalConfiguration(null);
+	}
+
+	/**
+	 * A curved sheet which is deformed differently in each time frame.
+	 */
+	private static TimeVariantSurfaceBSpline createSurface(){
+		int n = knots.length - 4;
+		ArrayList<SurfaceBSpline> frames = new ArrayList<SurfaceBSpline>();
+		for (int t = 0; t < 6; t++){
+			ArrayList<PointND> controlPoints = new ArrayList<PointND>();
+			for (int j = 0; j < n; j++){
+				for (int i = 0; i < n; i++){
+					double x = (8.0 * i) * (1 + (0.03 * t));
+					double y = (8.0 * j) + (t * Math.cos(i));
+					double z = (5 * Math.sin(i + j)) + (1.5 * t * Math.sin(j));
+					controlPoints.add(new PointND(x, y, z));
+				}
+			}
+			frames.add(new SurfaceUniformCubicBSpline(controlPoints, knots, knots));
+		}
+		return new TimeVariantSurfaceBSpline(frames);
+	}
+
+	private static PointND [] getRasterPoints(TimeVariantSurfaceBSpline surface, double time){
+		return surface.getRasterPoints(TessellationUtil.getSamplingU(surface), TessellationUtil.getSamplingV(surface), time);
+	}
+
+	/**
+	 * The Gaussian window summed over all raster points without truncation.
+	 */
+	private static double [] bruteForce(PointND [] from, PointND [] to, double x, double y, double z){
+		double weightSum = 0;
+		double [] motion = new double [3];
+		for (int i = 0; i < from.length; i++){
+			double dx = from[i].get(0) - x;
+			double dy = from[i].get(1) - y;
+			double dz = from[i].get(2) - z;
+			double weight = Math.exp(-((dx * dx) + (dy * dy) + (dz * dz)) / (2 * sigma * sigma));
+			weightSum += weight;
+			for (int k = 0; k < 3; k++){
+				motion[k] += weight * (to[i].get(k) - from[i].get(k));
+			}
+		}
+		assertTrue(weightSum > 0);
+		for (int k = 0; k < 3; k++){
+			motion[k] /= weightSum;
+		}
+		return motion;
+	}
+
+	private static double [][] createQueries(){
+		Random random = new Random(3);
+		double [][] queries = new double [40][];
+		for (int q = 0; q < queries.length; q++){
+			queries[q] = new double [] {random.nextDouble() * 50, random.nextDouble() * 50, (random.nextDouble() * 16) - 8};
+		}
+		return queries;
+	}
+
+	@Test
+	public void testPositionsAtSeveralTimesMatchBruteForce(){
+		initConfiguration();
+		TimeVariantSurfaceBSpline surface = createSurface();
+		TimeVariantSurfaceBSplineMotionField field = new TimeVariantSurfaceBSplineMotionField(surface, sigma);
+		PointND [] from = getRasterPoints(surface, 0);
+		assertTrue(from.length > 100);
+		for (double [] query : createQueries()){
+			PointND point = new PointND(query[0], query[1], query[2]);
+			ArrayList<PointND> positions = field.getPositions(point, 0, times);
+			assertEquals(times.length, positions.size());
+			for (int t = 0; t < times.length; t++){
+				double [] motion = bruteForce(from, getRasterPoints(surface, times[t]), query[0], query[1], query[2]);
+				for (int k = 0; k < 3; k++){
+					assertEquals("time " + times[t], query[k] + motion[k], positions.get(t).get(k), 1e-5);
+				}
+				// the single pass over all times yields the same result as a query per time.
+				PointND single = field.getPosition(point, 0, times[t]);
+				assertArrayEquals(single.getCoordinates(), positions.get(t).getCoordinates(), 0);
+			}
+		}
+	}
+
+	@Test
+	public void testInterpolatorsSharingTheTree(){
+		initConfiguration();
+		TimeVariantSurfaceBSpline surface = createSurface();
+		PointND [] from = getRasterPoints(surface, 0);
+		ParzenWindowInterpolator first = new ParzenWindowInterpolator(from, getRasterPoints(surface, times[0]), sigma);
+		ParzenWindowInterpolator [] shared = new ParzenWindowInterpolator[times.length];
+		ParzenWindowInterpolator [] separate = new ParzenWindowInterpolator[times.length];
+		for (int t = 0; t < times.length; t++){
+			PointND [] to = getRasterPoints(surface, times[t]);
+			shared[t] = first.withTarget(to);
+			separate[t] = new ParzenWindowInterpolator(from, to, sigma);
+		}
+		double [] motions = new double [3 * times.length];
+		double [] mixed = new double [3 * times.length];
+		double [] motion = new double [3];
+		ParzenWindowInterpolator [] mixedInterpolators = shared.clone();
+		mixedInterpolators[1] = separate[1];
+		for (double [] query : createQueries()){
+			ParzenWindowInterpolator.getMotions(shared, query[0], query[1], query[2], motions);
+			ParzenWindowInterpolator.getMotions(mixedInterpolators, query[0], query[1], query[2], mixed);
+			for (int t = 0; t < times.length; t++){
+				separate[t].getMotion(query[0], query[1], query[2], motion, 0);
+				for (int k = 0; k < 3; k++){
+					assertEquals(motion[k], motions[(3 * t) + k], 1e-12);
+					assertEquals(motion[k], mixed[(3 * t) + k], 1e-12);
+				}
+			}
+		}
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
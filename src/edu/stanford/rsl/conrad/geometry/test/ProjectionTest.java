@@ -482,6 +482,30 @@ public class ProjectionTest {
 		assertEqualElementWise(lhs.normalizedL2(), rhs.normalizedL2(), DELTA);
 	}
 
+	@Test
+	public void testComputeRayDirections() {
+		Projection proj = new Projection(fP1.clone());
+		final double firstU = rand(0.0, fsizeU1 - 20.0);
+		final double firstV = rand(0.0, fsizeV1 - 20.0);
+		final int width = 7;
+		final int height = 5;
+		final double[] directions = new double[3 * width * height];
+		proj.computeRayDirections(firstU, firstV, width, height, directions);
+		for (int j = 0; j < height; ++j) {
+			for (int i = 0; i < width; ++i) {
+				SimpleVector raydir = proj.computeRayDirection(new SimpleVector(firstU + i, firstV + j));
+				SimpleVector tile = new SimpleVector(directions[3 * (j * width + i)], directions[3 * (j * width + i) + 1], directions[3 * (j * width + i) + 2]);
+				assertEqualElementWise(tile, raydir, DELTA);
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testComputeRayDirectionsTooSmall() {
+		Projection proj = new Projection(fP1.clone());
+		proj.computeRayDirections(0.0, 0.0, 4, 4, new double[3 * 4 * 4 - 1]);
+	}
+
 	@Test
 	public void testComputeGLMatricesIntIntIntIntDoubleDoubleDoubleArrayDoubleArray() {
 		Projection projtmp = new Projection(fP1);
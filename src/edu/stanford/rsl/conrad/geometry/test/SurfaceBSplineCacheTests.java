@@ -0,0 +1,143 @@
+package edu.stanford.rsl.conrad.geometry.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.After;
+import org.junit.Test;
+
+import edu.stanford.rsl.conrad.geometry.shapes.simple.PointND;
+import edu.stanford.rsl.conrad.geometry.splines.SurfaceBSpline;
+import edu.stanford.rsl.conrad.geometry.splines.SurfaceBSplineCache;
+import edu.stanford.rsl.conrad.utils.Configuration;
+import edu.stanford.rsl.conrad.utils.RegKeys;
+
+/**
+ * Compares the splines which are read from the binary cache with the splines which are parsed from the text file.
+ *
+ * @author akmaier
+ *
+ */
+public class SurfaceBSplineCacheTests {
+
+	private static final double [][] knots = {{0, 0, 0, 0, 1, 1, 1, 1}, {0, 0, 0, 0, 0.3, 1, 1, 1, 1}};
+
+	private static void writeKnots(PrintWriter out, double [] vector){
+		for (double knot : vector){
+			out.println(knot);
+		}
+	}
+
+	/**
+	 * Writes splines in the text format of the XCat .nrb files.
+	 */
+	private static File writeSplineFile() throws IOException {
+		File file = File.createTempFile("splines", ".nrb");
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		for (int s = 0; s < 2; s++){
+			double [] u = knots[s];
+			double [] v = knots[1 - s];
+			int uPoints = u.length - 4;
+			int vPoints = v.length - 4;
+			out.println("spline" + s);
+			out.println(uPoints + " :M");
+			out.println(vPoints + " :N");
+			out.println("U Knot Vector");
+			writeKnots(out, v);
+			out.println("V Knot Vector");
+			writeKnots(out, u);
+			out.println("Control Points");
+			for (int j = 0; j < uPoints; j++){
+				if (j > 0) out.println();
+				for (int i = 0; i < vPoints; i++){
+					out.println((10.0 * j + s) + " " + (i * 3.5) + " " + Math.sin(i + j + 0.1 * s));
+				}
+			}
+			out.println();
+		}
+		out.close();
+		return file;
+	}
+
+	private static void setCacheDirectory(File directory){
+		Configuration config = new Configuration();
+		config.setRegistry(new HashMap<String, String>());
+		if (directory != null) config.setRegistryEntry(RegKeys.SPLINE_CACHE_DIRECTORY, directory.getAbsolutePath());
+		Configuration.setGlobalConfiguration(config);
+	}
+
+	private static void assertSameSplines(ArrayList<SurfaceBSpline> expected, ArrayList<SurfaceBSpline> actual){
+		assertEquals(expected.size(), actual.size());
+		for (int s = 0; s < expected.size(); s++){
+			SurfaceBSpline a = expected.get(s);
+			SurfaceBSpline b = actual.get(s);
+			assertEquals(a.getTitle(), b.getTitle());
+			assertEquals(a.getClass(), b.getClass());
+			assertArrayEquals(a.getUKnots().copyAsDoubleArray(), b.getUKnots().copyAsDoubleArray(), 0);
+			assertArrayEquals(a.getVKnots().copyAsDoubleArray(), b.getVKnots().copyAsDoubleArray(), 0);
+			assertEquals(a.getControlPoints().size(), b.getControlPoints().size());
+			for (int i = 0; i < a.getControlPoints().size(); i++){
+				assertArrayEquals(a.getControlPoints().get(i).getCoordinates(), b.getControlPoints().get(i).getCoordinates(), 0);
+			}
+			for (double u = 0; u <= 1; u += 0.25){
+				for (double v = 0; v <= 1; v += 0.25){
+					PointND p = a.evaluate(u, v);
+					PointND q = b.evaluate(u, v);
+					assertArrayEquals(p.getCoordinates(), q.getCoordinates(), 0);
+				}
+			}
+		}
+	}
+
+	@After
+	public void resetConfiguration(){
+		SurfaceBSplineCache.resetCacheDirectory();
+		Configuration.setGlobalConfiguration(null);
+	}
+
+	@Test
+	public void testCacheIsDisabledByDefault() throws IOException {
+		setCacheDirectory(null);
+		assertNull(SurfaceBSplineCache.getCacheDirectory());
+		File file = writeSplineFile();
+		try {
+			assertSameSplines(SurfaceBSpline.parseSplinesFromFile(file.getPath()), SurfaceBSpline.readSplinesFromFile(file.getPath()));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testCachedSplinesMatchParsedSplines() throws IOException {
+		File directory = File.createTempFile("splinecache", "");
+		directory.delete();
+		setCacheDirectory(directory);
+		File file = writeSplineFile();
+		File cacheFile = new File(directory, SurfaceBSplineCache.computeHash(file) + ".bsc");
+		try {
+			ArrayList<SurfaceBSpline> parsed = SurfaceBSpline.parseSplinesFromFile(file.getPath());
+			assertEquals(2, parsed.size());
+			// the first call writes the cache, the second one reads it.
+			assertSameSplines(parsed, SurfaceBSpline.readSplinesFromFile(file.getPath()));
+			assertEquals(true, cacheFile.isFile());
+			assertSameSplines(parsed, SurfaceBSpline.readSplinesFromFile(file.getPath()));
+		} finally {
+			cacheFile.delete();
+			directory.delete();
+			file.delete();
+		}
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
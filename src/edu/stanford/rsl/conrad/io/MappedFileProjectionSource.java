@@ -0,0 +1,457 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.conrad.io;
+
+import ij.IJ;
+import ij.io.FileInfo;
+import ij.io.TiffDecoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+import edu.stanford.rsl.conrad.parallel.ParallelThreadExecutor;
+import edu.stanford.rsl.conrad.utils.CONRAD;
+
+/**
+ * ProjectionSource for uncompressed projection stacks which maps the file into memory using FileChannel.map() instead of
+ * streaming it through ImageJ's ImageReader. Supported are uncompressed TIFF stacks, raw NRRD stacks (attached or detached header) and
+ * raw files which are described by a FileInfo (see {@link #initStream(FileInfo)}).
+ * <br><br>
+ * In contrast to the other FileProjectionSources the projections can be accessed in arbitrary order using {@link #getProjection(int)}.
+ * Hence, algorithms with several passes over the data can revisit projections without reading the file again. The pixels are
+ * decoded directly from the mapped pages into the float buffer of the Grid2D. Large projections are decoded row-wise in parallel on
+ * the shared thread pool of the ParallelThreadExecutor. The buffers of projections that are no longer needed may be handed back
+ * with {@link #recycle(Grid2D)} and are reused for the next projections.
+ * <br><br>
+ * While reading sequentially with {@link #getNextProjection()}, the pages of the next projections are touched in the background, such that
+ * the operating system reads them ahead while the current projection is processed.
+ * <br><br>
+ * The decoded values are identical to those of the stream based sources, i.e. 8 and 16 bit data are converted just like ImageJ's
+ * ImageProcessor.toFloat() does.
+ * <br><br>
+ * Java offers no way to unmap a file explicitly. {@link #close()} closes the file and drops all references to the mapped segments, but the
+ * mappings are only released when the segments are garbage collected. Until then, the file cannot be deleted or replaced on Windows.
+ *
+ * @author akmaier
+ *
+ */
+public class MappedFileProjectionSource extends FileProjectionSource {
+
+	/**
+	 * Maximal size of one mapped segment of the file.
+	 */
+	private static final long maxSegmentSize = 1L << 30;
+
+	/**
+	 * Projections with at least this number of pixels are decoded in parallel.
+	 */
+	private static final int minPixelsForParallelDecoding = 1 << 16;
+
+	private static final int pageSize = 4096;
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<Long, MappedByteBuffer>();
+	private long [] offsets;
+	private int imageSize;
+	private int bytesPerPixel;
+	private ByteOrder order;
+	private int readAhead = 2;
+	private int prefetched = -1;
+	private final ConcurrentLinkedQueue<float[]> bufferPool = new ConcurrentLinkedQueue<float[]>();
+	private final AtomicInteger pooledBuffers = new AtomicInteger();
+	private int maxPooledBuffers = 2 * CONRAD.getNumberOfThreads();
+
+	/**
+	 * Opens an uncompressed TIFF or NRRD stack. Other formats, compressed or inconsistent files cause an IOException.
+	 * @param filename the file name
+	 * @throws IOException if the file cannot be mapped.
+	 */
+	@Override
+	public void initStream(String filename) throws IOException {
+		File f = new File(filename);
+		String directory = f.getAbsoluteFile().getParent() + File.separator;
+		String name = f.getName();
+		String lower = name.toLowerCase();
+		if (lower.endsWith(".tif") || lower.endsWith(".tiff")) {
+			FileInfo [] info = new TiffDecoder(directory, name).getTiffInfo();
+			if (info == null || info.length == 0) throw new IOException("Format does not match");
+			initStream(info);
+		} else if (lower.endsWith(".nrrd") || lower.endsWith(".nhdr")) {
+			NrrdFileInfo info = new NrrdFileReader().getHeaderInfo(directory, name);
+			if (!(info.encoding.equals("") || info.encoding.equals("raw"))) {
+				throw new IOException("Cannot map NRRD file with encoding " + info.encoding);
+			}
+			initStream(info);
+		} else {
+			throw new IOException("MappedFileProjectionSource: Not a tiff or nrrd file!");
+		}
+	}
+
+	/**
+	 * Opens a raw file which is described by the FileInfo. The images are expected at fi.getOffset() + n * (image size + fi.gapBetweenImages).
+	 * @param fi the description of the file
+	 * @throws IOException if the file cannot be mapped.
+	 */
+	public void initStream(FileInfo fi) throws IOException {
+		initStream(new FileInfo [] {fi});
+	}
+
+	/**
+	 * Opens the images which are described by the array of FileInfos, e.g. as returned by ImageJ's TiffDecoder.
+	 * Each FileInfo may describe a stack of contiguous images.
+	 * @param info the descriptions
+	 * @throws IOException if the file cannot be mapped.
+	 */
+	protected void initStream(FileInfo [] info) throws IOException {
+		FileInfo first = info[0];
+		if (first == null || first.width <= 0 || first.height <= 0) throw new IOException("Format does not match");
+		if (first.inputStream != null || (first.url != null && !first.url.equals(""))) throw new IOException("Can only map local files");
+		if (first.fileName == null || first.fileName.toLowerCase().endsWith(".gz")) throw new IOException("Cannot map compressed files");
+		bytesPerPixel = getBytesPerPixel(first.fileType);
+		if (bytesPerPixel <= 0) throw new IOException("Cannot map images of type " + first.fileType);
+		long imageBytes = (long) first.width * first.height * bytesPerPixel;
+		if (imageBytes > Integer.MAX_VALUE) throw new IOException("Projections larger than 2GB are not supported.");
+		imageSize = (int) imageBytes;
+		int count = 0;
+		for (int n = 0; n < info.length; n++){
+			FileInfo current = info[n];
+			if (current.width != first.width || current.height != first.height || current.fileType != first.fileType
+					|| current.intelByteOrder != first.intelByteOrder || current.compression != FileInfo.COMPRESSION_NONE
+					|| !isContiguous(current)) {
+				throw new IOException("Cannot map image " + n + " as it differs from the first image or is compressed.");
+			}
+			count += Math.max(current.nImages, 1);
+		}
+		offsets = new long [count];
+		count = 0;
+		for (int n = 0; n < info.length; n++){
+			for (int i = 0; i < Math.max(info[n].nImages, 1); i++){
+				offsets[count++] = info[n].getOffset() + (i * (imageBytes + info[n].gapBetweenImages));
+			}
+		}
+		String directory = first.directory;
+		if (directory.length() > 0 && !directory.endsWith(File.separator) && !directory.endsWith("/")) directory += File.separator;
+		File f = new File(directory + first.fileName);
+		if (!f.isFile()) throw new IOException("File not found: " + f.getPath());
+		long length = f.length();
+		for (int n = 0; n < offsets.length; n++){
+			if (offsets[n] < 0 || offsets[n] + imageBytes > length) {
+				throw new IOException("Offset + image size > file length for image " + n);
+			}
+		}
+		fi = (FileInfo) first.clone();
+		fi.nImages = offsets.length;
+		order = (fi.intelByteOrder) ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+		file = new RandomAccessFile(f, "r");
+		channel = file.getChannel();
+		synchronized (segments) {
+			segments.clear();
+		}
+		currentIndex = -1;
+		prefetched = -1;
+	}
+
+	/**
+	 * Strips of uncompressed TIFF files are usually stored one after another. Otherwise, we cannot address the image by a single offset.
+	 */
+	private static boolean isContiguous(FileInfo fi){
+		if (fi.stripOffsets == null || fi.stripLengths == null || fi.stripOffsets.length < 2) return true;
+		for (int i = 1; i < fi.stripOffsets.length; i++){
+			if (fi.stripOffsets[i] != fi.stripOffsets[i-1] + fi.stripLengths[i-1]) return false;
+		}
+		return true;
+	}
+
+	private static int getBytesPerPixel(int fileType){
+		switch (fileType) {
+		case FileInfo.GRAY8:
+			return 1;
+		case FileInfo.GRAY16_SIGNED:
+		case FileInfo.GRAY16_UNSIGNED:
+			return 2;
+		case FileInfo.GRAY32_INT:
+		case FileInfo.GRAY32_UNSIGNED:
+		case FileInfo.GRAY32_FLOAT:
+			return 4;
+		case FileInfo.GRAY64_FLOAT:
+			return 8;
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * Returns a view on the bytes of the given projection in the byte order of the file. The view is positioned at the first
+	 * byte of the projection and may be read by one thread using absolute positions. The segments of the file are mapped on demand
+	 * and cover as many of the following projections as possible.
+	 * @param index the projection index
+	 * @return the view
+	 * @throws IOException if the mapping fails
+	 */
+	private ByteBuffer getView(int index) throws IOException {
+		long offset = offsets[index];
+		long start;
+		MappedByteBuffer segment;
+		synchronized (segments) {
+			Map.Entry<Long, MappedByteBuffer> entry = segments.floorEntry(offset);
+			if (entry != null && offset + imageSize <= entry.getKey() + entry.getValue().capacity()) {
+				start = entry.getKey();
+				segment = entry.getValue();
+			} else {
+				long size = Math.max(imageSize, Math.min(maxSegmentSize, channel.size() - offset));
+				segment = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+				segments.put(offset, segment);
+				start = offset;
+			}
+		}
+		ByteBuffer view = segment.duplicate();
+		view.position((int) (offset - start));
+		view.order(order);
+		return view;
+	}
+
+	/**
+	 * Reads the projection with the given index. This does not change the current projection number.
+	 * @param index the projection index, starting with 0
+	 * @return the projection
+	 * @throws IOException if the file cannot be read
+	 */
+	public Grid2D getProjection(int index) throws IOException {
+		if (index < 0 || index >= offsets.length) throw new IndexOutOfBoundsException("Projection " + index + " is not in [0, " + offsets.length + ")");
+		ByteBuffer view = getView(index);
+		float [] pixels = bufferPool.poll();
+		if (pixels != null) {
+			pooledBuffers.decrementAndGet();
+		} else {
+			pixels = new float[fi.width * fi.height];
+		}
+		DecodingTask task = new DecodingTask(view, view.position(), pixels, 0, fi.height);
+		if (pixels.length < minPixelsForParallelDecoding || !ParallelThreadExecutor.parallel) {
+			task.decode();
+		} else {
+			ParallelThreadExecutor.invoke(task);
+		}
+		Grid2D grid = new Grid2D(pixels, fi.width, fi.height);
+		return grid;
+	}
+
+	/**
+	 * Hands the buffer of a projection which was read from this source back for reuse. The projection must not be used afterwards.
+	 * @param grid the projection
+	 */
+	public void recycle(Grid2D grid){
+		if (grid == null || fi == null) return;
+		float [] buffer = grid.getBuffer();
+		if (buffer.length != fi.width * fi.height) return;
+		if (pooledBuffers.incrementAndGet() <= maxPooledBuffers) {
+			bufferPool.offer(buffer);
+		} else {
+			pooledBuffers.decrementAndGet();
+		}
+	}
+
+	@Override
+	public synchronized Grid2D getNextProjection() {
+		if (currentIndex + 1 >= offsets.length) return null;
+		Grid2D grid;
+		try {
+			grid = getProjection(currentIndex + 1);
+		} catch (IOException e) {
+			CONRAD.log("" + e);
+			e.printStackTrace();
+			return null;
+		}
+		currentIndex++;
+		if (showProgress){
+			IJ.showProgress((0.0 + currentIndex) / fi.nImages);
+		}
+		prefetch(currentIndex + 1, currentIndex + readAhead);
+		return grid;
+	}
+
+	/**
+	 * Touches the pages of the projections [from, to] in the background, such that the operating system pages them in.
+	 */
+	private void prefetch(int from, int to){
+		from = Math.max(from, prefetched + 1);
+		to = Math.min(to, offsets.length - 1);
+		if (from > to) return;
+		prefetched = to;
+		final ByteBuffer [] views = new ByteBuffer[to - from + 1];
+		try {
+			for (int n = from; n <= to; n++){
+				views[n - from] = getView(n);
+			}
+		} catch (IOException e) {
+			// reading the projection will report the problem.
+			return;
+		}
+		ParallelThreadExecutor.getPool().execute(new Runnable() {
+			@Override
+			public void run() {
+				for (ByteBuffer view : views){
+					int start = view.position();
+					for (int p = start; p < start + imageSize; p += pageSize){
+						view.get(p);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return the number of projections in the file
+	 */
+	public int getNumberOfProjections(){
+		return offsets.length;
+	}
+
+	/**
+	 * Sets the number of projections which are read ahead during sequential access with {@link #getNextProjection()}. 0 disables the read-ahead.
+	 * @param readAhead the number of projections
+	 */
+	public void setReadAhead(int readAhead){
+		this.readAhead = readAhead;
+	}
+
+	/**
+	 * @return the number of projections which are read ahead
+	 */
+	public int getReadAhead(){
+		return readAhead;
+	}
+
+	/**
+	 * Sets the maximal number of buffers which are kept for reuse by {@link #recycle(Grid2D)}.
+	 * @param maxPooledBuffers the number of buffers
+	 */
+	public void setMaxPooledBuffers(int maxPooledBuffers){
+		this.maxPooledBuffers = maxPooledBuffers;
+	}
+
+	/**
+	 * Resets the source such that the next call to {@link #getNextProjection()} returns the first projection again.
+	 */
+	public synchronized void rewind(){
+		currentIndex = -1;
+		prefetched = -1;
+	}
+
+	/**
+	 * Closes the file and drops the references to the mapped segments. The mappings themselves are only released when the segments, including
+	 * the views of running decoders and read-ahead tasks, are garbage collected.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (segments) {
+			segments.clear();
+		}
+		bufferPool.clear();
+		pooledBuffers.set(0);
+		if (file != null) file.close();
+	}
+
+	@Override
+	public String toString(){
+		return "MappedFileProjectionSource";
+	}
+
+	/**
+	 * Decodes the rows [rowStart, rowEnd) of a projection. Large blocks of rows are split and decoded in parallel.
+	 */
+	private class DecodingTask extends RecursiveAction {
+
+		private static final long serialVersionUID = -2271458812906154217L;
+		private final ByteBuffer view;
+		private final int start;
+		private final float [] pixels;
+		private final int rowStart, rowEnd;
+
+		DecodingTask(ByteBuffer view, int start, float [] pixels, int rowStart, int rowEnd){
+			this.view = view;
+			this.start = start;
+			this.pixels = pixels;
+			this.rowStart = rowStart;
+			this.rowEnd = rowEnd;
+		}
+
+		@Override
+		protected void compute() {
+			int rows = rowEnd - rowStart;
+			if (rows < 2 || (long) rows * fi.width < minPixelsForParallelDecoding / 4) {
+				decode();
+			} else {
+				int mid = (rowStart + rowEnd) >>> 1;
+				// absolute reads on a shared buffer are safe, but the byte order is a property of the view.
+				ByteBuffer other = view.duplicate().order(order);
+				invokeAll(new DecodingTask(view, start, pixels, rowStart, mid), new DecodingTask(other, start, pixels, mid, rowEnd));
+			}
+		}
+
+		void decode(){
+			int from = rowStart * fi.width;
+			int to = rowEnd * fi.width;
+			int p = start + (from * bytesPerPixel);
+			switch (fi.fileType) {
+			case FileInfo.GRAY8:
+				for (int i = from; i < to; i++, p++){
+					pixels[i] = view.get(p) & 0xff;
+				}
+				break;
+			case FileInfo.GRAY16_SIGNED:
+				// ImageJ shifts signed data by 32768 to store it as unsigned short.
+				for (int i = from; i < to; i++, p += 2){
+					pixels[i] = view.getShort(p) + 32768;
+				}
+				break;
+			case FileInfo.GRAY16_UNSIGNED:
+				for (int i = from; i < to; i++, p += 2){
+					pixels[i] = view.getShort(p) & 0xffff;
+				}
+				break;
+			case FileInfo.GRAY32_INT:
+				for (int i = from; i < to; i++, p += 4){
+					pixels[i] = view.getInt(p);
+				}
+				break;
+			case FileInfo.GRAY32_UNSIGNED:
+				for (int i = from; i < to; i++, p += 4){
+					pixels[i] = view.getInt(p) & 0xffffffffL;
+				}
+				break;
+			case FileInfo.GRAY32_FLOAT:
+				for (int i = from; i < to; i++, p += 4){
+					pixels[i] = view.getFloat(p);
+				}
+				break;
+			case FileInfo.GRAY64_FLOAT:
+				for (int i = from; i < to; i++, p += 8){
+					pixels[i] = (float) view.getDouble(p);
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown stack type");
+			}
+		}
+
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -0,0 +1,413 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.conrad.io;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+import edu.stanford.rsl.conrad.pipeline.BlockingProjectionQueue;
+import edu.stanford.rsl.conrad.pipeline.IndividualImagePipelineFilteringTool;
+import edu.stanford.rsl.conrad.pipeline.ProjectionSource;
+import edu.stanford.rsl.conrad.utils.CONRAD;
+
+/**
+ * ProjectionSource which decodes the next projections on background threads while the consumer, e.g. the ParallelImageFilterPipeliner,
+ * processes the current one. The decoded projections are handed over in a {@link BlockingProjectionQueue}. Hence, the number of
+ * projections which are read ahead is bounded by the capacity of the queue.
+ * <br><br>
+ * If the source is initialized with a zip archive that contains one DICOM file per projection, the entries are inflated and decoded
+ * by several threads at the same time using the random access of {@link ZipProjectionSource#readProjection(int)}.
+ * Any other ProjectionSource, e.g. a TiffProjectionSource or a DicomProjectionSource, can be wrapped using
+ * {@link #PrefetchingProjectionSource(ProjectionSource, int)}. Its projections are read ahead by one background thread in the original order.
+ * <br><br>
+ * The projections are returned in the order of their projection numbers, starting with 0. Like the other sources, the stream ends
+ * with null, if a projection cannot be decoded. All projections before the broken one are still delivered. The error is printed
+ * and can be retrieved with {@link #getError()}.
+ * <br><br>
+ * Subclasses may provide other random access sources by overriding {@link #isRandomAccess()}, {@link #getNumberOfProjections()}
+ * and {@link #readProjection(int)}.
+ * <br><br>
+ * If the consumer does not take a projection for {@link #getIdleTimeout()} milliseconds, e.g. because it stopped before the end of the
+ * stream without calling {@link #close()}, the background threads terminate. The projections which they had decoded are kept and
+ * the decoding is resumed with the next call of {@link #getNextProjection()}.
+ *
+ * @author akmaier
+ *
+ */
+public class PrefetchingProjectionSource implements ProjectionSource {
+
+	private ProjectionSource source;
+	private ZipProjectionSource zipSource;
+	private int capacity;
+	private int numberOfThreads;
+	private long idleTimeout = 60000;
+	private BlockingProjectionQueue queue;
+	private AtomicInteger nextEntry;
+	private volatile Exception error;
+	/** the number of the projection which caused the error. Decoders finish all projections before it. */
+	private volatile int errorIndex = Integer.MAX_VALUE;
+	private int currentIndex = -1;
+
+	// guarded by the lock
+	private final Object lock = new Object();
+	private Thread [] decoders;
+	private int runningDecoders = 0;
+	/** projections which were decoded, but could not be put into the queue before the timeout */
+	private HashMap<Integer, Grid2D> parked = new HashMap<Integer, Grid2D>();
+	private int nextSequentialIndex = 0;
+	private boolean sourceExhausted = false;
+	private boolean closed = false;
+
+	/**
+	 * Creates a source which reads ahead at most 2 * CONRAD.getNumberOfThreads() projections. Use {@link #initStream(String)} to open a zip archive.
+	 */
+	public PrefetchingProjectionSource(){
+		this(2 * CONRAD.getNumberOfThreads());
+	}
+
+	/**
+	 * Creates a source which reads ahead at most capacity projections. Use {@link #initStream(String)} to open a zip archive.
+	 * @param capacity the maximal number of decoded projections that are held in memory
+	 */
+	public PrefetchingProjectionSource(int capacity){
+		this(capacity, CONRAD.getNumberOfThreads());
+	}
+
+	/**
+	 * Creates a source which reads ahead at most capacity projections with the given number of decoder threads.
+	 * Use {@link #initStream(String)} to open a zip archive.
+	 * @param capacity the maximal number of decoded projections that are held in memory
+	 * @param numberOfThreads the number of threads which decode the entries of a zip archive. Is limited to the capacity.
+	 */
+	public PrefetchingProjectionSource(int capacity, int numberOfThreads){
+		this.capacity = capacity;
+		this.numberOfThreads = Math.max(1, Math.min(capacity, numberOfThreads));
+	}
+
+	/**
+	 * Creates a source which reads the projections of the given, already initialized source ahead.
+	 * @param source the source
+	 * @param capacity the maximal number of decoded projections that are held in memory
+	 */
+	public PrefetchingProjectionSource(ProjectionSource source, int capacity){
+		this(capacity);
+		this.source = source;
+		start();
+	}
+
+	/**
+	 * Opens a zip archive as {@link ZipProjectionSource} and starts decoding. Other file types cause an IOException.
+	 * @param filename the name of the archive
+	 * @throws IOException if the archive cannot be read
+	 */
+	@Override
+	public void initStream(String filename) throws IOException {
+		if (!filename.toLowerCase().endsWith(".zip")) throw new IOException("PrefetchingProjectionSource: Not a zip file!");
+		close();
+		zipSource = new ZipProjectionSource();
+		zipSource.initStream(filename);
+		source = zipSource;
+		start();
+	}
+
+	/**
+	 * @return the time in milliseconds after which the background threads terminate, if the consumer does not take projections.
+	 */
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * @param idleTimeout the time in milliseconds after which the background threads terminate, if the consumer does not take projections.
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * @return the exception which ended the stream or null
+	 */
+	public Exception getError() {
+		return error;
+	}
+
+	/**
+	 * Starts the decoding. Is called by {@link #initStream(String)} and by {@link #PrefetchingProjectionSource(ProjectionSource, int)}.
+	 */
+	protected void start(){
+		queue = new BlockingProjectionQueue(capacity);
+		error = null;
+		errorIndex = Integer.MAX_VALUE;
+		currentIndex = -1;
+		nextEntry = new AtomicInteger();
+		synchronized (lock) {
+			parked.clear();
+			nextSequentialIndex = 0;
+			sourceExhausted = false;
+			closed = false;
+			startDecoders();
+		}
+	}
+
+	/**
+	 * @return true, if the projections are decoded by several threads with {@link #readProjection(int)}.
+	 * Otherwise, they are read in their order by one thread.
+	 */
+	protected boolean isRandomAccess(){
+		return zipSource != null && zipSource.isDICOMMultiFrameMode();
+	}
+
+	/**
+	 * @return the number of projections in random access mode
+	 */
+	protected int getNumberOfProjections(){
+		return zipSource.getNumberOfEntries();
+	}
+
+	/**
+	 * Decodes a projection in random access mode. Is called by several threads at the same time.
+	 * @param index the number of the projection
+	 * @return the projection
+	 * @throws IOException if the projection cannot be decoded
+	 */
+	protected Grid2D readProjection(int index) throws IOException {
+		return zipSource.readProjection(index);
+	}
+
+	private void startDecoders(){
+		if (isRandomAccess()) {
+			decoders = new Thread[numberOfThreads];
+			for (int i = 0; i < decoders.length; i++){
+				decoders[i] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						decodeEntries();
+					}
+				}, "PrefetchingProjectionSource decoder " + i);
+			}
+		} else {
+			decoders = new Thread[] {new Thread(new Runnable() {
+				@Override
+				public void run() {
+					readSequentially();
+				}
+			}, "PrefetchingProjectionSource reader")};
+		}
+		runningDecoders = decoders.length;
+		for (Thread decoder : decoders){
+			decoder.setDaemon(true);
+			decoder.start();
+		}
+	}
+
+	/**
+	 * Each decoder thread fetches the next entry, decodes it and puts it into the queue. The queue restores the order of the projections.
+	 * After an error, the entries before the broken one are still delivered, as they may have been claimed by other decoders already.
+	 */
+	private void decodeEntries(){
+		int numberOfEntries = getNumberOfProjections();
+		try {
+			for (int index = nextEntry.getAndIncrement(); index < numberOfEntries && index < errorIndex; index = nextEntry.getAndIncrement()){
+				Grid2D projection;
+				try {
+					projection = readProjection(index);
+				} catch (Exception e) {
+					fail(e, index);
+					break;
+				}
+				if (projection == null) {
+					fail(new IOException("Entry " + index + " contains no projection"), index);
+					break;
+				}
+				if (!queue.offer(projection, index, idleTimeout)){
+					park(projection, index);
+					break;
+				}
+			}
+		} catch (InterruptedException e) {
+			// closed
+		} finally {
+			decoderFinished();
+		}
+	}
+
+	private void readSequentially(){
+		try {
+			while (error == null){
+				Grid2D projection;
+				try {
+					projection = source.getNextProjection();
+				} catch (Exception e) {
+					synchronized (lock) {
+						fail(e, nextSequentialIndex);
+					}
+					break;
+				}
+				if (projection == null) {
+					synchronized (lock) {
+						sourceExhausted = true;
+					}
+					break;
+				}
+				int index;
+				synchronized (lock) {
+					index = nextSequentialIndex++;
+				}
+				if (!queue.offer(projection, index, idleTimeout)){
+					park(projection, index);
+					break;
+				}
+			}
+		} catch (InterruptedException e) {
+			// closed
+		} finally {
+			decoderFinished();
+		}
+	}
+
+	/**
+	 * Keeps the error of the first broken projection.
+	 */
+	private void fail(Exception e, int index){
+		synchronized (lock) {
+			if (index < errorIndex) {
+				errorIndex = index;
+				error = e;
+			}
+		}
+	}
+
+	private void park(Grid2D projection, int index){
+		synchronized (lock) {
+			parked.put(index, projection);
+		}
+	}
+
+	/**
+	 * The last decoder closes the queue. Hence, a waiting consumer wakes up and can resume the decoding, if the decoders were idle.
+	 */
+	private void decoderFinished(){
+		synchronized (lock) {
+			runningDecoders--;
+			if (runningDecoders == 0) {
+				queue.close();
+			}
+		}
+	}
+
+	/**
+	 * Restarts the decoding after the decoders terminated because of the idle timeout.
+	 * @return true, if the decoding was resumed
+	 */
+	private boolean resume() {
+		synchronized (lock) {
+			if (closed || runningDecoders > 0) return false;
+			// after an error, only the projections which were decoded before are delivered.
+			boolean remaining = (error == null) && (isRandomAccess() ? nextEntry.get() < getNumberOfProjections() : !sourceExhausted);
+			if (parked.isEmpty() && !remaining) return false;
+			queue.reopen();
+			for (Map.Entry<Integer, Grid2D> entry : parked.entrySet()){
+				// the queue may be full, but the calling consumer waits for the parked projections. Hence, they must not wait for it.
+				queue.putUnbounded(entry.getValue(), entry.getKey());
+			}
+			parked.clear();
+			if (remaining) {
+				startDecoders();
+			} else {
+				queue.close();
+			}
+			return true;
+		}
+	}
+
+	@Override
+	public synchronized void getNextProjection(IndividualImagePipelineFilteringTool tool) {
+		Grid2D grid = getNextProjection();
+		if (grid != null){
+			tool.setImageProcessor(grid);
+			tool.setImageIndex(getCurrentProjectionNumber());
+		} else {
+			tool.setImageProcessor(null);
+			tool.setImageIndex(-1);
+		}
+	}
+
+	@Override
+	public int getCurrentProjectionNumber() {
+		return currentIndex;
+	}
+
+	@Override
+	public synchronized Grid2D getNextProjection() {
+		if (queue == null) return null;
+		Grid2D projection;
+		try {
+			projection = queue.take();
+			while (projection == null && resume()) {
+				projection = queue.take();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		if (projection != null) {
+			currentIndex++;
+		} else if (error != null) {
+			System.err.println("PrefetchingProjectionSource: Error while reading projection " + (currentIndex + 1));
+			error.printStackTrace();
+		}
+		return projection;
+	}
+
+	/**
+	 * @return the number of projections which are decoded, but not yet taken
+	 */
+	public int getNumberOfPrefetchedProjections(){
+		return (queue == null) ? 0 : queue.size();
+	}
+
+	/**
+	 * Stops the background threads and closes the underlying source.
+	 * @throws IOException if the source cannot be closed
+	 */
+	public void close() throws IOException {
+		Thread [] running;
+		synchronized (lock) {
+			closed = true;
+			parked.clear();
+			running = decoders;
+			decoders = null;
+		}
+		if (running != null) {
+			for (Thread decoder : running){
+				decoder.interrupt();
+			}
+			for (Thread decoder : running){
+				try {
+					decoder.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+		if (source instanceof FileProjectionSource) {
+			((FileProjectionSource) source).close();
+		}
+	}
+
+	@Override
+	public String toString(){
+		return "PrefetchingProjectionSource";
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -10,10 +10,12 @@ import ij.io.FileInfo;
 import ij.io.TiffDecoder;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 
 import edu.stanford.rsl.conrad.data.numeric.Grid2D;
 
@@ -22,39 +24,51 @@ import edu.stanford.rsl.conrad.data.numeric.Grid2D;
  * Wrapper for a zip reader using imageJ. 
  * Do not use this file format in combination with tiff files, if you have big files. 
  * The tiff decoder wraps the stream into a RandomAccessStream which copies everything for later access. Use of this file format will double the memory usage for reading!
+ * <br><br>
+ * The archive is accessed with a ZipFile, i.e. it is opened only once and the entries can be read in arbitrary order and by several threads.
+ * In DICOM multi frame mode, i.e. one .dcm entry per projection, use {@link #readProjection(int)} or a {@link PrefetchingProjectionSource}
+ * to decode the entries concurrently.
  * @author akmaier
  *
  */
 public class ZipProjectionSource extends FileProjectionSource {
 
 	boolean DICOMMultiFrameMode = false;
-	ZipInputStream zis = null;
+	ZipFile zipFile = null;
+	ArrayList<ZipEntry> entries = null;
 	
 	public void initStream (String filename) throws IOException{
-		zis = new ZipInputStream(new FileInputStream(filename));
-		is = zis;
-		if (zis==null) {
-			throw new IOException("Could not read zip header");
+		zipFile = new ZipFile(filename);
+		entries = new ArrayList<ZipEntry>();
+		Enumeration<? extends ZipEntry> enumeration = zipFile.entries();
+		while (enumeration.hasMoreElements()){
+			ZipEntry entry = enumeration.nextElement();
+			if (!entry.isDirectory()) entries.add(entry);
 		}
-		ZipEntry entry = zis.getNextEntry();
-		if (entry==null) throw new IOException("Zip was empty");
+		if (entries.isEmpty()) {
+			zipFile.close();
+			throw new IOException("Zip was empty");
+		}
+		ZipEntry entry = entries.get(0);
 		String name = entry.getName();
+		InputStream header = zipFile.getInputStream(entry);
 		if (name.endsWith(".tif")) {
-			TiffDecoder td = new TiffDecoder(zis, name);
+			TiffDecoder td = new TiffDecoder(header, name);
 			if (IJ.debugMode) td.enableDebugging();
 			FileInfo [] info = td.getTiffInfo();
 			fi = info[0];
 		} else if (name.endsWith(".ima")) {
 			DicomProjectionSource dicomSource = new DicomProjectionSource();
-			dicomSource.initStream(zis);
+			dicomSource.initStream(header);
 			fi = dicomSource.fi;
 		} else if (name.endsWith(".dcm")) {
 			DICOMMultiFrameMode = true;
 			DicomProjectionSource dicomSource = new DicomProjectionSource();
-			dicomSource.initStream(zis);
+			dicomSource.initStream(header);
 			fi = dicomSource.fi;
 		} else {
-			zis.close();
+			header.close();
+			zipFile.close();
 			throw new IOException("No matching fileformat found in zip file");
 		}
 
@@ -67,32 +81,60 @@ public class ZipProjectionSource extends FileProjectionSource {
 		if (fi!=null && fi.width>0 && fi.height>0 && fi.offset>0) {
 			init();
 		} else {
+			header.close();
+			zipFile.close();
 			throw new IOException("Format does not match");
 		}
-		zis.close();
-		zis = new ZipInputStream(new FileInputStream(filename));
-		is = zis;
-		if(!DICOMMultiFrameMode) zis.getNextEntry();
+		header.close();
+		is = (DICOMMultiFrameMode) ? null : zipFile.getInputStream(entry);
 	}	
 
+	/**
+	 * Decodes the projection which is stored in the given entry in DICOM multi frame mode. The current projection number is not changed.
+	 * This method may be called by several threads at the same time.
+	 * @param index the index of the entry
+	 * @return the projection
+	 * @throws IOException if the entry cannot be decoded
+	 */
+	public Grid2D readProjection(int index) throws IOException {
+		if (!DICOMMultiFrameMode) throw new IOException("Random access is only possible in DICOM multi frame mode.");
+		InputStream entryStream = zipFile.getInputStream(entries.get(index));
+		try {
+			DicomProjectionSource dicomSource = new DicomProjectionSource();
+			dicomSource.initStream(entryStream);
+			return dicomSource.getNextProjection();
+		} finally {
+			entryStream.close();
+		}
+	}
+
+	/**
+	 * @return true, if each entry of the archive contains one projection as DICOM file.
+	 */
+	public boolean isDICOMMultiFrameMode() {
+		return DICOMMultiFrameMode;
+	}
+
+	/**
+	 * @return the number of files in the archive
+	 */
+	public int getNumberOfEntries(){
+		return entries.size();
+	}
+
 	@Override
 	public Grid2D getNextProjection(){
 		if (!DICOMMultiFrameMode){
 			return super.getNextProjection();
 		} else {
+			if (currentIndex + 1 >= entries.size()){
+				return null;
+			}
 			try {
-				ZipEntry entry = zis.getNextEntry();
-				if (entry == null){
-					zis.close();
-					return null;
-				}
-				DicomProjectionSource dicomSource = new DicomProjectionSource();
-				dicomSource.initStream(zis);
-				fi = dicomSource.fi;
-				Grid2D ip = dicomSource.getNextProjection();
+				Grid2D ip = readProjection(currentIndex + 1);
 				currentIndex++;
 				if (showProgress){
-					IJ.showProgress((0.0 + currentIndex) / fi.nImages);
+					IJ.showProgress((0.0 + currentIndex) / entries.size());
 				}
 				return ip;
 			} catch (IOException e1) {
@@ -101,5 +143,11 @@ public class ZipProjectionSource extends FileProjectionSource {
 			}
 		}
 	}
+
+	@Override
+	public void close() throws IOException{
+		if (is != null) is.close();
+		zipFile.close();
+	}
 	
 }
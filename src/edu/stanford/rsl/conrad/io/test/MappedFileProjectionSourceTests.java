@@ -0,0 +1,176 @@
+package edu.stanford.rsl.conrad.io.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+import edu.stanford.rsl.conrad.io.FileProjectionSource;
+import edu.stanford.rsl.conrad.io.MappedFileProjectionSource;
+import edu.stanford.rsl.conrad.io.NRRDProjectionSource;
+import edu.stanford.rsl.conrad.io.TiffProjectionSource;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.Prefs;
+import ij.io.FileSaver;
+import ij.process.FloatProcessor;
+
+/**
+ * Compares the projections of the MappedFileProjectionSource with the written pixels and with the stream based sources,
+ * for 16 bit and float data in both byte orders.
+ *
+ * @author akmaier
+ *
+ */
+public class MappedFileProjectionSourceTests {
+
+	private static final int width = 37;
+	private static final int height = 23;
+	private static final int numProjections = 4;
+
+	/**
+	 * Creates random projections. 16 bit data covers the full unsigned range.
+	 */
+	private static float [][] createPixels(boolean sixteenBit, long seed){
+		Random random = new Random(seed);
+		float [][] pixels = new float [numProjections][width * height];
+		for (int p = 0; p < numProjections; p++){
+			for (int i = 0; i < pixels[p].length; i++){
+				pixels[p][i] = (sixteenBit) ? random.nextInt(65536) : (float) (random.nextGaussian() * 1000);
+			}
+		}
+		return pixels;
+	}
+
+	private static File writeTiff(float [][] pixels, boolean sixteenBit, boolean littleEndian) throws IOException {
+		ImageStack stack = new ImageStack(width, height);
+		for (float [] projection : pixels){
+			FloatProcessor processor = new FloatProcessor(width, height, projection.clone(), null);
+			stack.addSlice("", (sixteenBit) ? processor.convertToShort(false) : processor);
+		}
+		File file = File.createTempFile("projections", ".tif");
+		boolean intelByteOrder = Prefs.intelByteOrder;
+		try {
+			Prefs.intelByteOrder = littleEndian;
+			if (!new FileSaver(new ImagePlus("projections", stack)).saveAsTiffStack(file.getAbsolutePath())) throw new IOException("Could not write " + file);
+		} finally {
+			Prefs.intelByteOrder = intelByteOrder;
+		}
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			// II for little endian, MM for big endian files.
+			assertEquals((littleEndian) ? 'I' : 'M', in.readByte());
+		} finally {
+			in.close();
+		}
+		return file;
+	}
+
+	private static File writeNrrd(float [][] pixels, boolean sixteenBit, boolean littleEndian) throws IOException {
+		String header = "NRRD0004\n"
+				+ "type: " + ((sixteenBit) ? "ushort" : "float") + "\n"
+				+ "dimension: 3\n"
+				+ "sizes: " + width + " " + height + " " + numProjections + "\n"
+				+ "endian: " + ((littleEndian) ? "little" : "big") + "\n"
+				+ "encoding: raw\n\n";
+		ByteBuffer data = ByteBuffer.allocate(numProjections * width * height * ((sixteenBit) ? 2 : 4));
+		data.order((littleEndian) ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+		for (float [] projection : pixels){
+			for (float value : projection){
+				if (sixteenBit) {
+					data.putShort((short) value);
+				} else {
+					data.putFloat(value);
+				}
+			}
+		}
+		File file = File.createTempFile("projections", ".nrrd");
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(header.getBytes("US-ASCII"));
+			out.write(data.array());
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Reads the file with the mapped and the stream based source and compares both with the written pixels.
+	 */
+	private static void assertRoundTrip(File file, FileProjectionSource reference, float [][] pixels) throws IOException {
+		MappedFileProjectionSource mapped = new MappedFileProjectionSource();
+		try {
+			mapped.initStream(file.getAbsolutePath());
+			reference.initStream(file.getAbsolutePath());
+			assertEquals(numProjections, mapped.getNumberOfProjections());
+			for (int p = 0; p < numProjections; p++){
+				Grid2D expected = reference.getNextProjection();
+				Grid2D actual = mapped.getNextProjection();
+				assertEquals(width, actual.getWidth());
+				assertEquals(height, actual.getHeight());
+				assertArrayEquals("projection " + p, pixels[p], expected.getBuffer(), 0);
+				assertArrayEquals("projection " + p, expected.getBuffer(), actual.getBuffer(), 0);
+			}
+			assertNull(mapped.getNextProjection());
+			// random access in reverse order, with recycled buffers.
+			for (int p = numProjections - 1; p >= 0; p--){
+				Grid2D projection = mapped.getProjection(p);
+				assertArrayEquals("projection " + p, pixels[p], projection.getBuffer(), 0);
+				mapped.recycle(projection);
+			}
+		} finally {
+			mapped.close();
+			reference.close();
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testTiff() throws IOException {
+		for (int type = 0; type < 2; type++){
+			boolean sixteenBit = type == 0;
+			for (int order = 0; order < 2; order++){
+				boolean littleEndian = order == 0;
+				float [][] pixels = createPixels(sixteenBit, (2 * type) + order);
+				assertRoundTrip(writeTiff(pixels, sixteenBit, littleEndian), new TiffProjectionSource(), pixels);
+			}
+		}
+	}
+
+	@Test
+	public void testNrrd() throws IOException {
+		for (int type = 0; type < 2; type++){
+			boolean sixteenBit = type == 0;
+			for (int order = 0; order < 2; order++){
+				boolean littleEndian = order == 0;
+				float [][] pixels = createPixels(sixteenBit, (2 * type) + order + 10);
+				File file = writeNrrd(pixels, sixteenBit, littleEndian);
+				if (sixteenBit) {
+					// the NRRD readers of CONRAD read ushort as signed data, which ImageJ shifts by 32768.
+					for (float [] projection : pixels){
+						for (int i = 0; i < projection.length; i++){
+							projection[i] = ((int) projection[i]) ^ 0x8000;
+						}
+					}
+				}
+				assertRoundTrip(file, new NRRDProjectionSource(), pixels);
+			}
+		}
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
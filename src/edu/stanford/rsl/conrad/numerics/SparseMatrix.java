@@ -0,0 +1,520 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.conrad.numerics;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+import edu.stanford.rsl.conrad.parallel.ParallelThreadExecutor;
+
+/**
+ * Sparse float matrix in compressed sparse row (CSR) format, e.g. the system matrix of a projector.
+ * <br><br>
+ * The non-zero entries of row r are values[rowPointers[r]] ... values[rowPointers[r + 1] - 1] in the columns given by columnIndices.
+ * The columns of a row are sorted. Matrices are immutable. The products with vectors are computed in parallel on the shared pool of the
+ * ParallelThreadExecutor. The product with the transposed matrix uses the transposed matrix in CSR format, which is created on first use.
+ * Hence, both products gather their results and do not depend on the scheduling.
+ * <br><br>
+ * Large matrices may be built in parallel with {@link #build(int, int, RowGenerator)} and stored in a binary file with {@link #save(File)}.
+ * Both stream the arrays through a small buffer, i.e. the file is not mapped and may be replaced while a loaded matrix is in use.
+ *
+ * @author akmaier
+ *
+ */
+public class SparseMatrix {
+
+	/**
+	 * "CNRDCSRM"
+	 */
+	private static final long magic = 0x434E52444353524DL;
+	private static final int version = 1;
+	private static final int headerSize = 24;
+	private static final int ioBufferSize = 1 << 20;
+
+	/**
+	 * Number of rows of a task of the parallel products.
+	 */
+	private static final int rowsPerTask = 256;
+
+	private final int rows;
+	private final int columns;
+	private final int [] rowPointers;
+	private final int [] columnIndices;
+	private final float [] values;
+	private SparseMatrix transposed;
+
+	/**
+	 * Computes the entries of the rows of a matrix. Used by {@link SparseMatrix#build(int, int, RowGenerator)}.
+	 * Implementations must be thread-safe, as rows are computed in parallel.
+	 */
+	public interface RowGenerator {
+
+		/**
+		 * Adds the entries of a row to the builder.
+		 * @param row the index of the row
+		 * @param builder the builder
+		 */
+		public void computeRow(int row, RowBuilder builder);
+
+	}
+
+	/**
+	 * Collects the entries of a single row. Entries of the same column are summed up.
+	 */
+	public static final class RowBuilder {
+
+		private final double [] dense;
+		private final boolean [] used;
+		private final int [] touched;
+		private int count;
+
+		private RowBuilder(int columns){
+			dense = new double [columns];
+			used = new boolean [columns];
+			touched = new int [columns];
+		}
+
+		/**
+		 * Adds a value to an entry of the row.
+		 * @param column the column
+		 * @param value the value
+		 */
+		public void add(int column, double value){
+			if (!used[column]) {
+				used[column] = true;
+				touched[count++] = column;
+			}
+			dense[column] += value;
+		}
+
+		/**
+		 * Stores the non-zero entries sorted by column and resets the builder.
+		 */
+		private void finish(int [][] columnIndices, float [][] values, int row){
+			Arrays.sort(touched, 0, count);
+			int nonZeros = 0;
+			for (int i = 0; i < count; i++){
+				if ((float) dense[touched[i]] != 0) nonZeros++;
+			}
+			int [] rowColumns = new int [nonZeros];
+			float [] rowValues = new float [nonZeros];
+			int n = 0;
+			for (int i = 0; i < count; i++){
+				int column = touched[i];
+				float value = (float) dense[column];
+				if (value != 0) {
+					rowColumns[n] = column;
+					rowValues[n] = value;
+					n++;
+				}
+				dense[column] = 0;
+				used[column] = false;
+			}
+			count = 0;
+			columnIndices[row] = rowColumns;
+			values[row] = rowValues;
+		}
+
+	}
+
+	/**
+	 * Creates a matrix from its CSR arrays. The arrays are not copied.
+	 * @param rows the number of rows
+	 * @param columns the number of columns
+	 * @param rowPointers the start of each row in columnIndices and values, followed by the number of non-zero entries
+	 * @param columnIndices the column of each non-zero entry. Sorted within each row.
+	 * @param values the value of each non-zero entry
+	 */
+	public SparseMatrix(int rows, int columns, int [] rowPointers, int [] columnIndices, float [] values){
+		if (rows < 0 || columns < 0 || rowPointers.length != rows + 1 || columnIndices.length != values.length
+				|| rowPointers[0] != 0 || rowPointers[rows] != values.length) {
+			throw new IllegalArgumentException("Inconsistent CSR arrays.");
+		}
+		for (int r = 0; r < rows; r++){
+			if (rowPointers[r + 1] < rowPointers[r]) throw new IllegalArgumentException("Row pointers must not decrease.");
+			for (int i = rowPointers[r]; i < rowPointers[r + 1]; i++){
+				if (columnIndices[i] < 0 || columnIndices[i] >= columns || (i > rowPointers[r] && columnIndices[i] <= columnIndices[i - 1])) {
+					throw new IllegalArgumentException("Invalid column index " + columnIndices[i] + " in row " + r);
+				}
+			}
+		}
+		this.rows = rows;
+		this.columns = columns;
+		this.rowPointers = rowPointers;
+		this.columnIndices = columnIndices;
+		this.values = values;
+	}
+
+	/**
+	 * Builds a matrix row by row. The rows are computed in parallel.
+	 * @param rows the number of rows
+	 * @param columns the number of columns
+	 * @param generator computes the entries of each row
+	 * @return the matrix
+	 */
+	public static SparseMatrix build(int rows, int columns, RowGenerator generator){
+		int [][] rowColumns = new int [rows][];
+		float [][] rowValues = new float [rows][];
+		final int length = columns;
+		ThreadLocal<RowBuilder> builders = new ThreadLocal<RowBuilder>(){
+			@Override
+			protected RowBuilder initialValue() {
+				return new RowBuilder(length);
+			}
+		};
+		execute(new BuildTask(generator, builders, rowColumns, rowValues, 0, rows));
+		int [] rowPointers = new int [rows + 1];
+		for (int r = 0; r < rows; r++){
+			rowPointers[r + 1] = rowPointers[r] + rowColumns[r].length;
+		}
+		int [] columnIndices = new int [rowPointers[rows]];
+		float [] values = new float [rowPointers[rows]];
+		for (int r = 0; r < rows; r++){
+			System.arraycopy(rowColumns[r], 0, columnIndices, rowPointers[r], rowColumns[r].length);
+			System.arraycopy(rowValues[r], 0, values, rowPointers[r], rowValues[r].length);
+			rowColumns[r] = null;
+			rowValues[r] = null;
+		}
+		return new SparseMatrix(rows, columns, rowPointers, columnIndices, values);
+	}
+
+	/**
+	 * Computes y = A x.
+	 * @param x the vector with one entry per column
+	 * @param y the vector for the result with one entry per row. Is overwritten.
+	 */
+	public void multiply(float [] x, float [] y){
+		if (x.length != columns || y.length != rows) throw new IllegalArgumentException("Vector lengths do not match the matrix size " + rows + "x" + columns);
+		execute(new ProductTask(this, x, y, 0, rows));
+	}
+
+	/**
+	 * Computes x = A^T y.
+	 * @param y the vector with one entry per row
+	 * @param x the vector for the result with one entry per column. Is overwritten.
+	 */
+	public void multiplyTransposed(float [] y, float [] x){
+		getTransposed().multiply(y, x);
+	}
+
+	/**
+	 * @return the transposed matrix. It is computed on the first call.
+	 */
+	public synchronized SparseMatrix getTransposed(){
+		if (transposed == null) {
+			int [] pointers = new int [columns + 1];
+			for (int i = 0; i < columnIndices.length; i++){
+				pointers[columnIndices[i] + 1]++;
+			}
+			for (int c = 0; c < columns; c++){
+				pointers[c + 1] += pointers[c];
+			}
+			int [] next = Arrays.copyOf(pointers, columns);
+			int [] rowIndices = new int [values.length];
+			float [] transposedValues = new float [values.length];
+			for (int r = 0; r < rows; r++){
+				for (int i = rowPointers[r]; i < rowPointers[r + 1]; i++){
+					int n = next[columnIndices[i]]++;
+					rowIndices[n] = r;
+					transposedValues[n] = values[i];
+				}
+			}
+			transposed = new SparseMatrix(columns, rows, pointers, rowIndices, transposedValues);
+			transposed.transposed = this;
+		}
+		return transposed;
+	}
+
+	/**
+	 * Returns the entry at the given position.
+	 * @param row the row
+	 * @param column the column
+	 * @return the value or 0 if the entry is not stored
+	 */
+	public float get(int row, int column){
+		int index = Arrays.binarySearch(columnIndices, rowPointers[row], rowPointers[row + 1], column);
+		return (index >= 0) ? values[index] : 0;
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * @return the number of columns
+	 */
+	public int getColumns() {
+		return columns;
+	}
+
+	/**
+	 * @return the number of stored entries
+	 */
+	public int getNumberOfNonZeros() {
+		return values.length;
+	}
+
+	/**
+	 * Writes the matrix in a binary format: magic, version, rows, columns, number of non-zero entries, row pointers, column indices and values.
+	 * The file is written to a temporary file first and renamed afterwards, such that readers never see incomplete files.
+	 * @param file the file
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save(File file) throws IOException {
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("Cannot create directory " + directory);
+		File temp = File.createTempFile("matrix", ".tmp", directory);
+		FileOutputStream out = new FileOutputStream(temp);
+		boolean written = false;
+		try {
+			FileChannel channel = out.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate(ioBufferSize);
+			buffer.putLong(magic);
+			buffer.putInt(version);
+			buffer.putInt(rows);
+			buffer.putInt(columns);
+			buffer.putInt(values.length);
+			write(channel, buffer, rowPointers);
+			write(channel, buffer, columnIndices);
+			write(channel, buffer, values);
+			flush(channel, buffer);
+			channel.force(true);
+			written = true;
+		} finally {
+			out.close();
+			if (!written) temp.delete();
+		}
+		if (file.exists() && !file.delete()) {
+			temp.delete();
+			throw new IOException("Cannot replace " + file);
+		}
+		if (!temp.renameTo(file)) {
+			temp.delete();
+			throw new IOException("Cannot rename " + temp + " to " + file);
+		}
+	}
+
+	/**
+	 * Reads a matrix which was written by {@link #save(File)}.
+	 * @param file the file
+	 * @return the matrix
+	 * @throws IOException if the file cannot be read or has an invalid format
+	 */
+	public static SparseMatrix load(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			if (size < headerSize) throw new IOException("Unknown format");
+			ByteBuffer buffer = ByteBuffer.allocate(ioBufferSize);
+			buffer.limit(0);
+			fill(channel, buffer);
+			if (buffer.getLong() != magic || buffer.getInt() != version) throw new IOException("Unknown format");
+			int rows = buffer.getInt();
+			int columns = buffer.getInt();
+			int nonZeros = buffer.getInt();
+			if (rows < 0 || nonZeros < 0 || size - headerSize != 4L * (rows + 1 + (2L * nonZeros))) throw new IOException("Invalid size");
+			int [] rowPointers = new int [rows + 1];
+			int [] columnIndices = new int [nonZeros];
+			float [] values = new float [nonZeros];
+			read(channel, buffer, rowPointers);
+			read(channel, buffer, columnIndices);
+			read(channel, buffer, values);
+			return new SparseMatrix(rows, columns, rowPointers, columnIndices, values);
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buffer, int [] data) throws IOException {
+		int offset = 0;
+		while (offset < data.length) {
+			if (buffer.remaining() < 4) flush(channel, buffer);
+			int n = Math.min(buffer.remaining() / 4, data.length - offset);
+			buffer.asIntBuffer().put(data, offset, n);
+			buffer.position(buffer.position() + (4 * n));
+			offset += n;
+		}
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buffer, float [] data) throws IOException {
+		int offset = 0;
+		while (offset < data.length) {
+			if (buffer.remaining() < 4) flush(channel, buffer);
+			int n = Math.min(buffer.remaining() / 4, data.length - offset);
+			buffer.asFloatBuffer().put(data, offset, n);
+			buffer.position(buffer.position() + (4 * n));
+			offset += n;
+		}
+	}
+
+	/**
+	 * Writes the content of the buffer and clears it.
+	 */
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) channel.write(buffer);
+		buffer.clear();
+	}
+
+	private static void read(FileChannel channel, ByteBuffer buffer, int [] data) throws IOException {
+		int offset = 0;
+		while (offset < data.length) {
+			if (buffer.remaining() < 4) fill(channel, buffer);
+			int n = Math.min(buffer.remaining() / 4, data.length - offset);
+			buffer.asIntBuffer().get(data, offset, n);
+			buffer.position(buffer.position() + (4 * n));
+			offset += n;
+		}
+	}
+
+	private static void read(FileChannel channel, ByteBuffer buffer, float [] data) throws IOException {
+		int offset = 0;
+		while (offset < data.length) {
+			if (buffer.remaining() < 4) fill(channel, buffer);
+			int n = Math.min(buffer.remaining() / 4, data.length - offset);
+			buffer.asFloatBuffer().get(data, offset, n);
+			buffer.position(buffer.position() + (4 * n));
+			offset += n;
+		}
+	}
+
+	/**
+	 * Keeps the unread content of the buffer and fills the rest from the channel.
+	 */
+	private static void fill(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.compact();
+		while (buffer.hasRemaining() && channel.read(buffer) >= 0);
+		buffer.flip();
+		if (buffer.remaining() < 4) throw new EOFException();
+	}
+
+	private static void execute(RowTask task){
+		if (task.last - task.first <= rowsPerTask || !ParallelThreadExecutor.parallel) {
+			task.direct();
+		} else {
+			ParallelThreadExecutor.invoke(task);
+		}
+	}
+
+	/**
+	 * Processes the rows [first, last). Large ranges are split and processed in parallel.
+	 */
+	private static abstract class RowTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 5130377905346017357L;
+		protected final int first, last;
+
+		RowTask(int first, int last){
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		protected void compute() {
+			if (last - first <= rowsPerTask) {
+				direct();
+			} else {
+				int mid = (first + last) >>> 1;
+				invokeAll(split(first, mid), split(mid, last));
+			}
+		}
+
+		abstract RowTask split(int first, int last);
+
+		abstract void direct();
+
+	}
+
+	/**
+	 * Computes the rows [first, last) of y = A x.
+	 */
+	private static class ProductTask extends RowTask {
+
+		private static final long serialVersionUID = 2206012945839585412L;
+		private final SparseMatrix matrix;
+		private final float [] x;
+		private final float [] y;
+
+		ProductTask(SparseMatrix matrix, float [] x, float [] y, int first, int last){
+			super(first, last);
+			this.matrix = matrix;
+			this.x = x;
+			this.y = y;
+		}
+
+		@Override
+		RowTask split(int first, int last) {
+			return new ProductTask(matrix, x, y, first, last);
+		}
+
+		@Override
+		void direct(){
+			int [] rowPointers = matrix.rowPointers;
+			int [] columnIndices = matrix.columnIndices;
+			float [] values = matrix.values;
+			for (int r = first; r < last; r++){
+				double sum = 0;
+				for (int i = rowPointers[r]; i < rowPointers[r + 1]; i++){
+					sum += (double) values[i] * x[columnIndices[i]];
+				}
+				y[r] = (float) sum;
+			}
+		}
+
+	}
+
+	/**
+	 * Computes the rows [first, last) of a matrix. Each thread reuses its RowBuilder.
+	 */
+	private static class BuildTask extends RowTask {
+
+		private static final long serialVersionUID = -5403424411371466370L;
+		private final RowGenerator generator;
+		private final ThreadLocal<RowBuilder> builders;
+		private final int [][] rowColumns;
+		private final float [][] rowValues;
+
+		BuildTask(RowGenerator generator, ThreadLocal<RowBuilder> builders, int [][] rowColumns, float [][] rowValues, int first, int last){
+			super(first, last);
+			this.generator = generator;
+			this.builders = builders;
+			this.rowColumns = rowColumns;
+			this.rowValues = rowValues;
+		}
+
+		@Override
+		RowTask split(int first, int last) {
+			return new BuildTask(generator, builders, rowColumns, rowValues, first, last);
+		}
+
+		@Override
+		void direct(){
+			RowBuilder builder = builders.get();
+			for (int r = first; r < last; r++){
+				generator.computeRow(r, builder);
+				builder.finish(rowColumns, rowValues, r);
+			}
+		}
+
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
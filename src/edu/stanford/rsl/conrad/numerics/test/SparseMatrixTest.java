@@ -0,0 +1,129 @@
+package edu.stanford.rsl.conrad.numerics.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.stanford.rsl.conrad.numerics.SparseMatrix;
+
+/**
+ * Tests the products and the file format of the SparseMatrix.
+ *
+ * @author akmaier
+ *
+ */
+public class SparseMatrixTest {
+
+	/**
+	 * Random matrix with about a tenth of the entries set. Rows are large enough to be split into several tasks.
+	 */
+	private static SparseMatrix createMatrix(final int rows, final int columns){
+		return SparseMatrix.build(rows, columns, new SparseMatrix.RowGenerator() {
+			@Override
+			public void computeRow(int row, SparseMatrix.RowBuilder builder) {
+				Random random = new Random(row);
+				for (int n = 0; n < columns / 10; n++){
+					// duplicate columns are summed up.
+					builder.add(random.nextInt(columns), random.nextGaussian());
+				}
+			}
+		});
+	}
+
+	private static float [] createVector(int length, long seed){
+		Random random = new Random(seed);
+		float [] vector = new float [length];
+		for (int i = 0; i < length; i++){
+			vector[i] = (float) random.nextGaussian();
+		}
+		return vector;
+	}
+
+	@Test
+	public void testSaveAndLoad() throws IOException {
+		// larger than the buffer of the file access.
+		SparseMatrix matrix = createMatrix(2000, 800);
+		File file = File.createTempFile("matrix", ".csr");
+		try {
+			matrix.save(file);
+			// saving again replaces the file.
+			matrix.save(file);
+			SparseMatrix loaded = SparseMatrix.load(file);
+			assertEquals(matrix.getRows(), loaded.getRows());
+			assertEquals(matrix.getColumns(), loaded.getColumns());
+			assertEquals(matrix.getNumberOfNonZeros(), loaded.getNumberOfNonZeros());
+			for (int r = 0; r < matrix.getRows(); r++){
+				for (int c = 0; c < matrix.getColumns(); c++){
+					assertEquals(matrix.get(r, c), loaded.get(r, c), 0);
+				}
+			}
+			float [] x = createVector(matrix.getColumns(), 1);
+			float [] expected = new float [matrix.getRows()];
+			float [] actual = new float [matrix.getRows()];
+			matrix.multiply(x, expected);
+			loaded.multiply(x, actual);
+			assertArrayEquals(expected, actual, 0);
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedFile() throws IOException {
+		File file = File.createTempFile("matrix", ".csr");
+		try {
+			createMatrix(50, 40).save(file);
+			RandomAccessFile out = new RandomAccessFile(file, "rw");
+			try {
+				out.setLength(out.length() - 4);
+			} finally {
+				out.close();
+			}
+			SparseMatrix.load(file);
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testTransposedIsAdjoint(){
+		SparseMatrix matrix = createMatrix(900, 400);
+		float [] x = createVector(matrix.getColumns(), 2);
+		float [] y = createVector(matrix.getRows(), 3);
+		float [] ax = new float [matrix.getRows()];
+		float [] aty = new float [matrix.getColumns()];
+		matrix.multiply(x, ax);
+		matrix.multiplyTransposed(y, aty);
+		double left = 0;
+		double norm = 0;
+		for (int r = 0; r < ax.length; r++){
+			left += (double) ax[r] * y[r];
+			norm += Math.abs((double) ax[r] * y[r]);
+		}
+		double right = 0;
+		for (int c = 0; c < aty.length; c++){
+			right += (double) x[c] * aty[c];
+		}
+		assertTrue(norm > 0);
+		// both products are rounded to float.
+		assertEquals(left, right, 1e-6 * norm);
+		SparseMatrix transposed = matrix.getTransposed();
+		for (int r = 0; r < matrix.getRows(); r++){
+			for (int c = 0; c < matrix.getColumns(); c++){
+				assertEquals(matrix.get(r, c), transposed.get(c, r), 0);
+			}
+		}
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -14,7 +14,7 @@ import java.io.InputStream;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Map;
 import java.util.Random;
 
 import org.junit.Assert;
@@ -226,7 +226,7 @@ public class TestOpenCL {
 		int height = 480;
 		CLBuffer<FloatBuffer> screenBuffer = generateScreenBuffer(context, device, width, height);
 
-		HashMap<String, Integer> priorityMap = XCatScene.getSplinePriorityLUT();
+		Map<String, Integer> priorityMap = XCatScene.getSplinePriorityLUT();
 		CLBuffer<IntBuffer> priorities = context.createIntBuffer(heartScene.getVariants().size() +1, Mem.READ_ONLY);
 		priorities.getBuffer().put(0);
 		for (int i = 0; i < heartScene.getVariants().size();i++){
@@ -683,7 +683,7 @@ public class TestOpenCL {
 		}
 		CLBuffer<FloatBuffer> screenBuffer = generateScreenBuffer(context, device, width, height);
 
-		HashMap<String, Integer> priorityMap = XCatScene.getSplinePriorityLUT();
+		Map<String, Integer> priorityMap = XCatScene.getSplinePriorityLUT();
 		CLBuffer<IntBuffer> priorities = context.createIntBuffer(heartScene.getVariants().size() +1, Mem.READ_ONLY);
 		priorities.getBuffer().put(0);
 		for (int i = 0; i < heartScene.getVariants().size();i++){
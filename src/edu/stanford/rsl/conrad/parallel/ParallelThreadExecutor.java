@@ -3,31 +3,90 @@ package edu.stanford.rsl.conrad.parallel;
 import ij.IJ;
 
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import edu.stanford.rsl.conrad.utils.CONRAD;
+import edu.stanford.rsl.conrad.utils.Configuration;
+import edu.stanford.rsl.conrad.utils.RegKeys;
 
 
 /**
- * Class to execute multiple ParallelizeableRunnables in parallel. The Executor will dispatch
- * as many ParallelizedRunnables as there are CPUs in the machine on which the code is executed in one batch.
- * Then it will wait until all processes in the current batch are done. As soon as this is the case a new batch
- * of processes is started. This is done until all ParallelizableRunnables are processed.
- * 
+ * Class to execute multiple ParallelizeableRunnables in parallel. All executors share one process-wide work-stealing
+ * pool (ForkJoinPool) with as many worker threads as CONRAD.getNumberOfThreads() returns. Hence, no threads are created per call.
+ * If the number of threads is changed in the registry, a new pool is created on the next call and the old pool is shut down
+ * after its tasks are done. The pool threads are daemon threads, i.e. they do not keep the JVM alive.
+ * <br><br>
+ * Executors may be used concurrently and may be nested: If execute() is called from a runnable that is already running in
+ * the pool, the new runnables are forked into the pool and the calling worker helps to process them until all are done.
+ * <br><br>
+ * Runnables that wait for other threads (e.g. the consumers of a projection stream) should wait using
+ * {@link #managedBlock(ForkJoinPool.ManagedBlocker)}. The pool then compensates the blocked worker with an additional thread
+ * while it waits, and the waiting time is not counted as work.
+ * <br><br>
+ * The static methods {@link #getQueuedTaskCount()}, {@link #getActiveThreadCount()} and {@link #getUtilization()}
+ * report the state of the shared pool.
+ *
  * @author Andreas Maier
  *
  */
 public class ParallelThreadExecutor {
 
+	private static ForkJoinPool pool;
+	private static String poolThreadLimit;
+	private static long poolCreationTime;
+	private static final AtomicLong completedTasks = new AtomicLong();
+	private static final AtomicLong busyNanos = new AtomicLong();
+	/** time which the current thread spent in {@link #managedBlock(ForkJoinPool.ManagedBlocker)} */
+	private static final ThreadLocal<long[]> blockedNanos = new ThreadLocal<long[]>(){
+		@Override
+		protected long[] initialValue() {
+			return new long[1];
+		}
+	};
+
 	private boolean showStatus;
 	ParallelizableRunnable [] runnables;
 	boolean debug = false;
 	private CountDownLatch latch;
+	/**
+	 * If set to false, all runnables are executed sequentially in the calling thread. This is useful for debugging.
+	 */
 	public static boolean parallel = true;
 
+	/**
+	 * Wraps a ParallelizableRunnable as task of the pool.
+	 */
+	private static class RunnableTask extends RecursiveAction {
+
+		private static final long serialVersionUID = -3006478163484983573L;
+		private final ParallelizableRunnable runnable;
+
+		RunnableTask(ParallelizableRunnable runnable){
+			this.runnable = runnable;
+		}
+
+		@Override
+		protected void compute() {
+			long [] blocked = blockedNanos.get();
+			long start = System.nanoTime();
+			long blockedBefore = blocked[0];
+			try {
+				runnable.run();
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			} finally {
+				// waiting time in managedBlock is not counted as work.
+				busyNanos.addAndGet(System.nanoTime() - start - (blocked[0] - blockedBefore));
+				completedTasks.incrementAndGet();
+			}
+		}
+	}
+
 	public void setShowStatus(boolean showStatus) {
 		this.showStatus = showStatus;
 	}
@@ -50,19 +109,84 @@ public class ParallelThreadExecutor {
 		latch = new CountDownLatch(latchSize);
 	}
 
+	/**
+	 * Returns the shared pool. The pool is created on the first call and is replaced if the thread limit in the registry
+	 * was changed since. The replaced pool finishes the tasks that were already submitted.
+	 * @return the pool
+	 * @see RegKeys#MAX_THREADS
+	 */
+	public static synchronized ForkJoinPool getPool(){
+		String threadLimit = getThreadLimit();
+		if (pool != null && !equal(threadLimit, poolThreadLimit)){
+			int parallelism = CONRAD.getNumberOfThreads();
+			if (parallelism != pool.getParallelism()){
+				pool.shutdown();
+				pool = null;
+			} else {
+				poolThreadLimit = threadLimit;
+			}
+		}
+		if (pool == null){
+			pool = new ForkJoinPool(CONRAD.getNumberOfThreads());
+			poolThreadLimit = threadLimit;
+			poolCreationTime = System.nanoTime();
+			busyNanos.set(0);
+		}
+		return pool;
+	}
+
+	private static String getThreadLimit(){
+		Configuration config = Configuration.getGlobalConfiguration();
+		if (config == null || config.getRegistry() == null) return null;
+		return config.getRegistryEntry(RegKeys.MAX_THREADS);
+	}
+
+	private static boolean equal(String a, String b){
+		return (a == null) ? b == null : a.equals(b);
+	}
+
+	/**
+	 * Runs the task on the shared pool and returns its result. If the calling thread is already a worker of a pool,
+	 * it runs the task itself and forks the sub tasks into its pool. Hence, the method may be nested.
+	 * @param task the task
+	 * @return the result of the task
+	 */
+	public static <T> T invoke(ForkJoinTask<T> task){
+		if (Thread.currentThread() instanceof ForkJoinWorkerThread) return task.invoke();
+		return getPool().invoke(task);
+	}
+
+	/**
+	 * Waits using the given blocker. If the calling thread is a worker of a pool, the pool starts an additional worker while the thread
+	 * waits, such that the number of running workers stays constant. The waiting time is not counted as work in {@link #getUtilization()}.
+	 * Threads that are not workers of a pool simply wait.
+	 * @param blocker the blocker
+	 * @throws InterruptedException if the thread is interrupted while waiting.
+	 * @see ForkJoinPool#managedBlock(ForkJoinPool.ManagedBlocker)
+	 */
+	public static void managedBlock(ForkJoinPool.ManagedBlocker blocker) throws InterruptedException {
+		if (!(Thread.currentThread() instanceof ForkJoinWorkerThread)){
+			while (!blocker.isReleasable() && !blocker.block());
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			ForkJoinPool.managedBlock(blocker);
+		} finally {
+			blockedNanos.get()[0] += System.nanoTime() - start;
+		}
+	}
+
 	/**
 	 * This method will start the processing.
 	 * @throws InterruptedException may occur.
 	 */
 	public void execute() throws InterruptedException{
-		int numThreads = CONRAD.getNumberOfThreads();
-		if (showStatus) CONRAD.log("Number of used processors: " + numThreads);
-		if (numThreads > 7) if (showStatus) CONRAD.log("I like this machine ... ");
-		Future <?> [] futures = new Future<?>[runnables.length];
-		if (debug) System.out.println("Starting new batch ...");
-		ExecutorService e = Executors.newFixedThreadPool(numThreads);
+		ForkJoinPool pool = getPool();
+		if (showStatus) CONRAD.log("Number of used processors: " + pool.getParallelism());
+		if (pool.getParallelism() > 7) if (showStatus) CONRAD.log("I like this machine ... ");
 		// initialize the parallel processing.
-		long latchSize = 0; 
+		long latchSize = 0;
 		if(latch == null) {
 			latch = new CountDownLatch(runnables.length);
 			latchSize = runnables.length;
@@ -70,27 +194,34 @@ public class ParallelThreadExecutor {
 			latchSize = latch.getCount();
 		}
 		if (parallel) {
-			parallel = false;
-			// invoke the threads
+			RunnableTask [] tasks = new RunnableTask[runnables.length];
 			for (int i = 0; i < runnables.length; i++){
 				runnables[i].setLatch(latch);
-				futures[i] = e.submit(runnables[i]);
+				tasks[i] = new RunnableTask(runnables[i]);
 			}
-			// wait for all jobs to be done
-			while (latch.getCount() > 0){
-				if (showStatus){
-					int i = (int) (latchSize - latch.getCount());
-					if (i < runnables.length){
-						if (runnables[i] instanceof NamedParallelizableRunnable)IJ.showStatus("Running " + ((NamedParallelizableRunnable)runnables[i]).getProcessName());
-					} 
-					IJ.showProgress((i + 0.0) / latchSize);
+			if (Thread.currentThread() instanceof ForkJoinWorkerThread) {
+				// nested call: fork into the pool and help until all are done.
+				if (debug) System.out.println("Forking nested batch ...");
+				ForkJoinTask.invokeAll(tasks);
+			} else {
+				if (debug) System.out.println("Starting new batch ...");
+				for (int i = 0; i < tasks.length; i++){
+					pool.execute(tasks[i]);
+				}
+				// wait for all jobs to be done
+				while (latch.getCount() > 0 && !isDone(tasks)){
+					if (showStatus){
+						int i = (int) (latchSize - latch.getCount());
+						if (i < runnables.length){
+							if (runnables[i] instanceof NamedParallelizableRunnable)IJ.showStatus("Running " + ((NamedParallelizableRunnable)runnables[i]).getProcessName());
+						}
+						IJ.showProgress((i + 0.0) / latchSize);
+					}
+					// block until all jobs are done. The timeout is only required to update the status.
+					latch.await(100, TimeUnit.MILLISECONDS);
 				}
-				Thread.sleep(CONRAD.INVERSE_SPEEDUP);
 			}
-			e.awaitTermination(1000, TimeUnit.MILLISECONDS);//e.shutdownNow();
-			e = null;
 			if (showStatus) IJ.showProgress(1.0);
-			parallel = true;
 		} else {
 			//System.out.println("Debug mode. Invoking sequentially.");
 			for (int i = 0; i < runnables.length; i++){
@@ -101,9 +232,65 @@ public class ParallelThreadExecutor {
 			//System.out.println("All done.");
 		}
 	}
-		
+
+	private static boolean isDone(ForkJoinTask<?> [] tasks){
+		for (int i = 0; i < tasks.length; i++){
+			if (!tasks[i].isDone()) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of tasks that are waiting in the queues of the shared pool.
+	 * @return the number of queued tasks
+	 */
+	public static synchronized long getQueuedTaskCount(){
+		if (pool == null) return 0;
+		return pool.getQueuedTaskCount() + pool.getQueuedSubmissionCount();
+	}
+
+	/**
+	 * Returns the number of workers of the shared pool that are currently running tasks.
+	 * @return the number of active threads
+	 */
+	public static synchronized int getActiveThreadCount(){
+		if (pool == null) return 0;
+		return pool.getActiveThreadCount();
+	}
+
+	/**
+	 * Returns the number of tasks that were completed since the pool was created.
+	 * @return the number of tasks
+	 */
+	public static long getCompletedTaskCount(){
+		return completedTasks.get();
+	}
+
+	/**
+	 * Returns the average utilization of the shared pool since its creation, i.e. the time that was spent in
+	 * non-blocking runnables divided by the available worker time.
+	 * @return the utilization in [0, 1]
+	 */
+	public static synchronized double getUtilization(){
+		if (pool == null) return 0;
+		double available = (double) (System.nanoTime() - poolCreationTime) * pool.getParallelism();
+		return Math.min(1.0, busyNanos.get() / available);
+	}
+
+	/**
+	 * Returns a summary of the state of the shared pool.
+	 * @return the summary
+	 */
+	public static synchronized String getPoolStatistics(){
+		if (pool == null) return "ParallelThreadExecutor: pool not started";
+		return "ParallelThreadExecutor: parallelism " + pool.getParallelism() + ", threads " + pool.getPoolSize()
+				+ ", active " + pool.getActiveThreadCount() + ", queued " + getQueuedTaskCount()
+				+ ", steals " + pool.getStealCount() + ", completed " + getCompletedTaskCount()
+				+ ", utilization " + getUtilization();
+	}
+
 }
 /*
  * Copyright (C) 2010-2014 Andreas Maier
  * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
-*/
\ No newline at end of file
+*/
@@ -0,0 +1,152 @@
+package edu.stanford.rsl.conrad.parallel.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+import edu.stanford.rsl.conrad.parallel.ParallelThreadExecutor;
+import edu.stanford.rsl.conrad.parallel.ParallelizableRunnable;
+import edu.stanford.rsl.conrad.parallel.SimpleParallelThread;
+import edu.stanford.rsl.conrad.pipeline.BlockingProjectionQueue;
+import edu.stanford.rsl.conrad.utils.Configuration;
+import edu.stanford.rsl.conrad.utils.RegKeys;
+
+/**
+ * Tests the execution of runnables on the shared pool of the ParallelThreadExecutor.
+ *
+ * @author akmaier
+ *
+ */
+public class ParallelThreadExecutorTests {
+
+	private static void setThreadLimit(int threads){
+		Configuration config = new Configuration();
+		config.setRegistry(new HashMap<String, String>());
+		config.setRegistryEntry(RegKeys.MAX_THREADS, "" + threads);
+		Configuration.setGlobalConfiguration(config);
+	}
+
+	@After
+	public void resetThreadLimit(){
+		Configuration.setGlobalConfiguration(null);
+	}
+
+	@Test
+	public void testExecute() throws Exception {
+		final AtomicInteger sum = new AtomicInteger();
+		ParallelizableRunnable [] runnables = new ParallelizableRunnable[20];
+		for (int i = 0; i < runnables.length; i++){
+			runnables[i] = new SimpleParallelThread(i) {
+				@Override
+				public void execute() {
+					sum.addAndGet(threadNum);
+				}
+			};
+		}
+		long completed = ParallelThreadExecutor.getCompletedTaskCount();
+		new ParallelThreadExecutor(runnables).execute();
+		assertEquals(190, sum.get());
+		assertEquals(completed + 20, ParallelThreadExecutor.getCompletedTaskCount());
+	}
+
+	@Test(timeout = 20000)
+	public void testNestedExecute() throws Exception {
+		final AtomicInteger count = new AtomicInteger();
+		ParallelizableRunnable [] outer = new ParallelizableRunnable[8];
+		for (int i = 0; i < outer.length; i++){
+			outer[i] = new SimpleParallelThread(i) {
+				@Override
+				public void execute() {
+					ParallelizableRunnable [] inner = new ParallelizableRunnable[8];
+					for (int j = 0; j < inner.length; j++){
+						inner[j] = new SimpleParallelThread(j) {
+							@Override
+							public void execute() {
+								count.incrementAndGet();
+							}
+						};
+					}
+					try {
+						new ParallelThreadExecutor(inner).execute();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			};
+		}
+		new ParallelThreadExecutor(outer).execute();
+		assertEquals(64, count.get());
+	}
+
+	/**
+	 * The consumers are started first and wait for the producers. With two workers, the producers can only run because the
+	 * waiting consumers are compensated by the pool.
+	 */
+	@Test(timeout = 20000)
+	public void testWaitingConsumersDoNotBlockThePool() throws Exception {
+		setThreadLimit(2);
+		final int numProjections = 16;
+		final BlockingProjectionQueue queue = new BlockingProjectionQueue(2);
+		final AtomicInteger taken = new AtomicInteger();
+		final AtomicInteger producersDone = new AtomicInteger();
+		ParallelizableRunnable [] runnables = new ParallelizableRunnable[4];
+		for (int i = 0; i < 2; i++){
+			runnables[i] = new SimpleParallelThread(i) {
+				@Override
+				public void execute() {
+					try {
+						while (queue.take() != null) taken.incrementAndGet();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			};
+		}
+		for (int i = 0; i < 2; i++){
+			runnables[2 + i] = new SimpleParallelThread(i) {
+				@Override
+				public void execute() {
+					try {
+						for (int p = threadNum; p < numProjections; p += 2){
+							queue.put(new Grid2D(2, 2), p);
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					if (producersDone.incrementAndGet() == 2) queue.close();
+				}
+			};
+		}
+		new ParallelThreadExecutor(runnables).execute();
+		assertEquals(numProjections, taken.get());
+		assertEquals(Math.min(2, Runtime.getRuntime().availableProcessors()), ParallelThreadExecutor.getPool().getParallelism());
+	}
+
+	@Test
+	public void testPoolFollowsThreadLimit(){
+		setThreadLimit(1);
+		ForkJoinPool pool = ParallelThreadExecutor.getPool();
+		assertEquals(1, pool.getParallelism());
+		assertSame(pool, ParallelThreadExecutor.getPool());
+		if (Runtime.getRuntime().availableProcessors() > 1){
+			setThreadLimit(2);
+			ForkJoinPool changed = ParallelThreadExecutor.getPool();
+			assertNotSame(pool, changed);
+			assertEquals(2, changed.getParallelism());
+			assertSame(changed, ParallelThreadExecutor.getPool());
+		}
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -2,9 +2,9 @@ package edu.stanford.rsl.conrad.phantom.renderer;
 
 import edu.stanford.rsl.conrad.data.numeric.Grid2D;
 import edu.stanford.rsl.conrad.phantom.AnalyticPhantom;
+import edu.stanford.rsl.conrad.pipeline.BlockingProjectionQueue;
 import edu.stanford.rsl.conrad.utils.CONRAD;
 import edu.stanford.rsl.conrad.utils.Configuration;
-import edu.stanford.rsl.conrad.utils.ImageGridBuffer;
 
 
 /**
@@ -17,7 +17,7 @@ public class AnalyticPhantomProjector extends PhantomRenderer {
 
 	AnalyticPhantom phantom;
 	protected int stackSize;
-	ImageGridBuffer buffer;
+	BlockingProjectionQueue buffer;
 	
 	protected void init(){
 		if (!init) {
@@ -30,29 +30,24 @@ public class AnalyticPhantomProjector extends PhantomRenderer {
 	public Grid2D getNextProjection() {
 		init();
 		Grid2D proc  = null;
-		while (true) {
-			if (buffer.get(projectionNumber) != null) {
-				proc = buffer.get(projectionNumber);
-				projectionNumber ++;
-				buffer.remove(projectionNumber);
-				break;
-			} else {
-				if (projectionNumber >= stackSize){
-					break;
-				}
-				try {
-					Thread.sleep(CONRAD.INVERSE_SPEEDUP);
-				} catch (InterruptedException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-			}
+		if (projectionNumber >= stackSize - 1){
+			return proc;
 		}
+		try {
+			// blocks until the projection was rendered.
+			proc = buffer.take();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			Thread.currentThread().interrupt();
+		}
+		if (proc != null) projectionNumber ++;
 		return proc;
 	}
 
 	@Override
 	public void createPhantom() {
+		// No projections are rendered yet. Closing the queue ends the stream, such that getNextProjection() does not block forever.
+		if (buffer != null) buffer.close();
 	}
 
 	@Override
@@ -74,7 +69,7 @@ public class AnalyticPhantomProjector extends PhantomRenderer {
 	@Override
 	public void configure() throws Exception {
 		projectionNumber = -1;
-		buffer = new ImageGridBuffer();
+		buffer = new BlockingProjectionQueue(4 * CONRAD.getNumberOfThreads());
 		super.configured = true;
 	}
 
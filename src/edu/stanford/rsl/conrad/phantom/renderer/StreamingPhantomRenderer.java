@@ -88,10 +88,11 @@ public abstract class StreamingPhantomRenderer extends PhantomRenderer {
 		Grid2D proc  = null;
 		if (projectionNumber < dimz -1) {
 			projectionNumber ++;
-			while (proc == null){
-				proc = buffer.get(projectionNumber);
+			try {
+				proc = buffer.take(projectionNumber);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
 			}
-			buffer.remove(projectionNumber);
 
 		}
 		return proc;
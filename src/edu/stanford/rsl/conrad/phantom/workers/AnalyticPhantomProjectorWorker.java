@@ -11,7 +11,6 @@ import edu.stanford.rsl.conrad.data.numeric.Grid2D;
 import edu.stanford.rsl.conrad.geometry.Projection;
 import edu.stanford.rsl.conrad.geometry.shapes.simple.Edge;
 import edu.stanford.rsl.conrad.geometry.shapes.simple.PointND;
-import edu.stanford.rsl.conrad.geometry.shapes.simple.StraightLine;
 import edu.stanford.rsl.conrad.geometry.trajectories.Trajectory;
 import edu.stanford.rsl.conrad.geometry.transforms.Translation;
 import edu.stanford.rsl.conrad.numerics.SimpleOperators;
@@ -135,9 +134,7 @@ public class AnalyticPhantomProjectorWorker extends SliceWorker {
 		Grid2D slice = detector.createDetectorGrid(geom.getDetectorWidth(), geom.getDetectorHeight(), projection);
 		getRayTracer().setScene(phantomScene);
 		// Second rule of optimization is: Optimize later.
-		PointND raySource = new PointND(0,0,0);
-		raySource.setCoordinates(projection.computeCameraCenter());
-		StraightLine castLine = new StraightLine(raySource,new SimpleVector(0,0,0));
+		double [] raySource = projection.computeCameraCenter().copyAsDoubleArray();
 
 		SimpleVector centerPixDir = null;
 		if (accurate){
@@ -153,32 +150,34 @@ public class AnalyticPhantomProjectorWorker extends SliceWorker {
 
 
 		ArrayList<PhysicalObject> fallBackBackground = new ArrayList<PhysicalObject> (1);
-		SimpleVector pixel = new SimpleVector(0, 0);
+		// the ray directions of a detector row are computed at once and passed to the ray tracer as primitive arrays.
+		double [] directions = new double [3 * trajectory.getDetectorWidth()];
 		boolean negate = false;
 		for(int y = 0; y < trajectory.getDetectorHeight(); y++){
-			for(int x = 0; x < trajectory.getDetectorWidth();x++){
-				pixel.setElementValue(0, x-xcorr);
-				pixel.setElementValue(1, y-ycorr);
-				SimpleVector dir = projection.computeRayDirection(pixel);
-				if ((y==0) && (x==0)) {
-					//Check that ray direction is towards origin.
-					double max = 0;
-					int index = 0;
-					for (int i=0; i < 3; i++){
-						if (Math.abs(dir.getElement(i)) > max) {
-							max = Math.abs(dir.getElement(i));
-							index = i;
-						}
+			projection.computeRayDirections(-xcorr, y-ycorr, trajectory.getDetectorWidth(), 1, directions);
+			if (y==0) {
+				//Check that ray direction is towards origin.
+				double max = 0;
+				int index = 0;
+				for (int i=0; i < 3; i++){
+					if (Math.abs(directions[i]) > max) {
+						max = Math.abs(directions[i]);
+						index = i;
 					}
-					double t = - raySource.get(index) / dir.getElement(index);
-					if (t < 0) negate = true; 
 				}
-				if (negate) dir.negate();
-				castLine.setDirection(dir);
-				
-				ArrayList<PhysicalObject> segments = getRayTracer().castRay(castLine);
+				double t = - raySource[index] / directions[index];
+				if (t < 0) negate = true; 
+			}
+			if (negate) {
+				for (int i = 0; i < directions.length; i++){
+					directions[i] = -directions[i];
+				}
+			}
+			for(int x = 0; x < trajectory.getDetectorWidth();x++){
+				ArrayList<PhysicalObject> segments = getRayTracer().castRay(raySource, directions, 3*x);
 				if (accurate){
-					double dirCosine = SimpleOperators.multiplyInnerProd(centerPixDir,dir);
+					double dirCosine = (centerPixDir.getElement(0) * directions[3*x]) + (centerPixDir.getElement(1) * directions[(3*x)+1])
+							+ (centerPixDir.getElement(2) * directions[(3*x)+2]);
 					length = trajectory.getSourceToDetectorDistance()/dirCosine;					
 				}
 
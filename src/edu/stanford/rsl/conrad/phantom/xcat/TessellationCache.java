@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.conrad.phantom.xcat;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.stanford.rsl.conrad.geometry.AbstractShape;
+import edu.stanford.rsl.conrad.geometry.shapes.simple.PointND;
+import edu.stanford.rsl.conrad.geometry.splines.SurfaceBSpline;
+
+/**
+ * Cache for the meshes of the static splines of an XCatScene.
+ * <br><br>
+ * Static splines do not change over time. Hence, they are tessellated only once and the mesh is reused for all time points.
+ * As the renderers transform the shapes of a scene in place, each call returns a copy of the cached mesh. A cached mesh
+ * is discarded if the sampling changes or if the control points of the spline were replaced, e.g. by applyTransform().
+ * <br><br>
+ * The meshes of time variant splines are not cached here. TimeVariantSurfaceBSpline keeps the sampled raster points of its
+ * time frames instead, such that only the interpolation in time is computed for each time point.
+ *
+ * @author akmaier
+ *
+ */
+public class TessellationCache {
+
+	private final ConcurrentHashMap<SurfaceBSpline, CachedMesh> meshes = new ConcurrentHashMap<SurfaceBSpline, CachedMesh>();
+
+	/**
+	 * Returns a copy of the mesh of the given spline. The spline is tessellated only if it is not in the cache yet.
+	 * @param spline the static spline
+	 * @param samplingU number of points in u direction
+	 * @param samplingV number of points in v direction
+	 * @return the mesh
+	 */
+	public AbstractShape tessellateMesh(SurfaceBSpline spline, int samplingU, int samplingV){
+		CachedMesh cached = meshes.get(spline);
+		if (cached == null || !cached.isValidFor(spline, samplingU, samplingV)) {
+			cached = new CachedMesh(spline, samplingU, samplingV);
+			meshes.put(spline, cached);
+		}
+		return cached.mesh.clone();
+	}
+
+	/**
+	 * @return the number of cached meshes
+	 */
+	public int size(){
+		return meshes.size();
+	}
+
+	/**
+	 * Removes all meshes from the cache.
+	 */
+	public void clear(){
+		meshes.clear();
+	}
+
+	private static class CachedMesh {
+
+		private final ArrayList<PointND> controlPoints;
+		private final int samplingU, samplingV;
+		private final AbstractShape mesh;
+
+		CachedMesh(SurfaceBSpline spline, int samplingU, int samplingV){
+			this.controlPoints = spline.getControlPoints();
+			this.samplingU = samplingU;
+			this.samplingV = samplingV;
+			this.mesh = spline.tessellateMesh(samplingU, samplingV);
+		}
+
+		boolean isValidFor(SurfaceBSpline spline, int samplingU, int samplingV){
+			return this.controlPoints == spline.getControlPoints() && this.samplingU == samplingU && this.samplingV == samplingV;
+		}
+
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
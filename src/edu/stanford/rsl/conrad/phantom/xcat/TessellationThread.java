@@ -22,6 +22,7 @@ public class TessellationThread extends ParallelThread {
 	private Object tessellationObject;
 	private double time;
 	private CompoundShape scene;
+	private TessellationCache cache;
 
 	/**
 	 * @return the mesh
@@ -35,6 +36,17 @@ public class TessellationThread extends ParallelThread {
 		this.time = time;
 	}
 
+	/**
+	 * Creates a thread which takes the meshes of static splines from the cache.
+	 * @param tessellationObject the synchronized iterator over the splines
+	 * @param time the time
+	 * @param cache the cache for the meshes of static splines
+	 */
+	public TessellationThread (Object tessellationObject, double time, TessellationCache cache){
+		this(tessellationObject, time);
+		this.cache = cache;
+	}
+
 	@SuppressWarnings("rawtypes")
 	@Override
 	public void execute(){
@@ -47,7 +59,11 @@ public class TessellationThread extends ParallelThread {
 				int elementCountV = (int)TessellationUtil.getSamplingV((AbstractSurface) tObject);
 				if (tObject instanceof SurfaceBSpline){
 					SurfaceBSpline spline = (SurfaceBSpline)tObject;
-					scene.add(spline.tessellateMesh(elementCountU, elementCountV));
+					if (cache != null) {
+						scene.add(cache.tessellateMesh(spline, elementCountU, elementCountV));
+					} else {
+						scene.add(spline.tessellateMesh(elementCountU, elementCountV));
+					}
 				}
 				if (tObject instanceof TimeVariantSurfaceBSpline){
 					TimeVariantSurfaceBSpline spline = (TimeVariantSurfaceBSpline)tObject;
@@ -59,7 +59,7 @@ public class WholeBodyScene extends XCatScene {
 
 		Iterator<?> iter = Collections.synchronizedList(list).iterator();
 		for (int splineNum = 0; splineNum < numberOfThreads; splineNum++) {
-			threads[splineNum] = new TessellationThread(iter, warper.warpTime(time));
+			threads[splineNum] = new TessellationThread(iter, warper.warpTime(time), getTessellationCache());
 		}
 		ParallelThreadExecutor executor = new ParallelThreadExecutor(threads);
 		try {
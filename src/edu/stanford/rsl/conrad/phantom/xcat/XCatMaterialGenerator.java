@@ -4,7 +4,10 @@
 */
 package edu.stanford.rsl.conrad.phantom.xcat;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import edu.stanford.rsl.conrad.physics.materials.Material;
 import edu.stanford.rsl.conrad.physics.materials.database.MaterialsDB;
@@ -13,14 +16,46 @@ import edu.stanford.rsl.conrad.utils.RegKeys;
 
 public abstract class XCatMaterialGenerator {
 
+	/**
+	 * Materials which were created before, keyed by the registry state and the material name.
+	 */
+	private static final ConcurrentHashMap<String, Material> materials = new ConcurrentHashMap<String, Material>();
 
+	/**
+	 * The density LUT and the registry state for which it was created.
+	 */
+	private static volatile Object [] densityLUT;
 
 	/**
-	 * Get the material from its name.
+	 * Get the material from its name. The materials are interned, i.e. the same instance is returned for every call with the
+	 * same name as long as the XCat registry entries do not change. Hence, the returned material must not be modified.
 	 * @param name the name
 	 * @return the material
 	 */
 	public static Material generateFromMaterialName(String name){
+		String key = getRegistryState() + "|" + name;
+		Material material = materials.get(key);
+		if (material == null) {
+			material = createMaterial(name);
+			Material other = materials.putIfAbsent(key, material);
+			if (other != null) material = other;
+		}
+		return material;
+	}
+
+	/**
+	 * Returns the values of the registry entries which influence the XCat materials and look-up tables.
+	 * @return the values as string
+	 */
+	static String getRegistryState(){
+		Configuration config = Configuration.getGlobalConfiguration();
+		HashMap<String, String> registry = (config != null) ? config.getRegistry() : null;
+		if (registry == null) return "no registry";
+		return registry.get(RegKeys.XCAT_CONTRAST_LEFT_VENTRICLE) + "|" + registry.get(RegKeys.XCAT_USE_MRI_CONTRAST_SETTINGS) + "|"
+				+ registry.get(RegKeys.XCAT_ONLY_LEFT_ARTERY_TREE_CONTRASTED) + "|" + registry.get(RegKeys.XCAT_VENTRICLE_SELECTION);
+	}
+
+	private static Material createMaterial(String name){
 		Double value = getMaterialDensityLUT().get(name);
 		if (value == null) System.out.println("Error value was null: " + name);
 		Material material = MaterialsDB.getMaterialWithName("Water");
@@ -44,10 +79,21 @@ public abstract class XCatMaterialGenerator {
 	}
 
 	/**
-	 * The material-name lookup table. 
+	 * The material-name lookup table. The table is created once per state of the registry and must not be modified.
 	 * @return the material-name lut
 	 */
-	public static HashMap<String, Double> getMaterialDensityLUT(){
+	@SuppressWarnings("unchecked")
+	public static Map<String, Double> getMaterialDensityLUT(){
+		String state = getRegistryState();
+		Object [] lut = densityLUT;
+		if (lut == null || !lut[0].equals(state)) {
+			lut = new Object [] {state, Collections.unmodifiableMap(createMaterialDensityLUT())};
+			densityLUT = lut;
+		}
+		return (Map<String, Double>) lut[1];
+	}
+
+	private static HashMap<String, Double> createMaterialDensityLUT(){
 		HashMap<String, Double> map = new HashMap<String, Double>();
 		map.put("Body (water)", 1.0);
 		map.put("Adipose (fat)", 0.920000);
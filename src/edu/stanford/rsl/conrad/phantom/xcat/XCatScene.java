@@ -2,7 +2,9 @@ package edu.stanford.rsl.conrad.phantom.xcat;
 
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
 
 import edu.stanford.rsl.conrad.geometry.AbstractShape;
 import edu.stanford.rsl.conrad.geometry.motion.timewarp.TimeWarper;
@@ -63,6 +65,16 @@ public abstract class XCatScene extends AnalyticPhantom4D {
 
 	protected ArrayList<TimeVariantSurfaceBSpline> variants = new ArrayList<TimeVariantSurfaceBSpline>();
 
+	/**
+	 * The look-up tables of the current settings. They are rebuilt only if the settings change.
+	 */
+	private static volatile SplineLUTs splineLUTs;
+
+	/**
+	 * The meshes of the static splines. They do not change over time.
+	 */
+	private transient TessellationCache tessellationCache;
+
 	
 	/**
 	 * returns the geometric definition of XCat. Only returns the splines that are rendered in the respective scene.
@@ -106,6 +118,15 @@ public abstract class XCatScene extends AnalyticPhantom4D {
 		return tessellateScene(time);
 	}
 
+	/**
+	 * Returns the cache for the meshes of the static splines of this scene.
+	 * @return the cache
+	 */
+	protected synchronized TessellationCache getTessellationCache(){
+		if (tessellationCache == null) tessellationCache = new TessellationCache();
+		return tessellationCache;
+	}
+
 
 	/**
 	 * Adds a new shape to the scene. The shape is compared against the look-up table of known shapes to determine its material.
@@ -115,7 +136,7 @@ public abstract class XCatScene extends AnalyticPhantom4D {
 	 */
 	protected void add(PrioritizableScene phantom, AbstractShape shape, String name){
 		if (shape != null){
-			if (getSplineNameMaterialNameLUT().keySet().contains(name)){
+			if (getSplineNameMaterialNameLUT().containsKey(name)){
 				PhysicalObject obj = new PhysicalObject();
 				obj.setNameString(name);
 				obj.setMaterial(generateFromSplineName(name));
@@ -152,9 +173,48 @@ public abstract class XCatScene extends AnalyticPhantom4D {
 	/**
 	 * Look up table for the priorites of the different shapes.
 	 * Shapes with a higher priority are drawn over shapes with lower priority.
+	 * The table is shared and must not be modified.
 	 * @return the prioirity lut
 	 */
-	public static HashMap <String, Integer> getSplinePriorityLUT(){
+	public static Map <String, Integer> getSplinePriorityLUT(){
+		return getSplineLUTs().priorities;
+	}
+
+	/**
+	 * The lookup table for materials according to the spline names.
+	 * The table is shared and must not be modified.
+	 * @return the lut
+	 */
+	public static Map <String, String> getSplineNameMaterialNameLUT(){
+		return getSplineLUTs().materials;
+	}
+
+	private static SplineLUTs getSplineLUTs(){
+		String state = maleGender + "|" + supine + "|" + renderMarrow + "|" + renderArmMarrow + "|" + XCatMaterialGenerator.getRegistryState();
+		SplineLUTs luts = splineLUTs;
+		if (luts == null || !luts.state.equals(state)) {
+			luts = new SplineLUTs(state, createSplinePriorityLUT(), createSplineNameMaterialNameLUT());
+			splineLUTs = luts;
+		}
+		return luts;
+	}
+
+	/**
+	 * Immutable look-up tables together with the settings for which they were created.
+	 */
+	private static class SplineLUTs {
+		final String state;
+		final Map<String, Integer> priorities;
+		final Map<String, String> materials;
+
+		SplineLUTs(String state, HashMap<String, Integer> priorities, HashMap<String, String> materials){
+			this.state = state;
+			this.priorities = Collections.unmodifiableMap(priorities);
+			this.materials = Collections.unmodifiableMap(materials);
+		}
+	}
+
+	private static HashMap <String, Integer> createSplinePriorityLUT(){
 		HashMap<String, Integer> map = new HashMap<String, Integer>();
 		map.put("*****BODY******", 0);
 		map.put("**RightArm", 0);
@@ -885,11 +945,7 @@ public abstract class XCatScene extends AnalyticPhantom4D {
 		return map;
 	}
 
-	/**
-	 * The lookup table for materials according to the spline names.
-	 * @return the lut
-	 */
-	public static HashMap <String, String> getSplineNameMaterialNameLUT(){
+	private static HashMap <String, String> createSplineNameMaterialNameLUT(){
 		HashMap<String, String> map = new HashMap<String, String>();
 		map.put("*****BODY******", "Body (water)");
 		map.put("**RightArm", "Body (water)");
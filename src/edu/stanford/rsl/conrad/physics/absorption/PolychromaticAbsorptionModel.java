@@ -5,7 +5,9 @@
 package edu.stanford.rsl.conrad.physics.absorption;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import edu.stanford.rsl.conrad.geometry.shapes.simple.Edge;
 import edu.stanford.rsl.conrad.physics.PhysicalObject;
@@ -18,6 +20,9 @@ import edu.stanford.rsl.conrad.utils.StatisticsUtil;
 
 /**
  * <p>Polychromatic Absorption Model with dynamic spectrum support. <br> This class models the absorption of an X-Ray spectrum by well-defined materials. </p>
+ * <p>Without noise, the intensity of a ray depends only on the path lengths through the materials along the ray. Rays through at most
+ * {@link #getMaximalLookupTableDimensions()} different materials are therefore evaluated using a {@link SpectralResponseTable} per set of materials
+ * and energy range instead of summing over all energy bins. The tables are built lazily and are discarded if the spectrum changes.</p>
  * 
  * @author Rotimi X Ojo, Andreas Maier
  */
@@ -34,6 +39,11 @@ public class PolychromaticAbsorptionModel extends AbsorptionModel {
 	protected double [] energies;
 	protected double [] photonFlux;
 	protected HashMap<Material, double []> attenuationCoefficientsMap;
+
+	private double maximalLookupTableError = 1.0e-4;
+	private int maximalLookupTableDimensions = 3;
+	private transient ConcurrentHashMap<Material, Integer> materialIds;
+	private transient ConcurrentHashMap<Long, ConcurrentHashMap<Long, SpectralResponseTable>> responseTables;
 	
 
 
@@ -81,6 +91,15 @@ public class PolychromaticAbsorptionModel extends AbsorptionModel {
 		}
 		// precompute absorption spectra for all known materials in database:
 		attenuationCoefficientsMap = MaterialUtils.loadAttenuationCoefficients(energies, att);
+		clearLookupTables();
+	}
+
+	/**
+	 * Discards all spectral response tables. They are rebuilt on demand.
+	 */
+	public synchronized void clearLookupTables(){
+		materialIds = new ConcurrentHashMap<Material, Integer>();
+		responseTables = new ConcurrentHashMap<Long, ConcurrentHashMap<Long, SpectralResponseTable>>();
 	}
 
 	/**
@@ -146,6 +165,10 @@ public class PolychromaticAbsorptionModel extends AbsorptionModel {
 		int end = convertToIndex(endEnergy);
 		if (start < 0) start =0;
 		if (end >= photonFlux.length) end = photonFlux.length-1;
+		if (!noise && maximalLookupTableDimensions > 0) {
+			double value = lookupIntensity(segments, start, end, energyIntegrating);
+			if (value >= 0) return value;
+		}
 		double lens [] = new double[segments.size()];
 		for (int j = 0; j < segments.size(); j++){
 			lens[j] = ((Edge)segments.get(j).getShape()).getLength();
@@ -183,6 +206,136 @@ public class PolychromaticAbsorptionModel extends AbsorptionModel {
 		return intensity;
 	}
 
+	/**
+	 * Evaluates the intensity using the spectral response table of the materials along the ray.
+	 * @return the intensity or -1 if the ray passes through too many materials.
+	 */
+	private double lookupIntensity(ArrayList<PhysicalObject> segments, int start, int end, boolean energyIntegrating){
+		int dimensions = 0;
+		int [] ids = new int [maximalLookupTableDimensions];
+		Material [] materials = new Material[maximalLookupTableDimensions];
+		double [] lengths = new double [maximalLookupTableDimensions];
+		for (int j = 0; j < segments.size(); j++){
+			PhysicalObject o = segments.get(j);
+			Material material = o.getMaterial();
+			int id = getMaterialId(material);
+			int i = 0;
+			while (i < dimensions && ids[i] != id) i++;
+			if (i == dimensions) {
+				if (dimensions == maximalLookupTableDimensions) return -1;
+				ids[i] = id;
+				materials[i] = material;
+				dimensions++;
+			}
+			lengths[i] += ((Edge)o.getShape()).getLength();
+		}
+		if (dimensions == 0) return getPhotonFluxIntegral(start, end, energyIntegrating);
+		// sort by id, such that each set of materials has a unique table.
+		for (int i = 1; i < dimensions; i++){
+			for (int k = i; k > 0 && ids[k - 1] > ids[k]; k--){
+				int id = ids[k]; ids[k] = ids[k - 1]; ids[k - 1] = id;
+				Material material = materials[k]; materials[k] = materials[k - 1]; materials[k - 1] = material;
+				double length = lengths[k]; lengths[k] = lengths[k - 1]; lengths[k - 1] = length;
+			}
+		}
+		long key = 0;
+		for (int i = 0; i < dimensions; i++){
+			key = (key << 16) | ids[i];
+		}
+		SpectralResponseTable table = getLookupTable(start, end, energyIntegrating, key, materials, dimensions);
+		if (dimensions < lengths.length) lengths = Arrays.copyOf(lengths, dimensions);
+		return table.getIntensity(lengths);
+	}
+
+	private int getMaterialId(Material material){
+		ConcurrentHashMap<Material, Integer> ids = materialIds;
+		if (ids == null) {
+			clearLookupTables();
+			ids = materialIds;
+		}
+		Integer id = ids.get(material);
+		if (id == null) {
+			synchronized (ids) {
+				id = ids.get(material);
+				if (id == null) {
+					// 0 is reserved to mark unused slots in the keys.
+					id = ids.size() + 1;
+					if (id >= (1 << 16)) throw new RuntimeException("PolychromaticAbsorptionModel: too many materials.");
+					ids.put(material, id);
+				}
+			}
+		}
+		return id;
+	}
+
+	private SpectralResponseTable getLookupTable(int start, int end, boolean energyIntegrating, long key, Material [] materials, int dimensions){
+		Long range = Long.valueOf((((long) start) << 32) | (end << 1) | (energyIntegrating ? 1 : 0));
+		ConcurrentHashMap<Long, SpectralResponseTable> tables = responseTables.get(range);
+		if (tables == null) {
+			tables = new ConcurrentHashMap<Long, SpectralResponseTable>();
+			ConcurrentHashMap<Long, SpectralResponseTable> other = responseTables.putIfAbsent(range, tables);
+			if (other != null) tables = other;
+		}
+		Long boxedKey = Long.valueOf(key);
+		SpectralResponseTable table = tables.get(boxedKey);
+		if (table == null) {
+			double [] weights = new double [end - start + 1];
+			for (int e = start; e <= end; e++){
+				weights[e - start] = (energyIntegrating) ? photonFlux[e] * energies[e] : photonFlux[e];
+			}
+			double [][] attenuation = new double [dimensions][];
+			for (int i = 0; i < dimensions; i++){
+				attenuation[i] = Arrays.copyOfRange(getAttenuationCoefficients(materials[i]), start, end + 1);
+			}
+			table = new SpectralResponseTable(weights, attenuation, maximalLookupTableError);
+			SpectralResponseTable other = tables.putIfAbsent(boxedKey, table);
+			if (other != null) table = other;
+		}
+		return table;
+	}
+
+	private double getPhotonFluxIntegral(int start, int end, boolean energyIntegrating){
+		double sum = 0;
+		for (int e = start; e <= end; e++){
+			sum += (energyIntegrating) ? photonFlux[e] * energies[e] : photonFlux[e];
+		}
+		return sum;
+	}
+
+	/**
+	 * @return the maximal error of the line integral which is introduced by the spectral response tables
+	 */
+	public double getMaximalLookupTableError() {
+		return maximalLookupTableError;
+	}
+
+	/**
+	 * Sets the maximal error of the line integral -log(I/I0) which is introduced by the interpolation in the spectral response tables.
+	 * Smaller errors require denser tables.
+	 * @param maximalLookupTableError the maximal error
+	 */
+	public void setMaximalLookupTableError(double maximalLookupTableError) {
+		this.maximalLookupTableError = maximalLookupTableError;
+		clearLookupTables();
+	}
+
+	/**
+	 * @return the maximal number of different materials along a ray for which a spectral response table is used.
+	 */
+	public int getMaximalLookupTableDimensions() {
+		return maximalLookupTableDimensions;
+	}
+
+	/**
+	 * Sets the maximal number of different materials along a ray for which a spectral response table is used. Rays through more materials
+	 * are evaluated exactly. 0 disables the tables. At most 3 are supported.
+	 * @param maximalLookupTableDimensions the number of materials
+	 */
+	public void setMaximalLookupTableDimensions(int maximalLookupTableDimensions) {
+		if (maximalLookupTableDimensions < 0 || maximalLookupTableDimensions > 3) throw new IllegalArgumentException("Lookup tables support 0 to 3 materials.");
+		this.maximalLookupTableDimensions = maximalLookupTableDimensions;
+	}
+
 	/**
 	 * 
 	 * @return the total intensity of the input spectrum
@@ -220,6 +373,7 @@ public class PolychromaticAbsorptionModel extends AbsorptionModel {
 	 */
 	public void setAtt(AttenuationType att) {
 		this.att = att;
+		clearLookupTables();
 	}
 
 
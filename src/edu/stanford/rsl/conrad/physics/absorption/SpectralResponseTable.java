@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.conrad.physics.absorption;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lookup table for the response of a polychromatic spectrum to a fixed set of materials.
+ * <br><br>
+ * If a ray passes through the materials 0 ... d-1 with the path lengths L_0 ... L_{d-1}, the detected intensity is
+ * <br>
+ * I(L) = sum_e w_e exp(-sum_i mu_{i,e} L_i / 10),
+ * <br>
+ * where w_e is the (energy weighted) photon flux in energy bin e and mu_{i,e} is the attenuation coefficient of material i in [1/cm].
+ * I(L) depends only on the vector of path lengths in [mm]. The table stores the line integral f(L) = -log(I(L) / I(0)), which is almost
+ * linear in L, on a regular grid and interpolates it multi-linearly. Hence, the cost of a lookup does not depend on the number of energy bins.
+ * <br><br>
+ * The error of the multi-linear interpolation is bounded by sum_i h_i^2 / 8 * max |d^2 f / d L_i^2|. The second derivative of f is the variance
+ * of the attenuation coefficient under the hardened spectrum divided by 100. The grid spacing h_i of each material is chosen from the maximal variance
+ * along the axis of the material such that the error of the line integral stays below the requested maximal error.
+ * <br><br>
+ * The grid is not bounded. Its nodes are computed lazily in blocks of 16^d nodes when they are needed for the first time. Hence, only the
+ * part of the path length space which is actually covered by the rays of a scene is ever computed. The table may be shared by any number of threads.
+ *
+ * @author akmaier
+ *
+ */
+public class SpectralResponseTable {
+
+	/**
+	 * log2 of the number of nodes of a block in each dimension.
+	 */
+	private static final int blockBits = 4;
+	private static final int blockSize = 1 << blockBits;
+	private static final int blockMask = blockSize - 1;
+
+	/**
+	 * Block coordinates are packed into a long key with this number of bits per dimension.
+	 */
+	private static final int keyBits = 21;
+	private static final long maxBlockCoordinate = (1L << keyBits) - 1;
+
+	/**
+	 * Maximal path length along which the curvature is examined [mm].
+	 */
+	private static final double curvatureRange = 1000;
+	private static final double curvatureStep = 0.5;
+	private static final double maximalSpacing = 1000;
+
+	private final int dimensions;
+	private final double [] weights;
+	private final double [][] attenuation;
+	private final double totalWeight;
+	private final double logTotalWeight;
+	private final double [] spacing;
+	private final double [] inverseSpacing;
+	private final ConcurrentHashMap<Long, double[]> blocks = new ConcurrentHashMap<Long, double[]>();
+	private final AtomicInteger computedNodes = new AtomicInteger();
+
+	/**
+	 * Creates a new table.
+	 * @param weights the photon flux per energy bin, multiplied with the energy for energy integrating detectors
+	 * @param attenuation the attenuation coefficients in [1/cm] as attenuation[material][energy bin]
+	 * @param maximalError the maximal error of the interpolated line integral -log(I(L) / I(0))
+	 */
+	public SpectralResponseTable(double [] weights, double [][] attenuation, double maximalError){
+		if (!(maximalError > 0)) throw new IllegalArgumentException("The maximal error must be positive.");
+		this.dimensions = attenuation.length;
+		if (dimensions * keyBits > 63) throw new IllegalArgumentException("At most " + (63 / keyBits) + " materials are supported.");
+		this.weights = weights.clone();
+		this.attenuation = new double[dimensions][];
+		for (int i = 0; i < dimensions; i++){
+			if (attenuation[i].length != weights.length) throw new IllegalArgumentException("Number of energy bins does not match for material " + i);
+			this.attenuation[i] = attenuation[i].clone();
+		}
+		double sum = 0;
+		for (int e = 0; e < weights.length; e++){
+			sum += weights[e];
+		}
+		totalWeight = sum;
+		logTotalWeight = Math.log(sum);
+		spacing = new double[dimensions];
+		inverseSpacing = new double[dimensions];
+		for (int i = 0; i < dimensions; i++){
+			double curvature = getMaximalCurvature(i);
+			// share the error budget equally between the dimensions: h^2 / 8 * curvature <= maximalError / d
+			double h = (curvature > 0) ? Math.sqrt(8 * maximalError / (dimensions * curvature)) : maximalSpacing;
+			spacing[i] = Math.min(h, maximalSpacing);
+			inverseSpacing[i] = 1.0 / spacing[i];
+		}
+	}
+
+	/**
+	 * Computes the maximal second derivative of the line integral along the axis of the given material.
+	 */
+	private double getMaximalCurvature(int material){
+		double [] mu = attenuation[material];
+		double max = 0;
+		for (double length = 0; length <= curvatureRange; length += curvatureStep){
+			double minExponent = Double.POSITIVE_INFINITY;
+			for (int e = 0; e < weights.length; e++){
+				if (weights[e] > 0) minExponent = Math.min(minExponent, mu[e] * length / 10);
+			}
+			double norm = 0, mean = 0, square = 0;
+			for (int e = 0; e < weights.length; e++){
+				if (weights[e] <= 0) continue;
+				double p = weights[e] * Math.exp(minExponent - (mu[e] * length / 10));
+				norm += p;
+				mean += p * mu[e];
+				square += p * mu[e] * mu[e];
+			}
+			if (norm == 0) break;
+			mean /= norm;
+			double variance = (square / norm) - (mean * mean);
+			max = Math.max(max, variance / 100);
+		}
+		return max;
+	}
+
+	/**
+	 * Computes the line integral -log(I(L) / I(0)) exactly. The sum over the energy bins is evaluated relative to
+	 * the smallest exponent, such that long paths do not underflow.
+	 * @param pathLengths the path lengths in [mm] for each material
+	 * @return the line integral
+	 */
+	public double computeLineIntegral(double [] pathLengths){
+		double minExponent = Double.POSITIVE_INFINITY;
+		double [] exponents = new double [weights.length];
+		for (int e = 0; e < weights.length; e++){
+			double sum = 0;
+			for (int i = 0; i < dimensions; i++){
+				sum += attenuation[i][e] * pathLengths[i];
+			}
+			exponents[e] = sum / 10;
+			if (weights[e] > 0) minExponent = Math.min(minExponent, exponents[e]);
+		}
+		double sum = 0;
+		for (int e = 0; e < weights.length; e++){
+			if (weights[e] > 0) sum += weights[e] * Math.exp(minExponent - exponents[e]);
+		}
+		return minExponent - Math.log(sum) + logTotalWeight;
+	}
+
+	/**
+	 * Returns the interpolated line integral -log(I(L) / I(0)).
+	 * @param pathLengths the path lengths in [mm] for each material. Negative lengths are treated as 0.
+	 * @return the line integral
+	 */
+	public double getLineIntegral(double [] pathLengths){
+		int [] node = new int [dimensions];
+		double [] fraction = new double [dimensions];
+		boolean insideBlock = true;
+		for (int i = 0; i < dimensions; i++){
+			double position = Math.max(0, pathLengths[i]) * inverseSpacing[i];
+			// the upper corner of the cell has to be inside the range of the keys as well.
+			if (position >= (maxBlockCoordinate << blockBits) - 1) {
+				return computeLineIntegral(pathLengths);
+			}
+			node[i] = (int) position;
+			fraction[i] = position - node[i];
+			if ((node[i] & blockMask) == blockMask) insideBlock = false;
+		}
+		// all corners of the cell are in the same block in most cases.
+		double [] block = insideBlock ? getBlock(node) : null;
+		double value = 0;
+		for (int corner = 0; corner < (1 << dimensions); corner++){
+			double weight = 1;
+			int offset = 0;
+			for (int i = dimensions - 1; i >= 0; i--){
+				int bit = (corner >> i) & 1;
+				weight *= (bit == 1) ? fraction[i] : 1 - fraction[i];
+				node[i] += bit;
+				offset = (offset << blockBits) + (node[i] & blockMask);
+			}
+			if (weight != 0) {
+				value += weight * ((block != null) ? getNode(block, node, offset) : getNode(node));
+			}
+			for (int i = 0; i < dimensions; i++){
+				node[i] -= (corner >> i) & 1;
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the interpolated intensity I(L).
+	 * @param pathLengths the path lengths in [mm] for each material.
+	 * @return the intensity in the units of the weights
+	 */
+	public double getIntensity(double [] pathLengths){
+		return totalWeight * Math.exp(-getLineIntegral(pathLengths));
+	}
+
+	private double getNode(int [] node){
+		int offset = 0;
+		for (int i = dimensions - 1; i >= 0; i--){
+			offset = (offset << blockBits) + (node[i] & blockMask);
+		}
+		return getNode(getBlock(node), node, offset);
+	}
+
+	/**
+	 * Reads a node from its block and computes it if necessary. Several threads may compute the same node at the same time,
+	 * but as they compute the same value, this is harmless.
+	 */
+	private double getNode(double [] block, int [] node, int offset){
+		double value = block[offset];
+		if (Double.isNaN(value)) {
+			double [] pathLengths = new double [dimensions];
+			for (int i = 0; i < dimensions; i++){
+				pathLengths[i] = node[i] * spacing[i];
+			}
+			value = computeLineIntegral(pathLengths);
+			block[offset] = value;
+			computedNodes.incrementAndGet();
+		}
+		return value;
+	}
+
+	private double [] getBlock(int [] node){
+		long key = 0;
+		for (int i = 0; i < dimensions; i++){
+			key = (key << keyBits) | (node[i] >> blockBits);
+		}
+		Long boxedKey = Long.valueOf(key);
+		double [] block = blocks.get(boxedKey);
+		if (block == null) {
+			block = new double [1 << (blockBits * dimensions)];
+			Arrays.fill(block, Double.NaN);
+			double [] other = blocks.putIfAbsent(boxedKey, block);
+			if (other != null) block = other;
+		}
+		return block;
+	}
+
+	/**
+	 * @return the number of materials
+	 */
+	public int getDimensions(){
+		return dimensions;
+	}
+
+	/**
+	 * @param dimension the material index
+	 * @return the spacing of the grid nodes in [mm] for the material
+	 */
+	public double getSpacing(int dimension){
+		return spacing[dimension];
+	}
+
+	/**
+	 * @return the unattenuated intensity I(0)
+	 */
+	public double getTotalWeight(){
+		return totalWeight;
+	}
+
+	/**
+	 * @return the number of nodes which have been computed so far
+	 */
+	public int getNumberOfComputedNodes(){
+		return computedNodes.get();
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -0,0 +1,108 @@
+package edu.stanford.rsl.conrad.physics.absorption.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.stanford.rsl.conrad.geometry.shapes.simple.Edge;
+import edu.stanford.rsl.conrad.geometry.shapes.simple.PointND;
+import edu.stanford.rsl.conrad.physics.PhysicalObject;
+import edu.stanford.rsl.conrad.physics.absorption.PolychromaticAbsorptionModel;
+import edu.stanford.rsl.conrad.physics.materials.Material;
+import edu.stanford.rsl.conrad.physics.materials.database.MaterialsDB;
+
+/**
+ * Compares the line integrals of the PolychromaticAbsorptionModel which are interpolated in the spectral response tables with the
+ * exact sum over the energy bins, for rays through several materials.
+ *
+ * @author akmaier
+ *
+ */
+public class PolychromaticAbsorptionModelTests {
+
+	private static PolychromaticAbsorptionModel model;
+	private static Material [] materials;
+	/**
+	 * Maximal total path length per material in [mm].
+	 */
+	private static final double [] maximalLengths = {400, 150, 30};
+
+	@BeforeClass
+	public static void configureModel() throws Exception {
+		model = new PolychromaticAbsorptionModel();
+		model.configure();
+		// soft tissue, bone and iodine contrast agent with its K-edge inside the spectrum.
+		materials = new Material[] {MaterialsDB.getMaterial("water"), MaterialsDB.getMaterial("bone"), MaterialsDB.getMaterial("ultravist370")};
+		for (Material material : materials){
+			assertTrue(material != null);
+		}
+	}
+
+	/**
+	 * Creates a path through the given number of materials. Each material is split into several segments which alternate along the ray.
+	 */
+	private static ArrayList<PhysicalObject> createSegments(double [] lengths){
+		ArrayList<PhysicalObject> segments = new ArrayList<PhysicalObject>();
+		double position = 0;
+		for (int piece = 0; piece < 3; piece++){
+			for (int i = 0; i < lengths.length; i++){
+				double length = lengths[i] / 3;
+				PhysicalObject segment = new PhysicalObject();
+				segment.setMaterial(materials[i]);
+				segment.setShape(new Edge(new PointND(position, 0, 0), new PointND(position + length, 0, 0)));
+				segments.add(segment);
+				position += length;
+			}
+		}
+		return segments;
+	}
+
+	private static double evaluate(ArrayList<PhysicalObject> segments, int dimensions){
+		model.setMaximalLookupTableDimensions(dimensions);
+		return model.evaluateLineIntegral(segments);
+	}
+
+	private static void assertMatchesExactSum(int numMaterials){
+		Random random = new Random(numMaterials);
+		double maximalError = model.getMaximalLookupTableError();
+		double maximalDeviation = 0;
+		try {
+			for (int n = 0; n < 2000; n++){
+				double [] lengths = new double [numMaterials];
+				for (int i = 0; i < numMaterials; i++){
+					// a quarter of the rays misses each material.
+					lengths[i] = (random.nextDouble() < 0.25) ? 0 : random.nextDouble() * maximalLengths[i];
+				}
+				ArrayList<PhysicalObject> segments = createSegments(lengths);
+				double exact = evaluate(segments, 0);
+				double interpolated = evaluate(segments, 3);
+				maximalDeviation = Math.max(maximalDeviation, Math.abs(exact - interpolated));
+				assertEquals("path lengths " + Arrays.toString(lengths), exact, interpolated, maximalError);
+			}
+		} finally {
+			model.setMaximalLookupTableDimensions(3);
+		}
+		assertTrue(maximalDeviation > 0);
+	}
+
+	@Test
+	public void testTwoMaterials(){
+		assertMatchesExactSum(2);
+	}
+
+	@Test
+	public void testThreeMaterials(){
+		assertMatchesExactSum(3);
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -10,6 +10,7 @@ import edu.stanford.rsl.conrad.physics.materials.materialsTest.TestMassAttenuati
 import edu.stanford.rsl.conrad.physics.materials.utils.AttenuationRetrievalMode;
 import edu.stanford.rsl.conrad.physics.materials.utils.AttenuationType;
 import edu.stanford.rsl.conrad.physics.materials.utils.LocalMassAttenuationCalculator;
+import edu.stanford.rsl.conrad.physics.materials.utils.MassAttenuationTable;
 import edu.stanford.rsl.conrad.physics.materials.utils.WeightedAtomicComposition;
 
 /**
@@ -24,6 +25,7 @@ public class Material implements Serializable, Cloneable{
 	private double density = -1;	
 	private transient double CTValue = 0;
 	private WeightedAtomicComposition comp;
+	private transient volatile MassAttenuationTable attenuationTable;
 	
 	
 	public Material(){}
@@ -42,6 +44,7 @@ public class Material implements Serializable, Cloneable{
 		this.CTValue = material.CTValue;
 		// shallow copy of composition tree!
 		this.comp = material.comp;
+		this.attenuationTable = material.attenuationTable;
 	}
 
 	/**
@@ -94,7 +97,7 @@ public class Material implements Serializable, Cloneable{
 		if(mode.equals(AttenuationRetrievalMode.ONLINE_RETRIEVAL)){
 			return density * OnlineMassAttenuationDB.getMassAttenuationData(comp, energy/1000, attType);
 		}else{
-			return density * LocalMassAttenuationCalculator.getMassAttenuationData(comp, energy/1000, attType);
+			return density * getMassAttenuationTable().getMassAttenuation(energy/1000, attType);
 		}
 	}
 	
@@ -122,6 +125,23 @@ public class Material implements Serializable, Cloneable{
 	
 	public void setWeightedAtomicComposition(WeightedAtomicComposition comp){
 		this.comp = comp;
+		this.attenuationTable = null;
+	}
+	
+	/**
+	 * Retrieve the table of mass attenuation coefficients of the material. The table is created on first use from the atomic composition
+	 * and may be shared by several threads. Changes to the composition object after the first use are not regarded, unless 
+	 * {@link #setWeightedAtomicComposition(WeightedAtomicComposition)} is called again.
+	 * @return the table of the mass attenuation coefficients
+	 * @see LocalMassAttenuationCalculator
+	 */
+	public MassAttenuationTable getMassAttenuationTable(){
+		MassAttenuationTable table = attenuationTable;
+		if (table == null){
+			table = MassAttenuationTable.getTable(comp);
+			attenuationTable = table;
+		}
+		return table;
 	}
 	
 	/**
@@ -0,0 +1,127 @@
+package edu.stanford.rsl.conrad.physics.materials.materialsTest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import edu.stanford.rsl.conrad.physics.materials.database.ElementalMassAttenuationData;
+import edu.stanford.rsl.conrad.physics.materials.database.FormulaToNameMap;
+import edu.stanford.rsl.conrad.physics.materials.utils.AttenuationType;
+import edu.stanford.rsl.conrad.physics.materials.utils.MassAttenuationTable;
+import edu.stanford.rsl.conrad.physics.materials.utils.WeightedAtomicComposition;
+import edu.stanford.rsl.conrad.utils.interpolation.NumberInterpolatingTreeMap;
+
+/**
+ * Compares the MassAttenuationTable with the weighted sum of the interpolated elemental data, which was computed by the
+ * LocalMassAttenuationCalculator before the tables were introduced.
+ *
+ * @author akmaier
+ *
+ */
+public class MassAttenuationTableTests {
+
+	private static final HashMap<String, TreeMap<AttenuationType, NumberInterpolatingTreeMap>> elements = new HashMap<String, TreeMap<AttenuationType, NumberInterpolatingTreeMap>>();
+
+	/**
+	 * Reads the elemental data once. The copy is not shared with the tables.
+	 */
+	private static TreeMap<AttenuationType, NumberInterpolatingTreeMap> getElementData(String formula){
+		String name = FormulaToNameMap.getName(formula);
+		TreeMap<AttenuationType, NumberInterpolatingTreeMap> data = elements.get(name);
+		if (data == null) {
+			data = ElementalMassAttenuationData.get(name);
+			elements.put(name, data);
+		}
+		return data;
+	}
+
+	/**
+	 * The previous lookup: the elemental data is interpolated per element and weighted with the normalized composition.
+	 */
+	private static double lookup(WeightedAtomicComposition comp, double energy, AttenuationType type){
+		double sum = 0;
+		Iterator<Double> values = comp.valuesIterator();
+		while (values.hasNext()) sum += values.next();
+		double value = 0;
+		Iterator<String> keys = comp.keysIterator();
+		values = comp.valuesIterator();
+		while (keys.hasNext()){
+			TreeMap<AttenuationType, NumberInterpolatingTreeMap> data = getElementData(keys.next());
+			value += (values.next() / sum) * data.get(type).interpolateValue(energy).doubleValue();
+		}
+		return value;
+	}
+
+	private static void assertMatchesLookup(WeightedAtomicComposition comp, MassAttenuationTable table){
+		Random random = new Random(17);
+		for (AttenuationType type : AttenuationType.values()){
+			double [] energies = table.getEnergies(type);
+			assertTrue(energies.length > 1);
+			double logMin = Math.log(energies[0]);
+			double logMax = Math.log(energies[energies.length - 1]);
+			// the nodes, including the absorption edges, and random energies in between.
+			double [] samples = new double [energies.length + 200];
+			System.arraycopy(energies, 0, samples, 0, energies.length);
+			for (int i = energies.length; i < samples.length; i++){
+				samples[i] = Math.min(energies[energies.length - 1], Math.exp(logMin + (random.nextDouble() * (logMax - logMin))));
+			}
+			for (double energy : samples){
+				double expected = lookup(comp, energy, type);
+				assertEquals(type + " at " + energy + " MeV", expected, table.getMassAttenuation(energy, type), 1e-13 * Math.abs(expected));
+			}
+		}
+	}
+
+	@Test
+	public void testMatchesElementalLookup(){
+		String [] formulas = {"H2O", "CaCO3", "C6H10O5", "Ca10P6O26H2"};
+		for (String formula : formulas){
+			WeightedAtomicComposition comp = new WeightedAtomicComposition(formula);
+			assertMatchesLookup(comp, MassAttenuationTable.getTable(comp));
+		}
+		WeightedAtomicComposition mixture = new WeightedAtomicComposition("H2O", 0.9);
+		mixture.add("NaCl", 0.1);
+		assertMatchesLookup(mixture, MassAttenuationTable.getTable(mixture));
+	}
+
+	/**
+	 * Several threads build tables of compositions which share their elements at the same time.
+	 */
+	@Test
+	public void testConcurrentConstruction() throws Exception {
+		int numThreads = 8;
+		final WeightedAtomicComposition [] comps = new WeightedAtomicComposition[numThreads];
+		final MassAttenuationTable [] tables = new MassAttenuationTable[numThreads];
+		for (int t = 0; t < numThreads; t++){
+			// unique proportions, such that each thread builds a new table.
+			comps[t] = new WeightedAtomicComposition("H2O", 1.0);
+			comps[t].add("CaCO3", 0.0123 * (t + 1));
+		}
+		Thread [] threads = new Thread[numThreads];
+		for (int t = 0; t < numThreads; t++){
+			final int index = t;
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					tables[index] = MassAttenuationTable.getTable(comps[index]);
+				}
+			});
+		}
+		for (Thread thread : threads) thread.start();
+		for (Thread thread : threads) thread.join();
+		for (int t = 0; t < numThreads; t++){
+			assertMatchesLookup(comps[t], tables[t]);
+		}
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
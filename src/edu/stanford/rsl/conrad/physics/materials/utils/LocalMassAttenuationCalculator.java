@@ -4,12 +4,6 @@
 */
 package edu.stanford.rsl.conrad.physics.materials.utils;
 
-import java.util.Iterator;
-import java.util.TreeMap;
-
-import edu.stanford.rsl.conrad.numerics.SimpleVector;
-import edu.stanford.rsl.conrad.physics.materials.database.ElementalMassAttenuationData;
-import edu.stanford.rsl.conrad.physics.materials.database.FormulaToNameMap;
 import edu.stanford.rsl.conrad.utils.interpolation.NumberInterpolatingTreeMap;
 
 /**
@@ -19,8 +13,6 @@ import edu.stanford.rsl.conrad.utils.interpolation.NumberInterpolatingTreeMap;
  */
 public class LocalMassAttenuationCalculator {
 	
-	private static final TreeMap<String, TreeMap<AttenuationType, NumberInterpolatingTreeMap> > cache = new TreeMap<String, TreeMap<AttenuationType,NumberInterpolatingTreeMap>>();
-	
 	/**
 	 * Calculates the mass attenuation coefficient of a material given its formula
 	 * @param formula is the chemical formula of the material
@@ -67,50 +59,17 @@ public class LocalMassAttenuationCalculator {
 	
 	/**
 	 * Calculates the mass attenuation coefficient of a material given its weighted atomic composition.
-	 * This method uses an internal static cache to inhibit excessive file access. However, this
-	 * requires the method to be synchronized. This may lead to quite slow performance in parallel use.
+	 * The values are read from the {@link MassAttenuationTable} of the composition, which is computed once and shared by all threads.
+	 * Hence, this method does not need to be synchronized.
 	 * 
 	 * @param comp is the {@link WeightedAtomicComposition} of the material
 	 * @param energy is the energy of interest
 	 * @param attType is the {@link AttenuationType} of interest
 	 * @return the mass attenuation coefficient of a material given its weighted atomic composition.
 	 */
-	public static synchronized double getMassAttenuationData(WeightedAtomicComposition comp,
+	public static double getMassAttenuationData(WeightedAtomicComposition comp,
 			double energy, AttenuationType attType) {
-		SimpleVector vec = getNormalizedComposition(comp);
-		Iterator<String> it = comp.keysIterator();
-		double value = 0;
-		int counter = 0;
-		while(it.hasNext()){
-			TreeMap<AttenuationType, NumberInterpolatingTreeMap> massAtt = null;
-			String name = FormulaToNameMap.getName(it.next());
-			if((massAtt = cache.get(name))== null){
-				massAtt= ElementalMassAttenuationData.get(name);
-				cache.put(name, massAtt);
-			}
-			double buff = massAtt.get(attType).interpolateValue(energy).doubleValue();
-			value+=vec.getElement(counter)* buff;
-			counter++;
-		}
-		return value;
-	}
-
-	private static SimpleVector getNormalizedComposition(WeightedAtomicComposition comp) {
-		SimpleVector vec = new SimpleVector(comp.size());
-		Iterator<Double> it = comp.valuesIterator();
-		int i =0;
-		double sum = 0;
-		while(it.hasNext()){
-			vec.setElementValue(i, it.next());
-			sum+=vec.getElement(i);
-			i++;
-		}
-		vec.divideBy(sum);
-		return vec;
+		return MassAttenuationTable.getTable(comp).getMassAttenuation(energy, attType);
 	}
 
-
-
-
-
 }
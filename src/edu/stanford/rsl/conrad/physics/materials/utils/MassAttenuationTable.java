@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.conrad.physics.materials.utils;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.stanford.rsl.conrad.physics.materials.database.ElementalMassAttenuationData;
+import edu.stanford.rsl.conrad.physics.materials.database.FormulaToNameMap;
+import edu.stanford.rsl.conrad.utils.interpolation.NumberInterpolatingTreeMap;
+
+/**
+ * Immutable table of the mass attenuation coefficients of a material given its {@link WeightedAtomicComposition}.
+ * <br><br>
+ * For each {@link AttenuationType} the table stores the coefficients of the material at all energies for which
+ * data of any of its elements is available. As the elemental data is interpolated linearly, the weighted sum of
+ * the elements is linear between these energies as well. Hence, linear interpolation in the table yields the same values
+ * as {@link LocalMassAttenuationCalculator} up to rounding, but requires neither locking, nor boxing, nor a walk through all elements.
+ * The interval of an energy is found in constant time using an index on a logarithmic energy grid.
+ * <br><br>
+ * Tables are created once per composition by {@link #getTable(WeightedAtomicComposition)} and may be shared by any number of threads.
+ * The elemental data is shared as well. It is only read, i.e. the tables are built without the interpolator of the
+ * NumberInterpolatingTreeMap, which is not thread-safe.
+ * Energies are given in [MeV] and coefficients in [cm^2/g].
+ *
+ * @author akmaier
+ *
+ */
+public final class MassAttenuationTable {
+
+	private static final ConcurrentHashMap<String, TreeMap<AttenuationType, NumberInterpolatingTreeMap>> elements = new ConcurrentHashMap<String, TreeMap<AttenuationType, NumberInterpolatingTreeMap>>();
+	private static final ConcurrentHashMap<String, MassAttenuationTable> tables = new ConcurrentHashMap<String, MassAttenuationTable>();
+
+	/**
+	 * Number of cells of the logarithmic index per energy in the table.
+	 */
+	private static final int cellsPerEnergy = 2;
+
+	private final double [][] energies;
+	private final double [][] values;
+	private final double [][] logEnergies;
+	private final double [][] logValues;
+	private final int [][] index;
+	private final double [] logMin;
+	private final double [] indexScale;
+
+	/**
+	 * Returns the table of the composition. Tables are cached by the contents of the composition, i.e. changes to the composition
+	 * after the call are not regarded by the returned table.
+	 * @param comp the composition
+	 * @return the table
+	 */
+	public static MassAttenuationTable getTable(WeightedAtomicComposition comp){
+		String key = comp.getCompositionTable().toString();
+		MassAttenuationTable table = tables.get(key);
+		if (table == null) {
+			table = new MassAttenuationTable(comp);
+			MassAttenuationTable other = tables.putIfAbsent(key, table);
+			if (other != null) table = other;
+		}
+		return table;
+	}
+
+	/**
+	 * Returns the mass attenuation data of an element. The data is read from the database only once.
+	 * @param name the name of the element
+	 * @return the data
+	 */
+	static TreeMap<AttenuationType, NumberInterpolatingTreeMap> getElementData(String name){
+		TreeMap<AttenuationType, NumberInterpolatingTreeMap> data = elements.get(name);
+		if (data == null) {
+			data = ElementalMassAttenuationData.get(name);
+			TreeMap<AttenuationType, NumberInterpolatingTreeMap> other = elements.putIfAbsent(name, data);
+			if (other != null) data = other;
+		}
+		return data;
+	}
+
+	private MassAttenuationTable(WeightedAtomicComposition comp){
+		int numberOfElements = comp.size();
+		double [] weights = new double[numberOfElements];
+		double sum = 0;
+		Iterator<Double> valueIterator = comp.valuesIterator();
+		for (int e = 0; e < numberOfElements; e++){
+			weights[e] = valueIterator.next();
+			sum += weights[e];
+		}
+		ArrayList<TreeMap<AttenuationType, NumberInterpolatingTreeMap>> data = new ArrayList<TreeMap<AttenuationType, NumberInterpolatingTreeMap>>(numberOfElements);
+		Iterator<String> keyIterator = comp.keysIterator();
+		for (int e = 0; e < numberOfElements; e++){
+			weights[e] /= sum;
+			data.add(getElementData(FormulaToNameMap.getName(keyIterator.next())));
+		}
+		AttenuationType [] types = AttenuationType.values();
+		energies = new double[types.length][];
+		values = new double[types.length][];
+		logEnergies = new double[types.length][];
+		logValues = new double[types.length][];
+		index = new int[types.length][];
+		logMin = new double[types.length];
+		indexScale = new double[types.length];
+		for (AttenuationType type : types){
+			int t = type.ordinal();
+			// all energies, at which the interpolated sum has a kink, within the range which is covered by all elements.
+			double min = Double.NEGATIVE_INFINITY;
+			double max = Double.POSITIVE_INFINITY;
+			TreeSet<Double> grid = new TreeSet<Double>();
+			for (int e = 0; e < numberOfElements; e++){
+				NumberInterpolatingTreeMap map = data.get(e).get(type);
+				min = Math.max(min, map.firstKey().doubleValue());
+				max = Math.min(max, map.lastKey().doubleValue());
+				for (Number energy : map.keySet()){
+					grid.add(energy.doubleValue());
+				}
+			}
+			double [] energy = new double[grid.subSet(min, true, max, true).size()];
+			int n = 0;
+			for (Double value : grid.subSet(min, true, max, true)){
+				energy[n++] = value;
+			}
+			double [] value = new double[energy.length];
+			for (n = 0; n < energy.length; n++){
+				for (int e = 0; e < numberOfElements; e++){
+					value[n] += weights[e] * interpolate(data.get(e).get(type), energy[n]);
+				}
+			}
+			energies[t] = energy;
+			values[t] = value;
+			logEnergies[t] = new double[energy.length];
+			logValues[t] = new double[energy.length];
+			for (n = 0; n < energy.length; n++){
+				logEnergies[t][n] = Math.log(energy[n]);
+				logValues[t][n] = Math.log(value[n]);
+			}
+			buildIndex(t);
+		}
+	}
+
+	/**
+	 * Interpolates the elemental data linearly like NumberInterpolatingTreeMap.interpolateValue(Number) with its default
+	 * LinearInterpolator, but without modifying the map. Hence, several threads may build tables from the same elemental data.
+	 * The energy has to lie within the range of the map.
+	 */
+	private static double interpolate(NumberInterpolatingTreeMap map, double energy){
+		Map.Entry<Number, Number> floor = map.floorEntry(energy);
+		Map.Entry<Number, Number> ceiling = map.ceilingEntry(energy);
+		double xFloor = floor.getKey().doubleValue();
+		double yFloor = floor.getValue().doubleValue();
+		if (xFloor == energy) return yFloor;
+		double xCeiling = ceiling.getKey().doubleValue();
+		double yCeiling = ceiling.getValue().doubleValue();
+		return yFloor + ((energy - xFloor) * (yCeiling - yFloor) / (xCeiling - xFloor));
+	}
+
+	/**
+	 * Builds the index on the logarithmic energy grid: index[t][c] is the last energy which lies in a cell before c.
+	 * Hence, the interval of an energy in cell c starts at index[t][c] or later.
+	 */
+	private void buildIndex(int t){
+		double [] energy = energies[t];
+		int cells = Math.max(1, cellsPerEnergy * energy.length);
+		index[t] = new int[cells];
+		if (energy.length < 2) return;
+		logMin[t] = logEnergies[t][0];
+		indexScale[t] = cells / (logEnergies[t][energy.length - 1] - logMin[t]);
+		int n = 0;
+		for (int c = 0; c < cells; c++){
+			while (n + 1 < energy.length && getCell(t, energy[n + 1]) < c) n++;
+			index[t][c] = n;
+		}
+	}
+
+	private int getCell(int t, double energy){
+		int cell = (int) ((Math.log(energy) - logMin[t]) * indexScale[t]);
+		if (cell < 0) return 0;
+		if (cell >= index[t].length) return index[t].length - 1;
+		return cell;
+	}
+
+	/**
+	 * Returns the index n such that energies[t][n] <= energy < energies[t][n+1]. At the upper bound of the table, the last interval is returned.
+	 */
+	private int getInterval(int t, double energy){
+		double [] energyGrid = energies[t];
+		if (!(energy >= energyGrid[0] && energy <= energyGrid[energyGrid.length - 1])) {
+			throw new RuntimeException("Cannot interpolate outside range: "
+					+ energy + " Range: [ " + energyGrid[0] + ", " + energyGrid[energyGrid.length - 1] + " ]");
+		}
+		if (energyGrid.length < 2) return 0;
+		int n = index[t][getCell(t, energy)];
+		while (n + 2 < energyGrid.length && energyGrid[n + 1] <= energy) n++;
+		return n;
+	}
+
+	/**
+	 * Returns the mass attenuation coefficient using linear interpolation.
+	 * @param energy the energy in [MeV]
+	 * @param attType the type of attenuation
+	 * @return the mass attenuation coefficient in [cm^2/g]
+	 * @throws RuntimeException if the energy is outside the range of the table.
+	 */
+	public double getMassAttenuation(double energy, AttenuationType attType){
+		int t = attType.ordinal();
+		if (energies[t].length == 0) return 0;
+		int n = getInterval(t, energy);
+		double [] energyGrid = energies[t];
+		double [] valueGrid = values[t];
+		if (energy == energyGrid[n] || energyGrid.length < 2) return valueGrid[n];
+		if (energy == energyGrid[n + 1]) return valueGrid[n + 1];
+		return valueGrid[n] + ((energy - energyGrid[n]) * (valueGrid[n + 1] - valueGrid[n]) / (energyGrid[n + 1] - energyGrid[n]));
+	}
+
+	/**
+	 * Returns the mass attenuation coefficient using log-log interpolation, which is closer to the physics between the tabulated energies
+	 * than linear interpolation. Intervals with a coefficient of zero, e.g. below the threshold of pair production, are interpolated linearly.
+	 * @param energy the energy in [MeV]
+	 * @param attType the type of attenuation
+	 * @return the mass attenuation coefficient in [cm^2/g]
+	 * @throws RuntimeException if the energy is outside the range of the table.
+	 */
+	public double getMassAttenuationLogLog(double energy, AttenuationType attType){
+		int t = attType.ordinal();
+		if (energies[t].length == 0) return 0;
+		int n = getInterval(t, energy);
+		double [] valueGrid = values[t];
+		if (energy == energies[t][n] || energies[t].length < 2) return valueGrid[n];
+		if (energy == energies[t][n + 1]) return valueGrid[n + 1];
+		if (!(valueGrid[n] > 0 && valueGrid[n + 1] > 0)) return getMassAttenuation(energy, attType);
+		double [] logEnergy = logEnergies[t];
+		double [] logValue = logValues[t];
+		double weight = (Math.log(energy) - logEnergy[n]) / (logEnergy[n + 1] - logEnergy[n]);
+		return Math.exp(logValue[n] + (weight * (logValue[n + 1] - logValue[n])));
+	}
+
+	/**
+	 * @param attType the type of attenuation
+	 * @return a copy of the energies in [MeV] at which the coefficients are tabulated
+	 */
+	public double [] getEnergies(AttenuationType attType){
+		return energies[attType.ordinal()].clone();
+	}
+
+	/**
+	 * @param attType the type of attenuation
+	 * @return the smallest energy in [MeV] in the table
+	 */
+	public double getMinimumEnergy(AttenuationType attType){
+		return energies[attType.ordinal()][0];
+	}
+
+	/**
+	 * @param attType the type of attenuation
+	 * @return the largest energy in [MeV] in the table
+	 */
+	public double getMaximumEnergy(AttenuationType attType){
+		double [] energy = energies[attType.ordinal()];
+		return energy[energy.length - 1];
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.conrad.physics.montecarlo;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+
+/**
+ * Accumulates the energy which is deposited in the pixels of a detector. Each thread of a simulation uses its own tally without any locking.
+ * The tallies are merged at the end using {@link #add(DetectorTally)}.
+ * <br><br>
+ * The energy is stored in fixed point arithmetic with a resolution of 1/{@value #unitsPerEV} eV. In contrast to floating point sums, the
+ * result does not depend on the order of the additions. Hence, the merged tally is the same, no matter how the photons were distributed to the threads.
+ *
+ * @author akmaier
+ *
+ */
+public class DetectorTally {
+
+	/**
+	 * Resolution of the fixed point representation.
+	 */
+	public static final int unitsPerEV = 256;
+
+	private final int width, height;
+	private final long [] energy;
+	private long hits;
+
+	/**
+	 * Creates an empty tally.
+	 * @param width the number of detector pixels in u direction
+	 * @param height the number of detector pixels in v direction
+	 */
+	public DetectorTally(int width, int height){
+		this.width = width;
+		this.height = height;
+		energy = new long[width * height];
+	}
+
+	/**
+	 * Deposits the energy of a photon in a pixel. Photons outside of the detector are ignored.
+	 * @param u the detector coordinate in u direction in pixels
+	 * @param v the detector coordinate in v direction in pixels
+	 * @param energyEV the energy of the photon in eV
+	 * @return true, if the photon hit the detector
+	 */
+	public boolean absorbPhoton(double u, double v, double energyEV){
+		if (!(u >= 0 && v >= 0 && u < width && v < height)) return false;
+		energy[((int) v * width) + (int) u] += Math.round(energyEV * unitsPerEV);
+		hits++;
+		return true;
+	}
+
+	/**
+	 * Adds the contents of the other tally to this tally.
+	 * @param other the other tally
+	 */
+	public void add(DetectorTally other){
+		if (other.width != width || other.height != height) {
+			throw new IllegalArgumentException("Tallies of size " + width + "x" + height + " and " + other.width + "x" + other.height + " cannot be merged.");
+		}
+		for (int i = 0; i < energy.length; i++){
+			energy[i] += other.energy[i];
+		}
+		hits += other.hits;
+	}
+
+	/**
+	 * @return the number of photons which were absorbed by the detector
+	 */
+	public long getNumberOfHits(){
+		return hits;
+	}
+
+	/**
+	 * Returns the deposited energy in eV.
+	 * @param u the pixel in u direction
+	 * @param v the pixel in v direction
+	 * @return the energy
+	 */
+	public double getEnergy(int u, int v){
+		return (double) energy[(v * width) + u] / unitsPerEV;
+	}
+
+	/**
+	 * Writes the deposited energy in eV into a new image.
+	 * @return the image
+	 */
+	public Grid2D toGrid2D(){
+		Grid2D grid = new Grid2D(width, height);
+		float [] buffer = grid.getBuffer();
+		for (int i = 0; i < energy.length; i++){
+			buffer[i] = (float) ((double) energy[i] / unitsPerEV);
+		}
+		return grid;
+	}
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.conrad.physics.montecarlo;
+
+import java.util.Random;
+
+/**
+ * Fast, splittable pseudo random number generator for Monte Carlo simulations (SplitMix64, see Steele et al., "Fast Splittable
+ * Pseudorandom Number Generators", OOPSLA 2014).
+ * <br><br>
+ * {@link #getStream(long)} derives independent streams from one seed. A simulation which assigns one stream to each work unit
+ * produces the same random numbers for each work unit, no matter which thread processes it. Hence, the simulation can be reproduced
+ * exactly from its seed. In contrast to java.util.Random, the generator is not thread-safe. Each thread has to use its own stream.
+ *
+ * @author akmaier
+ *
+ */
+public class MonteCarloRandom extends Random {
+
+	private static final long serialVersionUID = -4360839049787807254L;
+	private static final long goldenGamma = 0x9e3779b97f4a7c15L;
+
+	private long seed;
+	private long state;
+
+	/**
+	 * Creates a new generator.
+	 * @param seed the seed
+	 */
+	public MonteCarloRandom(long seed){
+		super(0);
+		setSeed(seed);
+	}
+
+	/**
+	 * Returns the generator of the stream with the given index. The streams of different indices are statistically independent.
+	 * The returned generator does not depend on the state of this generator, only on its seed.
+	 * @param streamIndex the index of the stream, e.g. the number of the work unit
+	 * @return the generator of the stream
+	 */
+	public MonteCarloRandom getStream(long streamIndex){
+		return new MonteCarloRandom(mix(seed + mix(streamIndex * goldenGamma + 1)));
+	}
+
+	/**
+	 * Resets the generator to the start of the sequence of the given seed.
+	 */
+	@Override
+	public void setSeed(long seed) {
+		// also called by the constructor of Random.
+		this.seed = seed;
+		this.state = seed;
+	}
+
+	private static long mix(long z){
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	@Override
+	public long nextLong(){
+		state += goldenGamma;
+		return mix(state);
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int) (nextLong() >>> (64 - bits));
+	}
+
+	@Override
+	public int nextInt(){
+		return (int) (nextLong() >>> 32);
+	}
+
+	/**
+	 * Returns a uniformly distributed number in [0, 1).
+	 */
+	@Override
+	public double nextDouble(){
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * Returns a uniformly distributed number in (0, 1], e.g. for the logarithm in the sampling of free path lengths.
+	 * @return the number
+	 */
+	public double nextDoubleNonZero(){
+		return ((nextLong() >>> 11) + 1) * 0x1.0p-53;
+	}
+
+}
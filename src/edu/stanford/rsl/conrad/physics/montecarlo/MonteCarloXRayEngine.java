@@ -0,0 +1,403 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.conrad.physics.montecarlo;
+
+import java.util.ArrayList;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+import edu.stanford.rsl.conrad.geometry.Projection;
+import edu.stanford.rsl.conrad.geometry.bounds.BoundingBox;
+import edu.stanford.rsl.conrad.geometry.shapes.simple.Edge;
+import edu.stanford.rsl.conrad.geometry.shapes.simple.PointND;
+import edu.stanford.rsl.conrad.geometry.shapes.simple.StraightLine;
+import edu.stanford.rsl.conrad.numerics.SimpleOperators;
+import edu.stanford.rsl.conrad.numerics.SimpleVector;
+import edu.stanford.rsl.conrad.parallel.ParallelThreadExecutor;
+import edu.stanford.rsl.conrad.physics.PhysicalObject;
+import edu.stanford.rsl.conrad.physics.detector.XRayDetector;
+import edu.stanford.rsl.conrad.physics.materials.Material;
+import edu.stanford.rsl.conrad.physics.materials.utils.AttenuationType;
+import edu.stanford.rsl.conrad.rendering.PrioritizableScene;
+import edu.stanford.rsl.conrad.rendering.PriorityRayTracer;
+import edu.stanford.rsl.conrad.utils.CONRAD;
+
+/**
+ * Monte Carlo simulation of the transport of monochromatic x-ray photons through a scene. Like the tutorial XRayTracer, the simulation considers
+ * the photoelectric effect and Compton scattering, which dominate in the diagnostic energy range. The photons are emitted from the source of the projection
+ * towards random positions on the detector.
+ * <br><br>
+ * The photons are simulated in batches of {@link #getPhotonsPerBatch()} photons on the shared thread pool of the ParallelThreadExecutor.
+ * Each thread accumulates the absorbed photons in its own {@link DetectorTally} and traces the rays with its own ray tracer without any locking. The tallies are merged after all batches are done.
+ * Each batch draws its random numbers from its own stream of a {@link MonteCarloRandom} which is derived from the seed and the number of the batch.
+ * As the tallies are accumulated in fixed point arithmetic, the result of a simulation depends only on the seed and the parameters,
+ * but neither on the number of threads nor on the scheduling.
+ * <br><br>
+ * The detector has to be part of the scene, see {@link XRayDetector#generateDetectorShape(Projection, double)}. It is modeled as ideal absorber, i.e. a photon
+ * that interacts within the detector or passes through it deposits its complete energy in the pixel onto which the interaction point is projected.
+ *
+ * @author akmaier
+ *
+ */
+public class MonteCarloXRayEngine {
+
+	private final PrioritizableScene scene;
+	private final XRayDetector detector;
+	private final Projection projection;
+	private final int detectorWidth, detectorHeight;
+	private BoundingBox sceneBounds;
+	private PointND source;
+
+	private double photonEnergyEV = 100000;
+	private double cutoffEnergyEV = 1000;
+	private long numberOfPhotons = 1000000;
+	private int photonsPerBatch = 1000;
+	private int maximumScatterEvents = 1000;
+	private long seed = 0;
+
+	private final AtomicLong simulatedPhotons = new AtomicLong();
+	private long detectorHits;
+	private long startTime, endTime;
+
+	/**
+	 * Creates a new engine.
+	 * @param scene the scene including the detector and the background material
+	 * @param detector the detector
+	 * @param projection the projection which describes the positions of source and detector
+	 * @param detectorWidth the number of detector pixels in u direction
+	 * @param detectorHeight the number of detector pixels in v direction
+	 */
+	public MonteCarloXRayEngine(PrioritizableScene scene, XRayDetector detector, Projection projection, int detectorWidth, int detectorHeight){
+		this.scene = scene;
+		this.detector = detector;
+		this.projection = projection;
+		this.detectorWidth = detectorWidth;
+		this.detectorHeight = detectorHeight;
+	}
+
+	/**
+	 * Simulates {@link #getNumberOfPhotons()} photons.
+	 * @return the energy in eV which was absorbed in each detector pixel
+	 */
+	public Grid2D simulate(){
+		return simulateTally().toGrid2D();
+	}
+
+	/**
+	 * Simulates {@link #getNumberOfPhotons()} photons.
+	 * @return the merged tally of all threads
+	 */
+	public DetectorTally simulateTally(){
+		sceneBounds = new BoundingBox(scene.getMin(), scene.getMax());
+		source = new PointND(projection.computeCameraCenter());
+		final long numberOfBatches = (numberOfPhotons + photonsPerBatch - 1) / photonsPerBatch;
+		final AtomicLong nextBatch = new AtomicLong();
+		final MonteCarloRandom random = new MonteCarloRandom(seed);
+		int numberOfThreads = (int) Math.max(1, Math.min(CONRAD.getNumberOfThreads(), numberOfBatches));
+		final Worker [] workers = new Worker[numberOfThreads];
+		for (int i = 0; i < numberOfThreads; i++){
+			workers[i] = new Worker(random, nextBatch, numberOfBatches);
+		}
+		simulatedPhotons.set(0);
+		startTime = System.nanoTime();
+		endTime = 0;
+		ParallelThreadExecutor.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 3371305640853839372L;
+
+			@Override
+			protected void compute() {
+				invokeAll(workers);
+			}
+		});
+		endTime = System.nanoTime();
+		DetectorTally result = new DetectorTally(detectorWidth, detectorHeight);
+		for (Worker worker : workers){
+			result.add(worker.tally);
+		}
+		detectorHits = result.getNumberOfHits();
+		return result;
+	}
+
+	/**
+	 * Processes batches until all batches are taken. Each worker owns its tally and its ray tracer, as the ray tracers are not thread-safe.
+	 */
+	private class Worker extends RecursiveAction {
+
+		private static final long serialVersionUID = -6081425436522916283L;
+		private final MonteCarloRandom random;
+		private final AtomicLong nextBatch;
+		private final long numberOfBatches;
+		private final PriorityRayTracer raytracer = new PriorityRayTracer();
+		final DetectorTally tally = new DetectorTally(detectorWidth, detectorHeight);
+
+		Worker(MonteCarloRandom random, AtomicLong nextBatch, long numberOfBatches){
+			this.random = random;
+			this.nextBatch = nextBatch;
+			this.numberOfBatches = numberOfBatches;
+			raytracer.setScene(scene);
+		}
+
+		@Override
+		protected void compute() {
+			for (long batch = nextBatch.getAndIncrement(); batch < numberOfBatches; batch = nextBatch.getAndIncrement()){
+				MonteCarloRandom stream = random.getStream(batch);
+				long photons = Math.min(photonsPerBatch, numberOfPhotons - (batch * photonsPerBatch));
+				for (long p = 0; p < photons; p++){
+					transportPhoton(stream, raytracer, tally);
+				}
+				simulatedPhotons.addAndGet(photons);
+			}
+		}
+	}
+
+	/**
+	 * Follows a single photon from the source until it is absorbed, hits the detector or leaves the scene.
+	 */
+	private void transportPhoton(MonteCarloRandom random, PriorityRayTracer raytracer, DetectorTally tally){
+		SimpleVector direction = projection.computeRayDirection(new SimpleVector(random.nextDouble() * detectorWidth, random.nextDouble() * detectorHeight));
+		direction.normalizeL2();
+		PointND position = source.clone();
+		double energyEV = photonEnergyEV;
+		for (int scatterEvents = 0; scatterEvents <= maximumScatterEvents; scatterEvents++){
+			if (energyEV < cutoffEnergyEV || !sceneBounds.isSatisfiedBy(position)) {
+				return;
+			}
+			StraightLine ray = new StraightLine(position, direction);
+			ArrayList<PhysicalObject> segments = raytracer.castRay(ray);
+			if (segments == null) {
+				return;
+			}
+			// the segments are sorted along the line, but the line may point in the opposite direction of the ray.
+			Edge first = (Edge) segments.get(0).getShape();
+			SimpleVector diff = first.getEnd().getAbstractVector().clone();
+			diff.subtract(first.getPoint().getAbstractVector());
+			diff.normalizeL2();
+			diff.subtract(direction);
+			boolean reversed = diff.normL2() > CONRAD.SMALL_VALUE;
+
+			PhysicalObject interactionSegment = null;
+			double photo = 0;
+			double compton = 0;
+			boolean foundStartSegment = false;
+			for (int i = 0; i < segments.size(); i++){
+				PhysicalObject segment = segments.get(reversed ? segments.size() - i - 1 : i);
+				Edge edge = (Edge) segment.getShape();
+				PointND start = reversed ? edge.getEnd() : edge.getPoint();
+				PointND end = reversed ? edge.getPoint() : edge.getEnd();
+				if (!foundStartSegment && !isBetween(start.getAbstractVector(), end.getAbstractVector(), position.getAbstractVector())) {
+					continue;
+				}
+				foundStartSegment = true;
+				double distanceToBoundary = position.euclideanDistance(end);
+				if (distanceToBoundary <= CONRAD.SMALL_VALUE) {
+					continue;
+				}
+				Material material = segment.getMaterial();
+				photo = material.getAttenuation(energyEV / 1000, AttenuationType.PHOTOELECTRIC_ABSORPTION);
+				compton = material.getAttenuation(energyEV / 1000, AttenuationType.INCOHERENT_ATTENUATION);
+				// attenuation in [1/cm], distances in [mm]
+				double distanceToInteraction = 10 * (-Math.log(random.nextDoubleNonZero()) / (photo + compton));
+				if (distanceToInteraction < distanceToBoundary) {
+					position = new PointND(SimpleOperators.add(position.getAbstractVector(), direction.multipliedBy(distanceToInteraction)));
+					interactionSegment = segment;
+					break;
+				}
+				position = new PointND(end);
+				if (segment.getParent() == detector) {
+					interactionSegment = segment;
+					break;
+				}
+			}
+			if (interactionSegment == null) {
+				// left the scene
+				return;
+			}
+			if (interactionSegment.getParent() == detector) {
+				SimpleVector pixel = new SimpleVector(2);
+				projection.project(position.getAbstractVector(), pixel);
+				tally.absorbPhoton(pixel.getElement(0), pixel.getElement(1), energyEV);
+				return;
+			}
+			if (random.nextDouble() * (photo + compton) <= photo) {
+				// photoelectric absorption
+				return;
+			}
+			energyEV = sampleComptonScattering(random, energyEV, direction);
+		}
+	}
+
+	/**
+	 * Checks whether x lies between a and b, if all three points are known to be on a straight line.
+	 */
+	private static boolean isBetween(SimpleVector a, SimpleVector b, SimpleVector x){
+		double dot = 0;
+		double squaredLength = 0;
+		for (int i = 0; i < 3; i++){
+			double ba = b.getElement(i) - a.getElement(i);
+			dot += ba * (x.getElement(i) - a.getElement(i));
+			squaredLength += ba * ba;
+		}
+		return dot >= 0 && dot <= squaredLength;
+	}
+
+	/**
+	 * Samples energy and direction of a Compton scattered photon from the Klein-Nishina cross section using the method of Butcher and Messel
+	 * (as in Geant4's G4KleinNishinaCompton).
+	 * @param random the random number generator
+	 * @param energyEV the energy of the incident photon in eV
+	 * @param direction the normalized direction of the incident photon. It is replaced by the direction of the scattered photon.
+	 * @return the energy of the scattered photon in eV
+	 */
+	public static double sampleComptonScattering(MonteCarloRandom random, double energyEV, SimpleVector direction){
+		double e0m = energyEV / 510998.9;
+		double epsilon0 = 1 / (1 + (2 * e0m));
+		double epsilon0sq = epsilon0 * epsilon0;
+		double alpha1 = -Math.log(epsilon0);
+		double alpha2 = 0.5 * (1 - epsilon0sq);
+		double epsilon, epsilonsq, onecost, sint2, greject;
+		do {
+			if (alpha1 / (alpha1 + alpha2) > random.nextDouble()) {
+				epsilon = Math.exp(-alpha1 * random.nextDouble());
+				epsilonsq = epsilon * epsilon;
+			} else {
+				epsilonsq = epsilon0sq + ((1 - epsilon0sq) * random.nextDouble());
+				epsilon = Math.sqrt(epsilonsq);
+			}
+			onecost = (1 - epsilon) / (epsilon * e0m);
+			sint2 = onecost * (2 - onecost);
+			greject = 1 - (epsilon * sint2 / (1 + epsilonsq));
+		} while (greject < random.nextDouble());
+		double cosTheta = 1 - onecost;
+		double sinTheta = Math.sqrt(Math.max(0, sint2));
+		double phi = 2 * Math.PI * random.nextDouble();
+		double dx = sinTheta * Math.cos(phi);
+		double dy = sinTheta * Math.sin(phi);
+		double dz = cosTheta;
+		// rotate such that the z axis is aligned with the incident direction
+		double ux = direction.getElement(0);
+		double uy = direction.getElement(1);
+		double uz = direction.getElement(2);
+		double uPar = Math.sqrt((ux * ux) + (uy * uy));
+		if (uPar > 0) {
+			direction.setElementValue(0, (ux * uz / uPar * dx) - (uy / uPar * dy) + (ux * dz));
+			direction.setElementValue(1, (uy * uz / uPar * dx) + (ux / uPar * dy) + (uy * dz));
+			direction.setElementValue(2, (-uPar * dx) + (uz * dz));
+		} else if (uz < 0) {
+			direction.setElementValue(0, -dx);
+			direction.setElementValue(1, dy);
+			direction.setElementValue(2, -dz);
+		} else {
+			direction.setElementValue(0, dx);
+			direction.setElementValue(1, dy);
+			direction.setElementValue(2, dz);
+		}
+		direction.normalizeL2();
+		return epsilon * energyEV;
+	}
+
+	/**
+	 * @return the number of photons which were simulated so far in the current or last call of {@link #simulate()}
+	 */
+	public long getSimulatedPhotons(){
+		return simulatedPhotons.get();
+	}
+
+	/**
+	 * @return the number of photons which hit the detector in the last simulation
+	 */
+	public long getDetectorHits(){
+		return detectorHits;
+	}
+
+	/**
+	 * @return the run time of the current or last simulation in seconds
+	 */
+	public double getElapsedTime(){
+		long end = (endTime != 0) ? endTime : System.nanoTime();
+		return (startTime == 0) ? 0 : (end - startTime) / 1e9;
+	}
+
+	/**
+	 * @return the number of simulated photons per second of the current or last simulation
+	 */
+	public double getPhotonsPerSecond(){
+		double time = getElapsedTime();
+		return (time > 0) ? getSimulatedPhotons() / time : 0;
+	}
+
+	/**
+	 * @return the energy of the emitted photons in eV
+	 */
+	public double getPhotonEnergyEV() {
+		return photonEnergyEV;
+	}
+
+	/**
+	 * @param photonEnergyEV the energy of the emitted photons in eV
+	 */
+	public void setPhotonEnergyEV(double photonEnergyEV) {
+		this.photonEnergyEV = photonEnergyEV;
+	}
+
+	/**
+	 * @return the energy in eV below which photons are considered to be absorbed locally
+	 */
+	public double getCutoffEnergyEV() {
+		return cutoffEnergyEV;
+	}
+
+	/**
+	 * Photons below this energy are absorbed locally. It must not be lower than the smallest energy in the attenuation tables (1 keV).
+	 * @param cutoffEnergyEV the energy in eV
+	 */
+	public void setCutoffEnergyEV(double cutoffEnergyEV) {
+		this.cutoffEnergyEV = cutoffEnergyEV;
+	}
+
+	public long getNumberOfPhotons() {
+		return numberOfPhotons;
+	}
+
+	public void setNumberOfPhotons(long numberOfPhotons) {
+		this.numberOfPhotons = numberOfPhotons;
+	}
+
+	/**
+	 * @return the number of photons of a work unit. Each work unit uses its own random stream.
+	 */
+	public int getPhotonsPerBatch() {
+		return photonsPerBatch;
+	}
+
+	/**
+	 * Sets the number of photons per work unit. Note that the random numbers of the photons, and hence the result, depend on this number.
+	 * @param photonsPerBatch the number of photons
+	 */
+	public void setPhotonsPerBatch(int photonsPerBatch) {
+		if (photonsPerBatch < 1) throw new IllegalArgumentException("At least one photon per batch is required.");
+		this.photonsPerBatch = photonsPerBatch;
+	}
+
+	public int getMaximumScatterEvents() {
+		return maximumScatterEvents;
+	}
+
+	public void setMaximumScatterEvents(int maximumScatterEvents) {
+		this.maximumScatterEvents = maximumScatterEvents;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @param seed the seed from which the random streams of all batches are derived
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+}
@@ -0,0 +1,10 @@
+/**
+ * Contains a parallel Monte Carlo simulation of the x-ray transport through a scene of physical objects.
+ *
+ * @author Andreas Maier
+ */
+package edu.stanford.rsl.conrad.physics.montecarlo;
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
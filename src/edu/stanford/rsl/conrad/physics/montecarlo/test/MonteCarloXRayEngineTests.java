@@ -0,0 +1,110 @@
+package edu.stanford.rsl.conrad.physics.montecarlo.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+
+import org.junit.After;
+import org.junit.Test;
+
+import edu.stanford.rsl.conrad.geometry.AbstractShape;
+import edu.stanford.rsl.conrad.geometry.Projection;
+import edu.stanford.rsl.conrad.geometry.Projection.CameraAxisDirection;
+import edu.stanford.rsl.conrad.geometry.shapes.simple.Box;
+import edu.stanford.rsl.conrad.geometry.trajectories.CircularTrajectory;
+import edu.stanford.rsl.conrad.geometry.transforms.Translation;
+import edu.stanford.rsl.conrad.numerics.SimpleVector;
+import edu.stanford.rsl.conrad.physics.PhysicalObject;
+import edu.stanford.rsl.conrad.physics.detector.XRayDetector;
+import edu.stanford.rsl.conrad.physics.materials.database.MaterialsDB;
+import edu.stanford.rsl.conrad.physics.montecarlo.DetectorTally;
+import edu.stanford.rsl.conrad.physics.montecarlo.MonteCarloXRayEngine;
+import edu.stanford.rsl.conrad.rendering.PrioritizableScene;
+import edu.stanford.rsl.conrad.utils.Configuration;
+import edu.stanford.rsl.conrad.utils.RegKeys;
+
+/**
+ * Checks that the result of the MonteCarloXRayEngine depends only on the seed, but not on the number of threads.
+ *
+ * @author akmaier
+ *
+ */
+public class MonteCarloXRayEngineTests {
+
+	private static final int detectorWidth = 32;
+	private static final int detectorHeight = 16;
+
+	private static Configuration createConfiguration(int threads){
+		CircularTrajectory trajectory = new CircularTrajectory();
+		trajectory.setDetectorWidth(detectorWidth);
+		trajectory.setDetectorHeight(detectorHeight);
+		trajectory.setPixelDimensionX(10.0);
+		trajectory.setPixelDimensionY(10.0);
+		trajectory.setSourceToAxisDistance(600.0);
+		trajectory.setSourceToDetectorDistance(1200.0);
+		trajectory.setReconDimensions(16, 16, 16);
+		trajectory.setVoxelSpacingX(1.0);
+		trajectory.setVoxelSpacingY(1.0);
+		trajectory.setVoxelSpacingZ(1.0);
+		trajectory.setAverageAngularIncrement(1.0);
+		trajectory.setProjectionStackSize(1);
+		trajectory.setDetectorUDirection(CameraAxisDirection.DETECTORMOTION_PLUS);
+		trajectory.setDetectorVDirection(CameraAxisDirection.ROTATIONAXIS_PLUS);
+		trajectory.setTrajectory(1, 600.0, 1.0, 0, 0, CameraAxisDirection.DETECTORMOTION_PLUS, CameraAxisDirection.ROTATIONAXIS_PLUS, new SimpleVector(0, 0, 1));
+		Configuration config = new Configuration();
+		config.setRegistry(new HashMap<String, String>());
+		config.setRegistryEntry(RegKeys.MAX_THREADS, "" + threads);
+		config.setGeometry(trajectory);
+		return config;
+	}
+
+	private static PhysicalObject createBox(String material, double size){
+		PhysicalObject object = new PhysicalObject();
+		object.setMaterial(MaterialsDB.getMaterial(material));
+		object.setNameString(material);
+		AbstractShape shape = new Box(size, size, size);
+		shape.applyTransform(new Translation(-size / 2, -size / 2, -size / 2));
+		object.setShape(shape);
+		return object;
+	}
+
+	private static DetectorTally simulate(int threads){
+		Configuration.setGlobalConfiguration(createConfiguration(threads));
+		Projection projection = Configuration.getGlobalConfiguration().getGeometry().getProjectionMatrix(0);
+		PrioritizableScene scene = new PrioritizableScene();
+		scene.add(createBox("air", 5000), -100000);
+		scene.add(createBox("water", 200), 0);
+		XRayDetector detector = new XRayDetector();
+		detector.setMaterial(MaterialsDB.getMaterial("lead"));
+		detector.generateDetectorShape(projection, 20);
+		scene.add(detector, 100000);
+		MonteCarloXRayEngine engine = new MonteCarloXRayEngine(scene, detector, projection, detectorWidth, detectorHeight);
+		engine.setSeed(42);
+		engine.setNumberOfPhotons(20000);
+		engine.setPhotonsPerBatch(500);
+		DetectorTally tally = engine.simulateTally();
+		assertEquals(20000, engine.getSimulatedPhotons());
+		return tally;
+	}
+
+	@After
+	public void resetConfiguration(){
+		Configuration.setGlobalConfiguration(null);
+	}
+
+	@Test
+	public void testResultDoesNotDependOnThreads(){
+		DetectorTally single = simulate(1);
+		DetectorTally parallel = simulate(4);
+		assertTrue(single.getNumberOfHits() > 0);
+		assertEquals(single.getNumberOfHits(), parallel.getNumberOfHits());
+		assertArrayEquals(single.toGrid2D().getBuffer(), parallel.toGrid2D().getBuffer(), 0);
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
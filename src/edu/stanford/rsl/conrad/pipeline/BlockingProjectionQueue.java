@@ -0,0 +1,192 @@
+package edu.stanford.rsl.conrad.pipeline;
+
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+import edu.stanford.rsl.conrad.parallel.ParallelThreadExecutor;
+
+/**
+ * Bounded buffer to hand projections from one stage of a pipeline to the next. Projections may be put in arbitrary order
+ * by several producers, but they are taken in the order of their projection numbers, starting with 0.<br>
+ * A producer blocks as long as the queue holds capacity or more projections and the next projection to be taken is among them.
+ * Hence, fast stages are slowed down to the speed of the consumer (backpressure) and the memory that is held in the queue is bounded.
+ * The bound is only advisory for projections that arrive out of order: As long as the next projection to be taken is missing,
+ * producers are never blocked. Otherwise, a producer that holds back the next projection, e.g. a multi projection filter, would
+ * wait for a consumer that waits for it.<br>
+ * A consumer blocks until the next projection arrived or until the queue is closed.
+ * Blocked threads wait on the monitor of the queue and do not consume any CPU time. If they are workers of the shared pool of the
+ * ParallelThreadExecutor, the pool compensates them with additional workers while they wait.
+ *
+ * @author akmaier
+ *
+ */
+public class BlockingProjectionQueue {
+
+	private final HashMap<Integer, Grid2D> projections = new HashMap<Integer, Grid2D>();
+	private final int capacity;
+	private int nextIndex = 0;
+	private boolean closed = false;
+	private final ForkJoinPool.ManagedBlocker waiter = new ForkJoinPool.ManagedBlocker() {
+
+		@Override
+		public boolean block() throws InterruptedException {
+			synchronized (BlockingProjectionQueue.this) {
+				BlockingProjectionQueue.this.wait();
+			}
+			return true;
+		}
+
+		@Override
+		public boolean isReleasable() {
+			// the callers check their condition after each wake-up.
+			return false;
+		}
+	};
+
+	/**
+	 * Creates a new queue.
+	 * @param capacity the number of projections that are held in the queue before producers are blocked.
+	 */
+	public BlockingProjectionQueue(int capacity){
+		if (capacity < 1) throw new IllegalArgumentException("Capacity must be at least 1 but was " + capacity);
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Puts the projection into the queue. Blocks while the queue is full and the consumer can make progress. A projection that is already in the queue is replaced.
+	 * @param projection the projection
+	 * @param projectionNumber the number of the projection
+	 * @throws InterruptedException if the thread is interrupted while waiting.
+	 */
+	public synchronized void put(Grid2D projection, int projectionNumber) throws InterruptedException {
+		if (projectionNumber < nextIndex) {
+			throw new IllegalArgumentException("Projection " + projectionNumber + " was already taken from the queue.");
+		}
+		while (projectionNumber != nextIndex && projections.size() >= capacity && projections.containsKey(nextIndex)) {
+			ParallelThreadExecutor.managedBlock(waiter);
+		}
+		projections.put(projectionNumber, projection);
+		notifyAll();
+	}
+
+	/**
+	 * Puts the projection into the queue like {@link #put(Grid2D, int)}, but waits at most the given time for the consumer.
+	 * The waiting time is not compensated by the shared pool. Hence, this method is meant for dedicated producer threads.
+	 * @param projection the projection
+	 * @param projectionNumber the number of the projection
+	 * @param timeout the maximal waiting time in milliseconds
+	 * @return false, if the projection was not put, because the queue remained full.
+	 * @throws InterruptedException if the thread is interrupted while waiting.
+	 */
+	public synchronized boolean offer(Grid2D projection, int projectionNumber, long timeout) throws InterruptedException {
+		if (projectionNumber < nextIndex) {
+			throw new IllegalArgumentException("Projection " + projectionNumber + " was already taken from the queue.");
+		}
+		long deadline = System.currentTimeMillis() + timeout;
+		while (projectionNumber != nextIndex && projections.size() >= capacity && projections.containsKey(nextIndex)) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) return false;
+			wait(remaining);
+		}
+		projections.put(projectionNumber, projection);
+		notifyAll();
+		return true;
+	}
+
+	/**
+	 * Puts the projection into the queue without waiting, even if the queue is full. Is meant for producers which return projections
+	 * that they had already taken out of the stream, e.g. while the only consumer waits for them. Otherwise, use {@link #put(Grid2D, int)}.
+	 * @param projection the projection
+	 * @param projectionNumber the number of the projection
+	 */
+	public synchronized void putUnbounded(Grid2D projection, int projectionNumber){
+		if (projectionNumber < nextIndex) {
+			throw new IllegalArgumentException("Projection " + projectionNumber + " was already taken from the queue.");
+		}
+		projections.put(projectionNumber, projection);
+		notifyAll();
+	}
+
+	/**
+	 * Takes the next projection from the queue. Blocks until the projection arrived.
+	 * @return the projection or null, if the queue was closed and the next projection was not put before.
+	 * @throws InterruptedException if the thread is interrupted while waiting.
+	 */
+	public Grid2D take() throws InterruptedException {
+		return take(null);
+	}
+
+	/**
+	 * Takes the next projection from the queue. Blocks until the projection arrived.
+	 * @param projectionNumber if not null, the number of the returned projection is stored in the first element.
+	 * @return the projection or null, if the queue was closed and the next projection was not put before.
+	 * @throws InterruptedException if the thread is interrupted while waiting.
+	 */
+	public synchronized Grid2D take(int [] projectionNumber) throws InterruptedException {
+		while (true) {
+			Grid2D revan = projections.remove(nextIndex);
+			if (revan != null){
+				if (projectionNumber != null) projectionNumber[0] = nextIndex;
+				nextIndex++;
+				notifyAll();
+				return revan;
+			}
+			if (closed) {
+				// the projection cannot arrive any more.
+				if (projectionNumber != null) projectionNumber[0] = nextIndex;
+				return null;
+			}
+			ParallelThreadExecutor.managedBlock(waiter);
+		}
+	}
+
+	/**
+	 * Marks the end of the stream. Projections that were put before are still delivered by {@link #take()}.
+	 */
+	public synchronized void close(){
+		if (!closed){
+			closed = true;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Reverts {@link #close()}, e.g. if a producer resumes a stream which it had closed.
+	 */
+	public synchronized void reopen(){
+		closed = false;
+	}
+
+	/**
+	 * Returns the number of the projection which will be returned by the next call of {@link #take()}.
+	 * @return the number
+	 */
+	public synchronized int getNextIndex(){
+		return nextIndex;
+	}
+
+	/**
+	 * Returns the number of projections which are currently held in the queue.
+	 * @return the number
+	 */
+	public synchronized int size(){
+		return projections.size();
+	}
+
+	/**
+	 * @return the number of projections in the queue before producers are blocked.
+	 */
+	public int getCapacity(){
+		return capacity;
+	}
+
+	public synchronized boolean isClosed(){
+		return closed;
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -2,6 +2,7 @@ package edu.stanford.rsl.conrad.pipeline;
 
 
 import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+import edu.stanford.rsl.conrad.filtering.FusedFilteringTool;
 import edu.stanford.rsl.conrad.filtering.ImageFilteringTool;
 import edu.stanford.rsl.conrad.filtering.IndividualImageFilteringTool;
 import edu.stanford.rsl.conrad.filtering.multiprojection.MultiProjectionFilter;
@@ -14,7 +15,12 @@ import edu.stanford.rsl.conrad.utils.RegKeys;
 /**
  * Class for running multiple ImageFilteringTools in parallel. Creates a thread for each ImageFilteringTool
  * and executes them using a ParallelThreadExecutor. It will start one thread on each processor of the
- * machine at the same time.
+ * machine at the same time.<br>
+ * The stages of the pipeline are connected by blocking queues. Stages that wait for data block without
+ * consuming CPU time and stages that produce data faster than the next stage can consume it are blocked
+ * as soon as the queue of the next stage is full.<br>
+ * Consecutive tools that process the projections row by row, e.g. cosine weighting, Parker weighting, and ramp filtering,
+ * are fused into a single pass over each projection by a FusedFilteringTool.
  * 
  * @author Andreas Maier
  *
@@ -84,7 +90,7 @@ public class ParallelImageFilterPipeliner {
 					ParallelImageFilterSink parallel = new ParallelImageFilterSink();
 					parallel.setShowStatus(false);
 					parallel.setSink(currentSink);
-					parallel.setPipeline(ParallelImageFilterPipeliner.getSubPipeline(tools, blockStart, currentTool+1));
+					parallel.setPipeline(FusedFilteringTool.fuse(ParallelImageFilterPipeliner.getSubPipeline(tools, blockStart, currentTool+1)));
 					parallel.setDebug(debug);
 					parallel.start(availableCPUs);
 					currentTool = blockStart-1;
@@ -105,8 +111,8 @@ public class ParallelImageFilterPipeliner {
 			currentSink.process(img, projectionNumber);
 			img = source.getNextProjection();
 			projectionNumber = source.getCurrentProjectionNumber();
-			// Here we should consider how much memory we have left
-			Thread.sleep(CONRAD.INVERSE_SPEEDUP);
+			// The stages block in process() if their queues are full, i.e. we are only
+			// slowed down here if the multi projection filters buffer too much memory.
 			double free = CONRAD.getFreeMemoryAsDouble();
 			if (free < 0.25){
 				int slowdown = Configuration.getGlobalConfiguration().queryIntFromRegistry(RegKeys.SLOW_DOWN_MS);
@@ -7,21 +7,27 @@ import edu.stanford.rsl.conrad.data.numeric.Grid2D;
 import edu.stanford.rsl.conrad.filtering.IndividualImageFilteringTool;
 import edu.stanford.rsl.conrad.parallel.ParallelThreadExecutor;
 import edu.stanford.rsl.conrad.parallel.ParallelizableRunnable;
-import edu.stanford.rsl.conrad.utils.CONRAD;
-import edu.stanford.rsl.conrad.utils.ImageGridBuffer;
-
-
+import edu.stanford.rsl.conrad.utils.Configuration;
+import edu.stanford.rsl.conrad.utils.RegKeys;
+
+
+/**
+ * Stage of the ParallelImageFilterPipeliner that applies a block of IndividualImageFilteringTools on several threads.
+ * Incoming projections are handed to the worker threads via a bounded BlockingProjectionQueue. Hence, idle workers block
+ * instead of polling and the upstream stage blocks if the workers cannot keep up.
+ * 
+ * @author Andreas Maier
+ * @see BlockingProjectionQueue
+ */
 public class ParallelImageFilterSink implements Runnable, ProjectionSink, ProjectionSource {
 
 	private ProjectionSink sink;
 	private IndividualImageFilteringTool [] pipeline;
-	private ImageGridBuffer buffer;
-	private int currentIndex = 0;
+	private BlockingProjectionQueue buffer;
+	private final Object initLock = new Object();
+	private volatile int currentIndex = 0;
 	private boolean debug = false;
-	private int lastIndex = -1;
-	private boolean closed = false;
 	private boolean showStatus = false;
-	private boolean init = false;
 	private int cpus = 1;
 
 	public void setShowStatus(boolean status){
@@ -42,12 +48,9 @@ public class ParallelImageFilterSink implements Runnable, ProjectionSink, Projec
 
 	@Override
 	public void close() throws Exception {
-		//System.out.println("Closing Parallel sink " + closed + " " +lastIndex +  " " + buffer.size());
 		//if (debug) throw new RuntimeException("Closing parallel tool");
-		if (!closed) {
-			lastIndex = buffer.size();
-			closed = true;
-		}
+		init();
+		buffer.close();
 	}
 
 	private void configureTool(IndividualImagePipelineFilteringTool tool, ProjectionSource source, ProjectionSink sink){
@@ -66,18 +69,36 @@ public class ParallelImageFilterSink implements Runnable, ProjectionSink, Projec
 
 	public void start(int cpus){
 		this.cpus = cpus;
+		init();
 		Thread thread = new Thread(this);
 		thread.start();
 	}
 
 	private void init(){
-		if (debug) System.out.println("ParallelImageFilterSink: init " + init);
-		if (!init){
-			buffer = new ImageGridBuffer();
-			init = true;
+		// process() and close() may be called by different threads of the upstream stage.
+		synchronized (initLock) {
+			if (debug) System.out.println("ParallelImageFilterSink: init " + (buffer != null));
+			if (buffer == null){
+				buffer = new BlockingProjectionQueue(getQueueCapacity());
+			}
 		}
 	}
 
+	/**
+	 * Reads the capacity of the queue from the registry. If it is not set, four projections per thread are buffered.
+	 * @return the capacity
+	 * @see RegKeys#PIPELINE_QUEUE_SIZE
+	 */
+	private int getQueueCapacity(){
+		int capacity = 4 * cpus;
+		Configuration config = Configuration.getGlobalConfiguration();
+		if (config != null && config.getRegistry() != null) {
+			String value = config.getRegistryEntry(RegKeys.PIPELINE_QUEUE_SIZE);
+			if (value != null) capacity = Integer.parseInt(value);
+		}
+		return capacity;
+	}
+
 	@Override
 	public String getName() {
 		return "Parallel Image Filter Sink";
@@ -88,7 +109,7 @@ public class ParallelImageFilterSink implements Runnable, ProjectionSink, Projec
 	throws Exception {
 		if (debug) System.out.println("ParallelImageFilterSink: project " + projectionNumber);
 		init();
-		buffer.add(projection, projectionNumber);
+		buffer.put(projection, projectionNumber);
 	}
 
 	@Override
@@ -97,60 +118,40 @@ public class ParallelImageFilterSink implements Runnable, ProjectionSink, Projec
 	}
 
 	@Override
-	public synchronized void getNextProjection(IndividualImagePipelineFilteringTool tool) {
-		Grid2D next = getNextProjection();
-		if (next != null) {
-			tool.setImageProcessor((next));
-			tool.setImageIndex(currentIndex-1);
-		} else {
-			tool.setImageProcessor(null);
-			tool.setImageIndex(currentIndex-1);
-		}
+	public void getNextProjection(IndividualImagePipelineFilteringTool tool) {
+		int [] number = new int[1];
+		Grid2D next = takeNextProjection(number);
+		tool.setImageProcessor(next);
+		tool.setImageIndex(number[0]);
 	}
 
 	@Override
-	public synchronized Grid2D getNextProjection() {
+	public Grid2D getNextProjection() {
+		return takeNextProjection(new int[1]);
+	}
+
+	/**
+	 * Takes the next projection from the queue. The projection and its number are taken atomically by the queue.
+	 * Hence, no lock of the sink is held while the worker waits for the projection.
+	 * @param number the number of the projection is stored in the first element
+	 * @return the projection or null at the end of the stream
+	 */
+	private Grid2D takeNextProjection(int [] number){
 		Grid2D revan = null;
 		if (debug) {
 			System.out.println("ParallelImageFilterSink: Projection requested: " + currentIndex);
 		}
-		while (revan == null) {
-			if (debug) System.out.println("ParallelImageFilterSink: buffer = " + buffer);
-			if (buffer != null) {
-				revan = buffer.get(currentIndex);
-				if (closed){
-					if (debug) {
-						System.out.println("ParallelImageFilterSink: All data arrived. currentIndex: " + currentIndex + " of " + lastIndex+ " buffer: " + buffer.size());
-					}
-					// we are trying to read after the last index.
-					if (currentIndex >= lastIndex) {
-						try {
-							if (debug) {
-								System.out.println("ParallelImageFilterSink: End of Stream reached.");
-							}
-							break;
-						} catch (Exception e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						}
-					}
-				}
-			}
-			try {
-				Thread.sleep(CONRAD.INVERSE_SPEEDUP);
-			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
+		try {
+			// blocks until the projection arrived or the end of the stream is reached.
+			revan = buffer.take(number);
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			Thread.currentThread().interrupt();
 		}
-		if (closed) {
-			if (currentIndex < lastIndex) {
-				buffer.remove(currentIndex);
-			}
-		} else {
-			buffer.remove(currentIndex);
+		if (debug && revan == null) {
+			System.out.println("ParallelImageFilterSink: End of Stream reached.");
 		}
-		currentIndex ++;
+		currentIndex = number[0] + 1;
 		return revan;
 	}
 
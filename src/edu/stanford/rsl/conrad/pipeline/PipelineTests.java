@@ -1,13 +1,27 @@
 package edu.stanford.rsl.conrad.pipeline;
 
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
 import org.junit.Test;
 
 import edu.stanford.rsl.conrad.data.numeric.Grid2D;
 import edu.stanford.rsl.conrad.filtering.HorizontalFlippingTool;
 import edu.stanford.rsl.conrad.filtering.ImageFilteringTool;
 import edu.stanford.rsl.conrad.io.FileProjectionSource;
+import edu.stanford.rsl.conrad.io.PrefetchingProjectionSource;
 import edu.stanford.rsl.conrad.utils.FileUtil;
+import edu.stanford.rsl.conrad.utils.ImageGridBuffer;
 
 public class PipelineTests {
 
@@ -50,6 +64,302 @@ public class PipelineTests {
 		}
 
 	}
+
+	@Test
+	public void testBlockingProjectionQueue() throws Exception {
+		// Projections are put in reverse order by another thread, but must be taken in order.
+		// The producer is blocked by the capacity until the consumer takes the first projections.
+		final int numProjections = 20;
+		final BlockingProjectionQueue queue = new BlockingProjectionQueue(4);
+		final Grid2D [] projections = new Grid2D[numProjections];
+		for (int i = 0; i < numProjections; i++){
+			projections[i] = new Grid2D(2, 2);
+		}
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (int block = 0; block < numProjections; block += 4){
+						for (int i = block + 3; i >= block; i--){
+							queue.put(projections[i], i);
+						}
+					}
+					queue.close();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+		producer.start();
+		for (int i = 0; i < numProjections; i++){
+			assertSame(projections[i], queue.take());
+			assertEquals(i + 1, queue.getNextIndex());
+		}
+		assertNull(queue.take());
+		producer.join();
+		assertEquals(0, queue.size());
+	}
+
+	@Test
+	public void testBlockingProjectionQueueOutOfOrder() throws Exception {
+		// A producer that holds back the first projection must not be blocked by the capacity.
+		// Otherwise, this single thread would never reach take().
+		int numProjections = 20;
+		BlockingProjectionQueue queue = new BlockingProjectionQueue(4);
+		Grid2D [] projections = new Grid2D[numProjections];
+		for (int i = numProjections - 1; i >= 0; i--){
+			projections[i] = new Grid2D(2, 2);
+			queue.put(projections[i], i);
+		}
+		assertEquals(numProjections, queue.size());
+		queue.close();
+		int [] number = new int[1];
+		for (int i = 0; i < numProjections; i++){
+			assertSame(projections[i], queue.take(number));
+			assertEquals(i, number[0]);
+		}
+		assertNull(queue.take());
+	}
+
+	@Test
+	public void testImageGridBufferSpill() throws Exception {
+		// The memory limit allows only two 8x8 images in memory. All others are written to disk and read back on access.
+		ImageGridBuffer buffer = new ImageGridBuffer(2 * 8 * 8 * 4, null);
+		int numImages = 10;
+		for (int i = numImages - 1; i >= 0; i--){
+			Grid2D image = new Grid2D(8, 8);
+			image.setSpacing(0.5, 0.25);
+			image.setAtIndex(3, 5, i);
+			buffer.add(image, i);
+			assertFalse(buffer.getUsedMemory() > buffer.getMemoryLimit());
+		}
+		assertEquals(numImages, buffer.size());
+		Grid2D [] array = buffer.toArray();
+		for (int i = 0; i < numImages; i++){
+			assertEquals(i, array[i].getAtIndex(3, 5), 0);
+			assertEquals(0.25, array[i].getSpacing()[1], 0);
+		}
+		buffer.remove(4);
+		assertFalse(buffer.contains(4));
+		assertNull(buffer.get(4));
+		assertEquals(7, buffer.take(7).getAtIndex(3, 5), 0);
+		assertFalse(buffer.contains(7));
+	}
+
+	@Test
+	public void testImageGridBufferKeepsChangesOfPinnedImages() throws Exception {
+		ImageGridBuffer buffer = new ImageGridBuffer(2 * 8 * 8 * 4, null);
+		int numImages = 6;
+		for (int i = 0; i < numImages; i++){
+			buffer.add(new Grid2D(8, 8), i);
+		}
+		// change the images in place while they are handed out, as the filters of the pipeline do.
+		for (int i = 0; i < numImages; i++){
+			Grid2D image = buffer.get(i);
+			// images that are handed out are not written to disk.
+			buffer.add(new Grid2D(8, 8), numImages + i);
+			buffer.get(numImages + i);
+			buffer.unpin(numImages + i);
+			image.setAtIndex(1, 2, i + 1);
+			buffer.unpin(i);
+			assertFalse(buffer.getUsedMemory() > buffer.getMemoryLimit());
+		}
+		for (int i = 0; i < numImages; i++){
+			assertEquals(i + 1, buffer.get(i).getAtIndex(1, 2), 0);
+			buffer.unpin(i);
+		}
+		assertFalse(buffer.getUsedMemory() > buffer.getMemoryLimit());
+	}
+
+	@Test
+	public void testImageGridBufferKeepsImageOnDiskIfReadingFails() throws Exception {
+		File directory = File.createTempFile("ImageGridBuffer", "");
+		directory.delete();
+		directory.mkdir();
+		try {
+			// only one image fits into memory, i.e. the first one is written to disk.
+			ImageGridBuffer buffer = new ImageGridBuffer(8 * 8 * 4, directory);
+			Grid2D image = new Grid2D(8, 8);
+			image.setAtIndex(3, 5, 7);
+			buffer.add(image, 0);
+			buffer.add(new Grid2D(8, 8), 1);
+			File [] files = directory.listFiles();
+			assertEquals(1, files.length);
+			byte [] content = new byte [(int) files[0].length()];
+			RandomAccessFile file = new RandomAccessFile(files[0], "rw");
+			try {
+				file.readFully(content);
+				file.setLength(content.length / 2);
+			} finally {
+				file.close();
+			}
+			try {
+				buffer.get(0);
+				fail("truncated image was read");
+			} catch (RuntimeException e) {
+				// expected
+			}
+			assertTrue(buffer.contains(0));
+			assertTrue(files[0].exists());
+			file = new RandomAccessFile(files[0], "rw");
+			try {
+				file.write(content);
+			} finally {
+				file.close();
+			}
+			assertEquals(7, buffer.get(0).getAtIndex(3, 5), 0);
+			assertFalse(files[0].exists());
+		} finally {
+			for (File file : directory.listFiles()) file.delete();
+			directory.delete();
+		}
+	}
+
+	/**
+	 * Source of numbered projections, which fails at the given projection.
+	 */
+	private static class CountingSource implements ProjectionSource {
+		private int current = -1;
+		private final int numProjections;
+		private final int failAt;
+
+		CountingSource(int numProjections, int failAt){
+			this.numProjections = numProjections;
+			this.failAt = failAt;
+		}
+
+		public void initStream(String filename){
+		}
+
+		public void getNextProjection(IndividualImagePipelineFilteringTool tool){
+		}
+
+		public int getCurrentProjectionNumber(){
+			return current;
+		}
+
+		public Grid2D getNextProjection(){
+			if (current + 1 == failAt) throw new RuntimeException("Projection " + failAt + " is broken.");
+			if (current + 1 >= numProjections) return null;
+			current++;
+			Grid2D projection = new Grid2D(2, 2);
+			projection.setAtIndex(0, 0, current);
+			return projection;
+		}
+	}
+
+	/**
+	 * Prefetching source with random access to numbered projections, which are decoded by several threads.
+	 * Every third projection is decoded slowly. Hence, the projections arrive out of order.
+	 */
+	private static class RandomAccessSource extends PrefetchingProjectionSource {
+		private final int numProjections;
+		private final int failAt;
+
+		RandomAccessSource(int numProjections, int failAt, int capacity, int numberOfThreads){
+			super(capacity, numberOfThreads);
+			this.numProjections = numProjections;
+			this.failAt = failAt;
+			start();
+		}
+
+		@Override
+		protected boolean isRandomAccess(){
+			return true;
+		}
+
+		@Override
+		protected int getNumberOfProjections(){
+			return numProjections;
+		}
+
+		@Override
+		protected Grid2D readProjection(int index) throws IOException {
+			if (index % 3 == 0) {
+				try {
+					Thread.sleep(20);
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+			}
+			if (index == failAt) throw new IOException("Projection " + failAt + " is broken.");
+			Grid2D projection = new Grid2D(2, 2);
+			projection.setAtIndex(0, 0, index);
+			return projection;
+		}
+	}
+
+	private static boolean isReaderAlive(){
+		for (Thread thread : Thread.getAllStackTraces().keySet()){
+			if (thread.getName().startsWith("PrefetchingProjectionSource") && thread.isAlive()) return true;
+		}
+		return false;
+	}
+
+	@Test(timeout = 20000)
+	public void testPrefetchingSourceResumesAfterIdleTimeout() throws Exception {
+		PrefetchingProjectionSource source = new PrefetchingProjectionSource(new CountingSource(10, -1), 2);
+		source.setIdleTimeout(50);
+		assertEquals(0, source.getNextProjection().getAtIndex(0, 0), 0);
+		// the consumer pauses. Hence, the reader terminates instead of waiting forever.
+		long deadline = System.currentTimeMillis() + 10000;
+		while (isReaderAlive() && System.currentTimeMillis() < deadline){
+			Thread.sleep(20);
+		}
+		assertFalse(isReaderAlive());
+		for (int i = 1; i < 10; i++){
+			assertEquals(i, source.getNextProjection().getAtIndex(0, 0), 0);
+			assertEquals(i, source.getCurrentProjectionNumber());
+		}
+		assertNull(source.getNextProjection());
+		source.close();
+	}
+
+	/**
+	 * The consumer pauses longer than the idle timeout, while the decoders have filled the queue and parked further projections.
+	 * Resuming must not wait for the consumer that resumes.
+	 */
+	@Test(timeout = 60000)
+	public void testPrefetchingSourceResumesWithSeveralDecoders() throws Exception {
+		for (int run = 0; run < 5; run++){
+			PrefetchingProjectionSource source = new RandomAccessSource(12, -1, 2, 4);
+			source.setIdleTimeout(10);
+			for (int i = 0; i < 12; i++){
+				assertEquals(i, source.getNextProjection().getAtIndex(0, 0), 0);
+				if (i % 4 == run % 4) Thread.sleep(60);
+			}
+			assertNull(source.getNextProjection());
+			assertNull(source.getError());
+			source.close();
+		}
+	}
+
+	/**
+	 * The projections before the broken one are delivered, even if other decoders claimed them before the error.
+	 */
+	@Test(timeout = 20000)
+	public void testPrefetchingSourceWithSeveralDecodersEndsAtTheBrokenProjection() throws Exception {
+		for (int run = 0; run < 5; run++){
+			PrefetchingProjectionSource source = new RandomAccessSource(12, 7, 4, 4);
+			for (int i = 0; i < 7; i++){
+				assertEquals(i, source.getNextProjection().getAtIndex(0, 0), 0);
+			}
+			assertNull(source.getNextProjection());
+			assertNotNull(source.getError());
+			source.close();
+		}
+	}
+
+	@Test(timeout = 20000)
+	public void testPrefetchingSourceEndsWithNullOnError() throws Exception {
+		PrefetchingProjectionSource source = new PrefetchingProjectionSource(new CountingSource(10, 3), 2);
+		for (int i = 0; i < 3; i++){
+			assertEquals(i, source.getNextProjection().getAtIndex(0, 0), 0);
+		}
+		assertNull(source.getNextProjection());
+		assertNotNull(source.getError());
+		source.close();
+	}
 }
 /*
  * Copyright (C) 2010-2014 Andreas Maier
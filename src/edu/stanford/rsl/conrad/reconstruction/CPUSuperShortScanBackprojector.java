@@ -70,11 +70,7 @@ public class CPUSuperShortScanBackprojector extends VOIBasedReconstructionFilter
 					for (int j = 0; j < maxJ; j++){ // for all voxels
 						// compute real world coordinates in homogenious coordinates;
 						boolean project = true;
-						if (useVOImap){
-							if (voiMap != null){
-								project = voiMap[i][j][k];
-							}
-						}
+						project = isInVOI(i, j, k);
 						if (project){			
 							voxel[1] = (this.getGeometry().getVoxelSpacingY() * j) - offsetY;
 							updateMatrix[0][1] = mat.getElement(0,1) * voxel[1];
@@ -40,15 +40,27 @@ public abstract class FBPReconstructionFilter extends ReconstructionFilter {
 	 */
 	protected abstract void backproject(Grid2D projection, int projectionNumber) throws Exception;
 
-	@Override
-	protected void reconstruct() throws Exception {
+	/**
+	 * Backprojects all projections of the input queue into the projection volume.
+	 * The default implementation calls {@link #backproject(Grid2D, int)} for each projection in sequence.
+	 * Sub classes may override this to distribute the work onto several threads.
+	 * @throws Exception may happen.
+	 */
+	protected void backprojectAll() throws Exception {
 		for (int i = 0; i < nImages; i++){
 			try {
 			backproject(inputQueue.get(i), i);
 			} catch (Exception e){
 				System.out.println("An error occured during backprojection of projection " + i);
+			} finally {
+				inputQueue.unpin(i);
 			}
 		}
+	}
+
+	@Override
+	protected void reconstruct() throws Exception {
+		backprojectAll();
 		if (Configuration.getGlobalConfiguration().getUseHounsfieldScaling()) applyHounsfieldScaling();
 		int [] size = projectionVolume.getSize();
 		
@@ -74,15 +74,12 @@ public class MotionCompensatedSubVolumeBackprojector extends SubVolumeBackprojec
 				projectors[i].maxK = this.maxK;
 				projectors[i].maxJ = this.maxJ;
 				projectors[i].lineOffset = lineOffset;
-				if(projectors[i].useVOImap && projectors[i].interestedInVolume!=null){
-					projectors[i].setFastVOIMode(false);
-					projectors[i].initializeVOIMap();
-				}
 				((MotionCompensatedVOIBasedReconstructionFilter)projectors[i]).setMotionField(motionField);
 				projectors[i].init = true;
 			}
 
 		}
+		if (!debug) shareVOIMap(subVolumeReconDimensionX, -getGeometry().getOriginX(), ((reconDimensionY-1) * voxelSpacingY) / 2, ((reconDimensionZ-1) * voxelSpacingZ) / 2);
 		volumeRewritten = false;
 	}
 
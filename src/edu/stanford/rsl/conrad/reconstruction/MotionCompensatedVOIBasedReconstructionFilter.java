@@ -104,11 +104,7 @@ public class MotionCompensatedVOIBasedReconstructionFilter extends VOIBasedRecon
 						voxel[0] = (this.getGeometry().getVoxelSpacingX() * i) - offsetX;
 						// compute real world coordinates in homogenious coordinates;
 						boolean project = true;
-						if (useVOImap){
-							if (voiMap != null){
-								project = voiMap[i][j][k];
-							}
-						}
+						project = isInVOI(i, j, k);
 						if (project){			
 							PointND point = new PointND(voxel[0], voxel[1], voxel[2]);
 							if (centerTranlation !=null){
@@ -94,11 +94,7 @@ public class RayWeightCorrectingCPUSuperShortScanBackprojector extends VOIBasedR
 				for (int j = 0; j < maxJ; j++){ // for all voxels
 					// compute real world coordinates in homogenious coordinates;
 					boolean project = true;
-					if (useVOImap){
-						if (voiMap != null){
-							project = voiMap[i][j][k];
-						}
-					}
+					project = isInVOI(i, j, k);
 					if (project){		
 						boolean inProjection = true;
 						voxel[1] = (this.getGeometry().getVoxelSpacingY() * j) - offsetY;
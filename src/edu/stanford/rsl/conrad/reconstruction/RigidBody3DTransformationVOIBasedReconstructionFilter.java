@@ -83,11 +83,7 @@ public class RigidBody3DTransformationVOIBasedReconstructionFilter extends VOIBa
 						voxel[0] = (this.getGeometry().getVoxelSpacingX() * i) - offsetX;
 						// compute real world coordinates in homogeneous coordinates;
 						boolean project = true;
-						if (useVOImap){
-							if (voiMap != null){
-								project = voiMap[i][j][k];
-							}
-						}
+						project = isInVOI(i, j, k);
 						if (project){			
 							PointND point0 = new PointND(voxel[0], voxel[1], voxel[2]);
 							PointND point1 = new PointND(voxel[0], voxel[1], voxel[2]); // will be transformed
@@ -8,6 +8,7 @@ import edu.stanford.rsl.conrad.data.numeric.Grid3D;
 import edu.stanford.rsl.conrad.parallel.ParallelThreadExecutor;
 import edu.stanford.rsl.conrad.parallel.ParallelizableRunnable;
 import edu.stanford.rsl.conrad.parallel.SimpleParallelThread;
+import edu.stanford.rsl.conrad.reconstruction.voi.RunLengthVOIMap;
 import edu.stanford.rsl.conrad.reconstruction.voi.VolumeOfInterest;
 import edu.stanford.rsl.conrad.utils.CONRAD;
 import edu.stanford.rsl.conrad.utils.Configuration;
@@ -103,9 +104,36 @@ public class SubVolumeBackprojector extends VOIBasedReconstructionFilter {
 			}
 
 		}
+		if (!debug) shareVOIMap(subVolumeReconDimensionX, -getGeometry().getOriginX(), -getGeometry().getOriginY(), -getGeometry().getOriginZ());
 		volumeRewritten = false;
 	}
 
+	/**
+	 * The own map is the same as the shared map of the complete volume. Hence, it is only computed once.
+	 */
+	@Override
+	protected synchronized void initializeVOIMap(){
+		voiMap = createVOIMap(getGeometry().getReconDimensionX(), getGeometry().getReconDimensionY(), getGeometry().getReconDimensionZ(),
+				-getGeometry().getOriginX(), -getGeometry().getOriginY(), -getGeometry().getOriginZ());
+	}
+
+	/**
+	 * Computes the VOI map of the complete volume once and hands the respective part to each sub projector.
+	 * @param subVolumeReconDimensionX the width of the sub volumes
+	 * @param offsetX the offset of the complete volume in x direction
+	 * @param offsetY the offset of the complete volume in y direction
+	 * @param offsetZ the offset of the complete volume in z direction
+	 */
+	protected void shareVOIMap(int subVolumeReconDimensionX, double offsetX, double offsetY, double offsetZ){
+		int reconDimensionX = getGeometry().getReconDimensionX();
+		RunLengthVOIMap map = createVOIMap(reconDimensionX, getGeometry().getReconDimensionY(), getGeometry().getReconDimensionZ(), offsetX, offsetY, offsetZ);
+		for (int i = 0; i < numThreads; i++){
+			int iStart = Math.min(i * subVolumeReconDimensionX, reconDimensionX);
+			int iCount = Math.max(0, Math.min(projectors[i].maxI, reconDimensionX - iStart));
+			projectors[i].voiMap = map.getSubMap(iStart, iCount);
+		}
+	}
+
 	@Override
 	public void prepareForSerialization(){
 		super.prepareForSerialization();
@@ -192,18 +220,12 @@ public class SubVolumeBackprojector extends VOIBasedReconstructionFilter {
 	
 	@Override
 	public void setMaximumVolumeOfInterest(VolumeOfInterest maxVOI) {
+		super.setMaximumVolumeOfInterest(maxVOI);
 		for (int i = 0; i < projectors.length; i++) {
 			projectors[i].setMaximumVolumeOfInterest(maxVOI);
 			projectors[i].useVOImap = true;
 		}
 	}
-	
-	@Override
-	public void setFastVOIMode(boolean fastVOIMode) {
-		for (int i = 0; i < projectors.length; i++) {
-			projectors[i].setFastVOIMode(fastVOIMode);
-		}
-	}
 
 }
 /*
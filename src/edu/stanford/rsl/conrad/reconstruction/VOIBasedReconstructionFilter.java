@@ -2,19 +2,21 @@ package edu.stanford.rsl.conrad.reconstruction;
 
 
 import java.text.NumberFormat;
+import java.util.Arrays;
 import java.util.Locale;
 
 import edu.stanford.rsl.conrad.data.numeric.Grid2D;
-import edu.stanford.rsl.conrad.data.numeric.Grid3D;
 import edu.stanford.rsl.conrad.filtering.ImageFilteringTool;
 import edu.stanford.rsl.conrad.numerics.SimpleMatrix;
 import edu.stanford.rsl.conrad.numerics.SimpleOperators;
-import edu.stanford.rsl.conrad.reconstruction.voi.CylinderBasedVolumeOfInterest;
+import edu.stanford.rsl.conrad.parallel.ParallelThreadExecutor;
+import edu.stanford.rsl.conrad.parallel.ParallelizableRunnable;
+import edu.stanford.rsl.conrad.parallel.SimpleParallelThread;
+import edu.stanford.rsl.conrad.reconstruction.voi.RunLengthVOIMap;
 import edu.stanford.rsl.conrad.reconstruction.voi.VolumeOfInterest;
 import edu.stanford.rsl.conrad.utils.CONRAD;
 import edu.stanford.rsl.conrad.utils.Configuration;
 import edu.stanford.rsl.conrad.utils.RegKeys;
-import ij.process.FloatProcessor;
 
 
 /**
@@ -43,22 +45,40 @@ public class VOIBasedReconstructionFilter extends FBPReconstructionFilter {
 
 
 
-	protected boolean fastVOIMode = true;
+	protected boolean slabParallelAccumulation = false;
 
-	protected boolean [][][] voiMap;
+	/**
+	 * Runs of voxels inside the VOI for each line of voxels. Created in initializeVOIMap() or on first use.
+	 */
+	protected RunLengthVOIMap voiMap;
 	protected boolean useVOImap = true;
 	protected VolumeOfInterest interestedInVolume = null;
 	//protected boolean done = false;
+	/** the file from which interestedInVolume was read */
+	private String interestedInVolumeFile = null;
+	/** the last map that was created by createVOIMap() together with its VOI and its geometry */
+	private RunLengthVOIMap cachedVOIMap;
+	private VolumeOfInterest cachedVOIMapVolume;
+	private double [] cachedVOIMapGeometry;
 
 	@Override
 	public void prepareForSerialization(){
 		super.prepareForSerialization();
 		init = false;
 		voiMap = null;
+		cachedVOIMap = null;
+		cachedVOIMapVolume = null;
+		cachedVOIMapGeometry = null;
 	}
 
+	/**
+	 * Reads the VOI from the file. The file is only read again if its name changed.
+	 * @param maxVOIFile the file name
+	 */
 	public void setMaximumVolumeOfInterest(String maxVOIFile) {
+		if (interestedInVolume != null && maxVOIFile != null && maxVOIFile.equals(interestedInVolumeFile)) return;
 		interestedInVolume = VolumeOfInterest.openAsVolume(maxVOIFile);
+		interestedInVolumeFile = (interestedInVolume != null) ? maxVOIFile : null;
 		if (interestedInVolume == null) {
 			useVOImap =false;
 			CONRAD.log("No VOI being used.");
@@ -67,6 +87,7 @@ public class VOIBasedReconstructionFilter extends FBPReconstructionFilter {
 
 	public void setMaximumVolumeOfInterest(VolumeOfInterest maxVOI){
 		interestedInVolume = maxVOI;
+		interestedInVolumeFile = null;
 		if (interestedInVolume == null) {
 			useVOImap =false;
 			CONRAD.log("No VOI being used.");
@@ -124,163 +145,266 @@ public class VOIBasedReconstructionFilter extends FBPReconstructionFilter {
 	}
 
 	protected synchronized void initializeVOIMap(){
-		if (useVOImap) {
-			voiMap = new boolean[maxI][maxJ][maxK];
+		voiMap = createVOIMap(maxI, maxJ, maxK, offsetX, offsetY, offsetZ);
+	}
+
+	/**
+	 * Creates the VOI map for the given volume. The map is only computed again if the VOI or the geometry changed since
+	 * the last call. Hence, the map is computed once per configuration and not once per reconstructed volume.
+	 * @param dimensionX the number of voxels in x direction
+	 * @param dimensionY the number of voxels in y direction
+	 * @param dimensionZ the number of voxels in z direction
+	 * @param offsetX the offset of the volume in x direction
+	 * @param offsetY the offset of the volume in y direction
+	 * @param offsetZ the offset of the volume in z direction
+	 * @return the map
+	 */
+	protected synchronized RunLengthVOIMap createVOIMap(int dimensionX, int dimensionY, int dimensionZ, double offsetX, double offsetY, double offsetZ){
+		VolumeOfInterest volume = (useVOImap) ? interestedInVolume : null;
+		double [] geometry = {dimensionX, dimensionY, dimensionZ,
+				getGeometry().getVoxelSpacingX(), getGeometry().getVoxelSpacingY(), getGeometry().getVoxelSpacingZ(),
+				offsetX, offsetY, offsetZ};
+		if (cachedVOIMap != null && volume == cachedVOIMapVolume && Arrays.equals(geometry, cachedVOIMapGeometry)) {
+			return cachedVOIMap;
+		}
+		if (volume != null) {
 			CONRAD.log("Creating Voi map - Current Time:" + System.currentTimeMillis());
-			for (int k = 0; k < maxK; k++){ // for all slices
-				double[] voxel = new double [4];
-				voxel[2] = (this.getGeometry().getVoxelSpacingZ() * k) - offsetZ;
-				for (int i=0; i < maxI; i++){ // for all lines
-					voxel[0] = (this.getGeometry().getVoxelSpacingX() * i) - offsetX;
-					for (int j = 0; j < maxJ; j++){ // for all voxels
-						voxel[1] = (this.getGeometry().getVoxelSpacingY() * j) - offsetY;
-						if (interestedInVolume == null) {
-							voiMap[i][j][k] = true;
+			cachedVOIMap = RunLengthVOIMap.create(volume, dimensionX, dimensionY, dimensionZ,
+					geometry[3], geometry[4], geometry[5], offsetX, offsetY, offsetZ);
+			CONRAD.log("VOIBasedBackprojector: VOI map created." + System.currentTimeMillis() + " " + volume);
+		} else {
+			if (useVOImap) CONRAD.log("VOIBasedBackprojector: interestedInVolume was null.");
+			else CONRAD.log("VOIBasedBackprojector: Omitting creation of VOI map");
+			cachedVOIMap = RunLengthVOIMap.createFullVolume(dimensionX, dimensionY, dimensionZ);
+		}
+		cachedVOIMapVolume = volume;
+		cachedVOIMapGeometry = geometry;
+		return cachedVOIMap;
+	}
+
+	/**
+	 * Returns the VOI map of the backprojector. The map is created on the first call, if it was not yet initialized.
+	 * @return the map
+	 */
+	protected RunLengthVOIMap getVOIMap(){
+		RunLengthVOIMap map = voiMap;
+		if (map == null) {
+			synchronized (this) {
+				if (voiMap == null) initializeVOIMap();
+				map = voiMap;
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * Tests whether the voxel (i, j, k) is inside the VOI. Always true, if no VOI is used.
+	 * @param i the index in x direction
+	 * @param j the index in y direction
+	 * @param k the index in z direction
+	 * @return true, if the voxel is to be reconstructed
+	 */
+	protected boolean isInVOI(int i, int j, int k){
+		return getVOIMap().contains(i, j, k);
+	}
+
+	public void backproject(Grid2D projection, int projectionNumber){
+		if (!init){
+			initialize(projection);
+		}
+		weightProjection(projection);
+		backproject(projection, projectionNumber, 0, maxK, false);
+	}
+
+	/**
+	 * Applies the constant part of the distance weighting (D^2) and the additional weighting for arbitrary scan ranges
+	 * to the projection. The projection is modified in place.
+	 * @param projection the projection to weight
+	 */
+	protected void weightProjection(Grid2D projection){
+		double D =  getGeometry().getSourceToDetectorDistance();
+		float [] pixels = projection.getBuffer();
+		double weight = D*D * 2* Math.PI / getGeometry().getNumProjectionMatrices();
+		for (int i = 0; i < pixels.length; i++){
+			pixels[i] = (float) (pixels[i] * weight);
+		}
+		projection.notifyAfterWrite();
+	}
+
+	/**
+	 * Backprojects an already weighted projection into the slab of slices [kStart, kEnd) of the projection volume.
+	 * If ownsSlab is set, the calling thread must be the only one writing to these slices. The volume is then updated
+	 * without locking.
+	 * @param projection the weighted projection
+	 * @param projectionNumber the number of the projection in the data set
+	 * @param kStart the first slice to update
+	 * @param kEnd the slice after the last slice to update
+	 * @param ownsSlab whether the calling thread has exclusive write access to the slab
+	 * @see #weightProjection(Grid2D)
+	 */
+	protected void backproject(Grid2D projection, int projectionNumber, int kStart, int kEnd, boolean ownsSlab){
+		SimpleMatrix mat = getGeometry().getProjectionMatrix(projectionNumber).computeP();
+		if (mat == null) return;
+		float [] pixels = projection.getBuffer();
+		int width = projection.getWidth();
+		int height = projection.getHeight();
+		int volumeWidth = projectionVolume.getSize()[0];
+		double spacingX = getGeometry().getVoxelSpacingX();
+		double spacingY = getGeometry().getVoxelSpacingY();
+		double spacingZ = getGeometry().getVoxelSpacingZ();
+		double m00 = mat.getElement(0,0), m01 = mat.getElement(0,1), m02 = mat.getElement(0,2), m03 = mat.getElement(0,3);
+		double m10 = mat.getElement(1,0), m11 = mat.getElement(1,1), m12 = mat.getElement(1,2), m13 = mat.getElement(1,3);
+		double m20 = mat.getElement(2,0), m21 = mat.getElement(2,1), m22 = mat.getElement(2,2), m23 = mat.getElement(2,3);
+		// the homogeneous detector coordinates change linearly along a row of voxels in j direction.
+		double stepU = m01 * spacingY;
+		double stepV = m11 * spacingY;
+		double stepW = m21 * spacingY;
+		double y0 = -offsetY;
+		float [] row = (ownsSlab) ? null : new float[maxJ];
+		RunLengthVOIMap map = getVOIMap();
+		int count = 0;
+		for (int k = kStart; k < kEnd ; k++){ // for all slices
+			if (debug) System.out.println("here: " + " " + k);
+			double z = (spacingZ * k) - offsetZ;
+			float [] slice = projectionVolume.getSubGrid(k).getBuffer();
+			for (int i=0; i < maxI; i++){ // for all lines
+				double x = (spacingX * i) - offsetX;
+				int [] runs = map.getRuns(i, k);
+				if (runs.length == 0) continue;
+				// projection of the first voxel of the line
+				double rowU = m00 * x + m01 * y0 + m02 * z + m03;
+				double rowV = m10 * x + m11 * y0 + m12 * z + m13;
+				double rowW = m20 * x + m21 * y0 + m22 * z + m23;
+				for (int r = 0; r < runs.length; r += 2){
+					int j = runs[r];
+					double u = rowU + j * stepU;
+					double v = rowV + j * stepV;
+					double w = rowW + j * stepW;
+					for (; j < runs[r + 1]; j++){ // for all voxels
+						double invW = 1.0 / w;
+						double increment = interpolate(pixels, width, height, (u * invW) + lineOffset, v * invW) * invW * invW;
+						if (Double.isNaN(increment)){
+							if (count < 10) System.out.println("NAN Happened at i = " + i + " j = " + j + " k = " + k + " projection = " + projectionNumber + " x = " + (u * invW) + " y = " + (v * invW)  );
+							increment = 0;
+							count ++;
+						}
+						if (ownsSlab) {
+							slice[j * volumeWidth + i] += increment;
 						} else {
-							if (interestedInVolume.contains(voxel[0], voxel[1], voxel[2])) {
-								voiMap[i][j][k] = true;
-							} else {
-								voiMap[i][j][k] = false;
-							}
+							row[j] = (float) increment;
 						}
+						u += stepU;
+						v += stepV;
+						w += stepW;
 					}
 				}
-				if (fastVOIMode){
-					int lowerLimit = (int) (maxK*0.1);
-					if (interestedInVolume instanceof CylinderBasedVolumeOfInterest){
-						lowerLimit = (int) (maxK*0.2);
-					}
-					if (k > lowerLimit) {
-						int upperLimit = (int) (maxK*0.9);
-						if (interestedInVolume instanceof CylinderBasedVolumeOfInterest){
-							upperLimit = (int) (maxK*0.8);
-						}
-						if (k < upperLimit){
-							int l;
-							for (l = lowerLimit + 1; l <= upperLimit; l++){
-								// Copy the values in between lower and upper limit.
-								// This improves the execution speed drastically
-								for (int i=0; i< maxI; i++){ // for all lines
-									for (int j = 0; j < maxJ; j++){ // for all voxels
-										voiMap[i][j][l] = voiMap[i][j][lowerLimit];
-									}
-								}
+				if (!ownsSlab) {
+					// one lock per line instead of one per voxel
+					synchronized (this) {
+						for (int r = 0; r < runs.length; r += 2){
+							for (int j = runs[r]; j < runs[r + 1]; j++){
+								slice[j * volumeWidth + i] += row[j];
 							}
-							// set k to the upper limit - 1 as it will be increased in the next iteration
-							k=l-1;
 						}
 					}
 				}
 			}
-			if (interestedInVolume == null){
-				CONRAD.log("VOIBasedBackprojector: interestedInVolume was null.");
-			} else {
-				CONRAD.log("VOIBasedBackprojector: VOI map created." + System.currentTimeMillis() + " " + interestedInVolume);
-			}
-		} else {			
-			CONRAD.log("VOIBasedBackprojector: Omitting creation of VOI map");
+			projectionVolume.getSubGrid(k).notifyAfterWrite();
 		}
+		if (count > 0) {
+			throw new RuntimeException("Encountered NaN in projection!");
+		}
+		if (debug) System.out.println("done with projection");
 	}
-	
-	private Grid3D voiMapToGrid3D(){
-		Grid3D out = null;
-		if(voiMap!=null){
-			out = new Grid3D(voiMap.length, voiMap[0].length, voiMap[0][0].length);
-			for (int i = 0; i < voiMap.length; i++) {
-				for (int j = 0; j < voiMap[0].length; j++) {
-					for (int j2 = 0; j2 < voiMap[0][0].length; j2++) {
-						out.setAtIndex(i, j, j2, (voiMap[i][j][j2]) ? 1.0f : -1.0f);
-					}
-				}
-			}
+
+	/**
+	 * Bilinear interpolation in a float buffer. Matches ImageProcessor.getInterpolatedValue(double, double) of ImageJ,
+	 * i.e. the values outside of the image are continued with the border values up to one pixel and 0 beyond.
+	 * @param pixels the buffer in row-major order
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @return the interpolated value
+	 */
+	protected static double interpolate(float [] pixels, int width, int height, double x, double y){
+		if (x < 0.0 || x >= width - 1.0 || y < 0.0 || y >= height - 1.0) {
+			if (x < -1.0 || x >= width || y < -1.0 || y >= height) return 0.0;
+			int xbase = (int) x;
+			int ybase = (int) y;
+			double xFraction = Math.max(x - xbase, 0.0);
+			double yFraction = Math.max(y - ybase, 0.0);
+			int x0 = Math.min(Math.max(xbase, 0), width - 1);
+			int x1 = Math.min(Math.max(xbase + 1, 0), width - 1);
+			int y0 = Math.min(Math.max(ybase, 0), height - 1);
+			int y1 = Math.min(Math.max(ybase + 1, 0), height - 1);
+			double lowerAverage = pixels[y0 * width + x0] + xFraction * (pixels[y0 * width + x1] - pixels[y0 * width + x0]);
+			double upperAverage = pixels[y1 * width + x0] + xFraction * (pixels[y1 * width + x1] - pixels[y1 * width + x0]);
+			return lowerAverage + yFraction * (upperAverage - lowerAverage);
 		}
-		return out;
+		int xbase = (int) x;
+		int ybase = (int) y;
+		double xFraction = x - xbase;
+		double yFraction = y - ybase;
+		int offset = ybase * width + xbase;
+		double lowerLeft = pixels[offset];
+		double lowerRight = pixels[offset + 1];
+		double upperLeft = pixels[offset + width];
+		double upperRight = pixels[offset + width + 1];
+		double upperAverage = upperLeft + xFraction * (upperRight - upperLeft);
+		double lowerAverage = lowerLeft + xFraction * (lowerRight - lowerLeft);
+		return lowerAverage + yFraction * (upperAverage - lowerAverage);
 	}
 
-	public void backproject(Grid2D projection, int projectionNumber){
-		int count = 0;
-		//System.out.println(projectionVolume);
+	/**
+	 * Backprojects all projections. If slab-parallel accumulation is enabled the volume is split into
+	 * one slab of slices per thread. Each thread backprojects all projections into its own slab, so no
+	 * two threads ever write to the same voxel and no locking is required.
+	 * @see #setSlabParallelAccumulation(boolean)
+	 */
+	@Override
+	protected void backprojectAll() throws Exception {
+		if (!slabParallelAccumulation){
+			super.backprojectAll();
+			return;
+		}
+		if (!isSlabParallelAccumulationSupported()){
+			CONRAD.log(getName() + ": slab-parallel accumulation is not supported. Using the default accumulation.");
+			super.backprojectAll();
+			return;
+		}
 		if (!init){
-			initialize(projection);
+			initialize(inputQueue.get(0));
+			inputQueue.unpin(0);
 		}
-		FloatProcessor currentProjection = new FloatProcessor(projection.getWidth(), projection.getHeight(), projection.getBuffer(), null);
-		//ImageProcessor currentProjection = projection;
-
-		// Constant part of distance weighting (D^2) + additional weighting for arbitrary scan ranges
-		double D =  getGeometry().getSourceToDetectorDistance();
-		currentProjection.multiply(D*D * 2* Math.PI / getGeometry().getNumProjectionMatrices());
-
-		int p = projectionNumber;
-		double[] voxel = new double [4];
-		double[] homogeniousPointi = new double[3];
-		double[] homogeniousPointj = new double[3];
-		double[] homogeniousPointk = new double[3];
-		double[][] updateMatrix = new double [3][4];
-		SimpleMatrix mat = getGeometry().getProjectionMatrix(p).computeP();
-		//mat.print(NumberFormat.getInstance(), 6);
-		voxel[3] = 1;
-		if (mat != null){
-			updateMatrix[0][3] = mat.getElement(0,3);
-			updateMatrix[1][3] = mat.getElement(1,3);
-			updateMatrix[2][3] = mat.getElement(2,3);
-			boolean nanHappened = false;
-			for (int k = 0; k < maxK ; k++){ // for all slices
-				if (debug) System.out.println("here: " + " " + k);
-				voxel[2] = (this.getGeometry().getVoxelSpacingZ() * (k)) - offsetZ;
-				updateMatrix[0][2] = mat.getElement(0,2) * voxel[2];
-				updateMatrix[1][2] = mat.getElement(1,2) * voxel[2];
-				updateMatrix[2][2] = mat.getElement(2,2) * voxel[2];
-				homogeniousPointk[0] = updateMatrix[0][3] + updateMatrix[0][2];
-				homogeniousPointk[1] = updateMatrix[1][3] + updateMatrix[1][2];
-				homogeniousPointk[2] = updateMatrix[2][3] + updateMatrix[2][2];
-				for (int i=0; i < maxI; i++){ // for all lines
-					voxel[0] = (this.getGeometry().getVoxelSpacingX() * i) - offsetX;
-					updateMatrix[0][0] = mat.getElement(0,0) * voxel[0];
-					updateMatrix[1][0] = mat.getElement(1,0) * voxel[0];
-					updateMatrix[2][0] = mat.getElement(2,0) * voxel[0];
-					homogeniousPointi[0] = homogeniousPointk[0] + updateMatrix[0][0];
-					homogeniousPointi[1] = homogeniousPointk[1] + updateMatrix[1][0];
-					homogeniousPointi[2] = homogeniousPointk[2] + updateMatrix[2][0];
-					for (int j = 0; j < maxJ; j++){ // for all voxels
-						// compute real world coordinates in homogenious coordinates;
-						boolean project = true;
-						if (useVOImap){
-							if (voiMap != null){
-								project = voiMap[i][j][k];
-							}
-						}
-						if (project){			
-							voxel[1] = (this.getGeometry().getVoxelSpacingY() * j) - offsetY;
-							updateMatrix[0][1] = mat.getElement(0,1) * voxel[1];
-							updateMatrix[1][1] = mat.getElement(1,1) * voxel[1];
-							updateMatrix[2][1] = mat.getElement(2,1) * voxel[1];
-							homogeniousPointj[0] = homogeniousPointi[0] + updateMatrix[0][1];
-							homogeniousPointj[1] = homogeniousPointi[1] + updateMatrix[1][1];
-							homogeniousPointj[2] = homogeniousPointi[2] + updateMatrix[2][1];
-							//Matrix point3d = new Matrix(voxel);
-							//Compute coordinates in projection data.
-							//Matrix point2d = geometry.getProjectionMatrix(p).times(point3d);
-							double coordX = homogeniousPointj[0] / homogeniousPointj[2];
-							double coordY = homogeniousPointj[1] / homogeniousPointj[2];
-							//System.out.println(coordY);
-							// back project
-							double increment = currentProjection.getInterpolatedValue(coordX + lineOffset, coordY) / (homogeniousPointj[2]*homogeniousPointj[2]);
-							if (Double.isNaN(increment)){
-								nanHappened = true;
-								if (count < 10) System.out.println("NAN Happened at i = " + i + " j = " + j + " k = " + k + " projection = " + projectionNumber + " x = " + coordX + " y = " + coordY  );
-								increment = 0;
-								count ++;
-							}
-							updateVolume(i, j, k, increment);
+		for (int i = 0; i < nImages; i++){
+			// the projection stays pinned until the weighting is done. Hence, the weighted projection is written to disk, if the buffer is full.
+			weightProjection(inputQueue.get(i));
+			inputQueue.unpin(i);
+		}
+		int numThreads = Math.min(CONRAD.getNumberOfThreads(), maxK);
+		final int slabSize = (int) Math.ceil(((double) maxK) / numThreads);
+		ParallelizableRunnable [] runnables = new ParallelizableRunnable[numThreads];
+		for (int t = 0; t < numThreads; t++){
+			runnables[t] = new SimpleParallelThread(t) {
+				@Override
+				public void execute() {
+					int kStart = threadNum * slabSize;
+					int kEnd = Math.min(kStart + slabSize, maxK);
+					for (int i = 0; i < nImages; i++){
+						try {
+							backproject(inputQueue.get(i), i, kStart, kEnd, true);
+						} catch (Exception e){
+							System.out.println("An error occured during backprojection of projection " + i);
+						} finally {
+							inputQueue.unpin(i);
 						}
 					}
 				}
-			}
-			if (nanHappened) {
-				throw new RuntimeException("Encountered NaN in projection!");
-			}
-			if (debug) System.out.println("done with projection");
+			};
 		}
+		ParallelThreadExecutor executor = new ParallelThreadExecutor(runnables);
+		executor.execute();
 	}
 
 	@Override
@@ -341,17 +465,35 @@ public class VOIBasedReconstructionFilter extends FBPReconstructionFilter {
 	}
 
 	/**
-	 * @return the fastVOIMode
+	 * @return whether the volume is accumulated in one slab of slices per thread
+	 */
+	public boolean isSlabParallelAccumulation() {
+		return slabParallelAccumulation;
+	}
+
+	/**
+	 * Checks whether the slab-parallel accumulation can be used. The slab mode uses the kernel backproject(Grid2D, int, int, int, boolean).
+	 * Sub classes that replace backproject(Grid2D, int) with their own kernel, e.g. the motion-compensated backprojectors, would lose their
+	 * kernel in this mode. Hence, they use the default accumulation, unless they override this method.
+	 * @return true if backproject(Grid2D, int) is not overridden
 	 */
-	public boolean isFastVOIMode() {
-		return fastVOIMode;
+	public boolean isSlabParallelAccumulationSupported() {
+		try {
+			return getClass().getMethod("backproject", Grid2D.class, int.class).getDeclaringClass() == VOIBasedReconstructionFilter.class;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
 	}
 
 	/**
-	 * @param fastVOIMode the fastVOIMode to set
+	 * Enables the slab-parallel accumulation mode. In this mode each worker thread owns a slab of slices of the
+	 * projection volume and backprojects all projections into it without locking.
+	 * Sub classes which override backproject(Grid2D, int) keep their kernel and use the default accumulation.
+	 * @param slabParallelAccumulation the slabParallelAccumulation to set
+	 * @see #isSlabParallelAccumulationSupported()
 	 */
-	public void setFastVOIMode(boolean fastVOIMode) {
-		this.fastVOIMode = fastVOIMode;
+	public void setSlabParallelAccumulation(boolean slabParallelAccumulation) {
+		this.slabParallelAccumulation = slabParallelAccumulation;
 	}
 
 	/**
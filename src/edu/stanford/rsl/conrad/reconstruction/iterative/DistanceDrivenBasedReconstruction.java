@@ -5,13 +5,16 @@ package edu.stanford.rsl.conrad.reconstruction.iterative;
  *
  */
 
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
 import edu.stanford.rsl.conrad.data.numeric.Grid3D;
 import edu.stanford.rsl.conrad.data.numeric.NumericPointwiseOperators;
 import edu.stanford.rsl.conrad.geometry.Projection;
 import edu.stanford.rsl.conrad.geometry.trajectories.Trajectory;
 import edu.stanford.rsl.conrad.numerics.SimpleMatrix;
-import edu.stanford.rsl.conrad.numerics.SimpleOperators;
 import edu.stanford.rsl.conrad.numerics.SimpleVector;
+import edu.stanford.rsl.conrad.parallel.ParallelThreadExecutor;
 
 
 public class DistanceDrivenBasedReconstruction  extends ModelBasedIterativeReconstruction {
@@ -28,6 +31,8 @@ public class DistanceDrivenBasedReconstruction  extends ModelBasedIterativeRecon
 	protected static final int MAX_WEIGHT_LENGTH_U = 8;
 	protected static final int MAX_WEIGHT_LENGTH_V = 8;
 
+	private transient ViewGeometry [] viewGeometries = null;
+
 	public DistanceDrivenBasedReconstruction( Trajectory dataTrajectory ) {
 		super(dataTrajectory);
 		// TODO Auto-generated constructor stub
@@ -39,12 +44,9 @@ public class DistanceDrivenBasedReconstruction  extends ModelBasedIterativeRecon
 
 		//zero out whole projection image		
 		NumericPointwiseOperators.fill(projImage, 0.0f);
-		Projection proj;
 
-		for ( int p = 0; p < nImages ; p++ ){
-			proj = getGeometry().getProjectionMatrix(p);
-			distanceDrivenProjView( projImage, volImage, proj, p );
-		}
+		// each projection is written by exactly one task
+		execute(new ProjectorTask(projImage, volImage, getViewGeometries(), true, 0, nImages));
 
 		//if (Debug) projImage.printOneSlice(8);
 	}
@@ -55,360 +57,313 @@ public class DistanceDrivenBasedReconstruction  extends ModelBasedIterativeRecon
 
 		//zero out whole volume image
 		NumericPointwiseOperators.fill(volImage, 0.0f);
-		Projection proj;
 
-		for ( int p = 0; p < nImages; p++ ){
-			proj = getGeometry().getProjectionMatrix(p);
-			distanceDrivenBackView( projImage, volImage, proj, p );
+		// each slab of the volume is written by exactly one task
+		execute(new ProjectorTask(projImage, volImage, getViewGeometries(), false, 0, maxI));
+
+	}
+
+	/**
+	 * Runs the task on the shared thread pool of the ParallelThreadExecutor. Each task accumulates the contributions of the projections
+	 * in the same order as a sequential loop over the projections. Hence, the result does not depend on the number of threads.
+	 */
+	private void execute(ProjectorTask task){
+		if (task.last - task.first <= 1 || !ParallelThreadExecutor.parallel) {
+			task.project();
+		} else {
+			ParallelThreadExecutor.invoke(task);
 		}
+		task.projImage.notifyAfterWrite();
+		task.volImage.notifyAfterWrite();
+	}
 
+	/**
+	 * Returns the projection matrices and camera centers of all projections. The entries are keyed on the values of the projection
+	 * matrices. Hence, the camera centers are only recomputed for projection matrices which were replaced or edited.
+	 */
+	protected synchronized ViewGeometry [] getViewGeometries(){
+		if (viewGeometries == null || viewGeometries.length != nImages) {
+			viewGeometries = new ViewGeometry[nImages];
+		}
+		for ( int p = 0; p < nImages ; p++ ){
+			Projection proj = getGeometry().getProjectionMatrix(p);
+			SimpleMatrix mat = proj.computeP();
+			if (viewGeometries[p] == null || !viewGeometries[p].hasMatrix(mat)) {
+				viewGeometries[p] = new ViewGeometry(proj, mat);
+			}
+		}
+		return viewGeometries;
 	}
 
 	protected void distanceDrivenProjView( Grid3D projImage, Grid3D volImage, Projection proj, final int ip ){
+		ProjectorTask task = new ProjectorTask(projImage, volImage, null, true, ip, ip + 1);
+		task.projectView(new ViewGeometry(proj), ip, 0, maxI);
+		projImage.notifyAfterWrite();
+	}
 
-		SimpleMatrix mat = proj.computeP();
-		SimpleVector cameraCenter = proj.computeCameraCenter();
-
-		// buffer have move of voxel
-		SimpleVector halfVoxelMoveX = mat.getCol(0);
-		halfVoxelMoveX.multiplyBy(dx/2);
-		SimpleVector halfVoxelMoveY = mat.getCol(1);
-		halfVoxelMoveY.multiplyBy(dy/2);
-		SimpleVector fullVoxelMoveZ = mat.getCol(2);
-		fullVoxelMoveZ.multiplyBy(dz);
-
-		SimpleVector point3d = new SimpleVector(4);
-		point3d.setElementValue(3, 1);
-
-		SimpleVector point2d, point2dMinus, point2dPlus;
-
-		double cx = cameraCenter.getElement(0);
-		double cy = cameraCenter.getElement(1);
-		double cz = cameraCenter.getElement(2);
-		double dsx0, dsy0, dsxy0_sqr;
-		float coordLeft, coordRight, coordBottom, coordTop, coordStep;
-		double ds0;
-		float amplitude;
-		int iumin, iumax, ivmin, ivmax;
-
-		if (Debug1) {
-			System.out.println( "Camera Center: " + cx + ", " + cy);
-			System.out.println( "Voxel Spaceing: " + dx + ", " + dy);
-			System.out.println( "Projection matrix: ");
-			printSimpleMatrix(mat);
-			System.out.println( "Half voxel moves: ");
-			printSimpleVector(halfVoxelMoveX);
-			printSimpleVector(halfVoxelMoveY);
-		} 
-
-		for (int i = 0; i < maxI; i++){
-
-			point3d.setElementValue(0, i*dx - offsetX  );
-
-			for (int j = 0; j < maxJ; j++){
-				
-				point3d.setElementValue(1, j*dy - offsetY );
-				
-				point3d.setElementValue(2, -dz/2 - offsetZ);
-				point2d = SimpleOperators.multiply(mat, point3d);
-
-				dsx0 = Math.abs(point3d.getElement(0) - cx);
-				dsy0 = Math.abs(point3d.getElement(1) - cy);
-				dsxy0_sqr = dsx0*dsx0 + dsy0*dsy0;
-
-				if (Debug1){
-					System.out.println("dsx0="+ dsx0 + ", dsy0=" + dsy0 + ", dsxy0_sqr= " + dsxy0_sqr);
-				}
+	protected void distanceDrivenBackView( Grid3D projImage, Grid3D volImage, Projection proj, final int ip ){
+		ProjectorTask task = new ProjectorTask(projImage, volImage, null, false, 0, maxI);
+		task.backprojectView(new ViewGeometry(proj), ip, 0, maxI);
+		volImage.notifyAfterWrite();
+	}
 
-				if ( dsy0 > dsx0){
-					ds0 = dsy0;
-					point2dMinus = SimpleOperators.subtract(point2d, halfVoxelMoveX);
-					point2dPlus = SimpleOperators.add(point2d, halfVoxelMoveX);					
-				}else{
-					ds0 = dsx0;
-					point2dMinus = SimpleOperators.subtract(point2d, halfVoxelMoveY);
-					point2dPlus = SimpleOperators.add(point2d, halfVoxelMoveY);
-				}
+	/**
+	 * Projection matrix and camera center of one projection as primitive values.
+	 */
+	protected class ViewGeometry {
 
-				coordLeft =  (float) ( point2dMinus.getElement(0) / point2dMinus.getElement(2) + 0.5 );
-				coordRight = (float) ( point2dPlus.getElement(0) / point2dPlus.getElement(2) + 0.5 );
+		final double m00, m01, m02, m03, m10, m11, m12, m13, m20, m21, m22, m23;
+		final double cx, cy, cz;
 
-				if ( coordLeft > coordRight ){
-					float temp = coordRight;
-					coordRight = coordLeft;
-					coordLeft = temp;	
-				}
+		ViewGeometry(Projection proj){
+			this(proj, proj.computeP());
+		}
 
-				coordLeft = Math.max(coordLeft, 0);
-				coordRight = Math.min(coordRight, maxU);
+		ViewGeometry(Projection proj, SimpleMatrix mat){
+			SimpleVector cameraCenter = proj.computeCameraCenter();
+			m00 = mat.getElement(0, 0); m01 = mat.getElement(0, 1); m02 = mat.getElement(0, 2); m03 = mat.getElement(0, 3);
+			m10 = mat.getElement(1, 0); m11 = mat.getElement(1, 1); m12 = mat.getElement(1, 2); m13 = mat.getElement(1, 3);
+			m20 = mat.getElement(2, 0); m21 = mat.getElement(2, 1); m22 = mat.getElement(2, 2); m23 = mat.getElement(2, 3);
+			cx = cameraCenter.getElement(0);
+			cy = cameraCenter.getElement(1);
+			cz = cameraCenter.getElement(2);
+			if (Debug1) {
+				System.out.println( "Camera Center: " + cx + ", " + cy);
+				System.out.println( "Voxel Spaceing: " + dx + ", " + dy);
+				System.out.println( "Projection matrix: ");
+				printSimpleMatrix(mat);
+			}
+		}
 
-				if (coordLeft >= coordRight){
-					continue;
-				}
+		boolean hasMatrix(SimpleMatrix mat){
+			return m00 == mat.getElement(0, 0) && m01 == mat.getElement(0, 1) && m02 == mat.getElement(0, 2) && m03 == mat.getElement(0, 3)
+					&& m10 == mat.getElement(1, 0) && m11 == mat.getElement(1, 1) && m12 == mat.getElement(1, 2) && m13 == mat.getElement(1, 3)
+					&& m20 == mat.getElement(2, 0) && m21 == mat.getElement(2, 1) && m22 == mat.getElement(2, 2) && m23 == mat.getElement(2, 3);
+		}
 
-				iumin = (int)coordLeft;
-				iumax = (int)coordRight;
-				iumax = Math.min(iumax, maxU-1);
+	}
 
-				iumax = Math.min(iumax, iumin + MAX_WEIGHT_LENGTH_U - 1);
+	/**
+	 * Distance-driven forward projection of the projections [first, last) or backprojection of all projections into the slab of
+	 * voxels [first, last) in x direction. Large ranges are split and processed in parallel. The kernels work directly on the
+	 * buffers of the slices. The projection image is indexed as (projection, u, v), i.e. each projection is a column of all slices.
+	 */
+	private class ProjectorTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 2671357604395513208L;
+		final Grid3D projImage, volImage;
+		private final float [][] projSlices, volSlices;
+		private final int projWidth, volWidth;
+		private final ViewGeometry [] views;
+		private final boolean forward;
+		final int first, last;
+		private final float [] weightU = new float[MAX_WEIGHT_LENGTH_U];
+		private final float [] weightV = new float[MAX_WEIGHT_LENGTH_V];
+
+		ProjectorTask(Grid3D projImage, Grid3D volImage, ViewGeometry [] views, boolean forward, int first, int last){
+			this(projImage, volImage, getSlices(projImage), getSlices(volImage), views, forward, first, last);
+		}
 
-				float[] weightU = new float[]{1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f};
+		private ProjectorTask(Grid3D projImage, Grid3D volImage, float [][] projSlices, float [][] volSlices, ViewGeometry [] views, boolean forward, int first, int last){
+			this.projImage = projImage;
+			this.volImage = volImage;
+			this.projSlices = projSlices;
+			this.volSlices = volSlices;
+			this.projWidth = projImage.getSize()[0];
+			this.volWidth = volImage.getSize()[0];
+			this.views = views;
+			this.forward = forward;
+			this.first = first;
+			this.last = last;
+		}
 
-				if ( iumax == iumin){
-					weightU[0] = coordRight - coordLeft;
-				}else{
-					weightU[0] = iumin + 1 - coordLeft;
-					weightU[iumax - iumin] = coordRight - iumax;
-				};
+		@Override
+		protected void compute() {
+			if (last - first > 1) {
+				int mid = (first + last) >>> 1;
+				invokeAll(new ProjectorTask(projImage, volImage, projSlices, volSlices, views, forward, first, mid),
+						new ProjectorTask(projImage, volImage, projSlices, volSlices, views, forward, mid, last));
+			} else {
+				project();
+			}
+		}
 
+		void project(){
+			if (forward) {
+				for ( int p = first; p < last; p++ ){
+					projectView(views[p], p, 0, maxI);
+				}
+			} else {
+				for ( int p = 0; p < views.length; p++ ){
+					backprojectView(views[p], p, first, last);
+				}
+			}
+		}
 
-				coordBottom = (float) ( point2d.getElement(1) / point2d.getElement(2) + 0.5 );
-				point2d.add(fullVoxelMoveZ);
-				coordTop = (float) ( point2d.getElement(1) / point2d.getElement(2) + 0.5 );
-				coordStep = coordTop - coordBottom;
+		void projectView(ViewGeometry view, int ip, int iStart, int iEnd){
+			kernel(view, ip, iStart, iEnd, true);
+		}
 
+		void backprojectView(ViewGeometry view, int ip, int iStart, int iEnd){
+			kernel(view, ip, iStart, iEnd, false);
+		}
 
-				for ( int k = 0; k < maxK; k++ ){
+		/**
+		 * Footprint computation shared by both directions. The arithmetic is the same as with the SimpleMatrix and SimpleVector
+		 * operations, i.e. the results are identical.
+		 */
+		private void kernel(ViewGeometry view, int ip, int iStart, int iEnd, boolean forward){
 
-					double dsz0 = Math.abs(k*dz-offsetZ-cz); 
+			// buffer have move of voxel
+			double halfVoxelMoveX0 = view.m00 * (dx/2);
+			double halfVoxelMoveX2 = view.m20 * (dx/2);
+			double halfVoxelMoveY0 = view.m01 * (dy/2);
+			double halfVoxelMoveY2 = view.m21 * (dy/2);
+			double fullVoxelMoveZ1 = view.m12 * dz;
+			double fullVoxelMoveZ2 = view.m22 * dz;
+			double z = -dz/2 - offsetZ;
 
-					if ( coordBottom <= 0 ){
-						coordBottom = coordTop;
-						coordTop = coordTop + coordStep;
-						continue;
-					}
+			double dsx0, dsy0, dsxy0_sqr;
+			float coordLeft, coordRight, coordBottom, coordTop, coordStep;
+			double ds0;
+			float amplitude;
+			int iumin, iumax, ivmin, ivmax;
 
-					if ( coordTop >= maxV ){
-						break;
-					}
+			for (int i = iStart; i < iEnd; i++){
 
-					ivmin = (int)coordBottom;
-					ivmax = (int)coordTop;
+				double x = i*dx - offsetX;
 
-					if (Debug2) {
-						System.out.println( "iu: iumin= " + iumin + ", \t iumax=" + iumax );
-						System.out.println( "iv: ivmin= " + ivmin + ", \t ivmax=" + ivmax );
-					}
+				for (int j = 0; j < maxJ; j++){
 
-					float[] weightV = new float[]{1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f };
+					double y = j*dy - offsetY;
 
-					ivmax = Math.min(ivmax, ivmin + MAX_WEIGHT_LENGTH_V - 1);			
-					
-					if ( ivmin == ivmax ){
-						weightV[0] = coordTop - coordBottom;
-					}else{
-						weightV[0] = ivmin + 1 - coordBottom;
-						weightV[ivmax - ivmin] = coordTop - ivmax;
-					};
+					double pu = view.m00 * x + view.m01 * y + view.m02 * z + view.m03;
+					double pv = view.m10 * x + view.m11 * y + view.m12 * z + view.m13;
+					double pw = view.m20 * x + view.m21 * y + view.m22 * z + view.m23;
 
-					amplitude = (float) ( Math.sqrt(dsz0*dsz0 + dsxy0_sqr) / ds0);
-
-					if (Debug2){
-						int[] detSize = projImage.getSize();
-						int[] volSize = volImage.getSize();
-						System.out.println("Detector Size: " + detSize[0] + " X " + detSize[1] + " X " + detSize[2] );
-						System.out.println("Volume Size: "+ volSize[0] + " X " + volSize[1] + " X " + volSize[2] );
-						for (int u = 0 ; u <detSize[1]; u++ ){
-							System.out.println("u=" + u );
-							for (int v = 0; v < detSize[2]; v++){
-								System.out.print(projImage.getAtIndex(0, u, v) + "\t");
-							}
-							System.out.println();
-						}
-					}
+					dsx0 = Math.abs(x - view.cx);
+					dsy0 = Math.abs(y - view.cy);
+					dsxy0_sqr = dsx0*dsx0 + dsy0*dsy0;
 
-					float tempVal = volImage.getAtIndex(i, j, k) * amplitude ;
-
-					for ( int iu = iumin, iiu = 0; iu <= iumax; iu++, iiu++ ){
-						float temp = tempVal * weightU[iiu];
-						for (int iv = ivmin, iiv = 0; iv <= ivmax; iv++, iiv++){
-							projImage.addAtIndex(ip, iu, iv, temp * weightV[iiv] );
-						} //iv
-					} //iu
-
-					coordBottom = coordTop;
-					coordTop = coordTop + coordStep;
-
-				} //k
-			}//j		
-		}//i
-	}
+					if ( dsy0 > dsx0){
+						ds0 = dsy0;
+						coordLeft =  (float) ( (pu - halfVoxelMoveX0) / (pw - halfVoxelMoveX2) + 0.5 );
+						coordRight = (float) ( (pu + halfVoxelMoveX0) / (pw + halfVoxelMoveX2) + 0.5 );
+					}else{
+						ds0 = dsx0;
+						coordLeft =  (float) ( (pu - halfVoxelMoveY0) / (pw - halfVoxelMoveY2) + 0.5 );
+						coordRight = (float) ( (pu + halfVoxelMoveY0) / (pw + halfVoxelMoveY2) + 0.5 );
+					}
 
-	protected void distanceDrivenBackView( Grid3D projImage, Grid3D volImage, Projection proj, final int ip ){
-		SimpleMatrix mat = proj.computeP();
-		SimpleVector cameraCenter = proj.computeCameraCenter();
-
-		// buffer have move of voxel
-		SimpleVector halfVoxelMoveX = mat.getCol(0);
-		halfVoxelMoveX.multiplyBy(dx/2);
-		SimpleVector halfVoxelMoveY = mat.getCol(1);
-		halfVoxelMoveY.multiplyBy(dy/2);
-		SimpleVector fullVoxelMoveZ = mat.getCol(2);
-		fullVoxelMoveZ.multiplyBy(dz);
-
-		SimpleVector point3d = new SimpleVector(4);
-		point3d.setElementValue(3, 1);
-
-		SimpleVector point2d, point2dMinus, point2dPlus;
-
-		double cx = cameraCenter.getElement(0);
-		double cy = cameraCenter.getElement(1);
-		double cz = cameraCenter.getElement(2);
-		double dsx0, dsy0, dsxy0_sqr;
-		float coordLeft, coordRight, coordBottom, coordTop, coordStep;
-		double ds0;
-		float amplitude;
-		int iumin, iumax, ivmin, ivmax;
-
-		if (Debug1) {
-			System.out.println( "Camera Center: " + cx + ", " + cy);
-			System.out.println( "Voxel Spaceing: " + dx + ", " + dy);
-			System.out.println( "Projection matrix: ");
-			printSimpleMatrix(mat);
-			System.out.println( "Half voxel moves: ");
-			printSimpleVector(halfVoxelMoveX);
-			printSimpleVector(halfVoxelMoveY);
-		} 
-
-		for (int i = 0; i < maxI; i++){
-
-			point3d.setElementValue(0, i*dx - offsetX  );
-
-			for (int j = 0; j < maxJ; j++){
-				
-				point3d.setElementValue(1, j*dy - offsetY );
-				
-				point3d.setElementValue(2, -dz/2 - offsetZ);
-				point2d = SimpleOperators.multiply(mat, point3d);
-
-				dsx0 = Math.abs(point3d.getElement(0) - cx);
-				dsy0 = Math.abs(point3d.getElement(1) - cy);
-				dsxy0_sqr = dsx0*dsx0 + dsy0*dsy0;
-
-				if (Debug1){
-					System.out.println("dsx0="+ dsx0 + ", dsy0=" + dsy0 + ", dsxy0_sqr= " + dsxy0_sqr);
-				}
+					if ( coordLeft > coordRight ){
+						float temp = coordRight;
+						coordRight = coordLeft;
+						coordLeft = temp;	
+					}
 
-				if ( dsy0 > dsx0){
-					ds0 = dsy0;
-					point2dMinus = SimpleOperators.subtract(point2d, halfVoxelMoveX);
-					point2dPlus = SimpleOperators.add(point2d, halfVoxelMoveX);					
-				}else{
-					ds0 = dsx0;
-					point2dMinus = SimpleOperators.subtract(point2d, halfVoxelMoveY);
-					point2dPlus = SimpleOperators.add(point2d, halfVoxelMoveY);
-				}
+					coordLeft = Math.max(coordLeft, 0);
+					coordRight = Math.min(coordRight, maxU);
 
-				coordLeft =  (float) ( point2dMinus.getElement(0) / point2dMinus.getElement(2) + 0.5 );
-				coordRight = (float) ( point2dPlus.getElement(0) / point2dPlus.getElement(2) + 0.5 );
+					if (coordLeft >= coordRight){
+						continue;
+					}
 
-				if ( coordLeft > coordRight ){
-					float temp = coordRight;
-					coordRight = coordLeft;
-					coordLeft = temp;	
-				}
+					iumin = (int)coordLeft;
+					iumax = (int)coordRight;
+					iumax = Math.min(iumax, maxU-1);
 
-				coordLeft = Math.max(coordLeft, 0);
-				coordRight = Math.min(coordRight, maxU);
+					iumax = Math.min(iumax, iumin + MAX_WEIGHT_LENGTH_U - 1);
 
-				if (coordLeft >= coordRight){
-					continue;
-				}
+					Arrays.fill(weightU, 1.0f);
 
-				iumin = (int)coordLeft;
-				iumax = (int)coordRight;
-				iumax = Math.min(iumax, maxU-1);
+					if ( iumax == iumin){
+						weightU[0] = coordRight - coordLeft;
+					}else{
+						weightU[0] = iumin + 1 - coordLeft;
+						weightU[iumax - iumin] = coordRight - iumax;
+					};
 
-				iumax = Math.min(iumax, iumin + MAX_WEIGHT_LENGTH_U - 1);
 
-				float[] weightU = new float[]{1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f};
+					coordBottom = (float) ( pv / pw + 0.5 );
+					coordTop = (float) ( (pv + fullVoxelMoveZ1) / (pw + fullVoxelMoveZ2) + 0.5 );
+					coordStep = coordTop - coordBottom;
 
-				if ( iumax == iumin){
-					weightU[0] = coordRight - coordLeft;
-				}else{
-					weightU[0] = iumin + 1 - coordLeft;
-					weightU[iumax - iumin] = coordRight - iumax;
-				};
+					int volIndex = j * volWidth + i;
 
+					for ( int k = 0; k < maxK; k++ ){
 
-				coordBottom = (float) ( point2d.getElement(1) / point2d.getElement(2) + 0.5 );
-				point2d.add(fullVoxelMoveZ);
-				coordTop = (float) ( point2d.getElement(1) / point2d.getElement(2) + 0.5 );
-				coordStep = coordTop - coordBottom;
+						double dsz0 = Math.abs(k*dz-offsetZ-view.cz); 
 
+						if ( coordBottom <= 0 ){
+							coordBottom = coordTop;
+							coordTop = coordTop + coordStep;
+							continue;
+						}
 
-				for ( int k = 0; k < maxK; k++ ){
+						if ( coordTop >= maxV ){
+							break;
+						}
 
-					double dsz0 = Math.abs(k*dz-offsetZ-cz); 
+						ivmin = (int)coordBottom;
+						ivmax = (int)coordTop;
+
+						Arrays.fill(weightV, 1.0f);
+
+						ivmax = Math.min(ivmax, ivmin + MAX_WEIGHT_LENGTH_V - 1);			
+
+						if ( ivmin == ivmax ){
+							weightV[0] = coordTop - coordBottom;
+						}else{
+							weightV[0] = ivmin + 1 - coordBottom;
+							weightV[ivmax - ivmin] = coordTop - ivmax;
+						};
+
+						amplitude = (float) ( Math.sqrt(dsz0*dsz0 + dsxy0_sqr) / ds0);
+
+						if (forward) {
+							float tempVal = volSlices[k][volIndex] * amplitude ;
+
+							for ( int iu = iumin, iiu = 0; iu <= iumax; iu++, iiu++ ){
+								float temp = tempVal * weightU[iiu];
+								int projIndex = iu * projWidth + ip;
+								for (int iv = ivmin, iiv = 0; iv <= ivmax; iv++, iiv++){
+									projSlices[iv][projIndex] += temp * weightV[iiv];
+								} //iv
+							} //iu
+						} else {
+							float tempVal = 0.0f;
+
+							for ( int iu = iumin, iiu = 0; iu <= iumax; iu++, iiu++ ){
+								float sum = 0.0f;
+								int projIndex = iu * projWidth + ip;
+								for (int iv = ivmin, iiv = 0; iv <= ivmax; iv++, iiv++){
+									sum += weightV[iiv] * projSlices[iv][projIndex];
+								} //iv
+								tempVal += sum * weightU[iiu];
+							} //iu
+
+							tempVal = tempVal * amplitude;
+							volSlices[k][volIndex] += tempVal;
+						}
 
-					if ( coordBottom <= 0 ){
+						//update for next voxel
 						coordBottom = coordTop;
 						coordTop = coordTop + coordStep;
-						continue;
-					}
-
-					if ( coordTop >= maxV ){
-						break;
-					}
-
-					ivmin = (int)coordBottom;
-					ivmax = (int)coordTop;
-
-					if (Debug2) {
-						System.out.println( "iu: iumin= " + iumin + ", \t iumax=" + iumax );
-						System.out.println( "iv: ivmin= " + ivmin + ", \t ivmax=" + ivmax );
-					}
-
-					float[] weightV = new float[]{1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f, 1.0f };
-
-					ivmax = Math.min(ivmax, ivmin + MAX_WEIGHT_LENGTH_V - 1);			
-					
-					if ( ivmin == ivmax ){
-						weightV[0] = coordTop - coordBottom;
-					}else{
-						weightV[0] = ivmin + 1 - coordBottom;
-						weightV[ivmax - ivmin] = coordTop - ivmax;
-					};
 
-					amplitude = (float) ( Math.sqrt(dsz0*dsz0 + dsxy0_sqr) / ds0);
-
-					if (Debug2){
-						int[] detSize = projImage.getSize();
-						int[] volSize = volImage.getSize();
-						System.out.println("Detector Size: " + detSize[0] + " X " + detSize[1] + " X " + detSize[2] );
-						System.out.println("Volume Size: "+ volSize[0] + " X " + volSize[1] + " X " + volSize[2] );
-						for (int u = 0 ; u <detSize[1]; u++ ){
-							System.out.println("u=" + u );
-							for (int v = 0; v < detSize[2]; v++){
-								System.out.print(projImage.getAtIndex(0, u, v) + "\t");
-							}
-							System.out.println();
-						}
-					}
-
-					float tempVal = 0.0f;
-
-					for ( int iu = iumin, iiu = 0; iu <= iumax; iu++, iiu++ ){
-						float sum = 0.0f;
-						for (int iv = ivmin, iiv = 0; iv <= ivmax; iv++, iiv++){
-							sum += weightV[iiv] * projImage.getAtIndex(ip, iu, iv);
-						} //iv
-						tempVal += sum * weightU[iiu];
-					} //iu
-
-					tempVal = tempVal * amplitude;
-					volImage.addAtIndex(i, j, k, tempVal);
-
-					//volImage.addAtIndex(i, j, k, 1);
-					
-					//update for next voxel
-					coordBottom = coordTop;
-					coordTop = coordTop + coordStep;
+					} //k
+				} //j
+			} //i
+		}
 
-				} //k
-			} //j
-		} //i
+	}
 
+	private static float [][] getSlices(Grid3D grid){
+		grid.notifyBeforeRead();
+		float [][] slices = new float [grid.getSize()[2]][];
+		for (int k = 0; k < slices.length; k++){
+			slices[k] = grid.getSubGrid(k).getBuffer();
+		}
+		return slices;
 	}
 
 	@Override
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.conrad.reconstruction.iterative;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+import edu.stanford.rsl.conrad.data.numeric.Grid3D;
+
+/**
+ * Driver for iterative reconstructions which update the volume subset by subset, e.g. ART, SART, OS-SART, or OS-SQS.
+ * <br><br>
+ * The projections are split into interleaved subsets which are processed in the order given by the {@link SubsetOrdering}.
+ * For each subset, all views of the subset are forward projected from the same volume. Subclasses turn each forward projection
+ * into a correction image in {@link #computeCorrection(Grid2D, int)}. Then all corrections are backprojected and accumulated directly
+ * into the volume with the weight of {@link #getUpdateWeight(int[])}. With one view per subset, this is ART/SART; with a single subset,
+ * it is a simultaneous update.
+ * <br><br>
+ * The projector and the scratch grids for the corrections are created once in {@link #prepare()}. Hence, the iterations do not allocate
+ * any grids. The projector parallelizes each forward and backprojection internally.
+ * <br><br>
+ * The projection data is either set with {@link #setProjections(Grid3D)} or taken from the projections which were streamed into the filter.
+ * The streamed projections are stacked anew in each call of {@link #iterativeReconstruct()}, as the filter is not cloned for a new stream.
+ * The volume is the projection volume of the ReconstructionFilter. If it is not set, it is initialized from the geometry.
+ *
+ * @author akmaier
+ *
+ */
+public abstract class OrderedSubsetsReconstruction extends IterativeReconstruction {
+
+	private static final long serialVersionUID = -1779040361543432573L;
+
+	protected transient ViewProjector projector;
+	protected SubsetOrdering subsetOrdering = SubsetOrdering.BIT_REVERSAL;
+	protected int numberOfSubsets = 1;
+	protected int numberOfIterations = 10;
+	protected Grid3D projections;
+
+	private transient int [][] subsets;
+	private transient Grid2D [] corrections;
+	private transient boolean prepared = false;
+	private boolean projectionsSet = false;
+
+	@Override
+	public void iterativeReconstruct() throws Exception {
+		if (projectionsSet) {
+			init();
+			iterate(numberOfIterations);
+			return;
+		}
+		// the projections stay pinned in the input queue while they are referenced by the stack.
+		Grid3D stack = null;
+		int pinned = 0;
+		try {
+			for (int p = 0; p < nImages; p++){
+				Grid2D projection = inputQueue.get(p);
+				pinned++;
+				if (stack == null) stack = new Grid3D(projection.getWidth(), projection.getHeight(), nImages, false);
+				stack.setSubGrid(p, projection);
+			}
+			projections = stack;
+			prepared = false;
+			init();
+			iterate(numberOfIterations);
+		} finally {
+			for (int p = 0; p < pinned; p++){
+				inputQueue.unpin(p);
+			}
+		}
+	}
+
+	/**
+	 * Creates the projector, the subsets and the scratch grids if required, and calls {@link #prepareIterations()}.
+	 * Is called by {@link #iterate(int)} whenever the projections, the projector, or the subsets have changed.
+	 * @throws Exception if the data is missing or does not match the projector
+	 */
+	protected void prepare() throws Exception {
+		if (prepared) return;
+		if (projections == null) throw new Exception("Ordered subsets: No projection data given");
+		if (projectionVolume == null) initializeProjectionVolume();
+		if (projector == null) projector = new PixelDrivenViewProjector(getGeometry());
+		int numberOfProjections = projections.getSize()[2];
+		if (projector.getNumberOfProjections() != numberOfProjections) {
+			throw new Exception("Ordered subsets: Number of projections " + numberOfProjections + " does not match the geometry " + projector.getNumberOfProjections());
+		}
+		int [] size = projector.getProjectionSize();
+		subsets = subsetOrdering.createSubsets(numberOfProjections, numberOfSubsets);
+		int maxSubsetSize = subsets[0].length;
+		if (corrections == null || corrections.length < maxSubsetSize || corrections[0].getWidth() != size[0] || corrections[0].getHeight() != size[1]) {
+			corrections = new Grid2D[maxSubsetSize];
+			for (int n = 0; n < maxSubsetSize; n++){
+				corrections[n] = new Grid2D(size[0], size[1]);
+			}
+		}
+		prepareIterations();
+		prepared = true;
+	}
+
+	/**
+	 * Hook for the precomputations of the subclasses, e.g. normalization images. Is called after the projector was created.
+	 * @throws Exception may happen.
+	 */
+	protected void prepareIterations() throws Exception {
+	}
+
+	/**
+	 * Performs the given number of iterations. Each iteration updates the volume once with every subset.
+	 * @param iterations the number of iterations
+	 * @throws Exception may happen.
+	 */
+	public void iterate(int iterations) throws Exception {
+		prepare();
+		for (int i = 0; i < iterations; i++){
+			for (int s = 0; s < subsets.length; s++){
+				updateSubset(subsets[s]);
+			}
+		}
+	}
+
+	/**
+	 * Updates the volume with the views of one subset.
+	 * @param subset the projection indices of the subset
+	 * @throws Exception may happen.
+	 */
+	protected void updateSubset(int [] subset) throws Exception {
+		for (int n = 0; n < subset.length; n++){
+			projector.forwardproject(projectionVolume, subset[n], corrections[n]);
+			computeCorrection(corrections[n], subset[n]);
+		}
+		float weight = getUpdateWeight(subset);
+		for (int n = 0; n < subset.length; n++){
+			projector.backproject(corrections[n], subset[n], projectionVolume, weight);
+		}
+		finishSubset(subset);
+	}
+
+	/**
+	 * Turns the forward projection of the current volume into the correction image which is backprojected.
+	 * @param projection the forward projection. Is overwritten with the correction.
+	 * @param projectionNumber the index of the view
+	 */
+	protected abstract void computeCorrection(Grid2D projection, int projectionNumber);
+
+	/**
+	 * @param subset the projection indices of the subset
+	 * @return the weight of the backprojected corrections of the subset
+	 */
+	protected abstract float getUpdateWeight(int [] subset);
+
+	/**
+	 * Hook which is called after the volume was updated with a subset, e.g. to enforce constraints. Does nothing by default.
+	 * @param subset the projection indices of the subset
+	 */
+	protected void finishSubset(int [] subset){
+	}
+
+	/**
+	 * @return the projection data as stack of width x height x number of projections
+	 */
+	public Grid3D getProjections() {
+		return projections;
+	}
+
+	/**
+	 * @param projections the projection data as stack of width x height x number of projections. If null, the streamed projections are used.
+	 */
+	public void setProjections(Grid3D projections) {
+		this.projections = projections;
+		projectionsSet = projections != null;
+		prepared = false;
+	}
+
+	/**
+	 * @return the current volume
+	 */
+	public Grid3D getProjectionVolume() {
+		return projectionVolume;
+	}
+
+	@Override
+	public void setProjectionVolume(Grid3D projectionVolume) {
+		super.setProjectionVolume(projectionVolume);
+		prepared = false;
+	}
+
+	/**
+	 * @return the projector. Is null until the first iteration if it was not set.
+	 */
+	public ViewProjector getProjector() {
+		return projector;
+	}
+
+	/**
+	 * @param projector the projector. If it is not set, a PixelDrivenViewProjector is created for the geometry.
+	 */
+	public void setProjector(ViewProjector projector) {
+		this.projector = projector;
+		prepared = false;
+	}
+
+	public SubsetOrdering getSubsetOrdering() {
+		return subsetOrdering;
+	}
+
+	public void setSubsetOrdering(SubsetOrdering subsetOrdering) {
+		this.subsetOrdering = subsetOrdering;
+		prepared = false;
+	}
+
+	public int getNumberOfSubsets() {
+		return numberOfSubsets;
+	}
+
+	/**
+	 * @param numberOfSubsets the number of subsets. Is limited to the number of projections.
+	 */
+	public void setNumberOfSubsets(int numberOfSubsets) {
+		this.numberOfSubsets = numberOfSubsets;
+		prepared = false;
+	}
+
+	public int getNumberOfIterations() {
+		return numberOfIterations;
+	}
+
+	/**
+	 * @param numberOfIterations the number of iterations of {@link #iterativeReconstruct()}
+	 */
+	public void setNumberOfIterations(int numberOfIterations) {
+		this.numberOfIterations = numberOfIterations;
+	}
+
+	@Override
+	public void prepareForSerialization(){
+		super.prepareForSerialization();
+		projections = null;
+		projectionsSet = false;
+		subsets = null;
+		corrections = null;
+		prepared = false;
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
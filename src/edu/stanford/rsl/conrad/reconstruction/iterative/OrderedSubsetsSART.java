@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.conrad.reconstruction.iterative;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+import edu.stanford.rsl.conrad.data.numeric.Grid3D;
+import edu.stanford.rsl.conrad.data.numeric.NumericGridOperator;
+
+/**
+ * Simultaneous algebraic reconstruction technique (SART) with ordered subsets.
+ * <br><br>
+ * The correction of a view is the difference between the measured and the forward projected data, divided by the forward projection of a
+ * volume of ones. The normalization is scaled such that its L1 norm matches the one of the measured data. The corrections of a subset are
+ * backprojected with the weight relaxation / size of the subset. With one view per subset and the ordering {@link SubsetOrdering#ONE_THIRD_JUMP},
+ * this is the SART of the tutorial.
+ *
+ * @author akmaier
+ *
+ */
+public class OrderedSubsetsSART extends OrderedSubsetsReconstruction {
+
+	private static final long serialVersionUID = 3386373437542377017L;
+
+	protected float relaxation = 1.0f;
+	private transient Grid3D normalization;
+
+	@Override
+	protected void prepareIterations() throws Exception {
+		NumericGridOperator gop = NumericGridOperator.getInstance();
+		Grid3D ones = new Grid3D(projectionVolume);
+		gop.fill(ones, 1.0f);
+		int [] size = projector.getProjectionSize();
+		int numberOfProjections = projections.getSize()[2];
+		normalization = new Grid3D(size[0], size[1], numberOfProjections);
+		for (int p = 0; p < numberOfProjections; p++){
+			projector.forwardproject(ones, p, normalization.getSubGrid(p));
+		}
+		// prevent division by zero
+		float min = gop.min(normalization);
+		if (0 >= min) gop.addBy(normalization, -min + 0.1f);
+		float factor = gop.normL1(projections) / gop.normL1(normalization);
+		gop.multiplyBy(normalization, factor);
+	}
+
+	@Override
+	protected void computeCorrection(Grid2D projection, int projectionNumber) {
+		float [] correction = projection.getBuffer();
+		float [] measured = projections.getSubGrid(projectionNumber).getBuffer();
+		float [] norm = normalization.getSubGrid(projectionNumber).getBuffer();
+		for (int i = 0; i < correction.length; i++){
+			float value = correction[i];
+			if (Float.isNaN(value) || Float.isInfinite(value)) value = 0;
+			float difference = measured[i] - value;
+			float divisor = norm[i];
+			if (0 == difference || 0 == divisor || Float.isNaN(difference) || Float.isInfinite(difference) || Float.isNaN(divisor) || Float.isInfinite(divisor)) {
+				correction[i] = 0;
+			} else {
+				correction[i] = difference / divisor;
+			}
+		}
+		projection.notifyAfterWrite();
+	}
+
+	@Override
+	protected float getUpdateWeight(int [] subset) {
+		return relaxation / subset.length;
+	}
+
+	/**
+	 * @return the relaxation parameter
+	 */
+	public float getRelaxation() {
+		return relaxation;
+	}
+
+	/**
+	 * @param relaxation the relaxation parameter
+	 */
+	public void setRelaxation(float relaxation) {
+		this.relaxation = relaxation;
+	}
+
+	@Override
+	public void prepareForSerialization(){
+		super.prepareForSerialization();
+		normalization = null;
+	}
+
+	@Override
+	public String getName() {
+		return "Ordered Subsets SART";
+	}
+
+	@Override
+	public String getToolName() {
+		return "Ordered Subsets SART Reconstruction";
+	}
+
+	@Override
+	public String getBibtexCitation() {
+		String bibtex = "@ARTICLE{Andersen84-SAR,\n" +
+		"  author = {Andersen, A. H. and Kak, A. C.},\n" +
+		"  title = \"{{Simultaneous Algebraic Reconstruction Technique (SART): A superior implementation of the ART algorithm}}\",\n" +
+		"  journal = {Ultrasonic Imaging},\n" +
+		"  year = 1984,\n" +
+		"  volume = 6,\n"+
+		"  number = 1,\n" +
+		"  pages = {81-94}\n" +
+		"}";
+		return bibtex;
+	}
+
+	@Override
+	public String getMedlineCitation() {
+		return "Andersen AH, Kak AC. Simultaneous algebraic reconstruction technique (SART): a superior implementation of the art algorithm. " +
+		"Ultrason Imaging 6(1):81-94. 1984.";
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
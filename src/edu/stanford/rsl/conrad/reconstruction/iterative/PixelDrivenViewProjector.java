@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.conrad.reconstruction.iterative;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+import edu.stanford.rsl.conrad.data.numeric.Grid3D;
+import edu.stanford.rsl.conrad.geometry.trajectories.Trajectory;
+import edu.stanford.rsl.conrad.numerics.SimpleMatrix;
+import edu.stanford.rsl.conrad.parallel.ParallelThreadExecutor;
+import edu.stanford.rsl.conrad.utils.CONRAD;
+
+/**
+ * Voxel-driven cone-beam projector pair on the CPU. It follows the pixel-driven methods of the ConeBeamProjector and the
+ * ConeBeamBackprojector of the tutorial. Unlike the tutorial ConeBeamProjector, whose loops skip the last voxel in each direction, the forward
+ * projection includes all voxels, like the backprojection.
+ * <br><br>
+ * The forward projection distributes each voxel bilinearly to the detector position of its center. Voxels which are projected onto the
+ * border pixels or outside of the detector are skipped. The backprojection interpolates the projection bilinearly at the position of each
+ * voxel center and weights the value with the inverse square of the homogeneous coordinate. Positions outside of the detector read zero.
+ * <br><br>
+ * Both operators work on the buffers of the grids directly and use the precomputed projection matrices. The volume is split into slabs
+ * along z which are processed in parallel on the shared pool of the ParallelThreadExecutor. In the backprojection, each slab adds to its own
+ * voxels of the target volume. In the forward projection, each slab splats into its own detector buffer. The buffers are allocated once
+ * and summed up in a fixed order, such that the result does not depend on the scheduling.
+ * <br><br>
+ * The volume geometry is taken from the size, spacing and origin of the volume grid. Instances must not be used by several threads at the same time.
+ *
+ * @author akmaier
+ *
+ */
+public class PixelDrivenViewProjector implements ViewProjector {
+
+	private final double [][] matrices;
+	private final int width, height;
+	private final float [][] slabProjections;
+
+	/**
+	 * Creates a projector for the projection matrices of the given geometry.
+	 * @param geometry the geometry
+	 */
+	public PixelDrivenViewProjector(Trajectory geometry){
+		this(geometry, CONRAD.getNumberOfThreads());
+	}
+
+	/**
+	 * Creates a projector for the projection matrices of the given geometry.
+	 * @param geometry the geometry
+	 * @param numberOfSlabs the number of slabs of the forward projection. Each slab requires a buffer of the size of a projection.
+	 */
+	public PixelDrivenViewProjector(Trajectory geometry, int numberOfSlabs){
+		width = geometry.getDetectorWidth();
+		height = geometry.getDetectorHeight();
+		matrices = new double [geometry.getProjectionMatrices().length][];
+		for (int p = 0; p < matrices.length; p++){
+			SimpleMatrix matrix = geometry.getProjectionMatrices()[p].computeP();
+			matrices[p] = new double [12];
+			for (int r = 0; r < 3; r++){
+				for (int c = 0; c < 4; c++){
+					matrices[p][(4 * r) + c] = matrix.getElement(r, c);
+				}
+			}
+		}
+		slabProjections = new float [Math.max(1, numberOfSlabs)][width * height];
+	}
+
+	@Override
+	public int getNumberOfProjections() {
+		return matrices.length;
+	}
+
+	@Override
+	public int [] getProjectionSize() {
+		return new int [] {width, height};
+	}
+
+	@Override
+	public void forwardproject(Grid3D volume, int projectionNumber, Grid2D projection) {
+		checkProjection(projection);
+		volume.notifyBeforeRead();
+		int slabs = Math.min(slabProjections.length, volume.getSize()[2]);
+		execute(new ProjectorTask(volume, projectionNumber, null, 0, true, 0, slabs), slabs);
+		float [] result = projection.getBuffer();
+		System.arraycopy(slabProjections[0], 0, result, 0, result.length);
+		for (int s = 1; s < slabs; s++){
+			float [] slab = slabProjections[s];
+			for (int i = 0; i < result.length; i++){
+				result[i] += slab[i];
+			}
+		}
+		projection.notifyAfterWrite();
+	}
+
+	@Override
+	public void backproject(Grid2D projection, int projectionNumber, Grid3D volume, float weight) {
+		checkProjection(projection);
+		projection.notifyBeforeRead();
+		volume.notifyBeforeRead();
+		execute(new ProjectorTask(volume, projectionNumber, projection.getBuffer(), weight, false, 0, volume.getSize()[2]), volume.getSize()[2]);
+		volume.notifyAfterWrite();
+	}
+
+	/**
+	 * Checks that the projection has the size of the detector.
+	 * @param projection the projection
+	 */
+	protected void checkProjection(Grid2D projection){
+		if (projection.getWidth() != width || projection.getHeight() != height) {
+			throw new IllegalArgumentException("Projection size " + projection.getWidth() + "x" + projection.getHeight() + " does not match the detector size " + width + "x" + height);
+		}
+	}
+
+	private static void execute(ProjectorTask task, int count){
+		if (count < 2 || !ParallelThreadExecutor.parallel) {
+			task.direct();
+		} else {
+			ParallelThreadExecutor.invoke(task);
+		}
+	}
+
+	/**
+	 * Linear interpolation in the row starting at offset. Positions outside of the row read zero.
+	 */
+	private static double interpolateRow(float [] buffer, int offset, int length, double x){
+		int lower = (int) Math.floor(x);
+		double d = x - lower;
+		double value = (1.0 - d) * ((lower >= 0 && lower < length) ? buffer[offset + lower] : 0.0);
+		if (d != 0.0) value += d * ((lower + 1 >= 0 && lower + 1 < length) ? buffer[offset + lower + 1] : 0.0);
+		return (float) value;
+	}
+
+	/**
+	 * Bilinear interpolation as in InterpolationOperators.interpolateLinear(Grid2D, double, double) with zero padding.
+	 */
+	private static double interpolate(float [] buffer, int width, int height, double u, double v){
+		int lower = (int) Math.floor(v);
+		double d = v - lower;
+		double value = (1.0 - d) * ((lower >= 0 && lower < height) ? interpolateRow(buffer, lower * width, width, u) : 0.0);
+		if (d != 0.0) value += d * ((lower + 1 >= 0 && lower + 1 < height) ? interpolateRow(buffer, (lower + 1) * width, width, u) : 0.0);
+		return (float) value;
+	}
+
+	/**
+	 * Processes the slabs [first, last). For the forward projection, a slab is a block of slices with its own detector buffer.
+	 * For the backprojection, a slab is a single slice.
+	 */
+	private class ProjectorTask extends RecursiveAction {
+
+		private static final long serialVersionUID = -2459383011893373260L;
+		private final Grid3D volume;
+		private final int projectionNumber;
+		private final float [] projection;
+		private final float weight;
+		private final boolean forward;
+		private final int first, last;
+
+		ProjectorTask(Grid3D volume, int projectionNumber, float [] projection, float weight, boolean forward, int first, int last){
+			this.volume = volume;
+			this.projectionNumber = projectionNumber;
+			this.projection = projection;
+			this.weight = weight;
+			this.forward = forward;
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		protected void compute() {
+			if (last - first <= 1) {
+				direct();
+			} else {
+				int mid = (first + last) >>> 1;
+				invokeAll(new ProjectorTask(volume, projectionNumber, projection, weight, forward, first, mid),
+						new ProjectorTask(volume, projectionNumber, projection, weight, forward, mid, last));
+			}
+		}
+
+		void direct(){
+			for (int s = first; s < last; s++){
+				if (forward) {
+					int sizeZ = volume.getSize()[2];
+					int slabs = Math.min(slabProjections.length, sizeZ);
+					forwardproject(slabProjections[s], (int) (((long) s * sizeZ) / slabs), (int) (((long) (s + 1) * sizeZ) / slabs));
+				} else {
+					backproject(s);
+				}
+			}
+		}
+
+		private void forwardproject(float [] sino, int firstZ, int lastZ){
+			Arrays.fill(sino, 0);
+			double [] m = matrices[projectionNumber];
+			int [] size = volume.getSize();
+			double [] spacing = volume.getSpacing();
+			double [] origin = volume.getOrigin();
+			for (int z = firstZ; z < lastZ; z++){
+				float [] slice = volume.getSubGrid(z).getBuffer();
+				double zTrans = (z * spacing[2]) + origin[2];
+				for (int y = 0; y < size[1]; y++){
+					double yTrans = (y * spacing[1]) + origin[1];
+					for (int x = 0; x < size[0]; x++){
+						double xTrans = (x * spacing[0]) + origin[0];
+						double w = (m[8] * xTrans) + (m[9] * yTrans) + (m[10] * zTrans) + m[11];
+						double u = ((m[0] * xTrans) + (m[1] * yTrans) + (m[2] * zTrans) + m[3]) / w;
+						double v = ((m[4] * xTrans) + (m[5] * yTrans) + (m[6] * zTrans) + m[7]) / w;
+						if (u >= width - 1 || v >= height - 1 || u <= 0 || v <= 0) continue;
+						float value = slice[(y * size[0]) + x];
+						// bilinear splat as in InterpolationOperators.addInterpolateLinear(Grid2D, double, double, float)
+						int lowerU = (int) u;
+						int lowerV = (int) v;
+						double du = u - lowerU;
+						double dv = v - lowerV;
+						int index = (lowerV * width) + lowerU;
+						float row = (float) ((1 - dv) * value);
+						sino[index] += (float) ((1 - du) * row);
+						if (du != 0) sino[index + 1] += (float) (du * row);
+						if (dv != 0) {
+							float nextRow = (float) (dv * value);
+							sino[index + width] += (float) ((1 - du) * nextRow);
+							if (du != 0) sino[index + width + 1] += (float) (du * nextRow);
+						}
+					}
+				}
+			}
+		}
+
+		private void backproject(int z){
+			double [] m = matrices[projectionNumber];
+			int [] size = volume.getSize();
+			double [] spacing = volume.getSpacing();
+			double [] origin = volume.getOrigin();
+			float [] slice = volume.getSubGrid(z).getBuffer();
+			double zTrans = (z * spacing[2]) + origin[2];
+			for (int y = 0; y < size[1]; y++){
+				double yTrans = (y * spacing[1]) + origin[1];
+				for (int x = 0; x < size[0]; x++){
+					double xTrans = (x * spacing[0]) + origin[0];
+					double w = (m[8] * xTrans) + (m[9] * yTrans) + (m[10] * zTrans) + m[11];
+					double u = ((m[0] * xTrans) + (m[1] * yTrans) + (m[2] * zTrans) + m[3]) / w;
+					double v = ((m[4] * xTrans) + (m[5] * yTrans) + (m[6] * zTrans) + m[7]) / w;
+					float value = (float) (interpolate(projection, width, height, u, v) / (w * w));
+					slice[(y * size[0]) + x] += weight * value;
+				}
+			}
+		}
+
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
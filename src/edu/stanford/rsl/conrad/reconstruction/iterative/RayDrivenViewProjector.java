@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.conrad.reconstruction.iterative;
+
+import java.util.concurrent.RecursiveAction;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+import edu.stanford.rsl.conrad.data.numeric.Grid3D;
+import edu.stanford.rsl.conrad.geometry.Projection;
+import edu.stanford.rsl.conrad.geometry.trajectories.Trajectory;
+import edu.stanford.rsl.conrad.numerics.SimpleMatrix;
+import edu.stanford.rsl.conrad.numerics.SimpleVector;
+import edu.stanford.rsl.conrad.parallel.ParallelThreadExecutor;
+
+/**
+ * Cone-beam projector pair on the CPU with a ray-driven forward projection and the voxel-driven backprojection of the
+ * {@link PixelDrivenViewProjector}. This is the pair of operators which the SART of the tutorial used with OpenCL:
+ * ConeBeamProjector.projectRayDrivenCL() and ConeBeamBackprojector.backprojectPixelDrivenCL().
+ * <br><br>
+ * The forward projection follows the OpenCL kernel in projectCL.cl: the ray through each pixel is clipped to the volume, sampled with a step
+ * size of one voxel, and the volume is interpolated trilinearly with clamping at the borders. The samples are summed with the trapezoidal rule.
+ * As in the kernel, the ray is traced in voxel coordinates and the line integral is given in units of voxels. The volume geometry is taken from
+ * the size, spacing and origin of the volume grid.
+ * <br><br>
+ * The rows of the detector are processed in parallel on the shared pool of the ParallelThreadExecutor. Instances must not be used by several
+ * threads at the same time.
+ *
+ * @author akmaier
+ *
+ */
+public class RayDrivenViewProjector extends PixelDrivenViewProjector {
+
+	private final double [][] inverseMatrices;
+	private final double [][] cameraCenters;
+	private final int width, height;
+
+	/**
+	 * Creates a projector for the projection matrices of the given geometry.
+	 * @param geometry the geometry
+	 */
+	public RayDrivenViewProjector(Trajectory geometry){
+		super(geometry, 1);
+		width = geometry.getDetectorWidth();
+		height = geometry.getDetectorHeight();
+		Projection [] projections = geometry.getProjectionMatrices();
+		inverseMatrices = new double [projections.length][9];
+		cameraCenters = new double [projections.length][];
+		for (int p = 0; p < projections.length; p++){
+			SimpleMatrix inverse = projections[p].getRTKinv();
+			for (int r = 0; r < 3; r++){
+				for (int c = 0; c < 3; c++){
+					inverseMatrices[p][(3 * r) + c] = inverse.getElement(r, c);
+				}
+			}
+			SimpleVector center = projections[p].computeCameraCenter();
+			cameraCenters[p] = center.copyAsDoubleArray();
+		}
+	}
+
+	@Override
+	public void forwardproject(Grid3D volume, int projectionNumber, Grid2D projection) {
+		checkProjection(projection);
+		volume.notifyBeforeRead();
+		RowTask task = new RowTask(volume, projectionNumber, projection.getBuffer(), 0, height);
+		if (height < 2 || !ParallelThreadExecutor.parallel) {
+			task.direct();
+		} else {
+			ParallelThreadExecutor.invoke(task);
+		}
+		projection.notifyAfterWrite();
+	}
+
+	/**
+	 * Trilinear interpolation at the voxel coordinates (x, y, z). Coordinates outside of the volume are clamped to the border voxels.
+	 */
+	private static double interpolate(float [][] slices, int [] size, double x, double y, double z){
+		int x0 = (int) Math.floor(x);
+		int y0 = (int) Math.floor(y);
+		int z0 = (int) Math.floor(z);
+		double dx = x - x0;
+		double dy = y - y0;
+		double dz = z - z0;
+		int x1 = clamp(x0 + 1, size[0]);
+		int y1 = clamp(y0 + 1, size[1]);
+		int z1 = clamp(z0 + 1, size[2]);
+		x0 = clamp(x0, size[0]);
+		y0 = clamp(y0, size[1]);
+		z0 = clamp(z0, size[2]);
+		float [] lower = slices[z0];
+		float [] upper = slices[z1];
+		int row0 = y0 * size[0];
+		int row1 = y1 * size[0];
+		double lowerValue = ((1 - dy) * (((1 - dx) * lower[row0 + x0]) + (dx * lower[row0 + x1])))
+				+ (dy * (((1 - dx) * lower[row1 + x0]) + (dx * lower[row1 + x1])));
+		double upperValue = ((1 - dy) * (((1 - dx) * upper[row0 + x0]) + (dx * upper[row0 + x1])))
+				+ (dy * (((1 - dx) * upper[row1 + x0]) + (dx * upper[row1 + x1])));
+		return ((1 - dz) * lowerValue) + (dz * upperValue);
+	}
+
+	private static int clamp(int index, int size){
+		return (index < 0) ? 0 : (index >= size) ? size - 1 : index;
+	}
+
+	/**
+	 * Computes the line integral along the ray s + alpha * r in voxel coordinates, where r is normalized, as in project_ray() of projectCL.cl.
+	 */
+	private static double projectRay(float [][] slices, int [] size, double [] s, double [] r){
+		double minAlpha = 0;
+		double maxAlpha = Double.POSITIVE_INFINITY;
+		boolean first = true;
+		for (int d = 0; d < 3; d++){
+			if (r[d] == 0) continue;
+			double reciprocal = 1.0 / r[d];
+			double alpha0 = (-0.5 - s[d]) * reciprocal;
+			double alpha1 = ((size[d] - 0.5) - s[d]) * reciprocal;
+			if (first) {
+				minAlpha = Math.min(alpha0, alpha1);
+				maxAlpha = Math.max(alpha0, alpha1);
+				first = false;
+			} else {
+				minAlpha = Math.max(minAlpha, Math.min(alpha0, alpha1));
+				maxAlpha = Math.min(maxAlpha, Math.max(alpha0, alpha1));
+			}
+		}
+		double pixel = 0;
+		double px = 0, py = 0, pz = 0;
+		// the first sample is weighted with half of the step size.
+		if (minAlpha < maxAlpha) {
+			px = s[0] + (minAlpha * r[0]);
+			py = s[1] + (minAlpha * r[1]);
+			pz = s[2] + (minAlpha * r[2]);
+			pixel += 0.5 * interpolate(slices, size, px, py, pz);
+			minAlpha += 1;
+		}
+		while (minAlpha < maxAlpha){
+			px = s[0] + (minAlpha * r[0]);
+			py = s[1] + (minAlpha * r[1]);
+			pz = s[2] + (minAlpha * r[2]);
+			pixel += interpolate(slices, size, px, py, pz);
+			minAlpha += 1;
+		}
+		// the last segment is shorter than the step size. As in the kernel, it is only corrected for positive sums.
+		if (pixel > 0) {
+			double last = interpolate(slices, size, px, py, pz);
+			pixel -= 0.5 * last;
+			minAlpha -= 1;
+			double lastStepSize = maxAlpha - minAlpha;
+			pixel += 0.5 * lastStepSize * last;
+			px = s[0] + (maxAlpha * r[0]);
+			py = s[1] + (maxAlpha * r[1]);
+			pz = s[2] + (maxAlpha * r[2]);
+			pixel += 0.5 * lastStepSize * interpolate(slices, size, px, py, pz);
+		}
+		return pixel;
+	}
+
+	/**
+	 * Projects the detector rows [first, last).
+	 */
+	private class RowTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 6304926410436125571L;
+		private final Grid3D volume;
+		private final int projectionNumber;
+		private final float [] projection;
+		private final int first, last;
+
+		RowTask(Grid3D volume, int projectionNumber, float [] projection, int first, int last){
+			this.volume = volume;
+			this.projectionNumber = projectionNumber;
+			this.projection = projection;
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		protected void compute() {
+			if (last - first <= 1) {
+				direct();
+			} else {
+				int mid = (first + last) >>> 1;
+				invokeAll(new RowTask(volume, projectionNumber, projection, first, mid), new RowTask(volume, projectionNumber, projection, mid, last));
+			}
+		}
+
+		void direct(){
+			int [] size = volume.getSize();
+			double [] spacing = volume.getSpacing();
+			double [] origin = volume.getOrigin();
+			float [][] slices = new float [size[2]][];
+			for (int z = 0; z < size[2]; z++){
+				slices[z] = volume.getSubGrid(z).getBuffer();
+			}
+			double [] m = inverseMatrices[projectionNumber];
+			double [] center = cameraCenters[projectionNumber];
+			double [] source = new double [3];
+			for (int d = 0; d < 3; d++){
+				source[d] = (center[d] - origin[d]) / spacing[d];
+			}
+			double [] direction = new double [3];
+			for (int v = first; v < last; v++){
+				for (int u = 0; u < width; u++){
+					// the direction in voxel coordinates, normalized in voxel coordinates as in the kernel.
+					double x = ((m[0] * u) + (m[1] * v) + m[2]) / spacing[0];
+					double y = ((m[3] * u) + (m[4] * v) + m[5]) / spacing[1];
+					double z = ((m[6] * u) + (m[7] * v) + m[8]) / spacing[2];
+					double factor = 1.0 / Math.sqrt((x * x) + (y * y) + (z * z));
+					direction[0] = x * factor;
+					direction[1] = y * factor;
+					direction[2] = z * factor;
+					projection[(v * width) + u] = (float) projectRay(slices, size, source, direction);
+				}
+			}
+		}
+
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -1,13 +1,16 @@
 package edu.stanford.rsl.conrad.reconstruction.iterative;
 
+import java.util.Arrays;
+
 import edu.stanford.rsl.conrad.data.numeric.Grid3D;
 
 public class SeparableFootprints {
 	
 	protected int iumin, iumax, ivmin, ivmax;
-	double[] weightU;
-	double[] weightV;
 	protected final int MAX_WEIGHT_LENGTH = 6;
+	// reused for all voxels
+	final double[] weightU = new double[MAX_WEIGHT_LENGTH];
+	final double[] weightV = new double[MAX_WEIGHT_LENGTH];
 	
 	public SeparableFootprints(){
 	}
@@ -33,7 +36,7 @@ public class SeparableFootprints {
 
 		iumax = Math.min(iumax, iumin+MAX_WEIGHT_LENGTH-1);
 
-		weightU = new double[]{1,1,1,1,1,1};
+		Arrays.fill(weightU, 1);
 
 		if ( iumax == iumin){
 			weightU[0] = umax - umin;
@@ -65,7 +68,7 @@ public class SeparableFootprints {
 
 		ivmax = Math.min(ivmax, ivmin+MAX_WEIGHT_LENGTH-1);
 
-		weightV = new double[]{1,1,1,1,1,1};
+		Arrays.fill(weightV, 1);
 
 		if ( ivmax == ivmin){
 			weightV[0] = vmax - vmin;
@@ -7,7 +7,6 @@ import edu.stanford.rsl.conrad.data.numeric.NumericPointwiseOperators;
 import edu.stanford.rsl.conrad.geometry.Projection;
 import edu.stanford.rsl.conrad.geometry.trajectories.Trajectory;
 import edu.stanford.rsl.conrad.numerics.SimpleMatrix;
-import edu.stanford.rsl.conrad.numerics.SimpleOperators;
 import edu.stanford.rsl.conrad.numerics.SimpleVector;
 
 
@@ -74,18 +73,18 @@ public class SeparableFootprintsBasedReconstruction extends	ModelBasedIterativeR
 		SimpleMatrix mat = proj.computeP();
 		SimpleVector cameraCenter = proj.computeCameraCenter();
 
-		// buffer have move of voxel
-		SimpleVector halfVoxelMoveX = mat.getCol(0);
-		halfVoxelMoveX.multiplyBy(dx/2);
-		SimpleVector halfVoxelMoveY = mat.getCol(1);
-		halfVoxelMoveY.multiplyBy(dy/2);
-		SimpleVector fullVoxelMoveZ = mat.getCol(2);
-		fullVoxelMoveZ.multiplyBy(dz);
+		// the projection matrix in primitive variables, such that no vectors are allocated per voxel
+		final double m00 = mat.getElement(0, 0), m01 = mat.getElement(0, 1), m02 = mat.getElement(0, 2), m03 = mat.getElement(0, 3);
+		final double m10 = mat.getElement(1, 0), m11 = mat.getElement(1, 1), m12 = mat.getElement(1, 2), m13 = mat.getElement(1, 3);
+		final double m20 = mat.getElement(2, 0), m21 = mat.getElement(2, 1), m22 = mat.getElement(2, 2), m23 = mat.getElement(2, 3);
 
-		SimpleVector point3d = new SimpleVector(4);
-		point3d.setElementValue(3, 1);
+		// buffer have move of voxel
+		final double halfVoxelMoveX0 = m00 * (dx/2), halfVoxelMoveX2 = m20 * (dx/2);
+		final double halfVoxelMoveY0 = m01 * (dy/2), halfVoxelMoveY2 = m21 * (dy/2);
+		final double fullVoxelMoveZ1 = m12 * dz, fullVoxelMoveZ2 = m22 * dz;
 
-		SimpleVector point2d, point2dMinus, point2dPlus;
+		double point3dX, point3dY, point3dZ;
+		double point2d0, point2d1, point2d2, minus0, minus2, plus0, plus2;
 
 		double cx = cameraCenter.getElement(0);
 		double cy = cameraCenter.getElement(1);
@@ -98,39 +97,44 @@ public class SeparableFootprintsBasedReconstruction extends	ModelBasedIterativeR
 		
 		for (int i=1; i < maxI; i++){
 
-			point3d.setElementValue(0, i*dx - offsetX  );
+			point3dX = i*dx - offsetX;
 
 			for (int j = 0; j < maxJ; j++){
 				
-				point3d.setElementValue(1, j*dy - offsetY );
-				point3d.setElementValue(2, -dz/2 - offsetZ);
-				point2d = SimpleOperators.multiply(mat, point3d);
-
-				dsx0 = Math.abs(point3d.getElement(0) - cx);
-				dsy0 = Math.abs(point3d.getElement(1) - cy);
+				point3dY = j*dy - offsetY;
+				point3dZ = -dz/2 - offsetZ;
+				point2d0 = m00 * point3dX + m01 * point3dY + m02 * point3dZ + m03;
+				point2d1 = m10 * point3dX + m11 * point3dY + m12 * point3dZ + m13;
+				point2d2 = m20 * point3dX + m21 * point3dY + m22 * point3dZ + m23;
+
+				dsx0 = Math.abs(point3dX - cx);
+				dsy0 = Math.abs(point3dY - cy);
 				dsxy0_sqr = dsx0*dsx0 + dsy0*dsy0;
 
 				if ( dsy0 > dsx0){
 					ds0 = dsy0;
-					point2dMinus = SimpleOperators.subtract(point2d, halfVoxelMoveX);
-					point2dPlus = SimpleOperators.add(point2d, halfVoxelMoveX);					
+					minus0 = point2d0 - halfVoxelMoveX0;
+					minus2 = point2d2 - halfVoxelMoveX2;
+					plus0 = point2d0 + halfVoxelMoveX0;
+					plus2 = point2d2 + halfVoxelMoveX2;
 				}else{
 					ds0 = dsx0;
-					point2dMinus = SimpleOperators.subtract(point2d, halfVoxelMoveY);
-					point2dPlus = SimpleOperators.add(point2d, halfVoxelMoveY);
+					minus0 = point2d0 - halfVoxelMoveY0;
+					minus2 = point2d2 - halfVoxelMoveY2;
+					plus0 = point2d0 + halfVoxelMoveY0;
+					plus2 = point2d2 + halfVoxelMoveY2;
 				}
 
-				coordLeft =  point2dMinus.getElement(0) / point2dMinus.getElement(2) + 0.5;
-				coordRight =  point2dPlus.getElement(0) / point2dPlus.getElement(2) + 0.5;
+				coordLeft =  minus0 / minus2 + 0.5;
+				coordRight =  plus0 / plus2 + 0.5;
 
 				projOnDetector = footprints.rectFootprintWeightU(coordLeft, coordRight, maxU);
 				
 				if ( !projOnDetector ) 
 					continue;
 				
-				coordBottom = point2d.getElement(1) / point2d.getElement(2) + 0.5;
-				point2d.add(fullVoxelMoveZ);
-				coordTop = point2d.getElement(1) / point2d.getElement(2) + 0.5;
+				coordBottom = point2d1 / point2d2 + 0.5;
+				coordTop = (point2d1 + fullVoxelMoveZ1) / (point2d2 + fullVoxelMoveZ2) + 0.5;
 				coordStep = coordTop - coordBottom;
 
 				for ( int k = 0; k < maxK; k++ ){
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.conrad.reconstruction.iterative;
+
+/**
+ * Order in which the subsets of an ordered-subsets reconstruction are processed.
+ * <br><br>
+ * The projections are split into interleaved subsets, i.e. subset s of M subsets contains the projections s, s + M, s + 2M, ...
+ * Hence, each subset covers the whole angular range. Subsequent subsets should be as far apart as possible, as the updates of neighboring
+ * subsets are highly correlated.
+ *
+ * @author akmaier
+ *
+ */
+public enum SubsetOrdering {
+
+	/**
+	 * Processes the subsets in their natural order 0, 1, 2, ...
+	 */
+	SEQUENTIAL,
+	/**
+	 * Processes the subsets in bit-reversed order, e.g. 0, 4, 2, 6, 1, 5, 3, 7 for 8 subsets. Indices which are out of range are skipped.
+	 */
+	BIT_REVERSAL,
+	/**
+	 * Jumps by a third of the number of subsets from one subset to the next and takes the next unused subset if the target was already used.
+	 * This is the ordering of the projections in the SART tutorial.
+	 */
+	ONE_THIRD_JUMP;
+
+	/**
+	 * Computes the order of the subsets.
+	 * @param numberOfSubsets the number of subsets
+	 * @return the subset indices in the order of processing
+	 */
+	public int [] createOrder(int numberOfSubsets){
+		int [] order = new int [numberOfSubsets];
+		switch (this) {
+		case SEQUENTIAL:
+			for (int n = 0; n < numberOfSubsets; n++){
+				order[n] = n;
+			}
+			break;
+		case BIT_REVERSAL:
+			int bits = 0;
+			while ((1 << bits) < numberOfSubsets) bits++;
+			int n = 0;
+			for (int i = 0; i < (1 << bits); i++){
+				int reversed = (bits == 0) ? 0 : Integer.reverse(i) >>> (32 - bits);
+				if (reversed < numberOfSubsets) order[n++] = reversed;
+			}
+			break;
+		case ONE_THIRD_JUMP:
+			boolean [] used = new boolean [numberOfSubsets];
+			int s = 0;
+			for (int i = 0; i < numberOfSubsets; i++){
+				order[i] = s;
+				used[s] = true;
+				s = (s + numberOfSubsets / 3) % numberOfSubsets;
+				for (int j = 1; used[s] && j < numberOfSubsets; j++){
+					s = (s + 1) % numberOfSubsets;
+				}
+			}
+			break;
+		}
+		return order;
+	}
+
+	/**
+	 * Splits the projections into interleaved subsets and sorts the subsets according to this ordering.
+	 * @param numberOfProjections the number of projections
+	 * @param numberOfSubsets the number of subsets. Is limited to the number of projections.
+	 * @return the projection indices of each subset in the order of processing
+	 */
+	public int [][] createSubsets(int numberOfProjections, int numberOfSubsets){
+		if (numberOfProjections < 1 || numberOfSubsets < 1) throw new IllegalArgumentException("Number of projections and subsets must be positive.");
+		int subsets = Math.min(numberOfSubsets, numberOfProjections);
+		int [] order = createOrder(subsets);
+		int [][] result = new int [subsets][];
+		for (int i = 0; i < subsets; i++){
+			int s = order[i];
+			result[i] = new int [((numberOfProjections - 1 - s) / subsets) + 1];
+			for (int n = 0; n < result[i].length; n++){
+				result[i][n] = s + (n * subsets);
+			}
+		}
+		return result;
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
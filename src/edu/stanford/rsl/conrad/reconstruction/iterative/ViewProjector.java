@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.conrad.reconstruction.iterative;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+import edu.stanford.rsl.conrad.data.numeric.Grid3D;
+
+/**
+ * Projector pair which works on single views. Used by the OrderedSubsetsReconstruction.
+ * <br><br>
+ * Implementations write into grids which are provided by the caller, such that no memory has to be allocated during the iterations.
+ * The methods are not required to be thread-safe, but may use several threads internally.
+ *
+ * @author akmaier
+ * @see OrderedSubsetsReconstruction
+ *
+ */
+public interface ViewProjector {
+
+	/**
+	 * @return the number of views of the geometry
+	 */
+	public int getNumberOfProjections();
+
+	/**
+	 * @return the size of the projections as {width, height}
+	 */
+	public int [] getProjectionSize();
+
+	/**
+	 * Forward projects the volume onto a single view. The projection is overwritten.
+	 * @param volume the volume
+	 * @param projectionNumber the index of the view
+	 * @param projection the grid to store the projection
+	 */
+	public void forwardproject(Grid3D volume, int projectionNumber, Grid2D projection);
+
+	/**
+	 * Backprojects a single view and adds it to the volume: volume += weight * backprojection
+	 * @param projection the projection
+	 * @param projectionNumber the index of the view
+	 * @param volume the volume to accumulate into
+	 * @param weight the weight of the backprojection
+	 */
+	public void backproject(Grid2D projection, int projectionNumber, Grid3D volume, float weight);
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -0,0 +1,157 @@
+package edu.stanford.rsl.conrad.reconstruction.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+import edu.stanford.rsl.conrad.data.numeric.Grid3D;
+import edu.stanford.rsl.conrad.geometry.Projection.CameraAxisDirection;
+import edu.stanford.rsl.conrad.geometry.trajectories.CircularTrajectory;
+import edu.stanford.rsl.conrad.numerics.SimpleVector;
+import edu.stanford.rsl.conrad.pipeline.ProjectionSink;
+import edu.stanford.rsl.conrad.reconstruction.MotionCompensatedVOIBasedReconstructionFilter;
+import edu.stanford.rsl.conrad.reconstruction.VOIBasedReconstructionFilter;
+import edu.stanford.rsl.conrad.utils.Configuration;
+
+/**
+ * Compares the VOIBasedReconstructionFilter with the default accumulation (all updates via the lock of the filter)
+ * and with the slab-parallel accumulation (one slab of slices per thread, no locking).
+ *
+ * @author akmaier
+ *
+ */
+public class BackprojectionAccumulationTests {
+
+	private static final int volumeSize = 32;
+	private static final int numProjections = 36;
+
+	/**
+	 * Sink that keeps the slices of the reconstructed volume.
+	 */
+	private static class VolumeSink implements ProjectionSink {
+
+		private Grid3D volume;
+
+		public VolumeSink(int width, int height, int depth){
+			volume = new Grid3D(width, height, depth, false);
+		}
+
+		@Override
+		public void process(Grid2D projection, int projectionNumber) throws Exception {
+			volume.setSubGrid(projectionNumber, projection);
+		}
+
+		@Override
+		public String getName() {
+			return "Volume Sink";
+		}
+
+		@Override
+		public void setShowStatus(boolean showStatus) {
+		}
+
+		@Override
+		public void close() throws Exception {
+		}
+
+		public Grid3D getVolume(){
+			return volume;
+		}
+	}
+
+	private static void initConfiguration(){
+		CircularTrajectory trajectory = new CircularTrajectory();
+		trajectory.setDetectorHeight(volumeSize);
+		trajectory.setDetectorWidth(2 * volumeSize);
+		trajectory.setSourceToAxisDistance(600.0);
+		trajectory.setSourceToDetectorDistance(1200.0);
+		trajectory.setReconDimensions(volumeSize, volumeSize, volumeSize);
+		trajectory.setOriginInPixelsX((volumeSize - 1) / 2.0);
+		trajectory.setOriginInPixelsY((volumeSize - 1) / 2.0);
+		trajectory.setOriginInPixelsZ((volumeSize - 1) / 2.0);
+		trajectory.setPixelDimensionX(1.0);
+		trajectory.setPixelDimensionY(1.0);
+		trajectory.setVoxelSpacingX(0.5);
+		trajectory.setVoxelSpacingY(0.5);
+		trajectory.setVoxelSpacingZ(0.5);
+		trajectory.setAverageAngularIncrement(360.0 / numProjections);
+		trajectory.setProjectionStackSize(numProjections);
+		trajectory.setDetectorUDirection(CameraAxisDirection.DETECTORMOTION_PLUS);
+		trajectory.setDetectorVDirection(CameraAxisDirection.ROTATIONAXIS_PLUS);
+		trajectory.setTrajectory(numProjections, 600.0, 360.0 / numProjections, 0, 0, CameraAxisDirection.DETECTORMOTION_PLUS, CameraAxisDirection.ROTATIONAXIS_PLUS, new SimpleVector(0, 0, 1));
+		Configuration config = new Configuration();
+		config.setRegistry(new HashMap<String, String>());
+		config.setGeometry(trajectory);
+		Configuration.setGlobalConfiguration(config);
+	}
+
+	private static Grid2D createProjection(int width, int height, int projectionNumber){
+		Grid2D projection = new Grid2D(width, height);
+		for (int j = 0; j < height; j++){
+			for (int i = 0; i < width; i++){
+				projection.setAtIndex(i, j, (float) (Math.sin((i + projectionNumber) * 0.05) + Math.cos(j * 0.1)) + 2.0f);
+			}
+		}
+		return projection;
+	}
+
+	/**
+	 * Streams the synthetic projections through the backprojector and returns the volume.
+	 */
+	private static Grid3D reconstruct(VOIBasedReconstructionFilter backprojector) throws Exception {
+		Configuration config = Configuration.getGlobalConfiguration();
+		int width = config.getGeometry().getDetectorWidth();
+		int height = config.getGeometry().getDetectorHeight();
+		VolumeSink sink = new VolumeSink(volumeSize, volumeSize, volumeSize);
+		backprojector.setSink(sink);
+		for (int p = 0; p < numProjections; p++){
+			backprojector.process(createProjection(width, height, p), p);
+		}
+		backprojector.close();
+		backprojector.run();
+		return sink.getVolume();
+	}
+
+	@Test
+	public void testSlabAccumulationMatchesSynchronizedAccumulation() throws Exception {
+		initConfiguration();
+		Grid3D expected = reconstruct(new VOIBasedReconstructionFilter());
+		VOIBasedReconstructionFilter slab = new VOIBasedReconstructionFilter();
+		slab.setSlabParallelAccumulation(true);
+		Grid3D actual = reconstruct(slab);
+		double max = 0;
+		for (int k = 0; k < volumeSize; k++){
+			for (int j = 0; j < volumeSize; j++){
+				for (int i = 0; i < volumeSize; i++){
+					max = Math.max(max, Math.abs(expected.getAtIndex(i, j, k)));
+				}
+			}
+		}
+		assertTrue(max > 0);
+		for (int k = 0; k < volumeSize; k++){
+			for (int j = 0; j < volumeSize; j++){
+				for (int i = 0; i < volumeSize; i++){
+					// the slab mode accumulates in a different rounding order.
+					assertEquals("voxel " + i + " " + j + " " + k, expected.getAtIndex(i, j, k), actual.getAtIndex(i, j, k), 1e-5 * max);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSlabAccumulationSupport(){
+		VOIBasedReconstructionFilter plain = new VOIBasedReconstructionFilter();
+		assertTrue(plain.isSlabParallelAccumulationSupported());
+		// overrides backproject(Grid2D, int) and hence falls back to the default accumulation.
+		assertTrue(!new MotionCompensatedVOIBasedReconstructionFilter().isSlabParallelAccumulationSupported());
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
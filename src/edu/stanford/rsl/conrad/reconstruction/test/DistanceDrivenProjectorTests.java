@@ -0,0 +1,132 @@
+package edu.stanford.rsl.conrad.reconstruction.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.junit.After;
+import org.junit.Test;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid3D;
+import edu.stanford.rsl.conrad.geometry.Projection;
+import edu.stanford.rsl.conrad.geometry.Projection.CameraAxisDirection;
+import edu.stanford.rsl.conrad.geometry.trajectories.CircularTrajectory;
+import edu.stanford.rsl.conrad.numerics.SimpleVector;
+import edu.stanford.rsl.conrad.parallel.ParallelThreadExecutor;
+import edu.stanford.rsl.conrad.phantom.NumericalSheppLogan3D;
+import edu.stanford.rsl.conrad.reconstruction.iterative.DistanceDrivenBasedReconstruction;
+import edu.stanford.rsl.conrad.utils.Configuration;
+import edu.stanford.rsl.conrad.utils.RegKeys;
+
+/**
+ * Tests the parallel distance-driven projector pair on the Shepp-Logan phantom.
+ *
+ * @author akmaier
+ *
+ */
+public class DistanceDrivenProjectorTests {
+
+	private static CircularTrajectory createTrajectory(){
+		CircularTrajectory trajectory = new CircularTrajectory();
+		trajectory.setDetectorHeight(32);
+		trajectory.setDetectorWidth(64);
+		trajectory.setSourceToAxisDistance(400.0);
+		trajectory.setSourceToDetectorDistance(800.0);
+		trajectory.setReconDimensions(48, 48, 24);
+		trajectory.setOriginInPixelsX((trajectory.getReconDimensionX() - 1) / 2);
+		trajectory.setOriginInPixelsY((trajectory.getReconDimensionY() - 1) / 2);
+		trajectory.setOriginInPixelsZ((trajectory.getReconDimensionZ() - 1) / 2);
+		trajectory.setDetectorOffsetU(0);
+		trajectory.setDetectorOffsetV(0);
+		trajectory.setPixelDimensionX(2.0);
+		trajectory.setPixelDimensionY(2.0);
+		trajectory.setVoxelSpacingX(1.0);
+		trajectory.setVoxelSpacingY(1.0);
+		trajectory.setVoxelSpacingZ(2.0);
+		trajectory.setAverageAngularIncrement(12.0);
+		trajectory.setProjectionStackSize(30);
+		trajectory.setDetectorUDirection(CameraAxisDirection.DETECTORMOTION_PLUS);
+		trajectory.setDetectorVDirection(CameraAxisDirection.ROTATIONAXIS_PLUS);
+		trajectory.setTrajectory(30, 300.0, 12.0, -0.5, -0.5, CameraAxisDirection.DETECTORMOTION_PLUS, CameraAxisDirection.ROTATIONAXIS_PLUS, new SimpleVector(0, 0, 1));
+		return trajectory;
+	}
+
+	private static void setThreads(CircularTrajectory trajectory, int threads){
+		Configuration config = new Configuration();
+		config.setRegistry(new HashMap<String, String>());
+		config.setRegistryEntry(RegKeys.MAX_THREADS, "" + threads);
+		config.setGeometry(trajectory);
+		Configuration.setGlobalConfiguration(config);
+		ParallelThreadExecutor.parallel = threads > 1;
+	}
+
+	private static float [] toArray(Grid3D grid){
+		int [] size = grid.getSize();
+		float [] array = new float [size[0] * size[1] * size[2]];
+		for (int k = 0; k < size[2]; k++){
+			System.arraycopy(grid.getSubGrid(k).getBuffer(), 0, array, k * size[0] * size[1], size[0] * size[1]);
+		}
+		return array;
+	}
+
+	/**
+	 * Forward projects the phantom and backprojects the projections.
+	 * @return the projections and the backprojection
+	 */
+	private static float [][] project(CircularTrajectory trajectory, DistanceDrivenBasedReconstruction projector) throws Exception {
+		projector.Debug = false;
+		projector.initializeTest();
+		Grid3D phantom = new NumericalSheppLogan3D(trajectory.getReconDimensionX(), trajectory.getReconDimensionY(), trajectory.getReconDimensionZ()).getNumericalSheppLoganPhantom();
+		Grid3D projections = projector.InitializeProjectionViews();
+		Grid3D volume = projector.InitializeVolumeImage();
+		projector.forwardproject(projections, phantom);
+		projector.backproject(projections, volume);
+		return new float [][] {toArray(projections), toArray(volume)};
+	}
+
+	@After
+	public void resetThreads(){
+		ParallelThreadExecutor.parallel = true;
+		Configuration.setGlobalConfiguration(null);
+	}
+
+	@Test
+	public void testResultDoesNotDependOnThreads() throws Exception {
+		CircularTrajectory trajectory = createTrajectory();
+		setThreads(trajectory, 1);
+		float [][] single = project(trajectory, new DistanceDrivenBasedReconstruction(trajectory));
+		setThreads(trajectory, 4);
+		float [][] parallel = project(trajectory, new DistanceDrivenBasedReconstruction(trajectory));
+		float max = 0;
+		for (float value : single[0]) max = Math.max(max, value);
+		assertTrue(max > 0);
+		assertArrayEquals(single[0], parallel[0], 0);
+		assertArrayEquals(single[1], parallel[1], 0);
+	}
+
+	@Test
+	public void testEditedProjectionMatricesAreUsed() throws Exception {
+		CircularTrajectory trajectory = createTrajectory();
+		setThreads(trajectory, 4);
+		DistanceDrivenBasedReconstruction projector = new DistanceDrivenBasedReconstruction(trajectory);
+		float [][] before = project(trajectory, projector);
+		// shift the detector of one projection in place.
+		Projection edited = trajectory.getProjectionMatrix(3);
+		SimpleVector principalPoint = edited.getPrincipalPoint().clone();
+		principalPoint.setElementValue(0, principalPoint.getElement(0) + 5);
+		edited.setPrincipalPointValue(principalPoint);
+		float [][] after = project(trajectory, projector);
+		assertFalse(Arrays.equals(before[0], after[0]));
+		float [][] fresh = project(trajectory, new DistanceDrivenBasedReconstruction(trajectory));
+		assertArrayEquals(fresh[0], after[0], 0);
+		assertArrayEquals(fresh[1], after[1], 0);
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -0,0 +1,131 @@
+package edu.stanford.rsl.conrad.reconstruction.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import edu.stanford.rsl.conrad.geometry.trajectories.CircularTrajectory;
+import edu.stanford.rsl.conrad.reconstruction.VOIBasedReconstructionFilter;
+import edu.stanford.rsl.conrad.reconstruction.voi.CylinderBasedVolumeOfInterest;
+import edu.stanford.rsl.conrad.reconstruction.voi.PolygonBasedVolumeOfInterest;
+import edu.stanford.rsl.conrad.reconstruction.voi.RunLengthVOIMap;
+import edu.stanford.rsl.conrad.reconstruction.voi.VolumeOfInterest;
+import edu.stanford.rsl.conrad.utils.Configuration;
+
+public class RunLengthVOIMapTests {
+
+	private static final int size = 48;
+	private static final double spacing = 0.7;
+	private static final double offset = ((size - 1) * spacing) / 2;
+
+	private static File writeConfigFile(String content) throws IOException {
+		File file = File.createTempFile("voi", ".txt");
+		file.deleteOnExit();
+		FileWriter writer = new FileWriter(file);
+		writer.write(content);
+		writer.close();
+		return file;
+	}
+
+	/**
+	 * Compares the map voxel by voxel to VolumeOfInterest.contains().
+	 */
+	private static void assertMapMatchesVOI(VolumeOfInterest voi, RunLengthVOIMap map){
+		long inside = 0;
+		for (int k = 0; k < size; k++){
+			for (int i = 0; i < size; i++){
+				for (int j = 0; j < size; j++){
+					boolean expected = voi.contains((spacing * i) - offset, (spacing * j) - offset, (spacing * k) - offset);
+					assertEquals("voxel " + i + " " + j + " " + k, expected, map.contains(i, j, k));
+					if (expected) inside++;
+				}
+			}
+		}
+		assertEquals(inside, map.getNumberOfVoxels());
+	}
+
+	@Test
+	public void testCylinderMap() throws IOException {
+		File file = writeConfigFile("version 3\n\n\nradius 13.3\ncylinderminz -8.0\ncylindermaxz 8.05\nminz -15.2\nmaxz 14.0\n");
+		CylinderBasedVolumeOfInterest voi = new CylinderBasedVolumeOfInterest();
+		voi.readConfigFile(file.getAbsolutePath());
+		RunLengthVOIMap map = RunLengthVOIMap.create(voi, size, size, size, spacing, spacing, spacing, offset, offset, offset);
+		assertMapMatchesVOI(voi, map);
+	}
+
+	@Test
+	public void testPolygonMap() throws IOException {
+		File file = writeConfigFile("version 2\n\n\nz -10.0 12.0\npoints 5\np -12 -3\np -2 -14\np 11 -6\np 9 13\np -7 10\n");
+		PolygonBasedVolumeOfInterest voi = new PolygonBasedVolumeOfInterest(file.getAbsolutePath());
+		RunLengthVOIMap map = RunLengthVOIMap.create(voi, size, size, size, spacing, spacing, spacing, offset, offset, offset);
+		assertMapMatchesVOI(voi, map);
+	}
+
+	@Test
+	public void testSubMap() throws IOException {
+		File file = writeConfigFile("version 3\n\n\nradius 13.3\ncylinderminz -8.0\ncylindermaxz 8.05\nminz -15.2\nmaxz 14.0\n");
+		CylinderBasedVolumeOfInterest voi = new CylinderBasedVolumeOfInterest();
+		voi.readConfigFile(file.getAbsolutePath());
+		RunLengthVOIMap map = RunLengthVOIMap.create(voi, size, size, size, spacing, spacing, spacing, offset, offset, offset);
+		RunLengthVOIMap subMap = map.getSubMap(20, 10);
+		assertEquals(10, subMap.getMaxI());
+		for (int k = 0; k < size; k++){
+			for (int i = 0; i < 10; i++){
+				for (int j = 0; j < size; j++){
+					assertEquals(map.contains(i + 20, j, k), subMap.contains(i, j, k));
+				}
+			}
+		}
+		assertEquals((long) size * size * size, RunLengthVOIMap.createFullVolume(size, size, size).getNumberOfVoxels());
+	}
+
+	/**
+	 * Exposes the creation of the VOI map of the backprojector.
+	 */
+	private static class MapCreator extends VOIBasedReconstructionFilter {
+
+		private static final long serialVersionUID = 1L;
+
+		RunLengthVOIMap create(double offset){
+			return createVOIMap(size, size, size, offset, offset, offset);
+		}
+	}
+
+	@Test
+	public void testMapIsCreatedOncePerConfiguration() throws IOException {
+		CircularTrajectory trajectory = new CircularTrajectory();
+		trajectory.setVoxelSpacingX(spacing);
+		trajectory.setVoxelSpacingY(spacing);
+		trajectory.setVoxelSpacingZ(spacing);
+		Configuration config = new Configuration();
+		config.setGeometry(trajectory);
+		Configuration.setGlobalConfiguration(config);
+		File file = writeConfigFile("version 3\n\n\nradius 13.3\ncylinderminz -8.0\ncylindermaxz 8.05\nminz -15.2\nmaxz 14.0\n");
+		CylinderBasedVolumeOfInterest voi = new CylinderBasedVolumeOfInterest();
+		voi.readConfigFile(file.getAbsolutePath());
+		MapCreator backprojector = new MapCreator();
+		backprojector.setMaximumVolumeOfInterest(voi);
+		RunLengthVOIMap map = backprojector.create(offset);
+		assertMapMatchesVOI(voi, map);
+		assertSame(map, backprojector.create(offset));
+		// a new geometry or a new VOI requires a new map.
+		RunLengthVOIMap shifted = backprojector.create(offset + spacing);
+		assertNotSame(map, shifted);
+		assertSame(shifted, backprojector.create(offset + spacing));
+		CylinderBasedVolumeOfInterest other = new CylinderBasedVolumeOfInterest();
+		other.readConfigFile(file.getAbsolutePath());
+		backprojector.setMaximumVolumeOfInterest(other);
+		assertNotSame(shifted, backprojector.create(offset + spacing));
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
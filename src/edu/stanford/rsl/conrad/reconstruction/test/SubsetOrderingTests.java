@@ -0,0 +1,89 @@
+package edu.stanford.rsl.conrad.reconstruction.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import edu.stanford.rsl.conrad.reconstruction.iterative.SubsetOrdering;
+
+/**
+ * Tests the orders and the subsets of the SubsetOrdering.
+ *
+ * @author akmaier
+ *
+ */
+public class SubsetOrderingTests {
+
+	private static void assertPermutation(int [] order, int n){
+		assertEquals(n, order.length);
+		boolean [] seen = new boolean [n];
+		for (int i = 0; i < order.length; i++){
+			assertTrue("index " + order[i], order[i] >= 0 && order[i] < n);
+			assertTrue("duplicate " + order[i], !seen[order[i]]);
+			seen[order[i]] = true;
+		}
+	}
+
+	@Test
+	public void testOrdersArePermutations(){
+		for (SubsetOrdering ordering : SubsetOrdering.values()){
+			for (int n = 1; n <= 40; n++){
+				assertPermutation(ordering.createOrder(n), n);
+			}
+		}
+	}
+
+	@Test
+	public void testKnownOrders(){
+		assertArrayEquals(new int[]{0, 1, 2, 3, 4}, SubsetOrdering.SEQUENTIAL.createOrder(5));
+		assertArrayEquals(new int[]{0, 4, 2, 6, 1, 5, 3, 7}, SubsetOrdering.BIT_REVERSAL.createOrder(8));
+		// 6 and 7 are out of range and skipped.
+		assertArrayEquals(new int[]{0, 4, 2, 1, 5, 3}, SubsetOrdering.BIT_REVERSAL.createOrder(6));
+		assertArrayEquals(new int[]{0, 3, 6, 1, 4, 7, 2, 5, 8}, SubsetOrdering.ONE_THIRD_JUMP.createOrder(9));
+	}
+
+	@Test
+	public void testSubsetsPartitionTheProjections(){
+		for (SubsetOrdering ordering : SubsetOrdering.values()){
+			for (int numberOfProjections = 1; numberOfProjections <= 30; numberOfProjections++){
+				for (int numberOfSubsets = 1; numberOfSubsets <= 35; numberOfSubsets++){
+					int [][] subsets = ordering.createSubsets(numberOfProjections, numberOfSubsets);
+					assertEquals(Math.min(numberOfProjections, numberOfSubsets), subsets.length);
+					boolean [] seen = new boolean [numberOfProjections];
+					int count = 0;
+					int maxSize = 0;
+					int minSize = Integer.MAX_VALUE;
+					for (int s = 0; s < subsets.length; s++){
+						maxSize = Math.max(maxSize, subsets[s].length);
+						minSize = Math.min(minSize, subsets[s].length);
+						for (int n = 0; n < subsets[s].length; n++){
+							int p = subsets[s][n];
+							assertTrue(p >= 0 && p < numberOfProjections);
+							assertTrue("duplicate " + p, !seen[p]);
+							seen[p] = true;
+							count++;
+							// interleaved: all projections of a subset are congruent modulo the number of subsets.
+							assertEquals(subsets[s][0], p % subsets.length);
+						}
+					}
+					assertEquals(numberOfProjections, count);
+					assertTrue(maxSize - minSize <= 1);
+					// the projector scratch grids are sized by the first subset.
+					assertEquals(maxSize, subsets[0].length);
+				}
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoSubsets(){
+		SubsetOrdering.SEQUENTIAL.createSubsets(10, 0);
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -0,0 +1,86 @@
+package edu.stanford.rsl.conrad.reconstruction.test;
+
+import static org.junit.Assert.assertEquals;
+
+import ij.process.FloatProcessor;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+import edu.stanford.rsl.conrad.data.numeric.InterpolationOperators;
+import edu.stanford.rsl.conrad.reconstruction.VOIBasedReconstructionFilter;
+
+/**
+ * Compares the bilinear interpolation of the VOIBasedReconstructionFilter with ImageJ and the InterpolationOperators.
+ *
+ * @author akmaier
+ *
+ */
+public class VOIInterpolationTests {
+
+	private static final int width = 17;
+	private static final int height = 13;
+
+	/**
+	 * Exposes the interpolation of the backprojector.
+	 */
+	private static class Interpolator extends VOIBasedReconstructionFilter {
+
+		private static final long serialVersionUID = 1L;
+
+		static double interpolateAt(float [] pixels, int width, int height, double x, double y){
+			return interpolate(pixels, width, height, x, y);
+		}
+	}
+
+	private static Grid2D createImage(){
+		Random random = new Random(7);
+		Grid2D image = new Grid2D(width, height);
+		for (int j = 0; j < height; j++){
+			for (int i = 0; i < width; i++){
+				image.setAtIndex(i, j, (float) random.nextGaussian());
+			}
+		}
+		return image;
+	}
+
+	@Test
+	public void testMatchesImageJ(){
+		Grid2D image = createImage();
+		FloatProcessor processor = new FloatProcessor(width, height, image.getBuffer().clone(), null);
+		Random random = new Random(11);
+		for (int n = 0; n < 10000; n++){
+			// includes the border region and positions outside of the image.
+			double x = -2.0 + random.nextDouble() * (width + 4);
+			double y = -2.0 + random.nextDouble() * (height + 4);
+			boolean inside = x >= 0 && x < width - 1 && y >= 0 && y < height - 1;
+			// ImageJ interpolates the border region in float precision.
+			assertEquals("at " + x + " " + y, processor.getInterpolatedValue(x, y), Interpolator.interpolateAt(image.getBuffer(), width, height, x, y), inside ? 1e-12 : 1e-6);
+		}
+		// pixel centers and the last valid position.
+		for (int j = 0; j < height; j++){
+			for (int i = 0; i < width; i++){
+				assertEquals(processor.getInterpolatedValue(i, j), Interpolator.interpolateAt(image.getBuffer(), width, height, i, j), 0);
+			}
+		}
+	}
+
+	@Test
+	public void testMatchesInterpolationOperatorsInside(){
+		Grid2D image = createImage();
+		Random random = new Random(13);
+		for (int n = 0; n < 10000; n++){
+			double x = random.nextDouble() * (width - 1);
+			double y = random.nextDouble() * (height - 1);
+			// the InterpolationOperators return float.
+			assertEquals("at " + x + " " + y, InterpolationOperators.interpolateLinear(image, x, y), Interpolator.interpolateAt(image.getBuffer(), width, height, x, y), 1e-5);
+		}
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -0,0 +1,324 @@
+package edu.stanford.rsl.conrad.reconstruction.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+import edu.stanford.rsl.conrad.data.numeric.Grid3D;
+import edu.stanford.rsl.conrad.geometry.Projection.CameraAxisDirection;
+import edu.stanford.rsl.conrad.geometry.trajectories.CircularTrajectory;
+import edu.stanford.rsl.conrad.geometry.trajectories.Trajectory;
+import edu.stanford.rsl.conrad.numerics.SimpleVector;
+import edu.stanford.rsl.conrad.reconstruction.iterative.OrderedSubsetsSART;
+import edu.stanford.rsl.conrad.reconstruction.iterative.PixelDrivenViewProjector;
+import edu.stanford.rsl.conrad.reconstruction.iterative.RayDrivenViewProjector;
+import edu.stanford.rsl.conrad.reconstruction.iterative.SubsetOrdering;
+import edu.stanford.rsl.conrad.reconstruction.iterative.ViewProjector;
+import edu.stanford.rsl.conrad.utils.Configuration;
+import edu.stanford.rsl.tutorial.cone.ConeBeamBackprojector;
+import edu.stanford.rsl.tutorial.cone.ConeBeamProjector;
+import edu.stanford.rsl.tutorial.iterative.SartCPU;
+
+/**
+ * Compares the PixelDrivenViewProjector with the pixel-driven methods of the tutorial ConeBeamProjector and ConeBeamBackprojector,
+ * checks the line integrals of the RayDrivenViewProjector, and checks that the OS-SART reduces the residual of the projections.
+ *
+ * @author akmaier
+ *
+ */
+public class ViewProjectorTests {
+
+	private static final int volumeSize = 24;
+	private static final int detectorWidth = 73;
+	private static final int detectorHeight = 61;
+	private static final int numProjections = 12;
+
+	private Trajectory geometry;
+
+	@Before
+	public void initConfiguration(){
+		CircularTrajectory trajectory = new CircularTrajectory();
+		trajectory.setDetectorHeight(detectorHeight);
+		trajectory.setDetectorWidth(detectorWidth);
+		trajectory.setSourceToAxisDistance(600.0);
+		trajectory.setSourceToDetectorDistance(1200.0);
+		trajectory.setReconDimensions(volumeSize, volumeSize, volumeSize);
+		trajectory.setOriginInPixelsX((volumeSize - 1) / 2.0);
+		trajectory.setOriginInPixelsY((volumeSize - 1) / 2.0);
+		trajectory.setOriginInPixelsZ((volumeSize - 1) / 2.0);
+		trajectory.setPixelDimensionX(1.0);
+		trajectory.setPixelDimensionY(1.0);
+		trajectory.setVoxelSpacingX(1.0);
+		trajectory.setVoxelSpacingY(1.0);
+		trajectory.setVoxelSpacingZ(1.0);
+		trajectory.setAverageAngularIncrement(360.0 / numProjections);
+		trajectory.setProjectionStackSize(numProjections);
+		trajectory.setDetectorUDirection(CameraAxisDirection.DETECTORMOTION_PLUS);
+		trajectory.setDetectorVDirection(CameraAxisDirection.ROTATIONAXIS_PLUS);
+		trajectory.setTrajectory(numProjections, 600.0, 360.0 / numProjections, 0, 0, CameraAxisDirection.DETECTORMOTION_PLUS, CameraAxisDirection.ROTATIONAXIS_PLUS, new SimpleVector(0, 0, 1));
+		Configuration config = new Configuration();
+		config.setRegistry(new HashMap<String, String>());
+		config.setGeometry(trajectory);
+		Configuration.setGlobalConfiguration(config);
+		geometry = trajectory;
+	}
+
+	@After
+	public void resetConfiguration(){
+		Configuration.setGlobalConfiguration(null);
+	}
+
+	/**
+	 * Creates a volume with the geometry of the trajectory, as the tutorial projectors assume it.
+	 */
+	private Grid3D createVolume(){
+		Grid3D volume = new Grid3D(volumeSize, volumeSize, volumeSize);
+		volume.setOrigin(geometry.getOriginX(), geometry.getOriginY(), geometry.getOriginZ());
+		volume.setSpacing(geometry.getVoxelSpacingX(), geometry.getVoxelSpacingY(), geometry.getVoxelSpacingZ());
+		return volume;
+	}
+
+	private Grid3D createRandomVolume(long seed){
+		Random random = new Random(seed);
+		Grid3D volume = createVolume();
+		for (int z = 0; z < volumeSize; z++){
+			for (int y = 0; y < volumeSize; y++){
+				for (int x = 0; x < volumeSize; x++){
+					volume.setAtIndex(x, y, z, random.nextFloat());
+				}
+			}
+		}
+		return volume;
+	}
+
+	/**
+	 * Two ellipsoids of different density.
+	 */
+	private Grid3D createPhantom(){
+		Grid3D volume = createVolume();
+		double center = (volumeSize - 1) / 2.0;
+		for (int z = 0; z < volumeSize; z++){
+			for (int y = 0; y < volumeSize; y++){
+				for (int x = 0; x < volumeSize; x++){
+					double dx = x - center;
+					double dy = y - center;
+					double dz = z - center;
+					float value = 0;
+					if ((dx * dx / 81) + (dy * dy / 49) + (dz * dz / 64) <= 1) value += 1;
+					if (((dx - 3) * (dx - 3)) + (dy * dy) + ((dz + 2) * (dz + 2)) <= 9) value += 0.5f;
+					volume.setAtIndex(x, y, z, value);
+				}
+			}
+		}
+		return volume;
+	}
+
+	private static void assertGridEquals(String message, float [] expected, float [] actual, double relativeTolerance){
+		double max = 0;
+		for (float value : expected){
+			max = Math.max(max, Math.abs(value));
+		}
+		for (int i = 0; i < expected.length; i++){
+			assertEquals(message + " at " + i, expected[i], actual[i], relativeTolerance * max);
+		}
+	}
+
+	/**
+	 * @return the projections of the volume with the projector
+	 */
+	private Grid3D project(ViewProjector projector, Grid3D volume){
+		Grid3D projections = new Grid3D(detectorWidth, detectorHeight, numProjections);
+		for (int p = 0; p < numProjections; p++){
+			projector.forwardproject(volume, p, projections.getSubGrid(p));
+		}
+		return projections;
+	}
+
+	/**
+	 * @return the Euclidean norm of the difference between the projections of the volume and the measured projections
+	 */
+	private double computeResidual(ViewProjector projector, Grid3D volume, Grid3D measured){
+		Grid3D projections = project(projector, volume);
+		double sum = 0;
+		for (int p = 0; p < numProjections; p++){
+			float [] projected = projections.getSubGrid(p).getBuffer();
+			float [] values = measured.getSubGrid(p).getBuffer();
+			for (int i = 0; i < values.length; i++){
+				double difference = projected[i] - values[i];
+				sum += difference * difference;
+			}
+		}
+		return Math.sqrt(sum);
+	}
+
+	/**
+	 * The tutorial ConeBeamProjector skips the last voxel in each direction. Hence, the volumes are compared with these voxels set to zero.
+	 */
+	@Test
+	public void testPixelDrivenForwardProjectionMatchesTutorial(){
+		Grid3D volume = createRandomVolume(1);
+		for (int z = 0; z < volumeSize; z++){
+			for (int y = 0; y < volumeSize; y++){
+				for (int x = 0; x < volumeSize; x++){
+					if (x == volumeSize - 1 || y == volumeSize - 1 || z == volumeSize - 1) volume.setAtIndex(x, y, z, 0);
+				}
+			}
+		}
+		PixelDrivenViewProjector projector = new PixelDrivenViewProjector(geometry, 3);
+		ConeBeamProjector tutorial = new ConeBeamProjector();
+		Grid2D projection = new Grid2D(detectorWidth, detectorHeight);
+		for (int p = 0; p < numProjections; p++){
+			projector.forwardproject(volume, p, projection);
+			assertGridEquals("projection " + p, tutorial.projectPixelDriven(volume, p).getBuffer(), projection.getBuffer(), 1e-5);
+		}
+	}
+
+	/**
+	 * Unlike the tutorial ConeBeamProjector, the forward projection includes the last voxel plane.
+	 */
+	@Test
+	public void testPixelDrivenForwardProjectionIncludesLastVoxels(){
+		Grid3D volume = createVolume();
+		for (int z = volumeSize / 2 - 2; z < volumeSize / 2 + 2; z++){
+			for (int y = 0; y < volumeSize; y++){
+				volume.setAtIndex(volumeSize - 1, y, z, 1);
+			}
+		}
+		PixelDrivenViewProjector projector = new PixelDrivenViewProjector(geometry, 3);
+		ConeBeamProjector tutorial = new ConeBeamProjector();
+		Grid2D projection = new Grid2D(detectorWidth, detectorHeight);
+		projector.forwardproject(volume, 0, projection);
+		double sum = 0;
+		for (float value : projection.getBuffer()){
+			sum += value;
+		}
+		double tutorialSum = 0;
+		for (float value : tutorial.projectPixelDriven(volume, 0).getBuffer()){
+			tutorialSum += value;
+		}
+		assertEquals(0, tutorialSum, 0);
+		assertTrue(sum > 0);
+	}
+
+	@Test
+	public void testPixelDrivenBackprojectionMatchesTutorial(){
+		Random random = new Random(2);
+		PixelDrivenViewProjector projector = new PixelDrivenViewProjector(geometry, 3);
+		ConeBeamBackprojector tutorial = new ConeBeamBackprojector();
+		Grid2D projection = new Grid2D(detectorWidth, detectorHeight);
+		for (int p = 0; p < numProjections; p++){
+			float [] buffer = projection.getBuffer();
+			for (int i = 0; i < buffer.length; i++){
+				buffer[i] = random.nextFloat();
+			}
+			Grid3D volume = createVolume();
+			projector.backproject(projection, p, volume, 1);
+			Grid3D expected = tutorial.backprojectPixelDriven(projection, p);
+			for (int z = 0; z < volumeSize; z++){
+				assertGridEquals("projection " + p + " slice " + z, expected.getSubGrid(z).getBuffer(), volume.getSubGrid(z).getBuffer(), 1e-5);
+			}
+		}
+	}
+
+	/**
+	 * The rays through the center of the detector pass through the isocenter along a coordinate axis every 90 degrees.
+	 * The line integral of a volume of ones is the length of the ray in the volume in voxels.
+	 */
+	@Test
+	public void testRayDrivenProjectionOfOnes(){
+		Grid3D volume = createVolume();
+		for (int z = 0; z < volumeSize; z++){
+			for (int y = 0; y < volumeSize; y++){
+				for (int x = 0; x < volumeSize; x++){
+					volume.setAtIndex(x, y, z, 1);
+				}
+			}
+		}
+		RayDrivenViewProjector projector = new RayDrivenViewProjector(geometry);
+		Grid2D projection = new Grid2D(detectorWidth, detectorHeight);
+		for (int p = 0; p < numProjections; p += numProjections / 4){
+			projector.forwardproject(volume, p, projection);
+			assertEquals("projection " + p, volumeSize, projection.getAtIndex(detectorWidth / 2, detectorHeight / 2), 1e-3);
+			// the corner pixels miss the volume.
+			assertEquals("projection " + p, 0, projection.getAtIndex(0, 0), 0);
+		}
+	}
+
+	/**
+	 * The ray-driven and the voxel-driven forward projections model the same line integrals up to the units. On a smooth phantom,
+	 * they are proportional.
+	 */
+	@Test
+	public void testRayDrivenProjectionMatchesPixelDrivenProjection(){
+		Grid3D volume = createPhantom();
+		Grid3D rays = project(new RayDrivenViewProjector(geometry), volume);
+		Grid3D voxels = project(new PixelDrivenViewProjector(geometry, 3), volume);
+		double product = 0;
+		double normRays = 0;
+		double normVoxels = 0;
+		for (int p = 0; p < numProjections; p++){
+			float [] a = rays.getSubGrid(p).getBuffer();
+			float [] b = voxels.getSubGrid(p).getBuffer();
+			for (int i = 0; i < a.length; i++){
+				product += a[i] * b[i];
+				normRays += a[i] * a[i];
+				normVoxels += b[i] * b[i];
+			}
+		}
+		double correlation = product / Math.sqrt(normRays * normVoxels);
+		assertTrue("correlation " + correlation, correlation > 0.99);
+	}
+
+	@Test
+	public void testOrderedSubsetsSARTReducesResidual() throws Exception {
+		Grid3D phantom = createPhantom();
+		ViewProjector [] projectors = {new PixelDrivenViewProjector(geometry, 3), new RayDrivenViewProjector(geometry)};
+		for (ViewProjector projector : projectors){
+			Grid3D measured = project(projector, phantom);
+			OrderedSubsetsSART sart = new OrderedSubsetsSART();
+			sart.setProjectionVolume(createVolume());
+			sart.setProjections(measured);
+			sart.setProjector(projector);
+			sart.setRelaxation(0.8f);
+			sart.setSubsetOrdering(SubsetOrdering.ONE_THIRD_JUMP);
+			sart.setNumberOfSubsets(4);
+			double residual = computeResidual(projector, sart.getProjectionVolume(), measured);
+			for (int i = 0; i < 4; i++){
+				sart.iterate(1);
+				double next = computeResidual(projector, sart.getProjectionVolume(), measured);
+				assertTrue(projector.getClass().getSimpleName() + " iteration " + i + ": " + next + " >= " + residual, next < residual);
+				residual = next;
+			}
+		}
+	}
+
+	/**
+	 * The SartCPU projects ray-driven, as the OpenCL implementation of the tutorial.
+	 */
+	@Test
+	public void testSartCPUReducesRayDrivenResidual() throws Exception {
+		RayDrivenViewProjector projector = new RayDrivenViewProjector(geometry);
+		Grid3D measured = project(projector, createPhantom());
+		Grid3D volume = createVolume();
+		SartCPU sart = new SartCPU(volume.getSize(), volume.getSpacing(), volume.getOrigin(), measured, 0.8f);
+		double residual = computeResidual(projector, volume, measured);
+		for (int i = 0; i < 3; i++){
+			sart.iterate();
+			double next = computeResidual(projector, sart.getVol(), measured);
+			assertTrue("iteration " + i + ": " + next + " >= " + residual, next < residual);
+			residual = next;
+		}
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -21,23 +21,55 @@ public class CylinderBasedVolumeOfInterest extends VolumeOfInterest {
 	private boolean success = false;
 	@Override
 	public boolean contains(double x, double y, double z) {
-		boolean contains = false;
+		double radiusAtZ = getRadius(z);
+		if (Double.isNaN(radiusAtZ)) return false;
+		return inRadius(x, y, radiusAtZ);
+	}
+
+	/**
+	 * Returns the radius of the VOI in the plane at height z.
+	 * @param z the world coordinate z
+	 * @return the radius or NaN, if the plane does not intersect the VOI.
+	 */
+	private double getRadius(double z){
 		if ((z < cylindermaxz) && (z > cylinderminz)){
-			contains = inRadius(x, y, radius);
+			return radius;
 		} else {
 			if ((z > cylindermaxz) && (z < maxz)){
 				double maxrange = maxz - cylindermaxz;
 				double fraction = 1.0  - ((z - cylindermaxz) / maxrange);
-				contains = inRadius(x, y, radius * fraction);
+				return radius * fraction;
 			} else {
 				if ((z < cylinderminz) && (z > minz)){
 					double maxrange = cylinderminz - minz;
 					double fraction = 1.0  - ((cylinderminz - z) / maxrange);
-					contains = inRadius(x, y, radius * fraction);
+					return radius * fraction;
 				}
 			}
 		}
-		return contains;
+		return Double.NaN;
+	}
+
+	/**
+	 * Computes the run analytically. As the cross section of the VOI is a circle, there is at most one run per line.
+	 * The borders of the run are checked with the same arithmetic as {@link #contains(double, double, double)}.
+	 */
+	@Override
+	public int [] getRunsInLine(double x, double z, double spacingY, double offsetY, int count){
+		if (!(spacingY > 0)) return super.getRunsInLine(x, z, spacingY, offsetY, count);
+		double radiusAtZ = getRadius(z);
+		if (Double.isNaN(radiusAtZ)) return new int [0];
+		double halfChord = Math.sqrt(Math.max(0, (radiusAtZ * radiusAtZ) - (x * x)));
+		int start = (int) Math.max(0, Math.min(count, Math.floor((offsetY - halfChord) / spacingY)));
+		int end = (int) Math.max(start, Math.min(count, Math.ceil((offsetY + halfChord) / spacingY) + 1));
+		// correct rounding errors of the analytic solution
+		while (start < end && !inRadius(x, (spacingY * start) - offsetY, radiusAtZ)) start++;
+		while (start > 0 && inRadius(x, (spacingY * (start - 1)) - offsetY, radiusAtZ)) start--;
+		if (end < start) end = start;
+		while (end > start && !inRadius(x, (spacingY * (end - 1)) - offsetY, radiusAtZ)) end--;
+		while (end < count && end >= start && inRadius(x, (spacingY * end) - offsetY, radiusAtZ)) end++;
+		if (start >= end) return new int [0];
+		return new int [] {start, end};
 	}
 	
 	private boolean inRadius(double x, double y, double radius){
@@ -26,6 +26,9 @@ public class PolygonBasedVolumeOfInterest extends VolumeOfInterest implements Co
 	private boolean success = false;
 
 	private HashMap<Double, Boolean> sliceVoi = new HashMap<Double, Boolean>();
+	private HashMap<Double, int []> lineRuns = new HashMap<Double, int []>();
+	private double lineRunsSpacing, lineRunsOffset;
+	private int lineRunsCount = -1;
 
 	public PolygonBasedVolumeOfInterest(){
 	}
@@ -58,6 +61,29 @@ public class PolygonBasedVolumeOfInterest extends VolumeOfInterest implements Co
 		return revan;
 	}
 
+	/**
+	 * The polygon is identical in each slice. Hence, the runs of a line are computed once for each x coordinate and
+	 * are reused for all slices within the z range.
+	 */
+	@Override
+	public synchronized int [] getRunsInLine(double x, double z, double spacingY, double offsetY, int count){
+		if ((z < minZ)||(z > maxZ)){
+			return new int [0];
+		}
+		if (spacingY != lineRunsSpacing || offsetY != lineRunsOffset || count != lineRunsCount){
+			lineRuns.clear();
+			lineRunsSpacing = spacingY;
+			lineRunsOffset = offsetY;
+			lineRunsCount = count;
+		}
+		int [] runs = lineRuns.get(x);
+		if (runs == null) {
+			runs = super.getRunsInLine(x, z, spacingY, offsetY, count);
+			lineRuns.put(x, runs);
+		}
+		return runs;
+	}
+
 	public void readConfigFile(String filename) throws IOException {
 		FileReader read = new FileReader(filename);
 		BufferedReader bufferedReader = new BufferedReader(read);
@@ -100,6 +126,8 @@ public class PolygonBasedVolumeOfInterest extends VolumeOfInterest implements Co
 
 	public void prepareForSerialization() {
 		sliceVoi = new HashMap<Double, Boolean>();
+		lineRuns = new HashMap<Double, int []>();
+		lineRunsCount = -1;
 	}
 }
 /*
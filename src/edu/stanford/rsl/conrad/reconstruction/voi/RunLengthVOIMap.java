@@ -0,0 +1,162 @@
+package edu.stanford.rsl.conrad.reconstruction.voi;
+
+import java.util.Arrays;
+
+/**
+ * Immutable voxel representation of a VolumeOfInterest. For each line of voxels in y direction (i, k), the map stores the
+ * runs of voxels inside the VOI as pairs of start (inclusive) and end (exclusive) index j. Lines with identical runs
+ * share the same array. Hence, the map requires only a few bytes per line instead of one byte per voxel.
+ * <br><br>
+ * As the map is immutable, it can be shared between several backprojectors, e.g. by the sub projectors of a
+ * SubVolumeBackprojector via {@link #getSubMap(int, int)}. The arrays returned by {@link #getRuns(int, int)}
+ * must not be modified.
+ *
+ * @author akmaier
+ *
+ */
+public class RunLengthVOIMap {
+
+	private static final int [] EMPTY = new int [0];
+
+	private final int [][][] runs;
+	private final int maxI, maxJ, maxK;
+
+	private RunLengthVOIMap(int [][][] runs, int maxI, int maxJ, int maxK){
+		this.runs = runs;
+		this.maxI = maxI;
+		this.maxJ = maxJ;
+		this.maxK = maxK;
+	}
+
+	/**
+	 * Creates a map which contains the complete volume.
+	 * @param maxI the number of voxels in x direction
+	 * @param maxJ the number of voxels in y direction
+	 * @param maxK the number of voxels in z direction
+	 * @return the map
+	 */
+	public static RunLengthVOIMap createFullVolume(int maxI, int maxJ, int maxK){
+		int [] fullLine = (maxJ > 0) ? new int [] {0, maxJ} : EMPTY;
+		int [][][] runs = new int [maxK][maxI][];
+		for (int k = 0; k < maxK; k++){
+			Arrays.fill(runs[k], fullLine);
+		}
+		return new RunLengthVOIMap(runs, maxI, maxJ, maxK);
+	}
+
+	/**
+	 * Computes the map of a VOI. The world coordinate of voxel (i, j, k) is
+	 * ((spacingX * i) - offsetX, (spacingY * j) - offsetY, (spacingZ * k) - offsetZ).
+	 * @param voi the volume of interest
+	 * @param maxI the number of voxels in x direction
+	 * @param maxJ the number of voxels in y direction
+	 * @param maxK the number of voxels in z direction
+	 * @param spacingX the voxel spacing in x direction
+	 * @param spacingY the voxel spacing in y direction
+	 * @param spacingZ the voxel spacing in z direction
+	 * @param offsetX the offset in x direction
+	 * @param offsetY the offset in y direction
+	 * @param offsetZ the offset in z direction
+	 * @return the map
+	 * @see VolumeOfInterest#getRunsInLine(double, double, double, double, int)
+	 */
+	public static RunLengthVOIMap create(VolumeOfInterest voi, int maxI, int maxJ, int maxK, double spacingX, double spacingY, double spacingZ, double offsetX, double offsetY, double offsetZ){
+		int [][][] runs = new int [maxK][maxI][];
+		for (int k = 0; k < maxK; k++){
+			double z = (spacingZ * k) - offsetZ;
+			for (int i = 0; i < maxI; i++){
+				double x = (spacingX * i) - offsetX;
+				int [] line = voi.getRunsInLine(x, z, spacingY, offsetY, maxJ);
+				if (line.length == 0) {
+					line = EMPTY;
+				} else if (k > 0 && Arrays.equals(line, runs[k-1][i])) {
+					// share the lines of the previous slice, e.g. in the cylindrical part of the VOI.
+					line = runs[k-1][i];
+				}
+				runs[k][i] = line;
+			}
+		}
+		return new RunLengthVOIMap(runs, maxI, maxJ, maxK);
+	}
+
+	/**
+	 * Returns the runs of the line (i, k).
+	 * @param i the index in x direction
+	 * @param k the index in z direction
+	 * @return the runs as pairs of start (inclusive) and end (exclusive) index j
+	 */
+	public int [] getRuns(int i, int k){
+		return runs[k][i];
+	}
+
+	/**
+	 * Tests whether a voxel is inside the VOI.
+	 * @param i the index in x direction
+	 * @param j the index in y direction
+	 * @param k the index in z direction
+	 * @return true, if the voxel is inside the VOI
+	 */
+	public boolean contains(int i, int j, int k){
+		int [] line = runs[k][i];
+		for (int r = 0; r < line.length; r += 2){
+			if (j < line[r]) return false;
+			if (j < line[r + 1]) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the map of the slab of lines [iStart, iStart + iCount) in x direction. The runs are shared with this map.
+	 * @param iStart the first index in x direction
+	 * @param iCount the number of lines in x direction
+	 * @return the map of the sub volume
+	 */
+	public RunLengthVOIMap getSubMap(int iStart, int iCount){
+		if (iStart < 0 || iCount < 0 || iStart + iCount > maxI) {
+			throw new IllegalArgumentException("Sub volume [" + iStart + ", " + (iStart + iCount) + ") exceeds [0, " + maxI + ")");
+		}
+		int [][][] subRuns = new int [maxK][][];
+		for (int k = 0; k < maxK; k++){
+			subRuns[k] = Arrays.copyOfRange(runs[k], iStart, iStart + iCount);
+		}
+		return new RunLengthVOIMap(subRuns, iCount, maxJ, maxK);
+	}
+
+	/**
+	 * @return the number of voxels inside the VOI
+	 */
+	public long getNumberOfVoxels(){
+		long count = 0;
+		for (int k = 0; k < maxK; k++){
+			for (int i = 0; i < maxI; i++){
+				int [] line = runs[k][i];
+				for (int r = 0; r < line.length; r += 2){
+					count += line[r + 1] - line[r];
+				}
+			}
+		}
+		return count;
+	}
+
+	public int getMaxI() {
+		return maxI;
+	}
+
+	public int getMaxJ() {
+		return maxJ;
+	}
+
+	public int getMaxK() {
+		return maxK;
+	}
+
+	@Override
+	public String toString(){
+		return "RunLengthVOIMap " + maxI + "x" + maxJ + "x" + maxK + " with " + getNumberOfVoxels() + " voxels inside the VOI";
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
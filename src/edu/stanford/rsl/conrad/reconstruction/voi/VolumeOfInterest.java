@@ -1,6 +1,7 @@
 package edu.stanford.rsl.conrad.reconstruction.voi;
 
 import java.io.Serializable;
+import java.util.Arrays;
 
 import edu.stanford.rsl.conrad.io.ConfigFileParser;
 
@@ -25,6 +26,32 @@ public abstract class VolumeOfInterest implements ConfigFileParser, Serializable
 	 */
 	public abstract boolean contains (double x, double y, double z);
 
+	/**
+	 * Computes the runs of voxels inside the VOI on a line of voxels in y direction. The world coordinate of voxel j
+	 * of the line is (x, (spacingY * j) - offsetY, z). The result is identical to testing each voxel with
+	 * {@link #contains(double, double, double)}. Subclasses may override this method with an analytic solution.
+	 * @param x world coordinate x of the line
+	 * @param z world coordinate z of the line
+	 * @param spacingY the voxel spacing in y direction
+	 * @param offsetY the offset in y direction
+	 * @param count the number of voxels on the line
+	 * @return the runs as pairs of start (inclusive) and end (exclusive) index
+	 */
+	public int [] getRunsInLine(double x, double z, double spacingY, double offsetY, int count){
+		int [] runs = new int [count + 1];
+		int numberOfEntries = 0;
+		boolean inside = false;
+		for (int j = 0; j < count; j++){
+			boolean current = contains(x, (spacingY * j) - offsetY, z);
+			if (current != inside){
+				runs[numberOfEntries++] = j;
+				inside = current;
+			}
+		}
+		if (inside) runs[numberOfEntries++] = count;
+		return Arrays.copyOf(runs, numberOfEntries);
+	}
+
 	/**
 	 * Reports a list of all known implementations of VolumeOfInterest.
 	 * @return the list of implementations.
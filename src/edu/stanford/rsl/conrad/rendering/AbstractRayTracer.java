@@ -26,6 +26,8 @@ import edu.stanford.rsl.conrad.utils.CONRAD;
 /**
  * Abstract Class to model a ray caster. The ray caster casts rays through the scene and determines all his along a ray.
  * Then the ray caster determines the line segments between the objects and determines their representation.
+ * <br><br>
+ * A ray tracer keeps scratch memory and caches per instance. Hence, every thread has to use its own ray tracer.
  * 
  * @author akmaier
  *
@@ -40,6 +42,17 @@ public abstract class AbstractRayTracer {
 	 */
 	protected boolean inconsistentDataCorrection = true;
 	
+	/**
+	 * Bounding volume hierarchy of the scene. Resolved in setScene() and again if objects were added to or removed from the scene.
+	 */
+	protected BoundingVolumeHierarchy hierarchy = null;
+	private int sceneModificationCount = 0;
+	private BoundingVolumeHierarchy.Candidates candidates = new BoundingVolumeHierarchy.Candidates();
+	// ray which is reused by castRay(double[], double[], int). StraightLine.getPoint() returns a copy, hence the point is kept as well.
+	private final PointND reusedOrigin = new PointND(0, 0, 0);
+	private final SimpleVector reusedDirection = new SimpleVector(3);
+	private final StraightLine reusedRay = new StraightLine(reusedOrigin, reusedDirection);
+
 	// Cache the information whether an object is a triangle or not
 	private HashMap<PhysicalObject, Boolean> objIsTriangleCache = new HashMap<>();
 
@@ -51,10 +64,34 @@ public abstract class AbstractRayTracer {
 	}
 
 	/**
+	 * Sets the scene and resolves its bounding volume hierarchy. Added or removed objects are detected by the ray tracer.
+	 * If objects of the scene are moved, setScene() has to be called again.
 	 * @param scene the scene to set
 	 */
 	public void setScene(AbstractScene scene) {
 		this.scene = scene;
+		if (scene != null) {
+			sceneModificationCount = scene.getModificationCount();
+			hierarchy = scene.getBoundingVolumeHierarchy();
+		} else {
+			hierarchy = null;
+		}
+	}
+
+	/**
+	 * Returns the objects of the scene whose bounding boxes may be hit by the ray in the order of the scene.
+	 * For straight lines, the candidates are found with the bounding volume hierarchy. Otherwise all objects are returned.
+	 * @param ray the ray
+	 * @return the candidates
+	 */
+	protected Iterable<PhysicalObject> getCandidateObjects(AbstractCurve ray){
+		if (hierarchy != null && ray instanceof StraightLine) {
+			if (sceneModificationCount != scene.getModificationCount()) {
+				setScene(scene);
+			}
+			return hierarchy.getCandidates((StraightLine) ray, candidates);
+		}
+		return scene;
 	}
 
 	/**
@@ -192,6 +229,27 @@ public abstract class AbstractRayTracer {
 
 	}
 
+	/**
+	 * Casts the straight ray with the given origin and direction through the scene. The ray is kept by the ray tracer and
+	 * updated in place for every call, such that no vectors are allocated per ray. The directions of a whole detector row
+	 * or tile can be computed at once with {@link edu.stanford.rsl.conrad.geometry.Projection#computeRayDirections(double, double, int, int, double[])}.
+	 * <BR><BR>
+	 * The direction must be normalized!
+	 * <BR>
+	 * @param origin the origin of the ray as (x, y, z)
+	 * @param directions array which holds the direction of the ray as (x, y, z) at the given offset
+	 * @param offset the index of the x component of the direction
+	 * @return the list of line segments which were hit by the ray in the correct order
+	 * @see #castRay(AbstractCurve)
+	 */
+	public ArrayList<PhysicalObject> castRay(double [] origin, double [] directions, int offset) {
+		for (int i = 0; i < 3; i++){
+			reusedOrigin.set(i, origin[i]);
+			reusedDirection.setElementValue(i, directions[offset + i]);
+		}
+		return castRay(reusedRay);
+	}
+
 	/**
 	 * Method to resolve the priority of the elements of the scene.
 	 * @param rayList
@@ -208,7 +266,7 @@ public abstract class AbstractRayTracer {
 		ArrayList<PhysicalPoint> rayList = new ArrayList<PhysicalPoint>();
 		SimpleVector smallIncrementAlongRay = SimpleOperators.subtract(ray.evaluate(CONRAD.SMALL_VALUE).getAbstractVector(), ray.evaluate(0).getAbstractVector());
 		// compute ray intersections:
-		for (PhysicalObject shape: scene) {
+		for (PhysicalObject shape: getCandidateObjects(ray)) {
 			if (shape.getShape().getHitsOnBoundingBox(ray).size() > 0) {
 				ArrayList<PointND> intersection = shape.intersectWithHitOrientation(ray);
 				
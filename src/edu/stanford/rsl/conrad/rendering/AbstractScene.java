@@ -24,6 +24,8 @@ public abstract class AbstractScene implements Serializable, Collection<Physical
 	private String name;
 	protected PointND min;
 	protected PointND max;
+	private transient BoundingVolumeHierarchy hierarchy = null;
+	private transient volatile int modificationCount = 0;
 	
 	
 	public void setBackground(Material backgroundMaterial){
@@ -69,6 +71,34 @@ public abstract class AbstractScene implements Serializable, Collection<Physical
 	public void setMax(PointND max) {
 		this.max = max;
 	}
+
+	/**
+	 * Has to be called by the subclasses if objects are added or removed. Invalidates the bounding volume hierarchy.
+	 */
+	protected void notifySceneChanged(){
+		hierarchy = null;
+		modificationCount++;
+	}
+
+	/**
+	 * Returns the number of changes of the scene. Ray tracers compare it to detect added or removed objects.
+	 * @return the modification count
+	 */
+	public int getModificationCount(){
+		return modificationCount;
+	}
+
+	/**
+	 * Returns the bounding volume hierarchy of the scene. The hierarchy is built on the first call and is rebuilt,
+	 * if objects were added, removed, or moved since then.
+	 * @return the hierarchy
+	 */
+	public synchronized BoundingVolumeHierarchy getBoundingVolumeHierarchy() {
+		if (hierarchy == null || !hierarchy.isValid(this)) {
+			hierarchy = new BoundingVolumeHierarchy(this);
+		}
+		return hierarchy;
+	}
 	
 }
 /*
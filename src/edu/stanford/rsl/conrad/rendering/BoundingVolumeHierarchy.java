@@ -0,0 +1,369 @@
+package edu.stanford.rsl.conrad.rendering;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+import edu.stanford.rsl.conrad.geometry.AbstractCurve;
+import edu.stanford.rsl.conrad.geometry.AbstractShape;
+import edu.stanford.rsl.conrad.geometry.shapes.compound.CompoundShape;
+import edu.stanford.rsl.conrad.geometry.shapes.simple.PointND;
+import edu.stanford.rsl.conrad.geometry.shapes.simple.StraightLine;
+import edu.stanford.rsl.conrad.numerics.SimpleVector;
+import edu.stanford.rsl.conrad.physics.PhysicalObject;
+import edu.stanford.rsl.conrad.utils.CONRAD;
+
+/**
+ * Bounding volume hierarchy (BVH) over the axis-aligned bounding boxes of the objects of a scene. The hierarchy is built
+ * with the surface area heuristic (SAH) and is used to find the objects whose bounding box is hit by a ray without
+ * testing every object of the scene.
+ * <br><br>
+ * The boxes are tested with the same arithmetic as {@link edu.stanford.rsl.conrad.geometry.General#intersectRayWithCuboid(SimpleVector, SimpleVector, SimpleVector, SimpleVector, double[])}.
+ * Hence, {@link #getCandidates(StraightLine, Candidates)} returns every object for which AbstractShape.getHitsOnBoundingBox() reports a hit.
+ * Objects whose shapes override getHitsOnBoundingBox() with a different test (e.g. quadrics or single triangles) and objects
+ * without a finite bounding box are not put into the hierarchy and are always returned as candidates.
+ * <br><br>
+ * The hierarchy stores a copy of the bounding boxes. If objects are moved, {@link #isValid(Collection)} returns false and the hierarchy has to be rebuilt.
+ *
+ * @author akmaier
+ *
+ */
+public class BoundingVolumeHierarchy {
+
+	private static final int MAX_LEAF_SIZE = 4;
+	private static final double TRAVERSAL_COST = 1.0;
+	private static final double INTERSECTION_COST = 1.0;
+
+	private final PhysicalObject [] objects;
+	/** bounding boxes of the objects as min x, y, z, max x, y, z */
+	private final double [] objectBoxes;
+	/** indices of the objects that are not in the hierarchy */
+	private final int [] alwaysTested;
+	/** indices of the objects in leaf order */
+	private int [] leafObjects;
+
+	// flattened nodes
+	private double [] nodeBoxes;
+	/** for inner nodes the index of the second child (the first child follows the node), for leaves -1 */
+	private int [] nodeSecondChild;
+	private int [] nodeFirstObject;
+	private int [] nodeObjectCount;
+	private int nodeCount = 0;
+
+	/**
+	 * Reusable result of {@link BoundingVolumeHierarchy#getCandidates(StraightLine, Candidates)}. Holds the candidates of the last query
+	 * and the scratch memory of the traversal. Hence, the traversal does not allocate memory per ray. An instance must not be used
+	 * by several threads at the same time.
+	 */
+	public static class Candidates extends AbstractList<PhysicalObject> {
+		private PhysicalObject [] objects;
+		private int [] indices = new int [16];
+		private int size = 0;
+		private int [] stack = new int [64];
+		private final double [] origin = new double [3];
+		private final double [] direction = new double [3];
+
+		@Override
+		public PhysicalObject get(int index) {
+			if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index " + index + " size " + size);
+			return objects[indices[index]];
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+
+	/**
+	 * Builds the hierarchy for the given objects.
+	 * @param scene the objects
+	 */
+	public BoundingVolumeHierarchy(Collection<PhysicalObject> scene){
+		objects = scene.toArray(new PhysicalObject[scene.size()]);
+		objectBoxes = new double [6 * objects.length];
+		int [] inHierarchy = new int [objects.length];
+		int [] others = new int [objects.length];
+		int hierarchySize = 0;
+		int otherSize = 0;
+		for (int i = 0; i < objects.length; i++){
+			if (readBox(objects[i], objectBoxes, 6 * i) && usesBoxTest(objects[i].getShape())){
+				inHierarchy[hierarchySize++] = i;
+			} else {
+				others[otherSize++] = i;
+			}
+		}
+		alwaysTested = Arrays.copyOf(others, otherSize);
+		leafObjects = Arrays.copyOf(inHierarchy, hierarchySize);
+		int maxNodes = Math.max(1, 2 * hierarchySize);
+		nodeBoxes = new double [6 * maxNodes];
+		nodeSecondChild = new int [maxNodes];
+		nodeFirstObject = new int [maxNodes];
+		nodeObjectCount = new int [maxNodes];
+		if (hierarchySize > 0) build(0, hierarchySize);
+	}
+
+	/**
+	 * Reads the bounding box of the object.
+	 * @return false, if the object has no finite bounding box
+	 */
+	private static boolean readBox(PhysicalObject object, double [] boxes, int offset){
+		AbstractShape shape = object.getShape();
+		if (shape == null || !shape.isBounded()) return false;
+		PointND min = shape.getMin();
+		PointND max = shape.getMax();
+		if (min == null || max == null || min.getDimension() != 3 || max.getDimension() != 3) return false;
+		for (int d = 0; d < 3; d++){
+			boxes[offset + d] = min.get(d);
+			boxes[offset + 3 + d] = max.get(d);
+			if (Double.isNaN(boxes[offset + d]) || Double.isInfinite(boxes[offset + d])) return false;
+			if (Double.isNaN(boxes[offset + 3 + d]) || Double.isInfinite(boxes[offset + 3 + d])) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Tests whether the shape uses the bounding box test of AbstractShape in getHitsOnBoundingBox().
+	 */
+	private static boolean usesBoxTest(AbstractShape shape){
+		try {
+			Class<?> declaring = shape.getClass().getMethod("getHitsOnBoundingBox", AbstractCurve.class).getDeclaringClass();
+			return declaring == AbstractShape.class || declaring == CompoundShape.class;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Builds the sub tree for the objects leafObjects[start, end) and returns the index of its root node.
+	 */
+	private int build(int start, int end){
+		int node = nodeCount++;
+		int offset = 6 * node;
+		for (int d = 0; d < 3; d++){
+			nodeBoxes[offset + d] = Double.POSITIVE_INFINITY;
+			nodeBoxes[offset + 3 + d] = Double.NEGATIVE_INFINITY;
+		}
+		for (int i = start; i < end; i++){
+			int box = 6 * leafObjects[i];
+			for (int d = 0; d < 3; d++){
+				nodeBoxes[offset + d] = Math.min(nodeBoxes[offset + d], objectBoxes[box + d]);
+				nodeBoxes[offset + 3 + d] = Math.max(nodeBoxes[offset + 3 + d], objectBoxes[box + 3 + d]);
+			}
+		}
+		int count = end - start;
+		nodeSecondChild[node] = -1;
+		nodeFirstObject[node] = start;
+		nodeObjectCount[node] = count;
+		if (count <= MAX_LEAF_SIZE) return node;
+
+		// find the split with the lowest surface area heuristic by sweeping over the sorted centers of each axis
+		double bestCost = INTERSECTION_COST * count;
+		int bestAxis = -1;
+		int bestSplit = -1;
+		double parentArea = area(nodeBoxes, offset);
+		double [] rightAreas = new double [count];
+		Integer [] order = new Integer [count];
+		for (int axis = 0; axis < 3; axis++){
+			sortByCenter(start, end, axis, order);
+			double [] box = emptyBox();
+			for (int i = count - 1; i > 0; i--){
+				grow(box, 6 * order[i]);
+				rightAreas[i] = area(box, 0);
+			}
+			box = emptyBox();
+			for (int i = 0; i < count - 1; i++){
+				grow(box, 6 * order[i]);
+				double cost = TRAVERSAL_COST + INTERSECTION_COST * ((area(box, 0) * (i + 1)) + (rightAreas[i + 1] * (count - i - 1))) / parentArea;
+				if (cost < bestCost){
+					bestCost = cost;
+					bestAxis = axis;
+					bestSplit = i + 1;
+				}
+			}
+		}
+		if (bestAxis < 0) {
+			if (parentArea > 0) return node;
+			// degenerate boxes: split in the middle
+			bestAxis = 0;
+			bestSplit = count / 2;
+		}
+		sortByCenter(start, end, bestAxis, order);
+		for (int i = 0; i < count; i++){
+			leafObjects[start + i] = order[i];
+		}
+		build(start, start + bestSplit);
+		nodeSecondChild[node] = build(start + bestSplit, end);
+		nodeObjectCount[node] = 0;
+		return node;
+	}
+
+	private void sortByCenter(int start, int end, final int axis, Integer [] order){
+		for (int i = start; i < end; i++){
+			order[i - start] = leafObjects[i];
+		}
+		Arrays.sort(order, 0, end - start, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				double c1 = objectBoxes[6 * o1 + axis] + objectBoxes[6 * o1 + 3 + axis];
+				double c2 = objectBoxes[6 * o2 + axis] + objectBoxes[6 * o2 + 3 + axis];
+				int revan = Double.compare(c1, c2);
+				return (revan != 0) ? revan : o1.compareTo(o2);
+			}
+		});
+	}
+
+	private static double [] emptyBox(){
+		return new double [] {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+				Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+	}
+
+	private void grow(double [] box, int objectOffset){
+		for (int d = 0; d < 3; d++){
+			box[d] = Math.min(box[d], objectBoxes[objectOffset + d]);
+			box[3 + d] = Math.max(box[3 + d], objectBoxes[objectOffset + 3 + d]);
+		}
+	}
+
+	private static double area(double [] box, int offset){
+		double x = box[offset + 3] - box[offset];
+		double y = box[offset + 4] - box[offset + 1];
+		double z = box[offset + 5] - box[offset + 2];
+		return 2 * ((x * y) + (y * z) + (z * x));
+	}
+
+	/**
+	 * Same test as General.intersectRayWithCuboid(). For a box that contains another box, the test never reports a miss if
+	 * the ray hits the inner box.
+	 */
+	private static boolean hitsBox(double [] origin, double [] dir, double [] boxes, int offset){
+		double near = Double.NEGATIVE_INFINITY;
+		double far = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < 3; ++i) {
+			if (Math.abs(dir[i]) < CONRAD.DOUBLE_EPSILON) {
+				if (origin[i] < boxes[offset + i] || origin[i] > boxes[offset + 3 + i]) return false;
+			} else {
+				double t1 = (boxes[offset + i] - origin[i])/dir[i];
+				double t2 = (boxes[offset + 3 + i] - origin[i])/dir[i];
+				if (t1 > t2) {
+					final double ttmp = t1;
+					t1 = t2;
+					t2 = ttmp;
+				}
+				if (t1 > near) near = t1;
+				if (t2 < far) far = t2;
+				if (near > far + CONRAD.FLOAT_EPSILON) return false;
+				if (far < 0) return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns all objects that may be hit by the ray in the order of the scene.
+	 * @param ray the ray
+	 * @return the candidates
+	 */
+	public ArrayList<PhysicalObject> getCandidates(StraightLine ray){
+		return new ArrayList<PhysicalObject>(getCandidates(ray, new Candidates()));
+	}
+
+	/**
+	 * Returns all objects that may be hit by the ray in the order of the scene. The result is written to the given candidates,
+	 * which are overwritten by the next query.
+	 * @param ray the ray
+	 * @param candidates the candidates of the caller
+	 * @return the candidates
+	 */
+	public Candidates getCandidates(StraightLine ray, Candidates candidates){
+		SimpleVector point = ray.getPoint().getAbstractVector();
+		SimpleVector direction = ray.getDirection();
+		double [] origin = candidates.origin;
+		double [] dir = candidates.direction;
+		for (int d = 0; d < 3; d++){
+			origin[d] = point.getElement(d);
+			dir[d] = direction.getElement(d);
+		}
+		if (candidates.indices.length < objects.length) candidates.indices = new int [objects.length];
+		candidates.objects = objects;
+		int [] hits = candidates.indices;
+		int hitCount = 0;
+		for (int i = 0; i < alwaysTested.length; i++){
+			hits[hitCount++] = alwaysTested[i];
+		}
+		if (nodeCount > 0) {
+			int [] stack = candidates.stack;
+			int stackSize = 0;
+			stack[stackSize++] = 0;
+			while (stackSize > 0){
+				int node = stack[--stackSize];
+				if (!hitsBox(origin, dir, nodeBoxes, 6 * node)) continue;
+				if (nodeSecondChild[node] < 0){
+					int first = nodeFirstObject[node];
+					for (int i = first; i < first + nodeObjectCount[node]; i++){
+						if (nodeObjectCount[node] == 1 || hitsBox(origin, dir, objectBoxes, 6 * leafObjects[i])){
+							hits[hitCount++] = leafObjects[i];
+						}
+					}
+				} else {
+					if (stackSize + 2 > stack.length) {
+						stack = Arrays.copyOf(stack, 2 * stack.length);
+						candidates.stack = stack;
+					}
+					stack[stackSize++] = nodeSecondChild[node];
+					stack[stackSize++] = node + 1;
+				}
+			}
+		}
+		// keep the order of the scene, as the ray tracers sort the hits with a stable sort.
+		Arrays.sort(hits, 0, hitCount);
+		candidates.size = hitCount;
+		return candidates;
+	}
+
+	/**
+	 * Tests whether the hierarchy still describes the scene, i.e. whether the scene contains the same objects in the same
+	 * order and all bounding boxes are unchanged.
+	 * @param scene the scene
+	 * @return true, if the hierarchy can be used for the scene
+	 */
+	public boolean isValid(Collection<PhysicalObject> scene){
+		if (scene.size() != objects.length) return false;
+		double [] box = new double [6];
+		int i = 0;
+		for (PhysicalObject object : scene){
+			if (object != objects[i]) return false;
+			boolean inHierarchy = readBox(object, box, 0) && usesBoxTest(object.getShape());
+			boolean wasInHierarchy = Arrays.binarySearch(alwaysTested, i) < 0;
+			if (inHierarchy != wasInHierarchy) return false;
+			if (inHierarchy) {
+				for (int d = 0; d < 6; d++){
+					if (box[d] != objectBoxes[6 * i + d]) return false;
+				}
+			}
+			i++;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of objects in the hierarchy
+	 */
+	public int getNumberOfObjects(){
+		return objects.length;
+	}
+
+	/**
+	 * @return the number of nodes of the hierarchy
+	 */
+	public int getNumberOfNodes(){
+		return nodeCount;
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -105,6 +105,7 @@ public class PrioritizableScene extends AbstractScene {
 		boolean revan = objects.add(e);
 		priorityMap.put(e, priority);
 		dirty = true;
+		notifySceneChanged();
 		updateSceneLimits();
 		return revan;
 	}
@@ -132,6 +133,7 @@ public class PrioritizableScene extends AbstractScene {
 	public void clear() {
 		objects.clear();
 		priorityMap.clear();
+		notifySceneChanged();
 		this.max = null;
 		this.min = null;
 	}
@@ -139,6 +141,7 @@ public class PrioritizableScene extends AbstractScene {
 	public void clearObjectsOnly() {
 		objects.clear();
 		priorityMap.clear();
+		notifySceneChanged();
 	}
 
 	public boolean contains(Object o) {
@@ -168,6 +171,7 @@ public class PrioritizableScene extends AbstractScene {
 		boolean revan = objects.remove(o);
 		priorityMap.remove(o);
 		dirty = true;
+		notifySceneChanged();
 		updateSceneLimits();
 		return revan;
 	}
@@ -16,14 +16,17 @@ public class SimpleScene extends AbstractScene {
 	ArrayList<PhysicalObject> objects = new ArrayList<PhysicalObject>();
 	
 	public boolean add(PhysicalObject basicobj) {
+		notifySceneChanged();
 		return objects.add(basicobj);
 	}
 
 	public boolean addAll(Collection<? extends PhysicalObject> scene) {
+		notifySceneChanged();
 		return objects.addAll(scene);
 	}
 	
 	public void clear() {
+		notifySceneChanged();
 		objects.clear();
 	}
 
@@ -44,14 +47,17 @@ public class SimpleScene extends AbstractScene {
 	}
 
 	public boolean remove(Object o) {
+		notifySceneChanged();
 		return objects.remove(o);
 	}
 
 	public boolean removeAll(Collection<?> c) {
+		notifySceneChanged();
 		return objects.removeAll(c);
 	}
 
 	public boolean retainAll(Collection<?> c) {
+		notifySceneChanged();
 		return objects.retainAll(c);
 	}
 
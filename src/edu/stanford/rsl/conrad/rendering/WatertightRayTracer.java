@@ -193,7 +193,7 @@ public class WatertightRayTracer extends AbstractRayTracer {
 		
 		Queue<AbstractShape> queue;
 		// Iterate over objects of scene
-		for (PhysicalObject obj : scene) {
+		for (PhysicalObject obj : getCandidateObjects(ray)) {
 			// This algorithm can only process triangles, which are usually embedded in a compound shape
 			queue = new LinkedList<>();
 			queue.add(obj.getShape());
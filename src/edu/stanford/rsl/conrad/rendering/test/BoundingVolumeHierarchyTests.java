@@ -0,0 +1,169 @@
+package edu.stanford.rsl.conrad.rendering.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.stanford.rsl.conrad.geometry.AbstractCurve;
+import edu.stanford.rsl.conrad.geometry.shapes.simple.Box;
+import edu.stanford.rsl.conrad.geometry.shapes.simple.Edge;
+import edu.stanford.rsl.conrad.geometry.shapes.simple.PointND;
+import edu.stanford.rsl.conrad.geometry.shapes.simple.Sphere;
+import edu.stanford.rsl.conrad.geometry.shapes.simple.StraightLine;
+import edu.stanford.rsl.conrad.geometry.transforms.Translation;
+import edu.stanford.rsl.conrad.numerics.SimpleVector;
+import edu.stanford.rsl.conrad.physics.PhysicalObject;
+import edu.stanford.rsl.conrad.physics.materials.Material;
+import edu.stanford.rsl.conrad.rendering.AbstractScene;
+import edu.stanford.rsl.conrad.rendering.SimpleRayTracer;
+import edu.stanford.rsl.conrad.rendering.SimpleScene;
+
+/**
+ * Compares the ray tracing with the bounding volume hierarchy with the ray tracing against all objects of the scene.
+ *
+ * @author akmaier
+ *
+ */
+public class BoundingVolumeHierarchyTests {
+
+	/**
+	 * Ray tracer that tests every object of the scene.
+	 */
+	private static class BruteForceRayTracer extends SimpleRayTracer {
+		@Override
+		protected Iterable<PhysicalObject> getCandidateObjects(AbstractCurve ray) {
+			return scene;
+		}
+	}
+
+	private static PhysicalObject createBox(Random random, int i){
+		Box box = new Box(1 + 4 * random.nextDouble(), 1 + 4 * random.nextDouble(), 1 + 4 * random.nextDouble());
+		box.applyTransform(new Translation(-20 + 40 * random.nextDouble(), -20 + 40 * random.nextDouble(), -20 + 40 * random.nextDouble()));
+		PhysicalObject object = new PhysicalObject();
+		object.setShape(box);
+		object.setMaterial(new Material(1.0));
+		object.setNameString("box " + i);
+		return object;
+	}
+
+	private static SimpleScene createScene(){
+		Random random = new Random(5);
+		SimpleScene scene = new SimpleScene();
+		scene.setBackground(new Material(0.0));
+		for (int i = 0; i < 60; i++){
+			scene.add(createBox(random, i));
+		}
+		// a quadric is not put into the hierarchy and is always tested.
+		Sphere sphere = new Sphere(6);
+		sphere.applyTransform(new Translation(3, -2, 1));
+		PhysicalObject object = new PhysicalObject();
+		object.setShape(sphere);
+		object.setMaterial(new Material(1.9));
+		object.setNameString("sphere");
+		scene.add(object);
+		return scene;
+	}
+
+	private static StraightLine createRay(Random random){
+		PointND point = new PointND(-50, -30 + 60 * random.nextDouble(), -30 + 60 * random.nextDouble());
+		PointND target = new PointND(50, -30 + 60 * random.nextDouble(), -30 + 60 * random.nextDouble());
+		StraightLine ray = new StraightLine(point, target);
+		ray.normalize();
+		return ray;
+	}
+
+	private static void assertSameSegments(ArrayList<PhysicalObject> expected, ArrayList<PhysicalObject> actual){
+		if (expected == null) {
+			assertNull(actual);
+			return;
+		}
+		assertNotNull(actual);
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++){
+			assertEquals(expected.get(i).getNameString(), actual.get(i).getNameString());
+			Edge expectedEdge = (Edge) expected.get(i).getShape();
+			Edge actualEdge = (Edge) actual.get(i).getShape();
+			assertEquals(expectedEdge.getPoint(), actualEdge.getPoint());
+			assertEquals(expectedEdge.getEnd(), actualEdge.getEnd());
+		}
+	}
+
+	private static int compare(AbstractScene scene, SimpleRayTracer tracer, Random random){
+		BruteForceRayTracer bruteForce = new BruteForceRayTracer();
+		bruteForce.setScene(scene);
+		int hits = 0;
+		for (int n = 0; n < 500; n++){
+			StraightLine ray = createRay(random);
+			ArrayList<PhysicalObject> expected = bruteForce.castRay(ray);
+			assertSameSegments(expected, tracer.castRay(ray));
+			if (expected != null) hits++;
+		}
+		return hits;
+	}
+
+	@Test
+	public void testHierarchyMatchesBruteForce(){
+		SimpleScene scene = createScene();
+		SimpleRayTracer tracer = new SimpleRayTracer();
+		tracer.setScene(scene);
+		int hits = compare(scene, tracer, new Random(9));
+		// the test is only meaningful, if rays hit objects.
+		assertEquals(true, hits > 100);
+	}
+
+	@Test
+	public void testAddedObjectsAreFound(){
+		SimpleScene scene = createScene();
+		SimpleRayTracer tracer = new SimpleRayTracer();
+		tracer.setScene(scene);
+		Random random = new Random(17);
+		compare(scene, tracer, random);
+		// the tracer has to notice the new objects without another call of setScene().
+		for (int i = 0; i < 30; i++){
+			scene.add(createBox(random, 100 + i));
+		}
+		compare(scene, tracer, random);
+		scene.remove(scene.iterator().next());
+		compare(scene, tracer, random);
+	}
+
+	@Test
+	public void testPrimitiveRaysMatchStraightLines(){
+		SimpleScene scene = createScene();
+		SimpleRayTracer tracer = new SimpleRayTracer();
+		tracer.setScene(scene);
+		SimpleRayTracer primitiveTracer = new SimpleRayTracer();
+		primitiveTracer.setScene(scene);
+		Random random = new Random(23);
+		int numRays = 200;
+		StraightLine [] rays = new StraightLine[numRays];
+		double [] origins = new double [3 * numRays];
+		double [] directions = new double [3 * numRays];
+		for (int n = 0; n < numRays; n++){
+			rays[n] = createRay(random);
+			for (int i = 0; i < 3; i++){
+				origins[(3 * n) + i] = rays[n].getPoint().get(i);
+				directions[(3 * n) + i] = rays[n].getDirection().getElement(i);
+			}
+		}
+		int hits = 0;
+		for (int n = 0; n < numRays; n++){
+			double [] origin = {origins[3 * n], origins[(3 * n) + 1], origins[(3 * n) + 2]};
+			ArrayList<PhysicalObject> expected = tracer.castRay(rays[n]);
+			// the reused ray of the tracer is updated in place for each call.
+			assertSameSegments(expected, primitiveTracer.castRay(origin, directions, 3 * n));
+			if (expected != null) hits++;
+		}
+		assertEquals(true, hits > 40);
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
@@ -1,6 +1,14 @@
 package edu.stanford.rsl.conrad.utils;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import edu.stanford.rsl.conrad.data.numeric.Grid2D;
 import edu.stanford.rsl.conrad.data.numeric.Grid3D;
@@ -10,86 +18,256 @@ import ij.ImageStack;
 /**
  * Class to buffer ImageProcessors which were processed in a parallel manner.
  * Can also be used to sort the ImageProcessors efficiently.
+ * <br><br>
+ * The images are stored in an array which is indexed directly by the image index. Hence, add, get and remove are O(1).
+ * Removed images are released immediately.<br>
+ * Optionally, the memory of the buffered images can be limited. If the limit is exceeded, the least recently used images
+ * are written to disk and read back transparently on the next access.
+ * <br><br>
+ * Images which are handed out by {@link #get(int)} are pinned, i.e. they stay in memory until they are released with {@link #unpin(int)}
+ * or removed from the buffer. Hence, changes of the caller to a handed out image are never lost. Pinned images count to the used memory,
+ * but only unpinned images are written to disk, i.e. the limit can only be met if the callers unpin the images which they do not need any more.
+ * The disk I/O is done without holding the lock of the buffer.
+ *
  * @author akmaier
  *
  */
 public class ImageGridBuffer {
 
-	ArrayList<Grid2D> images;
-	ArrayList<Integer> indices;
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Meta data of an image that was written to disk.
+	 */
+	private static class SpilledImage {
+		File file;
+		int width;
+		int height;
+		double [] spacing;
+		double [] origin;
+	}
+
+	/**
+	 * Image that is written to disk outside of the lock.
+	 */
+	private static class Victim {
+		int index;
+		int version;
+		Grid2D image;
+	}
+
+	/** the images in memory, indexed by their image index */
+	private Grid2D [] images;
+	/** the images on disk, indexed by their image index */
+	private SpilledImage [] spilled;
+	/** whether an image index was used before */
+	private boolean [] known;
+	/** how often the image was handed out and not yet unpinned */
+	private int [] pins;
+	/** whether the image is currently written to or read from disk */
+	private boolean [] busy;
+	/** is incremented whenever the image at the index is replaced or removed */
+	private int [] versions;
+	private int numberOfIndices = 0;
+
+	/** doubly linked list of the unpinned images in memory in the order of their last access */
+	private int [] previous;
+	private int [] next;
+	private boolean [] linked;
+	private int leastRecentlyUsed = -1;
+	private int mostRecentlyUsed = -1;
+
+	private long memoryLimit = -1;
+	private long usedMemory = 0;
+	private File spillDirectory;
 	private boolean debug = false;
 
 	/**
-	 * creates a new ImageProcessorBuffer object.
+	 * creates a new ImageProcessorBuffer object without memory limit.
 	 */
 	public ImageGridBuffer (){
-		images = new ArrayList<Grid2D>();
-		indices = new ArrayList<Integer>();
+		this(-1, null);
 	}
 
-	public synchronized void set(Grid3D grid){
+	/**
+	 * creates a new ImageProcessorBuffer object with a memory limit. If the images in memory exceed the limit,
+	 * the least recently used images are written to the spill directory.
+	 * @param memoryLimit the memory limit in bytes. Values smaller than 0 disable the limit.
+	 * @param spillDirectory the directory for the images on disk. If null, the temporary directory of the system is used.
+	 */
+	public ImageGridBuffer (long memoryLimit, File spillDirectory){
+		this.memoryLimit = memoryLimit;
+		this.spillDirectory = spillDirectory;
+		images = new Grid2D[INITIAL_CAPACITY];
+		spilled = new SpilledImage[INITIAL_CAPACITY];
+		known = new boolean[INITIAL_CAPACITY];
+		pins = new int[INITIAL_CAPACITY];
+		busy = new boolean[INITIAL_CAPACITY];
+		versions = new int[INITIAL_CAPACITY];
+		previous = new int[INITIAL_CAPACITY];
+		next = new int[INITIAL_CAPACITY];
+		linked = new boolean[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Creates a buffer with the memory limit and the spill directory that are set in the registry.
+	 * @return the buffer
+	 * @see RegKeys#IMAGE_BUFFER_MEMORY_LIMIT_MB
+	 * @see RegKeys#IMAGE_BUFFER_SPILL_DIRECTORY
+	 */
+	public static ImageGridBuffer createConfiguredBuffer(){
+		long memoryLimit = -1;
+		File spillDirectory = null;
+		Configuration config = Configuration.getGlobalConfiguration();
+		if (config != null && config.getRegistry() != null){
+			String limit = config.getRegistryEntry(RegKeys.IMAGE_BUFFER_MEMORY_LIMIT_MB);
+			if (limit != null) memoryLimit = Long.parseLong(limit) * 1024 * 1024;
+			String directory = config.getRegistryEntry(RegKeys.IMAGE_BUFFER_SPILL_DIRECTORY);
+			if (directory != null) spillDirectory = new File(directory);
+		}
+		return new ImageGridBuffer(memoryLimit, spillDirectory);
+	}
+
+	public void set(Grid3D grid){
 		for (int i = 0; i < grid.getSize()[2]; i++){
 			add(grid.getSubGrid(i), i);
 		}
 	}
-	
+
 	/**
 	 * adds the Image at index i; Previous entry will be overwritten.
 	 * @param image
 	 * @param index
 	 */
-	public synchronized void add(Grid2D image, int index){
-		Integer key = new Integer(index);
-		if (!indices.contains(key)){ // Insert
-			if (debug) System.out.println("ImageProcessorBuffer: Duplicate Index replacing " + key);
-			images.add(image);
-			indices.add(key);
-		} else { // Overwrite
-			for (int i = 0; i < indices.size(); i++){
-				if (indices.get(i).equals(key)){
-					if (debug) System.out.println("ImageProcessorBuffer: Duplicate Index replacing " + key);
-					images.set(i, image);
-					break;
-				}
+	public void add(Grid2D image, int index){
+		if (index < 0) throw new IllegalArgumentException("Negative image index " + index);
+		ArrayList<Victim> victims;
+		synchronized (this) {
+			ensureCapacity(index + 1);
+			if (!known[index]){
+				known[index] = true;
+				numberOfIndices++;
+			} else {
+				if (debug) System.out.println("ImageProcessorBuffer: Duplicate Index replacing " + index);
+				release(index);
 			}
+			images[index] = image;
+			if (image != null){
+				usedMemory += getMemory(image);
+				if (isSpillable(image)) link(index);
+			}
+			victims = selectVictims(index);
+			notifyAll();
 		}
+		spill(victims);
 	}
 
 	/**
-	 * Returns the internal index of the given external index.
-	 * It is used to access the arrayLists.
-	 * 
-	 * @param externalIndex the external index position
-	 * @return the position in the internal ArrayList.
+	 * Returns the ImageProcessor at index index. The image is pinned, i.e. it is not written to disk until it is unpinned.
+	 * Returns null if the index is not found.
+	 * @param index the index
+	 * @return the ImageProcessor
+	 * @see #unpin(int)
 	 */
-	private synchronized int internalIndex(int externalIndex){
-		int internalIndex = -1;
-		if (debug) System.out.println("ImageProcessorBuffer: Requested Index " + externalIndex + "; current size = " +indices.size());
-		for (int i = 0; i < indices.size(); i++){
-			if (indices.get(i) != null) {
-				if (indices.get(i).intValue() == externalIndex){
-					internalIndex = i;
-					if (debug) System.out.println("ImageProcessorBuffer: Index delivered " + externalIndex + "; current size = " +indices.size());
-					break;
+	public Grid2D get(int index){
+		SpilledImage meta;
+		int version;
+		synchronized (this) {
+			while (true) {
+				if (index < 0 || index >= images.length) return null;
+				if (images[index] != null){
+					pin(index);
+					return images[index];
+				}
+				if (spilled[index] == null) return null;
+				if (!busy[index]) break;
+				// another thread reads the image from disk.
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return null;
 				}
-			} else {
-				System.out.println("ImageProcessorBuffer internal error.");
-				System.exit(-1);
 			}
+			busy[index] = true;
+			meta = spilled[index];
+			version = versions[index];
 		}
-		return internalIndex;
+		if (debug) System.out.println("ImageProcessorBuffer: Reading index " + index + " from disk");
+		Grid2D image = null;
+		ArrayList<Victim> victims = null;
+		boolean replaced = false;
+		boolean obsolete = false;
+		try {
+			image = readFromDisk(meta, index);
+		} finally {
+			synchronized (this) {
+				busy[index] = false;
+				if (versions[index] != version){
+					// the image was removed or replaced in the meantime.
+					replaced = true;
+					obsolete = true;
+					image = null;
+				} else if (image != null){
+					spilled[index] = null;
+					images[index] = image;
+					usedMemory += getMemory(image);
+					pin(index);
+					victims = selectVictims(index);
+					obsolete = true;
+				}
+				// if reading failed, the image stays on disk and can be read again.
+				notifyAll();
+			}
+			if (obsolete) meta.file.delete();
+		}
+		if (replaced) return get(index);
+		spill(victims);
+		return image;
 	}
 
 	/**
-	 * Returns the ImageProcessor at index index.
-	 * Returns null if the index is not found.
+	 * Releases an image which was handed out by {@link #get(int)}. Unpinned images may be written to disk, if the memory limit is exceeded.
+	 * The caller must not change the image after unpinning it.
 	 * @param index the index
-	 * @return the ImageProcessor
 	 */
-	public synchronized Grid2D get(int index){
-		Grid2D revan = null;
-		int pos = internalIndex(index);
-		if (pos != -1) revan = images.get(pos);
+	public void unpin(int index){
+		ArrayList<Victim> victims = null;
+		synchronized (this) {
+			if (index < 0 || index >= images.length || pins[index] == 0) return;
+			pins[index]--;
+			if (pins[index] == 0 && images[index] != null && !busy[index] && isSpillable(images[index])){
+				link(index);
+				victims = selectVictims(-1);
+			}
+		}
+		spill(victims);
+	}
+
+	/**
+	 * Checks whether an image is stored at the index without reading it from disk.
+	 * @param index the index
+	 * @return true if an image is stored at the index
+	 */
+	public synchronized boolean contains(int index){
+		if (index < 0 || index >= images.length) return false;
+		return images[index] != null || spilled[index] != null;
+	}
+
+	/**
+	 * Returns the image at the index and removes it from the buffer. Blocks until the image was added.
+	 * @param index the index
+	 * @return the image
+	 * @throws InterruptedException if the thread is interrupted while waiting.
+	 */
+	public Grid2D take(int index) throws InterruptedException {
+		synchronized (this) {
+			while (!contains(index)){
+				wait();
+			}
+		}
+		Grid2D revan = get(index);
+		remove(index);
 		return revan;
 	}
 
@@ -98,53 +276,252 @@ public class ImageGridBuffer {
 	 * @param index the index.
 	 */
 	public synchronized void remove (int index){
-		int pos = internalIndex(index);
-		images.set(pos, null);
+		if (index < 0 || index >= images.length) return;
+		release(index);
 	}
 
 	/**
-	 * Returns a sorted array of the buffered ImageProcessors 
+	 * Returns a sorted array of the buffered ImageProcessors. All images are pinned.
 	 * @return the array.
 	 */
-	public synchronized Grid2D [] toArray(){
-		if (debug) System.out.println("ImageProcessorBuffer: Creating array with length " + images.size());
-		Grid2D[] array = new Grid2D[images.size()];
+	public Grid2D [] toArray(){
+		int length = size();
+		if (debug) System.out.println("ImageProcessorBuffer: Creating array with length " + length);
+		Grid2D[] array = new Grid2D[length];
 		for (int i = 0; i< array.length; i++){
-			int index = indices.get(i).intValue();
-			array[index] = images.get(i);
+			array[i] = get(i);
 		}
 		return array;
 	}
-	
+
 	/**
-	 * Returns a sorted ImagePlus of the buffered ImageProcessors 
+	 * Returns a sorted ImagePlus of the buffered ImageProcessors
 	 * @return the ImagePlus.
 	 */
-	public synchronized ImagePlus toImagePlus(String title){
-		if (debug) System.out.println("ImageProcessorBuffer: Creating ImagePlus with length " + images.size());
+	public ImagePlus toImagePlus(String title){
+		Grid2D [] array = toArray();
+		if (debug) System.out.println("ImageProcessorBuffer: Creating ImagePlus with length " + array.length);
+		Grid2D first = null;
+		for (int i = 0; i < array.length && first == null; i++){
+			first = array[i];
+		}
 		ImagePlus image = new ImagePlus();
-		ImageStack stack = new ImageStack(images.get(0).getWidth(), images.get(0).getHeight(), images.size());
+		ImageStack stack = new ImageStack(first.getWidth(), first.getHeight(), array.length);
 		stack.setColorModel(ImageUtil.getDefaultColorModel());
-		for (int i = 0; i< images.size(); i++){
-			int index = indices.get(i).intValue();
-			stack.setPixels(images.get(i).getBuffer(), index + 1);
+		for (int i = 0; i< array.length; i++){
+			if (array[i] != null) stack.setPixels(array[i].getBuffer(), i + 1);
 		}
 		image.setStack(title, stack);
 		return image;
 	}
 
 	/**
-	 * returns the number of stored ImageProcessors
+	 * returns the number of image indices that were added to the buffer. Note that removed images are still counted.
 	 * @return the number
 	 */
 	public synchronized int size(){
-		return images.size();
+		return numberOfIndices;
 	}
 
+	/**
+	 * returns the number of bytes that are occupied by the images in memory.
+	 * @return the number of bytes
+	 */
+	public synchronized long getUsedMemory(){
+		return usedMemory;
+	}
+
+	/**
+	 * @return the memory limit in bytes or a negative value, if there is no limit.
+	 */
+	public long getMemoryLimit(){
+		return memoryLimit;
+	}
 
+	private void ensureCapacity(int capacity){
+		if (capacity > images.length){
+			int newCapacity = Math.max(capacity, images.length * 2);
+			images = Arrays.copyOf(images, newCapacity);
+			spilled = Arrays.copyOf(spilled, newCapacity);
+			known = Arrays.copyOf(known, newCapacity);
+			pins = Arrays.copyOf(pins, newCapacity);
+			busy = Arrays.copyOf(busy, newCapacity);
+			versions = Arrays.copyOf(versions, newCapacity);
+			previous = Arrays.copyOf(previous, newCapacity);
+			next = Arrays.copyOf(next, newCapacity);
+			linked = Arrays.copyOf(linked, newCapacity);
+		}
+	}
+
+	/**
+	 * Removes the image at the index from memory and disk. If the image is written to or read from disk at the moment,
+	 * the thread doing the I/O deletes the file.
+	 */
+	private void release(int index){
+		if (images[index] != null){
+			unlink(index);
+			usedMemory -= getMemory(images[index]);
+			images[index] = null;
+		}
+		if (spilled[index] != null){
+			if (!busy[index]) spilled[index].file.delete();
+			spilled[index] = null;
+		}
+		pins[index] = 0;
+		versions[index]++;
+		notifyAll();
+	}
+
+	/**
+	 * Pins the image at the index, i.e. removes it from the list of candidates for spilling.
+	 */
+	private void pin(int index){
+		unlink(index);
+		pins[index]++;
+	}
+
+	/**
+	 * Only plain Grid2Ds are written to disk, as sub classes may carry additional data.
+	 */
+	private static boolean isSpillable(Grid2D image){
+		return image.getClass() == Grid2D.class;
+	}
+
+	private static long getMemory(Grid2D image){
+		return 4L * image.getWidth() * image.getHeight();
+	}
+
+	/**
+	 * appends the index as most recently used image.
+	 */
+	private void link(int index){
+		if (linked[index]) unlink(index);
+		previous[index] = mostRecentlyUsed;
+		next[index] = -1;
+		if (mostRecentlyUsed != -1) next[mostRecentlyUsed] = index;
+		mostRecentlyUsed = index;
+		if (leastRecentlyUsed == -1) leastRecentlyUsed = index;
+		linked[index] = true;
+	}
+
+	private void unlink(int index){
+		if (!linked[index]) return;
+		if (previous[index] != -1) next[previous[index]] = next[index];
+		else leastRecentlyUsed = next[index];
+		if (next[index] != -1) previous[next[index]] = previous[index];
+		else mostRecentlyUsed = previous[index];
+		linked[index] = false;
+	}
+
+	/**
+	 * Selects the least recently used unpinned images until the memory limit would be met. The selected images are removed from the
+	 * list and marked as busy. Their memory is already subtracted. The image at index keep stays in memory.
+	 * @return the images that have to be written to disk by {@link #spill(ArrayList)} outside of the lock
+	 */
+	private ArrayList<Victim> selectVictims(int keep){
+		if (memoryLimit < 0 || usedMemory <= memoryLimit) return null;
+		ArrayList<Victim> victims = new ArrayList<Victim>();
+		int candidate = leastRecentlyUsed;
+		while (usedMemory > memoryLimit && candidate != -1){
+			int following = next[candidate];
+			if (candidate != keep) {
+				Victim victim = new Victim();
+				victim.index = candidate;
+				victim.version = versions[candidate];
+				victim.image = images[candidate];
+				unlink(candidate);
+				busy[candidate] = true;
+				usedMemory -= getMemory(victim.image);
+				victims.add(victim);
+			}
+			candidate = following;
+		}
+		return victims;
+	}
+
+	/**
+	 * Writes the selected images to disk. Is called without holding the lock. If an image was handed out, replaced, or removed
+	 * in the meantime, it stays in memory or is dropped, respectively.
+	 */
+	private void spill(ArrayList<Victim> victims){
+		if (victims == null) return;
+		for (Victim victim : victims){
+			SpilledImage meta = null;
+			try {
+				meta = writeToDisk(victim.image, victim.index);
+			} finally {
+				synchronized (this) {
+					int index = victim.index;
+					busy[index] = false;
+					boolean current = versions[index] == victim.version;
+					if (current && meta != null && pins[index] == 0){
+						images[index] = null;
+						spilled[index] = meta;
+						if (debug) System.out.println("ImageProcessorBuffer: Wrote index " + index + " to " + meta.file);
+					} else {
+						if (meta != null) meta.file.delete();
+						if (current) {
+							// the image stays in memory.
+							usedMemory += getMemory(victim.image);
+							if (pins[index] == 0) link(index);
+						}
+					}
+					notifyAll();
+				}
+			}
+		}
+	}
+
+	private SpilledImage writeToDisk(Grid2D image, int index){
+		float [] pixels = image.getBuffer();
+		SpilledImage meta = new SpilledImage();
+		meta.width = image.getWidth();
+		meta.height = image.getHeight();
+		meta.spacing = image.getSpacing().clone();
+		meta.origin = image.getOrigin().clone();
+		try {
+			meta.file = File.createTempFile("ImageGridBuffer", ".raw", spillDirectory);
+			meta.file.deleteOnExit();
+			ByteBuffer bytes = ByteBuffer.allocate(pixels.length * 4).order(ByteOrder.nativeOrder());
+			bytes.asFloatBuffer().put(pixels);
+			FileOutputStream out = new FileOutputStream(meta.file);
+			try {
+				FileChannel channel = out.getChannel();
+				while (bytes.hasRemaining()) channel.write(bytes);
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			if (meta.file != null) meta.file.delete();
+			throw new RuntimeException("ImageProcessorBuffer: Could not write image " + index + " to disk.", e);
+		}
+		return meta;
+	}
+
+	private static Grid2D readFromDisk(SpilledImage meta, int index){
+		float [] pixels = new float[meta.width * meta.height];
+		try {
+			ByteBuffer bytes = ByteBuffer.allocate(pixels.length * 4).order(ByteOrder.nativeOrder());
+			FileInputStream in = new FileInputStream(meta.file);
+			try {
+				FileChannel channel = in.getChannel();
+				while (bytes.hasRemaining() && channel.read(bytes) >= 0);
+			} finally {
+				in.close();
+			}
+			bytes.flip();
+			bytes.asFloatBuffer().get(pixels);
+		} catch (IOException e) {
+			throw new RuntimeException("ImageProcessorBuffer: Could not read image " + index + " from disk.", e);
+		}
+		Grid2D image = new Grid2D(pixels, meta.width, meta.height);
+		image.setSpacing(meta.spacing);
+		image.setOrigin(meta.origin);
+		return image;
+	}
 
 }
 /*
  * Copyright (C) 2010-2014  Andreas Maier
  * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
-*/
\ No newline at end of file
+*/
@@ -240,6 +240,36 @@ public abstract class RegKeys {
 	 */
 	public static final String SLOW_DOWN_MS = "SLOW_DOWN_MS";
 	
+	/**
+	 * Entry to set the number of projections that may be buffered between two stages of the ParallelImageFilterPipeliner.
+	 * If a stage is faster than the following one, it will wait as soon as this number of projections is waiting to be processed.
+	 * The <b>value</b> is an <b>int</b>. If it is not set, four projections per thread are buffered.
+	 */
+	public static final String PIPELINE_QUEUE_SIZE = "PIPELINE_QUEUE_SIZE";
+	
+	/**
+	 * Entry to limit the memory that is used by the input buffers of the multi projection filters. If the limit is exceeded,
+	 * the least recently used projections are written to disk. Projections which are currently processed by a filter stay in memory
+	 * and may exceed the limit.
+	 * The <b>value</b> is a <b>long</b> in MB. If it is not set, the memory is not limited.
+	 * @see edu.stanford.rsl.conrad.utils.ImageGridBuffer
+	 */
+	public static final String IMAGE_BUFFER_MEMORY_LIMIT_MB = "IMAGE_BUFFER_MEMORY_LIMIT_MB";
+	
+	/**
+	 * Entry to set the directory into which projections are written if the memory limit of an image buffer is exceeded.
+	 * The <b>value</b> is a <b>String</b>. If it is not set, the temporary directory of the system is used.
+	 * @see #IMAGE_BUFFER_MEMORY_LIMIT_MB
+	 */
+	public static final String IMAGE_BUFFER_SPILL_DIRECTORY = "IMAGE_BUFFER_SPILL_DIRECTORY";
+	
+	/**
+	 * Entry to enable the binary cache of surface BSplines which are read from text files, e.g. the .nrb files of XCat.
+	 * The <b>value</b> is a <b>String</b> with the directory of the cache files. If it is not set, the cache is disabled.
+	 * @see edu.stanford.rsl.conrad.geometry.splines.SurfaceBSplineCache
+	 */
+	public static final String SPLINE_CACHE_DIRECTORY = "SPLINE_CACHE_DIRECTORY";
+	
 	/**
 	 * Entry to the file which contains the initial beads position in projection [u, v].<br>
 	 * This is for the weight-bearing project.<br> 
@@ -72,7 +72,13 @@ public class ConeBeamBackprojector {
 
 	public ConeBeamBackprojector() {
 		configure();
-		initCL();
+	}
+
+	/**
+	 * OpenCL is initialized on first use, such that the pixel-driven backprojection also works without an OpenCL device.
+	 */
+	private void ensureCL(){
+		if (context == null) initCL();
 	}
 
 	public void configure(){
@@ -234,6 +240,7 @@ public class ConeBeamBackprojector {
 
 	public void backprojectPixelDrivenCL(OpenCLGrid3D volume, OpenCLGrid2D[] sino) {
 
+		ensureCL();
 		for(int p = 0; p < maxProjs; p++) {
 
 			CLImage2d<FloatBuffer> sinoGrid = context.createImage2d(sino[p].getDelegate().getCLBuffer().getBuffer(), sino[p].getSize()[0], sino[p].getSize()[1],format,Mem.READ_ONLY);
@@ -304,6 +311,7 @@ public class ConeBeamBackprojector {
 
 	public void backprojectPixelDrivenCL(OpenCLGrid3D volume, OpenCLGrid2D sino, int projIdx) {
 
+		ensureCL();
 		//TODO MOEGLICHE FEHLERQUELLE
 		CLImage2d<FloatBuffer> sinoGrid = context.createImage2d(sino.getDelegate().getCLBuffer().getBuffer(), sino.getSize()[0], sino.getSize()[1],format,Mem.READ_ONLY);
 
@@ -71,7 +71,13 @@ public class ConeBeamProjector {
 
 	public ConeBeamProjector() {
 		configure();
-		initCL();
+	}
+
+	/**
+	 * OpenCL is initialized on first use, such that the pixel-driven projection also works without an OpenCL device.
+	 */
+	private void ensureCL(){
+		if (context == null) initCL();
 	}
 	
 	private void initCL(){
@@ -391,6 +397,7 @@ public class ConeBeamProjector {
 
 	public void projectRayDrivenCL(OpenCLGrid2D[] sinoCL, OpenCLGrid3D gridCL){
 
+		ensureCL();
 		imageGrid = context.createImage3d(gridCL.getDelegate().getCLBuffer().getBuffer(), (int)volumeSize[0], (int)volumeSize[1], (int)volumeSize[2],format, Mem.READ_ONLY);
 
 		queue
@@ -433,6 +440,7 @@ public class ConeBeamProjector {
 
 	public void projectRayDrivenCL(OpenCLGrid2D sinoCL, OpenCLGrid3D gridCL, int projIdx){
 		
+		ensureCL();
 		imageGrid = context.createImage3d(gridCL.getDelegate().getCLBuffer().getBuffer(), (int)gridCL.getSize()[0], (int)gridCL.getSize()[1], (int)gridCL.getSize()[2],format, Mem.READ_ONLY);
 
 		queue
@@ -1,5 +1,6 @@
 package edu.stanford.rsl.tutorial.fan;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.FloatBuffer;
 import java.util.ArrayList;
@@ -29,7 +30,9 @@ import edu.stanford.rsl.conrad.geometry.shapes.simple.StraightLine;
 import edu.stanford.rsl.conrad.geometry.transforms.Transform;
 import edu.stanford.rsl.conrad.geometry.transforms.Translation;
 import edu.stanford.rsl.conrad.numerics.SimpleVector;
+import edu.stanford.rsl.conrad.numerics.SparseMatrix;
 import edu.stanford.rsl.conrad.opencl.OpenCLUtil;
+import edu.stanford.rsl.tutorial.iterative.SystemMatrixProjector2D;
 
 
 public class FanBeamProjector2D{
@@ -67,24 +70,117 @@ public class FanBeamProjector2D{
 		Grid2D sino = new Grid2D(maxTIndex, maxBetaIndex);
 		sino.setSpacing(deltaT, deltaBeta);
 
-		
-		// create translation to the grid origin
-		Translation trans = new Translation(-grid.getSize()[0] / 2.0,
-				-grid.getSize()[1] / 2.0, -1);
-		// build the inverse translation
-		Transform inverse = trans.inverse();
-		
-		// set up image bounding box and translate to origin
-		Box b = new Box(grid.getSize()[0], grid.getSize()[1], 2);
-		b.applyTransform(trans);
-
+		RaySampling sampling = new RaySampling(grid);
 		// iterate over the rotation angle
 		for (int i = 0; i < maxBetaIndex; i++) {
+			// iterate over the detector elements
+			for (int t = 0; t < maxTIndex; t++) {
+				double [] ray = sampling.getRay(i, t);
+				// if we have two intersections build the integral 
+				// otherwise continue with the next bin
+				if (ray == null)
+					continue;
+
+				double sum = .0;
+				// compute the integral along the line
+				for (double tLine = 0.0; tLine < ray[4]; ++tLine) {
+					double x = ray[0] + ray[2] * tLine;
+					double y = ray[1] + ray[3] * tLine;
+					if (grid.getSize()[0] <= x + 1
+							|| grid.getSize()[1] <= y + 1
+							|| x < 0 || y < 0)
+						continue;
+					
+					sum += InterpolationOperators.interpolateLinear(grid, x, y);
+				}
+
+				// normalize by the number of interpolation points
+				sum /= samplingRate;
+				// write integral value into the sinogram.
+				sino.setAtIndex(t, i, (float) sum);
+			}
+		}
+		return sino;
+	}
+
+	/**
+	 * Computes the system matrix of the ray driven projector for images of the size of the given grid.
+	 * Row i * maxTIndex + t holds the weights of detector element t at source position i, i.e. the rows are in the order
+	 * of the sinogram buffer. The columns are in the order of the image buffer. The matrix can be reused for all images
+	 * of the same size, e.g. with the {@link SystemMatrixProjector2D}.
+	 *
+	 * @param grid the image. Only its size is used.
+	 * @return the system matrix
+	 */
+	public SparseMatrix computeSystemMatrixRayDriven(Grid2D grid) {
+		final RaySampling sampling = new RaySampling(grid);
+		final int width = grid.getSize()[0];
+		final int height = grid.getSize()[1];
+		return SparseMatrix.build(maxBetaIndex * maxTIndex, width * height, new SparseMatrix.RowGenerator() {
+			@Override
+			public void computeRow(int row, SparseMatrix.RowBuilder builder) {
+				double [] ray = sampling.getRay(row / maxTIndex, row % maxTIndex);
+				if (ray == null)
+					return;
+				for (double tLine = 0.0; tLine < ray[4]; ++tLine) {
+					double x = ray[0] + ray[2] * tLine;
+					double y = ray[1] + ray[3] * tLine;
+					if (width <= x + 1 || height <= y + 1 || x < 0 || y < 0)
+						continue;
+					SystemMatrixProjector2D.addInterpolationWeights(builder, width, x, y, 1.0 / samplingRate);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Creates a projector pair based on the system matrix of the ray driven projector. If a cache directory is given, the matrix
+	 * is read from the cache if it was computed before and stored in the cache otherwise.
+	 *
+	 * @param grid the image. Only its size is used.
+	 * @param cacheDirectory the directory of the cached system matrices or null
+	 * @return the projector
+	 */
+	public SystemMatrixProjector2D createSystemMatrixProjector(Grid2D grid, File cacheDirectory) {
+		String name = "fan_" + focalLength + "_" + maxBeta + "_" + deltaBeta + "_" + maxT + "_" + deltaT + "_" + grid.getSize()[0] + "x" + grid.getSize()[1] + ".csr";
+		SparseMatrix matrix = SystemMatrixProjector2D.readCache(cacheDirectory, name);
+		if (matrix == null) {
+			matrix = computeSystemMatrixRayDriven(grid);
+			SystemMatrixProjector2D.writeCache(cacheDirectory, name, matrix);
+		}
+		return new SystemMatrixProjector2D(matrix, grid.getSize()[0], grid.getSize()[1], maxTIndex, maxBetaIndex);
+	}
+
+	/**
+	 * Intersects the rays of the ray driven projector with the bounding box of an image.
+	 */
+	private class RaySampling {
+
+		private final Box b;
+		private final Transform inverse;
+
+		RaySampling(Grid2D grid){
+			// create translation to the grid origin
+			Translation trans = new Translation(-grid.getSize()[0] / 2.0,
+					-grid.getSize()[1] / 2.0, -1);
+			// build the inverse translation
+			inverse = trans.inverse();
+
+			// set up image bounding box and translate to origin
+			b = new Box(grid.getSize()[0], grid.getSize()[1], 2);
+			b.applyTransform(trans);
+		}
+
+		/**
+		 * Computes the sampling of the ray from the source at position i to the detector element t.
+		 * @return {start x, start y, increment x, increment y, number of samples} in pixels
+		 * or null if the ray misses the image.
+		 */
+		double [] getRay(int i, int t){
 			// compute the current rotation angle and its sine and cosine
 			double beta = deltaBeta * i;
 			double cosBeta = Math.cos(beta);
 			double sinBeta = Math.sin(beta);
-//			System.out.println(beta / Math.PI * 180);
 			// compute source position
 			PointND a = new PointND(focalLength * cosBeta, focalLength
 					* sinBeta, 0.d);
@@ -96,73 +192,49 @@ public class FanBeamProjector2D{
 			SimpleVector dirDetector = p0.getAbstractVector().multipliedBy(-1);
 			dirDetector.normalizeL2();
 
-			// iterate over the detector elements
-			for (int t = 0; t < maxTIndex; t++) {
-				// calculate current bin position
-				// the detector elements' position are centered
-				double stepsDirection = 0.5f * deltaT + t * deltaT;
-				PointND p = new PointND(p0);
-				p.getAbstractVector().add(dirDetector.multipliedBy(stepsDirection));
-				
-				// create a straight line between detector bin and source
-				StraightLine line = new StraightLine(a, p);
-				
-				// find the line's intersection with the box
-				ArrayList<PointND> points = b.intersect(line);
-				
-				// if we have two intersections build the integral 
-				// otherwise continue with the next bin
-				if (2 != points.size()) {
-					if (points.size() == 0) {
-						line.getDirection().multiplyBy(-1.d);
-						points = b.intersect(line);
-						if (points.size() == 0)
-							continue;
-					} else {
-						continue; // last possibility:
-						 // a) it is only one intersection point (exactly one of the boundary vertices) or
-						 // b) it are infinitely many intersection points (along one of the box boundaries).
-						 // c) our code is wrong
-					}
-					
+			// calculate current bin position
+			// the detector elements' position are centered
+			double stepsDirection = 0.5f * deltaT + t * deltaT;
+			PointND p = new PointND(p0);
+			p.getAbstractVector().add(dirDetector.multipliedBy(stepsDirection));
+			
+			// create a straight line between detector bin and source
+			StraightLine line = new StraightLine(a, p);
+			
+			// find the line's intersection with the box
+			ArrayList<PointND> points = b.intersect(line);
+			
+			if (2 != points.size()) {
+				if (points.size() == 0) {
+					line.getDirection().multiplyBy(-1.d);
+					points = b.intersect(line);
+					if (points.size() == 0)
+						return null;
+				} else {
+					return null; // last possibility:
+					 // a) it is only one intersection point (exactly one of the boundary vertices) or
+					 // b) it are infinitely many intersection points (along one of the box boundaries).
+					 // c) our code is wrong
 				}
+				
+			}
 
-				// Extract intersections
-				PointND start = points.get(0);
-				PointND end = points.get(1);
-
-				// get the normalized increment
-				SimpleVector increment = new SimpleVector(end.getAbstractVector());
-				increment.subtract(start.getAbstractVector());
-				double distance = increment.normL2();
-				increment.divideBy(distance * samplingRate);
-
-				double sum = .0;
-				start = inverse.transform(start);
+			// Extract intersections
+			PointND start = points.get(0);
+			PointND end = points.get(1);
 
-				double incrementLength = increment.normL2();
-				
-				// compute the integral along the line
-				for (double tLine = 0.0; tLine < distance * samplingRate; ++tLine) {
-					PointND current = new PointND(start);
-					current.getAbstractVector().add(increment.multipliedBy(tLine));
-					if (grid.getSize()[0] <= current.get(0) + 1
-							|| grid.getSize()[1] <= current.get(1) + 1
-							|| current.get(0) < 0 || current.get(1) < 0)
-						continue;
-					
-					sum += InterpolationOperators.interpolateLinear(grid,
-							current.get(0), current.get(1));
-				}
+			// get the normalized increment
+			SimpleVector increment = new SimpleVector(end.getAbstractVector());
+			increment.subtract(start.getAbstractVector());
+			double distance = increment.normL2();
+			increment.divideBy(distance * samplingRate);
 
-				// normalize by the number of interpolation points
-				sum /= samplingRate;
-				// write integral value into the sinogram.
-				sino.setAtIndex(t, i, (float) sum);
-			}
+			start = inverse.transform(start);
+			return new double [] {start.get(0), start.get(1), increment.getElement(0), increment.getElement(1), distance * samplingRate};
 		}
-		return sino;
+
 	}
+
 	public Grid1D projectRayDriven1D(Grid2D grid, int Betaindex) {		
 		Grid1D sino=new Grid1D(this.maxTIndex);
 		sino.setSpacing(this.deltaT);
@@ -1,16 +1,18 @@
 package edu.stanford.rsl.tutorial.iterative;
 
-import java.util.Arrays;
-
-import edu.stanford.rsl.conrad.data.numeric.Grid2D;
 import edu.stanford.rsl.conrad.data.numeric.Grid3D;
 import edu.stanford.rsl.conrad.data.numeric.NumericGrid;
 import edu.stanford.rsl.conrad.data.numeric.NumericGridOperator;
-import edu.stanford.rsl.tutorial.cone.ConeBeamBackprojector;
-import edu.stanford.rsl.tutorial.cone.ConeBeamProjector;
+import edu.stanford.rsl.conrad.reconstruction.iterative.OrderedSubsetsSART;
+import edu.stanford.rsl.conrad.reconstruction.iterative.RayDrivenViewProjector;
+import edu.stanford.rsl.conrad.reconstruction.iterative.SubsetOrdering;
+import edu.stanford.rsl.conrad.utils.Configuration;
 
 /**
- * SART reconstruction
+ * SART reconstruction on the CPU. Uses the OrderedSubsetsSART with one projection per subset,
+ * i.e. the volume is updated in place after each projection.
+ * The projections are computed ray-driven and the corrections are backprojected voxel-driven with the
+ * RayDrivenViewProjector, as in the OpenCL implementation of the tutorial.
  * 
  * @author Mario Amrehn
  * 
@@ -18,18 +20,14 @@ import edu.stanford.rsl.tutorial.cone.ConeBeamProjector;
 public class SartCPU implements Sart {
 
 	protected final Grid3D vol;
-	protected final Grid3D normSino;
 	protected Grid3D oProj = null;
 	protected final float beta;
-	protected float normFactor;
+	protected final OrderedSubsetsSART sart;
 
 	protected NumericGridOperator gop = NumericGridOperator.getInstance();
 
 	// -----------------------------------------
 	protected boolean verbose = false;
-	protected boolean debug = false;
-	protected final static boolean USE_CL_FP = true;	// GPU acceleration
-	protected final static boolean USE_CL_BP = true;	// GPU acceleration
 	// -----------------------------------------
 
 	public SartCPU(int[] volDims, double[] spacing, double[] origin, Grid3D oProj,
@@ -48,11 +46,9 @@ public class SartCPU implements Sart {
 		vol.setOrigin(origin);
 		vol.setSpacing(spacing);
 
-		this.normSino = createNormProj();
 		this.oProj = oProj;
-		/* calculated once for speedup */
-		this.normFactor = (float) (gop.normL1(oProj) / gop.normL1(normSino));
 		this.beta = beta;
+		this.sart = createSart();
 	}
 
 	public SartCPU(Grid3D initialVol, Grid3D sino, float beta) throws Exception {
@@ -63,34 +59,24 @@ public class SartCPU implements Sart {
 			throw new Exception("SART: No projection data given");
 		}
 		vol = initialVol;
-		normSino = createNormProj();
 		this.oProj = sino;
-		
-		/* calculated once for speedup*/
-		normFactor = (float) (gop.normL1(oProj) / gop.normL1(normSino));
 		this.beta = beta;
+		this.sart = createSart();
 	}
 
 	/**
-	 * @return Normalized projection data
+	 * Creates the SART with one projection per subset. Subsequent projections are a third of the scan apart.
+	 * The normalization is computed once in the first iteration.
 	 */
-	protected Grid3D createNormProj() {
-		if (verbose)
-			System.out.println("Create normalized projections");
-		final Grid3D onesVol = new Grid3D(vol);
-		gop.fill(onesVol, 1.0f);
-		ConeBeamProjector cbp = new ConeBeamProjector();
-		Grid3D sino = USE_CL_FP ? cbp.projectRayDrivenCL(onesVol) : cbp
-				.projectPixelDriven(onesVol);
-		
-		if(verbose)
-			sino.show("sinoOfNormProjs");
-		// prevent div by zero
-		float min = gop.min(sino);
-		//sino.show("Sino of norm projection");
-		if (0 >= min)
-			gop.addBy(sino, -min + 0.1f);
-		return sino;
+	protected OrderedSubsetsSART createSart() {
+		OrderedSubsetsSART sart = new OrderedSubsetsSART();
+		sart.setProjectionVolume(vol);
+		sart.setProjections(oProj);
+		sart.setRelaxation(beta);
+		sart.setSubsetOrdering(SubsetOrdering.ONE_THIRD_JUMP);
+		sart.setNumberOfSubsets(oProj.getSize()[2]);
+		sart.setProjector(new RayDrivenViewProjector(Configuration.getGlobalConfiguration().getGeometry()));
+		return sart;
 	}
 
 	public void iterate() throws Exception {
@@ -98,102 +84,8 @@ public class SartCPU implements Sart {
 	}
 
 	public void iterate(final int iter) throws Exception {
-		ConeBeamProjector cbp = new ConeBeamProjector();
-		ConeBeamBackprojector cbbp = new ConeBeamBackprojector();
-		int numProjs = cbp.getMaxProjections();
-		for (int i = 0; i < iter; ++i) {
-
-			boolean[] projIsUsed = new boolean[numProjs]; // default: false
-			int p = 0; // current projection index
-
-			for (int n = 0; n < numProjs; ++n) {
-				/* edit/init data structures */
-				projIsUsed[p] = true;
-				Grid2D sino = USE_CL_FP ? cbp.projectRayDrivenCL(vol, p) : cbp
-						.projectPixelDriven(vol, p);
-				sino = gop.transpose(sino);
-				if(debug && 0 < gop.normL1(vol)){
-					Grid3D sinoTest = USE_CL_FP ? cbp.projectRayDrivenCL(vol) : cbp
-							.projectPixelDriven(vol);
-					Grid2D sinoTestP = sinoTest.getSubGrid(p);
-					sinoTest.show("sinoCL-Test");
-					sinoTestP.show("sinoCL-Test-Proj:" + p);
-					Grid2D s = new Grid2D(sinoTestP);
-					gop.subtractBySave(s, sino);
-					s.show("sinoCL-Test-Proj-Diff");
-					System.out.println("Diff L1: " + gop.normL1(s));
-				}
-				/*
-				if(verbose && 0 != gop.normL1(sino)){
-					System.out.println("Some actual data found in sino!");
-					if(0==p%5)
-						sino.show("sino of it:" + i + " proj:" + p);
-				}
-				*/
-				gop.fillInvalidValues(sino, 0);
-				
-				if (verbose) System.out.println(gop.min(sino) + ":" + gop.max(sino)); // TEST
-				
-				//oProj.show("oProj");
-				
-				Grid2D oProjP = new Grid2D(oProj.getSubGrid(p));
-				Grid2D normSinoP = new Grid2D(normSino.getSubGrid(p)); // used read-only, cloning not necessary but save
-				gop.multiplyBy(normSinoP, normFactor);
-
-				/* update step */
-				// NOTE: upd = (oProj - sino) ./ normSino
-				
-				if (verbose) reportInvalidValues(oProjP, "oProjP"); // Just in case.. 
-				if (verbose) reportInvalidValues(sino, "sino"); // Just in case.. should not happen after fillInvalidValues()
-				
-				gop.subtractBy(oProjP, sino);
-				
-				if (verbose) reportInvalidValues(oProjP, "oProjP"); // Just in case.. 
-				if (verbose) reportInvalidValues(normSinoP, "normSinoP"); // Just in case.. 
-				
-				gop.divideBySave(oProjP, normSinoP);
-				Grid2D upd = oProjP;
-
-				if (verbose) reportInvalidValues(upd, "for projection " + p);
-
-				// NOTE: vol = vol + updBP * beta
-				// upd.setOrigin(oProj.getOrigin()[0], oProj.getOrigin()[1]); //
-				// needed after update?
-				// upd.setSpacing(oProj.getSpacing()[0], oProj.getSpacing()[1]);
-				// // needed after update?
-				Grid3D updBP = USE_CL_BP ? cbbp.backprojectPixelDrivenCL(upd, p)
-						: cbbp.backprojectPixelDriven(upd, p);
-
-				if (verbose) reportInvalidValues(updBP, "updBP");
-				
-				if(debug){
-					Grid3D updBPTest = (!USE_CL_BP) ? cbbp.backprojectPixelDrivenCL(upd, p)
-							: cbbp.backprojectPixelDriven(upd, p);
-					if (verbose) reportInvalidValues(updBPTest, "updBPTest");
-					gop.multiplyBySave(updBPTest, 1);
-					updBPTest.show("updBPTest");
-					
-					System.out.println("vol: " + Arrays.toString(vol.getOrigin()));
-					System.out.println("updBP: " + Arrays.toString(updBP.getOrigin()));
-					System.out.println("updBPTest: " + Arrays.toString(updBPTest.getOrigin()));
-				}				
-				
-				// GridOp.addInPlace(vol, GridOp.mulInPlace(updBP, beta));
-				gop.multiplyBySave(updBP, beta);
-				if (verbose) reportInvalidValues(updBP, "updBP after mult");
-				
-				gop.addBy(vol, updBP);
-				if (verbose) reportInvalidValues(vol, "vol after " + i + " SART iterations");
-
-				/*
-				 * Don't use projections with a small angle to each other
-				 * subsequently
-				 */
-				p = (p + numProjs / 3) % numProjs;
-				for (int ii = 1; projIsUsed[p] && ii < numProjs; ++ii)
-					p = (p + 1) % numProjs;
-			}
-		}
+		sart.iterate(iter);
+		if (verbose) reportInvalidValues(vol, "vol after " + iter + " SART iterations");
 	}
 
 	protected void reportInvalidValues(NumericGrid upd, String msg) {
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
+package edu.stanford.rsl.tutorial.iterative;
+
+import java.io.File;
+import java.io.IOException;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+import edu.stanford.rsl.conrad.numerics.SparseMatrix;
+import edu.stanford.rsl.conrad.utils.CONRAD;
+
+/**
+ * 2D projector pair based on a precomputed system matrix. The forward projection is the product of the system matrix with the image,
+ * the backprojection is the product of the transposed matrix with the sinogram. Hence, the backprojection is the exact adjoint of the
+ * forward projection. Both products are computed in parallel.
+ * <br><br>
+ * The system matrices are computed by the projectors, e.g. ParallelProjector2D.computeSystemMatrixRayDriven(Grid2D) or
+ * FanBeamProjector2D.computeSystemMatrixRayDriven(Grid2D). As the geometry is evaluated only once, this is much faster than the analytic
+ * projectors if many projections of the same geometry are computed, e.g. in iterative reconstructions or parameter studies.
+ * The projectors can also cache their matrices in a directory, see {@link #readCache(File, String)}.
+ *
+ * @author akmaier
+ *
+ */
+public class SystemMatrixProjector2D {
+
+	private final SparseMatrix matrix;
+	private final int imageWidth, imageHeight;
+	private final int detectorElements, projections;
+
+	/**
+	 * Creates a new projector.
+	 * @param matrix the system matrix with one row per sinogram pixel and one column per image pixel
+	 * @param imageWidth the width of the image
+	 * @param imageHeight the height of the image
+	 * @param detectorElements the width of the sinogram
+	 * @param projections the height of the sinogram
+	 */
+	public SystemMatrixProjector2D(SparseMatrix matrix, int imageWidth, int imageHeight, int detectorElements, int projections) {
+		if (matrix.getRows() != detectorElements * projections || matrix.getColumns() != imageWidth * imageHeight) {
+			throw new IllegalArgumentException("System matrix of size " + matrix.getRows() + "x" + matrix.getColumns() + " does not match the image and sinogram sizes.");
+		}
+		this.matrix = matrix;
+		this.imageWidth = imageWidth;
+		this.imageHeight = imageHeight;
+		this.detectorElements = detectorElements;
+		this.projections = projections;
+	}
+
+	/**
+	 * Computes the sinogram of an image.
+	 * @param grid the image
+	 * @return the sinogram
+	 */
+	public Grid2D project(Grid2D grid) {
+		Grid2D sino = new Grid2D(detectorElements, projections);
+		project(grid, sino);
+		return sino;
+	}
+
+	/**
+	 * Computes the sinogram of an image.
+	 * @param grid the image
+	 * @param sino the sinogram. Is overwritten.
+	 */
+	public void project(Grid2D grid, Grid2D sino) {
+		checkSize(grid, imageWidth, imageHeight);
+		checkSize(sino, detectorElements, projections);
+		grid.notifyBeforeRead();
+		matrix.multiply(grid.getBuffer(), sino.getBuffer());
+		sino.notifyAfterWrite();
+	}
+
+	/**
+	 * Backprojects a sinogram.
+	 * @param sino the sinogram
+	 * @return the image
+	 */
+	public Grid2D backproject(Grid2D sino) {
+		Grid2D grid = new Grid2D(imageWidth, imageHeight);
+		backproject(sino, grid);
+		return grid;
+	}
+
+	/**
+	 * Backprojects a sinogram.
+	 * @param sino the sinogram
+	 * @param grid the image. Is overwritten.
+	 */
+	public void backproject(Grid2D sino, Grid2D grid) {
+		checkSize(sino, detectorElements, projections);
+		checkSize(grid, imageWidth, imageHeight);
+		sino.notifyBeforeRead();
+		matrix.multiplyTransposed(sino.getBuffer(), grid.getBuffer());
+		grid.notifyAfterWrite();
+	}
+
+	private static void checkSize(Grid2D grid, int width, int height){
+		if (grid.getWidth() != width || grid.getHeight() != height) {
+			throw new IllegalArgumentException("Grid size " + grid.getWidth() + "x" + grid.getHeight() + " does not match " + width + "x" + height);
+		}
+	}
+
+	/**
+	 * @return the system matrix
+	 */
+	public SparseMatrix getMatrix() {
+		return matrix;
+	}
+
+	/**
+	 * Adds the weights of the bilinear interpolation InterpolationOperators.interpolateLinear(Grid2D, double, double) at (x, y)
+	 * to a row of a system matrix. The four neighbors of the position must be inside of the image.
+	 * @param builder the row
+	 * @param width the width of the image
+	 * @param x the x position in pixels
+	 * @param y the y position in pixels
+	 * @param weight the weight of the sample
+	 */
+	public static void addInterpolationWeights(SparseMatrix.RowBuilder builder, int width, double x, double y, double weight){
+		int lowerX = (int) Math.floor(x);
+		int lowerY = (int) Math.floor(y);
+		double dx = x - lowerX;
+		double dy = y - lowerY;
+		int index = (lowerY * width) + lowerX;
+		builder.add(index, (1.0 - dy) * (1.0 - dx) * weight);
+		if (dx != 0.0) builder.add(index + 1, (1.0 - dy) * dx * weight);
+		if (dy != 0.0) {
+			builder.add(index + width, dy * (1.0 - dx) * weight);
+			if (dx != 0.0) builder.add(index + width + 1, dy * dx * weight);
+		}
+	}
+
+	/**
+	 * Reads a cached system matrix.
+	 * @param cacheDirectory the directory of the cache. May be null.
+	 * @param name the file name of the matrix. It has to identify the geometry of the matrix uniquely.
+	 * @return the matrix or null if it is not in the cache
+	 */
+	public static SparseMatrix readCache(File cacheDirectory, String name){
+		if (cacheDirectory == null) return null;
+		File file = new File(cacheDirectory, name);
+		if (!file.isFile()) return null;
+		try {
+			return SparseMatrix.load(file);
+		} catch (IOException e) {
+			CONRAD.log("Ignoring invalid system matrix " + file + ": " + e.getLocalizedMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Writes a system matrix to the cache. Errors are logged, but not fatal.
+	 * @param cacheDirectory the directory of the cache. May be null.
+	 * @param name the file name of the matrix. It has to identify the geometry of the matrix uniquely.
+	 * @param matrix the matrix
+	 */
+	public static void writeCache(File cacheDirectory, String name, SparseMatrix matrix){
+		if (cacheDirectory == null) return;
+		File file = new File(cacheDirectory, name);
+		try {
+			matrix.save(file);
+		} catch (IOException e) {
+			CONRAD.log("Could not write system matrix " + file + ": " + e.getLocalizedMessage());
+		}
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/
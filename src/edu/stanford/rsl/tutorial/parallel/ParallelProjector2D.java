@@ -1,5 +1,6 @@
 package edu.stanford.rsl.tutorial.parallel;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.FloatBuffer;
 import java.util.ArrayList;
@@ -26,7 +27,9 @@ import edu.stanford.rsl.conrad.geometry.transforms.Transform;
 import edu.stanford.rsl.conrad.geometry.transforms.Translation;
 import edu.stanford.rsl.conrad.numerics.SimpleOperators;
 import edu.stanford.rsl.conrad.numerics.SimpleVector;
+import edu.stanford.rsl.conrad.numerics.SparseMatrix;
 import edu.stanford.rsl.conrad.opencl.OpenCLUtil;
+import edu.stanford.rsl.tutorial.iterative.SystemMatrixProjector2D;
 
 
 /**
@@ -43,6 +46,8 @@ import edu.stanford.rsl.conrad.opencl.OpenCLUtil;
  */
 public class ParallelProjector2D {
 
+	static final double samplingRate = 3.d; // # of samples per pixel
+
 	double maxTheta, deltaTheta,	// [rad]
 		maxS, deltaS;				// [mm]
 	int maxThetaIndex, maxSIndex;
@@ -72,68 +77,22 @@ public class ParallelProjector2D {
 	 * @return the sinogram
 	 */
 	public Grid2D projectRayDriven(Grid2D grid) {
-		final double samplingRate = 3.d; // # of samples per pixel
 		Grid2D sino = new Grid2D(new float[maxThetaIndex*maxSIndex], maxSIndex, maxThetaIndex);
 		sino.setSpacing(deltaS, deltaTheta);
 
-		// set up image bounding box in WC
-		Translation trans = new Translation(
-				-(grid.getSize()[0] * grid.getSpacing()[0])/2, -(grid.getSize()[1] * grid.getSpacing()[1])/2, -1
-			);
-		Transform inverse = trans.inverse();
-
-		Box b = new Box((grid.getSize()[0] * grid.getSpacing()[0]), (grid.getSize()[1] * grid.getSpacing()[1]), 2);
-		b.applyTransform(trans);
-
+		RaySampling sampling = new RaySampling(grid);
 		for(int e=0; e<maxThetaIndex; ++e){
-			// compute theta [rad] and angular functions.
-			double theta = deltaTheta * e;
-			double cosTheta = Math.cos(theta);
-			double sinTheta = Math.sin(theta);
-
 			for (int i = 0; i < maxSIndex; ++i) {
-				// compute s, the distance from the detector edge in WC [mm]
-				double s = deltaS * i - maxS / 2;
-				// compute two points on the line through s and theta
-				// We use PointND for Points in 3D space and SimpleVector for directions.
-				PointND p1 = new PointND(s * cosTheta, s * sinTheta, .0d);
-				PointND p2 = new PointND(-sinTheta + (s * cosTheta),
-						(s * sinTheta) + cosTheta, .0d);
-				// set up line equation
-				StraightLine line = new StraightLine(p1, p2);
-				// compute intersections between bounding box and intersection line.
-				ArrayList<PointND> points = b.intersect(line);
-
+				double [] ray = sampling.getRay(e, i);
 				// only if we have intersections
-				if (2 != points.size()){
-					if(points.size() == 0) {
-						line.getDirection().multiplyBy(-1.d);
-						points = b.intersect(line);
-					}
-					if(points.size() == 0)
-						continue;
-				}
-
-				PointND start = points.get(0); // [mm]
-				PointND end = points.get(1);   // [mm]
-
-				// get the normalized increment
-				SimpleVector increment = new SimpleVector(
-						end.getAbstractVector());
-				increment.subtract(start.getAbstractVector());
-				double distance = increment.normL2();
-				increment.divideBy(distance * samplingRate);
+				if (ray == null)
+					continue;
 
 				double sum = .0;
-				start = inverse.transform(start);
-
 				// compute the integral along the line.
-				for (double t = 0.0; t < distance * samplingRate; ++t) {
-					PointND current = new PointND(start);
-					current.getAbstractVector().add(increment.multipliedBy(t));
-
-					double x = current.get(0) / grid.getSpacing()[0],
-							y = current.get(1) / grid.getSpacing()[1];
+				for (double t = 0.0; t < ray[4]; ++t) {
+					double x = (ray[0] + ray[2] * t) / grid.getSpacing()[0],
+							y = (ray[1] + ray[3] * t) / grid.getSpacing()[1];
 
 					if (grid.getSize()[0] <= x + 1
 							|| grid.getSize()[1] <= y + 1
@@ -152,6 +111,124 @@ public class ParallelProjector2D {
 		return sino;
 	}
 
+	/**
+	 * Computes the system matrix of the ray driven projector for images with the size and spacing of the given grid.
+	 * Row e * maxSIndex + i holds the weights of detector element i at angle e, i.e. the rows are in the order
+	 * of the sinogram buffer. The columns are in the order of the image buffer. The matrix can be reused for all images
+	 * of the same size, e.g. with the {@link SystemMatrixProjector2D}.
+	 *
+	 * @param grid the image. Only its size and spacing are used.
+	 * @return the system matrix
+	 */
+	public SparseMatrix computeSystemMatrixRayDriven(Grid2D grid) {
+		final RaySampling sampling = new RaySampling(grid);
+		final int width = grid.getSize()[0];
+		final int height = grid.getSize()[1];
+		final double spacingX = grid.getSpacing()[0];
+		final double spacingY = grid.getSpacing()[1];
+		return SparseMatrix.build(maxThetaIndex * maxSIndex, width * height, new SparseMatrix.RowGenerator() {
+			@Override
+			public void computeRow(int row, SparseMatrix.RowBuilder builder) {
+				double [] ray = sampling.getRay(row / maxSIndex, row % maxSIndex);
+				if (ray == null)
+					return;
+				for (double t = 0.0; t < ray[4]; ++t) {
+					double x = (ray[0] + ray[2] * t) / spacingX,
+							y = (ray[1] + ray[3] * t) / spacingY;
+					if (width <= x + 1 || height <= y + 1 || x < 0 || y < 0)
+						continue;
+					SystemMatrixProjector2D.addInterpolationWeights(builder, width, x, y, 1.0 / samplingRate);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Creates a projector pair based on the system matrix of the ray driven projector. If a cache directory is given, the matrix
+	 * is read from the cache if it was computed before and stored in the cache otherwise.
+	 *
+	 * @param grid the image. Only its size and spacing is used.
+	 * @param cacheDirectory the directory of the cached system matrices or null
+	 * @return the projector
+	 */
+	public SystemMatrixProjector2D createSystemMatrixProjector(Grid2D grid, File cacheDirectory) {
+		String name = "parallel_" + maxTheta + "_" + deltaTheta + "_" + maxS + "_" + deltaS + "_" + grid.getSize()[0] + "x" + grid.getSize()[1] + "_" + grid.getSpacing()[0] + "x" + grid.getSpacing()[1] + ".csr";
+		SparseMatrix matrix = SystemMatrixProjector2D.readCache(cacheDirectory, name);
+		if (matrix == null) {
+			matrix = computeSystemMatrixRayDriven(grid);
+			SystemMatrixProjector2D.writeCache(cacheDirectory, name, matrix);
+		}
+		return new SystemMatrixProjector2D(matrix, grid.getSize()[0], grid.getSize()[1], maxSIndex, maxThetaIndex);
+	}
+
+	/**
+	 * Intersects the rays of the ray driven projector with the bounding box of an image.
+	 */
+	private class RaySampling {
+
+		private final Box b;
+		private final Transform inverse;
+
+		RaySampling(Grid2D grid){
+			// set up image bounding box in WC
+			Translation trans = new Translation(
+					-(grid.getSize()[0] * grid.getSpacing()[0])/2, -(grid.getSize()[1] * grid.getSpacing()[1])/2, -1
+				);
+			inverse = trans.inverse();
+
+			b = new Box((grid.getSize()[0] * grid.getSpacing()[0]), (grid.getSize()[1] * grid.getSpacing()[1]), 2);
+			b.applyTransform(trans);
+		}
+
+		/**
+		 * Computes the sampling of the ray through detector element i at angle e.
+		 * @return {start x, start y, increment x, increment y, number of samples} in [mm] relative to the image corner
+		 * or null if the ray misses the image.
+		 */
+		double [] getRay(int e, int i){
+			// compute theta [rad] and angular functions.
+			double theta = deltaTheta * e;
+			double cosTheta = Math.cos(theta);
+			double sinTheta = Math.sin(theta);
+
+			// compute s, the distance from the detector edge in WC [mm]
+			double s = deltaS * i - maxS / 2;
+			// compute two points on the line through s and theta
+			// We use PointND for Points in 3D space and SimpleVector for directions.
+			PointND p1 = new PointND(s * cosTheta, s * sinTheta, .0d);
+			PointND p2 = new PointND(-sinTheta + (s * cosTheta),
+					(s * sinTheta) + cosTheta, .0d);
+			// set up line equation
+			StraightLine line = new StraightLine(p1, p2);
+			// compute intersections between bounding box and intersection line.
+			ArrayList<PointND> points = b.intersect(line);
+
+			// only if we have intersections
+			if (2 != points.size()){
+				if(points.size() == 0) {
+					line.getDirection().multiplyBy(-1.d);
+					points = b.intersect(line);
+				}
+				if(points.size() == 0)
+					return null;
+			}
+
+			PointND start = points.get(0); // [mm]
+			PointND end = points.get(1);   // [mm]
+
+			// get the normalized increment
+			SimpleVector increment = new SimpleVector(
+					end.getAbstractVector());
+			increment.subtract(start.getAbstractVector());
+			double distance = increment.normL2();
+			increment.divideBy(distance * samplingRate);
+
+			start = inverse.transform(start);
+			return new double [] {start.get(0), start.get(1), increment.getElement(0), increment.getElement(1), distance * samplingRate};
+		}
+
+	}
+
 	public Grid2D projectRayDrivenCL(Grid2D grid) {
 		boolean debug = true;
 		// create context
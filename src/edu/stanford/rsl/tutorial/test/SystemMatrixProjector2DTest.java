@@ -0,0 +1,151 @@
+package edu.stanford.rsl.tutorial.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.stanford.rsl.conrad.data.numeric.Grid2D;
+import edu.stanford.rsl.tutorial.fan.FanBeamProjector2D;
+import edu.stanford.rsl.tutorial.iterative.SystemMatrixProjector2D;
+import edu.stanford.rsl.tutorial.parallel.ParallelProjector2D;
+
+/**
+ * Compares the system matrices of the ParallelProjector2D and the FanBeamProjector2D with their ray driven projections,
+ * and checks that the backprojection of the SystemMatrixProjector2D is the adjoint of its projection.
+ *
+ * @author akmaier
+ *
+ */
+public class SystemMatrixProjector2DTest {
+
+	private static final int width = 48;
+	private static final int height = 40;
+
+	private static Grid2D createImage(double spacingX, double spacingY, long seed){
+		Random random = new Random(seed);
+		Grid2D image = new Grid2D(width, height);
+		image.setSpacing(spacingX, spacingY);
+		float [] buffer = image.getBuffer();
+		for (int i = 0; i < buffer.length; i++){
+			buffer[i] = random.nextFloat();
+		}
+		return image;
+	}
+
+	private static ParallelProjector2D createParallelProjector(){
+		return new ParallelProjector2D(Math.PI, Math.PI / 45, 80, 1);
+	}
+
+	private static FanBeamProjector2D createFanBeamProjector(){
+		return new FanBeamProjector2D(150, 2 * Math.PI, 2 * Math.PI / 45, 100, 1);
+	}
+
+	/**
+	 * The matrix holds the interpolation weights of the samples of projectRayDriven, which sums the interpolated values in double
+	 * precision. The weights are stored in float.
+	 */
+	private static void assertMatchesProjection(Grid2D expected, SystemMatrixProjector2D projector, Grid2D image){
+		Grid2D actual = projector.project(image);
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		float [] a = expected.getBuffer();
+		float [] b = actual.getBuffer();
+		double max = 0;
+		int hits = 0;
+		for (int i = 0; i < a.length; i++){
+			max = Math.max(max, Math.abs(a[i]));
+			if (a[i] != 0) hits++;
+		}
+		// most rays hit the image.
+		assertTrue("rays through the image " + hits, hits > a.length / 2);
+		for (int i = 0; i < a.length; i++){
+			assertEquals("detector element " + i, a[i], b[i], 1e-5 * max);
+		}
+	}
+
+	private static double dot(float [] a, float [] b){
+		double sum = 0;
+		for (int i = 0; i < a.length; i++){
+			sum += (double) a[i] * b[i];
+		}
+		return sum;
+	}
+
+	/**
+	 * <A x, y> = <x, A^T y>
+	 */
+	private static void assertAdjoint(SystemMatrixProjector2D projector, Grid2D image, Grid2D sino){
+		double forward = dot(projector.project(image).getBuffer(), sino.getBuffer());
+		double backward = dot(image.getBuffer(), projector.backproject(sino).getBuffer());
+		assertEquals(forward, backward, 1e-5 * Math.abs(forward));
+	}
+
+	@Test
+	public void testParallelSystemMatrixMatchesRayDrivenProjection(){
+		ParallelProjector2D projector = createParallelProjector();
+		double [][] spacings = {{1, 1}, {0.8, 1.25}};
+		for (int n = 0; n < spacings.length; n++){
+			Grid2D image = createImage(spacings[n][0], spacings[n][1], n);
+			SystemMatrixProjector2D matrixProjector = projector.createSystemMatrixProjector(image, null);
+			assertMatchesProjection(projector.projectRayDriven(image), matrixProjector, image);
+		}
+	}
+
+	@Test
+	public void testFanBeamSystemMatrixMatchesRayDrivenProjection(){
+		FanBeamProjector2D projector = createFanBeamProjector();
+		Grid2D image = createImage(1, 1, 2);
+		SystemMatrixProjector2D matrixProjector = projector.createSystemMatrixProjector(image, null);
+		assertMatchesProjection(projector.projectRayDriven(image), matrixProjector, image);
+	}
+
+	@Test
+	public void testBackprojectionIsAdjoint(){
+		Grid2D image = createImage(1, 1, 3);
+		SystemMatrixProjector2D [] projectors = {createParallelProjector().createSystemMatrixProjector(image, null),
+				createFanBeamProjector().createSystemMatrixProjector(image, null)};
+		for (SystemMatrixProjector2D projector : projectors){
+			Grid2D sino = projector.project(createImage(1, 1, 4));
+			assertAdjoint(projector, image, sino);
+		}
+	}
+
+	/**
+	 * The second projector reads the matrix from the cache.
+	 */
+	@Test
+	public void testCachedSystemMatrix() throws IOException {
+		File directory = File.createTempFile("systemmatrix", "");
+		assertTrue(directory.delete());
+		assertTrue(directory.mkdir());
+		try {
+			Grid2D image = createImage(1, 1, 5);
+			ParallelProjector2D projector = createParallelProjector();
+			SystemMatrixProjector2D computed = projector.createSystemMatrixProjector(image, directory);
+			File [] files = directory.listFiles();
+			assertEquals(1, files.length);
+			SystemMatrixProjector2D cached = projector.createSystemMatrixProjector(image, directory);
+			assertEquals(computed.getMatrix().getNumberOfNonZeros(), cached.getMatrix().getNumberOfNonZeros());
+			assertArrayEquals(computed.project(image).getBuffer(), cached.project(image).getBuffer(), 0);
+		} finally {
+			File [] files = directory.listFiles();
+			if (files != null) {
+				for (File file : files){
+					file.delete();
+				}
+			}
+			directory.delete();
+		}
+	}
+
+}
+/*
+ * Copyright (C) 2010-2014 Andreas Maier
+ * CONRAD is developed as an Open Source project under the GNU General Public License (GPL).
+*/